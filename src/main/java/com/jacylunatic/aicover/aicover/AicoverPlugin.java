@@ -1,29 +1,63 @@
 package com.jacylunatic.aicover.aicover;
 
+import com.jacylunatic.aicover.aicover.model.AiCoverUsage;
+import com.jacylunatic.aicover.aicover.service.WarmupService;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import run.halo.app.extension.SchemeManager;
+import run.halo.app.extension.index.IndexSpec;
 import run.halo.app.plugin.BasePlugin;
 import run.halo.app.plugin.PluginContext;
 
+import static run.halo.app.extension.index.IndexAttributeFactory.simpleAttribute;
+
 /**
  * 插件主入口。
  * @ComponentScan 注解确保 Spring 会扫描插件的所有包。
  */
+@Slf4j
 @Component
 public class AicoverPlugin extends BasePlugin {
 
-    public AicoverPlugin(PluginContext pluginContext) {
+    private final WarmupService warmupService;
+    private final GenerationLifecycleManager lifecycleManager;
+    private final SchemeManager schemeManager;
+
+    private Disposable warmup;
+
+    public AicoverPlugin(PluginContext pluginContext, WarmupService warmupService,
+        GenerationLifecycleManager lifecycleManager, SchemeManager schemeManager) {
         super(pluginContext);
+        this.warmupService = warmupService;
+        this.lifecycleManager = lifecycleManager;
+        this.schemeManager = schemeManager;
     }
 
     @Override
     public void start() {
-        System.out.println("插件启动成功！");
+        // 用量台账按日期查询，需要为 spec.day 建立索引
+        schemeManager.register(AiCoverUsage.class, indexSpecs -> indexSpecs.add(new IndexSpec()
+            .setName("spec.day")
+            .setIndexFunc(simpleAttribute(AiCoverUsage.class, usage -> usage.getSpec().getDay()))));
+        lifecycleManager.start();
+        // 预热在后台进行，不阻塞插件启动
+        warmup = warmupService.warmUpAsync();
+        log.info("[Plugin] Started.");
     }
 
     @Override
     public void stop() {
-        System.out.println("插件停止！");
+        if (warmup != null) {
+            warmup.dispose();
+        }
+        // 排空进行中的生成任务，超时后取消并释放连接池等资源，避免热更新后泄漏
+        int cancelled = lifecycleManager.shutdown(GenerationLifecycleManager.DEFAULT_DRAIN_TIMEOUT);
+        // 台账在上面的 shutdown 中完成最后一次写入，之后才能注销扩展
+        schemeManager.unregister(schemeManager.get(AiCoverUsage.class));
+        log.info("[Plugin] Stopped: in-flight jobs {}.",
+            cancelled == 0 ? "drained" : cancelled + " cancelled after the drain timeout");
     }
 }
-
@@ -1,21 +1,50 @@
 package com.jacylunatic.aicover.aicover.controller;
 
+import com.jacylunatic.aicover.aicover.model.CircuitBreakerStatus;
+import com.jacylunatic.aicover.aicover.model.CoverCoverage;
+import com.jacylunatic.aicover.aicover.model.CoverStatus;
+import com.jacylunatic.aicover.aicover.model.DiagnosticCheck;
+import com.jacylunatic.aicover.aicover.model.GenerateImageRequest;
+import com.jacylunatic.aicover.aicover.model.LayoutMigrationReport;
 import com.jacylunatic.aicover.aicover.model.ModelInfo;
-import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.OrphanGcReport;
+import com.jacylunatic.aicover.aicover.model.PostCoverEntry;
 import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.model.SpeculativeCover;
+import com.jacylunatic.aicover.aicover.model.UsageAggregate;
 import com.jacylunatic.aicover.aicover.service.AiImageService;
+import com.jacylunatic.aicover.aicover.service.AlistLayoutMigration;
+import com.jacylunatic.aicover.aicover.service.AlistOrphanCollector;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.coverage.CoverIndex;
+import com.jacylunatic.aicover.aicover.service.diagnostics.DiagnosticsService;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.resilience.CircuitBreakerRegistry;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import com.jacylunatic.aicover.aicover.service.speculative.SpeculativeCoverService;
+import com.jacylunatic.aicover.aicover.service.usage.UsageLedger;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import run.halo.app.plugin.ReactiveSettingFetcher;
 
-import java.util.Arrays;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
 
 @Slf4j
 @RestController
@@ -23,20 +52,78 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AiImageController {
 
+    private static final String SUPER_ROLE_AUTHORITY = "ROLE_super-role";
+
     private final AiImageService aiImageService;
-    private final ReactiveSettingFetcher settingFetcher;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final PluginMetrics metrics;
+    private final SpeculativeCoverService speculativeCoverService;
+    private final UsageLedger usageLedger;
+    private final LocalImageCache localImageCache;
+    private final DiagnosticsService diagnosticsService;
+    private final CoverIndex coverIndex;
+    private final AlistLayoutMigration layoutMigration;
+    private final AlistOrphanCollector orphanCollector;
 
     @GetMapping(value = "generate", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ProgressUpdate> generateImage(
         @RequestParam("prompt") String prompt,
         @RequestParam("model") String model, // 现在会接收 "platform:modelId" 格式
         @RequestParam("size") String size,
-        @RequestParam(name = "uploadToAlist", defaultValue = "false") Boolean uploadToAlist
+        @RequestParam(name = "uploadToAlist", defaultValue = "false") Boolean uploadToAlist,
+        @RequestParam(name = "timeoutSeconds", required = false) Integer timeoutSeconds
     ) {
         log.info("[Controller] Received generate image stream request: prompt='{}', model='{}', size='{}', uploadToAlist={}",
             prompt, model, size, uploadToAlist);
 
-        return aiImageService.generateImage(prompt, model, size, uploadToAlist);
+        return withTimeout(aiImageService.generateImage(prompt, model, size, uploadToAlist), timeoutSeconds);
+    }
+
+    /**
+     * 与 GET 版本相同，但提示词放在请求体中，不受 URL 长度限制。
+     */
+    @PostMapping(value = "generate", consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ProgressUpdate> generateImage(@RequestBody GenerateImageRequest request) {
+        log.info("[Controller] Received generate image POST request: model='{}', size='{}', uploadToAlist={}",
+            request.getModel(), request.getSize(), request.isUploadToAlist());
+        return withTimeout(aiImageService.generateImage(request.getPrompt(), request.getModel(), request.getSize(),
+            request.isUploadToAlist()), request.getTimeoutSeconds());
+    }
+
+    /**
+     * 调用方可以给出比设置更短的总时限（秒），不能放宽设置中的时限。
+     */
+    private static Flux<ProgressUpdate> withTimeout(Flux<ProgressUpdate> generation, Integer timeoutSeconds) {
+        return timeoutSeconds == null || timeoutSeconds <= 0
+            ? generation
+            : Deadline.tighten(generation, Duration.ofSeconds(timeoutSeconds));
+    }
+
+    /**
+     * 多模型候选生成：models 为逗号分隔的 "platform:modelId" 列表，每个模型生成 n 张。
+     */
+    @GetMapping(value = "candidates", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ProgressUpdate> generateCandidates(
+        @RequestParam("prompt") String prompt,
+        @RequestParam("models") List<String> models,
+        @RequestParam(name = "n", defaultValue = "1") int n,
+        @RequestParam("size") String size
+    ) {
+        log.info("[Controller] Received candidates request: prompt='{}', models={}, n={}, size='{}'",
+            prompt, models, n, size);
+        return aiImageService.generateCandidates(prompt, models, n, size);
+    }
+
+    /**
+     * 选中一张候选图，只有被选中的候选图会上传到存储。
+     */
+    @GetMapping(value = "candidates/{candidateId}/use", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ProgressUpdate> useCandidate(
+        @PathVariable String candidateId,
+        @RequestParam(name = "uploadToAlist", defaultValue = "false") Boolean uploadToAlist
+    ) {
+        return aiImageService.useCandidate(candidateId, uploadToAlist);
     }
 
     /**
@@ -45,32 +132,187 @@ public class AiImageController {
      */
     @GetMapping("models")
     public Mono<List<ModelInfo>> getModels() {
-        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
-            .defaultIfEmpty(new PluginMasterSetting())
-            .map(setting -> {
-                String modelsString = setting.getModels();
-                if (modelsString == null || modelsString.isBlank()) {
-                    // 提供一个默认值，以防用户未配置
-                    return List.of(new ModelInfo("通义万相", "tongyi:wanx-v1"));
+        return aiImageService.getModels();
+    }
+
+    /**
+     * 返回各平台熔断器的当前状态，前端据此将不可用平台的模型置灰。
+     */
+    @GetMapping("breakers")
+    public Flux<CircuitBreakerStatus> getCircuitBreakers() {
+        return Flux.fromIterable(circuitBreakerRegistry.statuses());
+    }
+
+    /**
+     * 返回编辑草稿时为该文章预生成的封面，没有时返回 404。
+     */
+    @GetMapping("speculative/{postName}")
+    public Mono<ResponseEntity<SpeculativeCover>> getSpeculativeCover(@PathVariable String postName) {
+        return Mono.just(speculativeCoverService.lookup(postName)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * 采用预生成的封面：按需上传到 Alist，进度与生成接口相同。
+     */
+    @GetMapping(value = "speculative/{postName}/use", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ProgressUpdate> useSpeculativeCover(
+        @PathVariable String postName,
+        @RequestParam(name = "uploadToAlist", defaultValue = "false") Boolean uploadToAlist
+    ) {
+        return speculativeCoverService.lookup(postName)
+            .map(cover -> {
+                speculativeCoverService.consume(postName);
+                return uploadToAlist
+                    ? aiImageService.uploadGenerated(cover.getImageUrl())
+                    : aiImageService.keepGenerated(cover.getImageUrl(), "已使用预生成的封面。");
+            })
+            .orElseGet(() -> Flux.just(ProgressUpdate.error("预生成的封面已失效，请重新生成。")));
+    }
+
+    /**
+     * 本地缓存的图片。文件名即内容摘要，内容永不改变，因此可以长期缓存。
+     * <p>
+     * 返回 FileSystemResource 时，WebFlux 在 Reactor Netty 上以零拷贝方式发送文件（FileChannel.transferTo），
+     * 带 Range 请求头时自动返回 206 和对应的文件区段。
+     */
+    @GetMapping("images/{name}")
+    public Mono<ResponseEntity<Resource>> getCachedImage(@PathVariable String name, ServerWebExchange exchange) {
+        return Mono.fromSupplier(() -> localImageCache.resolve(name)
+            .map(path -> {
+                String etag = "\"" + name.substring(0, name.indexOf('.')) + "\"";
+                if (exchange.checkNotModified(etag)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).<Resource>build();
                 }
-                // 解析 "平台标识符,显示名称,模型ID" 格式
-                return Arrays.stream(modelsString.split("\\r?\\n"))
-                    .map(String::trim)
-                    .filter(line -> !line.isEmpty() && line.contains(","))
-                    .map(line -> {
-                        String[] parts = line.split(",", 3);
-                        if (parts.length == 3) {
-                            String platform = parts[0].trim();
-                            String displayName = parts[1].trim();
-                            String modelId = parts[2].trim();
-                            // 将 platform 和 modelId 组合成新的 value
-                            return new ModelInfo(displayName, platform + ":" + modelId);
-                        }
-                        return null;
+                return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                    .contentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                    .<Resource>body(new FileSystemResource(path));
+            })
+            .orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * 按日期区间聚合生成用量，groupBy 可以是 author、platform、model、size 或 day。仅超级管理员可查看。
+     */
+    @GetMapping("usage")
+    public Mono<ResponseEntity<List<UsageAggregate>>> getUsage(
+        @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(name = "groupBy", defaultValue = "author") String groupBy
+    ) {
+        LocalDate end = to == null ? LocalDate.now() : to;
+        LocalDate start = from == null ? end.minusDays(30) : from;
+        return isSuperAdmin()
+            .flatMap(isAdmin -> isAdmin
+                ? usageLedger.aggregate(start, end, groupBy).map(ResponseEntity::ok)
+                : Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).<List<UsageAggregate>>build()));
+    }
+
+    /**
+     * 连通性与延迟自检：每个平台和 Alist 按阶段（DNS、连接、TLS、鉴权、登录、读写）给出耗时。
+     * repeat 为采样次数（最多 10 次），用于计算分位数。仅超级管理员可用。
+     */
+    @GetMapping("diagnostics")
+    public Mono<ResponseEntity<List<DiagnosticCheck>>> runDiagnostics(
+        @RequestParam(name = "repeat", defaultValue = "1") int repeat
+    ) {
+        return isSuperAdmin()
+            .flatMap(isAdmin -> isAdmin
+                ? diagnosticsService.run(repeat).map(ResponseEntity::ok)
+                : Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).<List<DiagnosticCheck>>build()));
+    }
+
+    /**
+     * 全站封面覆盖情况：各状态的文章数和需要补封面的文章数。仅超级管理员可查看。
+     */
+    @GetMapping("coverage")
+    public Mono<ResponseEntity<CoverCoverage>> getCoverage() {
+        return isSuperAdmin()
+            .map(isAdmin -> isAdmin
+                ? ResponseEntity.ok(coverIndex.coverage())
+                : ResponseEntity.status(HttpStatus.FORBIDDEN).<CoverCoverage>build());
+    }
+
+    /**
+     * 按封面状态分页列出文章，status 可以是 missing、ai_generated、manual 或 broken，page 从 1 开始。
+     * 仅超级管理员可查看。
+     */
+    @GetMapping("coverage/posts")
+    public Mono<ResponseEntity<List<PostCoverEntry>>> listCoveragePosts(
+        @RequestParam(name = "status", defaultValue = "missing") String status,
+        @RequestParam(name = "page", defaultValue = "1") int page,
+        @RequestParam(name = "size", defaultValue = "20") int size
+    ) {
+        CoverStatus coverStatus;
+        try {
+            coverStatus = CoverStatus.valueOf(status.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        int pageSize = Math.min(Math.max(size, 1), 200);
+        return isSuperAdmin()
+            .map(isAdmin -> isAdmin
+                ? ResponseEntity.ok(coverIndex.list(coverStatus, page, pageSize))
+                : ResponseEntity.status(HttpStatus.FORBIDDEN).<List<PostCoverEntry>>build());
+    }
+
+    /**
+     * 把上传目录下平铺的已有文件按当前的分目录布局分批迁移，并改写引用旧地址的文章封面。
+     * dryRun 为 true 时只统计需要移动的文件。仅超级管理员可用。
+     */
+    @PostMapping("alist/migrate-layout")
+    public Mono<ResponseEntity<LayoutMigrationReport>> migrateAlistLayout(
+        @RequestParam(name = "dryRun", defaultValue = "true") boolean dryRun
+    ) {
+        return isSuperAdmin()
+            .flatMap(isAdmin -> isAdmin
+                ? layoutMigration.migrate(dryRun)
+                    .map(ResponseEntity::ok)
+                    .onErrorResume(IllegalStateException.class, error -> {
+                        LayoutMigrationReport report = new LayoutMigrationReport();
+                        report.setDryRun(dryRun);
+                        report.getErrors().add(error.getMessage());
+                        return Mono.just(ResponseEntity.badRequest().body(report));
                     })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-            });
+                : Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).<LayoutMigrationReport>build()));
     }
-}
 
+    /**
+     * 清理上传目录中未被任何文章引用、且超过宽限期的图片。dryRun 为 true 时只统计并列出示例。仅超级管理员可用。
+     */
+    @PostMapping("alist/gc")
+    public Mono<ResponseEntity<OrphanGcReport>> collectAlistOrphans(
+        @RequestParam(name = "dryRun", defaultValue = "true") boolean dryRun
+    ) {
+        return isSuperAdmin()
+            .flatMap(isAdmin -> isAdmin
+                ? orphanCollector.collect(dryRun)
+                    .map(ResponseEntity::ok)
+                    .onErrorResume(IllegalStateException.class, error -> {
+                        OrphanGcReport report = new OrphanGcReport();
+                        report.setDryRun(dryRun);
+                        report.getErrors().add(error.getMessage());
+                        return Mono.just(ResponseEntity.badRequest().body(report));
+                    })
+                : Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).<OrphanGcReport>build()));
+    }
+
+    private Mono<Boolean> isSuperAdmin() {
+        return ReactiveSecurityContextHolder.getContext()
+            .map(context -> context.getAuthentication().getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .anyMatch(SUPER_ROLE_AUTHORITY::equals))
+            .defaultIfEmpty(false);
+    }
+
+    /**
+     * 插件内部指标快照。
+     */
+    @GetMapping("metrics")
+    public Mono<Map<String, Number>> getMetrics() {
+        return Mono.fromSupplier(metrics::snapshot);
+    }
+}
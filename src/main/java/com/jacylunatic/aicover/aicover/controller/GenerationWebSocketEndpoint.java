@@ -0,0 +1,184 @@
+package com.jacylunatic.aicover.aicover.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacylunatic.aicover.aicover.model.JobCommand;
+import com.jacylunatic.aicover.aicover.model.JobFrame;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.AiImageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import run.halo.app.core.endpoint.WebSocketEndpoint;
+import run.halo.app.extension.GroupVersion;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 一个编辑器会话内多路复用的生成通道：ws(s)://host/apis/aicover.jacylunatic.com/v1alpha1/generations。
+ * <p>
+ * 每次生成各开一个 SSE 连接会受浏览器对同一域名 HTTP/1.1 并发连接数的限制，提示词放在查询串里也有长度限制。
+ * 这里所有任务共用一个 WebSocket 连接：前端发送 {@link JobCommand}，服务端回送带任务 ID 的 {@link JobFrame}。
+ * <p>
+ * 背压：出站帧直接交给 session.send，由网络写入速度驱动上游；单个任务的中间进度在客户端读得慢时只保留最新一条，
+ * 完成、失败帧总是最后一条，不会被丢弃。连接关闭时，所有进行中的任务随之取消（包括平台侧的远程任务）。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GenerationWebSocketEndpoint implements WebSocketEndpoint {
+
+    private static final int MAX_JOBS_PER_SESSION = 8;
+    // 命令本身很轻，flatMap 的并发上限只需保证 cancel 命令不会被进行中的任务阻塞
+    private static final int COMMAND_CONCURRENCY = 64;
+
+    private final AiImageService aiImageService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public String urlPath() {
+        return "/generations";
+    }
+
+    @Override
+    public GroupVersion groupVersion() {
+        return new GroupVersion("aicover.jacylunatic.com", "v1alpha1");
+    }
+
+    @Override
+    public WebSocketHandler handler() {
+        return this::handle;
+    }
+
+    private Mono<Void> handle(WebSocketSession session) {
+        Map<String, Sinks.One<Boolean>> activeJobs = new ConcurrentHashMap<>();
+        // 连接关闭时被取消的任务数；任务在取消时就已移出 activeJobs，不能在关闭后再按其大小统计
+        AtomicInteger cancelledOnClose = new AtomicInteger();
+        Flux<WebSocketMessage> outbound = session.receive()
+            .map(WebSocketMessage::getPayloadAsText)
+            .flatMap(text -> handleCommand(text, activeJobs, cancelledOnClose), COMMAND_CONCURRENCY)
+            .map(frame -> session.textMessage(toJson(frame)));
+        return session.send(outbound)
+            .doFinally(signal -> log.info("[WebSocket] Session {} closed ({}), {} job(s) cancelled.",
+                session.getId(), signal, cancelledOnClose.get()));
+    }
+
+    private Flux<JobFrame> handleCommand(String text, Map<String, Sinks.One<Boolean>> activeJobs,
+        AtomicInteger cancelledOnClose) {
+        JobCommand command;
+        try {
+            command = objectMapper.readValue(text, JobCommand.class);
+        } catch (JsonProcessingException e) {
+            return Flux.just(new JobFrame(null, JobFrame.STAGE_ERROR, null, null, "无法解析的命令。"));
+        }
+        String jobId = command.getJob();
+        if (!StringUtils.hasText(jobId)) {
+            return Flux.just(new JobFrame(null, JobFrame.STAGE_ERROR, null, null, "命令缺少任务 ID。"));
+        }
+        if (JobCommand.TYPE_CANCEL.equals(command.getType())) {
+            Sinks.One<Boolean> cancel = activeJobs.remove(jobId);
+            if (cancel != null) {
+                cancel.tryEmitValue(true);
+            }
+            return Flux.empty();
+        }
+        if (!JobCommand.TYPE_START.equals(command.getType())) {
+            return Flux.just(new JobFrame(jobId, JobFrame.STAGE_ERROR, null, null, "未知的命令类型。"));
+        }
+        if (!StringUtils.hasText(command.getPrompt()) || !StringUtils.hasText(command.getModel())) {
+            return Flux.just(new JobFrame(jobId, JobFrame.STAGE_ERROR, null, null, "提示词和模型不能为空。"));
+        }
+        if (activeJobs.size() >= MAX_JOBS_PER_SESSION) {
+            return Flux.just(new JobFrame(jobId, JobFrame.STAGE_ERROR, null, null,
+                "同时进行的任务过多（最多 " + MAX_JOBS_PER_SESSION + " 个），请稍后再试。"));
+        }
+        Sinks.One<Boolean> cancel = Sinks.one();
+        if (activeJobs.putIfAbsent(jobId, cancel) != null) {
+            return Flux.just(new JobFrame(jobId, JobFrame.STAGE_ERROR, null, null, "任务 ID 重复。"));
+        }
+        return runJob(jobId, command, cancel)
+            .doFinally(signal -> {
+                // 取消命令让任务以 C 帧正常结束，只有连接关闭才会以 CANCEL 信号结束
+                if (signal == SignalType.CANCEL) {
+                    cancelledOnClose.incrementAndGet();
+                }
+                activeJobs.remove(jobId, cancel);
+            });
+    }
+
+    private Flux<JobFrame> runJob(String jobId, JobCommand command, Sinks.One<Boolean> cancel) {
+        AtomicInteger updates = new AtomicInteger();
+        AtomicBoolean canceled = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> lastWarning = new AtomicReference<>();
+        String size = StringUtils.hasText(command.getSize()) ? command.getSize() : "1024*1024";
+        Flux<JobFrame> frames = aiImageService
+            .generateImage(command.getPrompt(), command.getModel(), size, command.isUploadToAlist())
+            .map(update -> toFrame(jobId, update, updates.incrementAndGet()))
+            .doOnNext(frame -> {
+                if (JobFrame.STAGE_DONE.equals(frame.getS())) {
+                    done.set(true);
+                } else if (JobFrame.STAGE_WARNING.equals(frame.getS())) {
+                    lastWarning.set(frame.getM());
+                }
+            })
+            // 取消会一路传到平台轮询和远程任务
+            .takeUntilOther(cancel.asMono().doOnNext(canceled::set))
+            // 每个任务总以 D、C 或 E 帧结束，前端据此释放该任务
+            .concatWith(Mono.fromSupplier(() -> {
+                if (canceled.get()) {
+                    return new JobFrame(jobId, JobFrame.STAGE_CANCELED, null, null, "任务已取消。");
+                }
+                if (done.get()) {
+                    return null;
+                }
+                String message = lastWarning.get() != null ? lastWarning.get() : "任务已结束，未产出图片。";
+                return new JobFrame(jobId, JobFrame.STAGE_ERROR, null, null, message);
+            }))
+            .onErrorResume(error -> Mono.just(new JobFrame(jobId, JobFrame.STAGE_ERROR, null, null, error.getMessage())));
+        return Flux.concat(
+            Mono.just(new JobFrame(jobId, JobFrame.STAGE_ACCEPTED, 0, null, "任务已接收。")),
+            frames.onBackpressureLatest());
+    }
+
+    /**
+     * 平台不提供真实进度，这里按阶段和已收到的进度条数估算一个单调递增的百分比。
+     */
+    private static JobFrame toFrame(String jobId, ProgressUpdate update, int sequence) {
+        if (Boolean.TRUE.equals(update.getIsFinal())) {
+            return new JobFrame(jobId, JobFrame.STAGE_DONE, 100, update.getFinalImageUrl(), update.getMessage());
+        }
+        if (Boolean.TRUE.equals(update.getIsError())) {
+            // 进度流中的错误不一定是终态（例如上传失败后回退到原始链接），终态由流结束时决定
+            return new JobFrame(jobId, JobFrame.STAGE_WARNING, null, null, update.getMessage());
+        }
+        if (update.getSuggestedImageUrl() != null) {
+            return JobFrame.suggestion(jobId, update.getSuggestedImageUrl(), update.getSimilarity(),
+                update.getMessage());
+        }
+        int percent = Math.min(95, 5 + (int) Math.round(90 * (1 - Math.pow(0.85, sequence))));
+        String stage = update.getTaskId() != null ? JobFrame.STAGE_SUBMITTED : JobFrame.STAGE_RUNNING;
+        return new JobFrame(jobId, stage, percent, update.getFinalImageUrl(), update.getMessage());
+    }
+
+    private String toJson(JobFrame frame) {
+        try {
+            return objectMapper.writeValueAsString(frame);
+        } catch (JsonProcessingException e) {
+            // JobFrame 只有字符串和数字字段，不会走到这里
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,21 +1,42 @@
 package com.jacylunatic.aicover.aicover.listener;
 
+import com.jacylunatic.aicover.aicover.model.CoverAnnotations;
+import com.jacylunatic.aicover.aicover.model.ImagePlaceholder;
+import com.jacylunatic.aicover.aicover.service.AlistWriteBehind;
+import com.jacylunatic.aicover.aicover.service.coverage.CoverIndex;
+import com.jacylunatic.aicover.aicover.service.image.ImagePlaceholderService;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.speculative.SpeculativeCoverService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Mono;
 import run.halo.app.core.extension.content.Post;
+import run.halo.app.event.post.PostDeletedEvent;
 import run.halo.app.event.post.PostPublishedEvent;
+import run.halo.app.event.post.PostUpdatedEvent;
 import run.halo.app.extension.ExtensionClient;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class PostEventListener {
 
+    private static final int MAX_ANNOTATE_ATTEMPTS = 3;
+
     private final ExtensionClient client;
+    private final ImagePlaceholderService placeholderService;
+    private final BlockingIoScheduler blockingIo;
+    private final SpeculativeCoverService speculativeCoverService;
+    private final CoverIndex coverIndex;
+    private final AlistWriteBehind alistWriteBehind;
 
     /**
      * 监听文章发布事件。
@@ -27,19 +48,97 @@ public class PostEventListener {
     public void onPostPublished(PostPublishedEvent event) {
         // 使用 ExtensionClient 和事件中的文章名称来获取完整的文章对象
         // 正确的方法是 event.getName()
-        Mono.justOrEmpty(client.fetch(Post.class, event.getName()))
+        // ExtensionClient 是阻塞接口，放到阻塞 I/O 调度器上执行，不占用事件发布线程
+        blockingIo.fromCallable(() -> client.fetch(Post.class, event.getName()))
+            .flatMap(Mono::justOrEmpty)
+            .doOnNext(coverIndex::upsert)
+            .doOnNext(alistWriteBehind::onPostSaved)
             .flatMap(post -> {
                 // 检查封面是否存在
-                if (!StringUtils.hasText(post.getSpec().getCover())) {
+                String cover = post.getSpec().getCover();
+                if (!StringUtils.hasText(cover)) {
                     log.info("检测到文章 [{}] 已发布但未设置封面。", post.getMetadata().getName());
                     // 注意：后端事件监听器是异步的，不能直接触发前端 UI。
                     // 真正的 UI 触发应该由前端在点击“发布”按钮时进行检查。
                     // 这里可以作为服务器端的检查点，用于记录日志等。
+                    return Mono.empty();
                 }
-                return Mono.empty();
+                return annotatePlaceholder(post);
             })
             .doOnError(e -> log.error("处理文章发布事件时出错: {}", e.getMessage()))
             .subscribe();
     }
-}
 
+    /**
+     * 监听文章更新（包括新建和草稿保存）：更新封面索引，封面引用的本地图片已在后台上传完成时改为 Alist 地址，
+     * 封面是本插件生成的图片时写入占位信息，并交给预生成服务判断是否需要按新标题预生成封面。
+     */
+    @EventListener(PostUpdatedEvent.class)
+    public void onPostUpdated(PostUpdatedEvent event) {
+        blockingIo.fromCallable(() -> client.fetch(Post.class, event.getName()))
+            .flatMap(found -> {
+                if (found.isEmpty()) {
+                    coverIndex.remove(event.getName());
+                    return Mono.empty();
+                }
+                Post post = found.get();
+                coverIndex.upsert(post);
+                alistWriteBehind.onPostSaved(post);
+                speculativeCoverService.onDraftUpdated(post.getMetadata().getName(),
+                    post.getSpec().getTitle(), StringUtils.hasText(post.getSpec().getCover()));
+                return annotatePlaceholder(post);
+            })
+            .subscribe(null, e -> log.error("处理文章更新事件时出错: {}", e.getMessage()));
+    }
+
+    /**
+     * 文章被彻底删除后移出封面索引。
+     */
+    @EventListener(PostDeletedEvent.class)
+    public void onPostDeleted(PostDeletedEvent event) {
+        coverIndex.remove(event.getName());
+    }
+
+    /**
+     * 封面是本插件生成的图片时，把占位信息回写到文章注解上。
+     * 封面保存时（包括草稿）就写入；注解已是最新时不会更新文章，因此写入引起的再次更新事件不会循环。
+     */
+    private Mono<Void> annotatePlaceholder(Post post) {
+        String cover = post.getSpec().getCover();
+        return Mono.justOrEmpty(placeholderService.lookup(cover))
+            .flatMap(placeholder -> blockingIo.fromRunnable(() -> annotateCover(post, cover, placeholder)));
+    }
+
+    private void annotateCover(Post post, String cover, ImagePlaceholder placeholder) {
+        Map<String, String> placeholderAnnotations = CoverAnnotations.of(cover, placeholder);
+        Post current = post;
+        for (int attempt = 1; attempt <= MAX_ANNOTATE_ATTEMPTS; attempt++) {
+            Map<String, String> annotations = current.getMetadata().getAnnotations() == null
+                ? new HashMap<>()
+                : new HashMap<>(current.getMetadata().getAnnotations());
+            if (!Objects.equals(cover, current.getSpec().getCover())) {
+                // 重新获取后封面已经变了，占位信息不再适用
+                return;
+            }
+            if (placeholderAnnotations.entrySet().stream()
+                .allMatch(entry -> entry.getValue().equals(annotations.get(entry.getKey())))) {
+                return;
+            }
+            annotations.putAll(placeholderAnnotations);
+            current.getMetadata().setAnnotations(annotations);
+            try {
+                client.update(current);
+                log.info("已为文章 [{}] 写入封面占位信息。", current.getMetadata().getName());
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                log.warn("写入文章 [{}] 封面占位信息时发生版本冲突，第 {} 次重试。",
+                    current.getMetadata().getName(), attempt);
+                var latest = client.fetch(Post.class, current.getMetadata().getName());
+                if (latest.isEmpty()) {
+                    return;
+                }
+                current = latest.get();
+            }
+        }
+    }
+}
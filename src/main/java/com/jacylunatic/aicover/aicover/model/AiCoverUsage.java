@@ -0,0 +1,42 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import run.halo.app.extension.AbstractExtension;
+import run.halo.app.extension.GVK;
+
+/**
+ * 用量台账的持久化形式：每个 (日期, 作者, 平台, 模型, 尺寸) 组合一条，记录当天的累计值。
+ * 由 UsageLedger 定期批量写入，热路径上不做任何存储操作。
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@GVK(group = "aicover.jacylunatic.com", version = "v1alpha1", kind = "AiCoverUsage",
+    plural = "aicoverusages", singular = "aicoverusage")
+public class AiCoverUsage extends AbstractExtension {
+
+    private Spec spec = new Spec();
+
+    @Data
+    public static class Spec {
+        /**
+         * 日期，格式为 yyyy-MM-dd（服务器时区）。
+         */
+        private String day;
+        private String author;
+        private String platform;
+        private String model;
+        private String size;
+
+        private long requests;
+        private long successes;
+        private long failures;
+        private long images;
+        private long totalDurationMillis;
+
+        /**
+         * 估算费用，单位为千分之一元，避免浮点误差。
+         */
+        private long estimatedCostMilli;
+    }
+}
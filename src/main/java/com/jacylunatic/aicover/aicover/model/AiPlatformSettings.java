@@ -13,7 +13,7 @@ public class AiPlatformSettings {
     public static final String GROUP = "ai-platform-settings";
 
     /**
-     * 通义万相的 API Key。
+     * 通义万相的 API Key，可以是换行或逗号分隔的多个 Key，由 ApiKeyPool 分摊请求。
      * 字段名 'tongyiApiKey' 必须与 setting.yaml 中表单项的 'name' 完全匹配。
      */
     private String tongyiApiKey;
@@ -24,6 +24,11 @@ public class AiPlatformSettings {
      */
     private String siliconflowApiKey;
 
+    /**
+     * 硅基流动的图片返回方式："url"（默认，返回临时链接）或 "b64_json"（图片内容直接内联在响应中，省去一次下载）。
+     */
+    private String siliconflowResponseFormat;
+
     /**
      * 魔塔（ModelScope）的 API Key (MODELSCOPE_SDK_TOKEN)。
      * 字段名 'modelscopeApiKey' 必须与 setting.yaml 中表单项的 'name' 完全匹配。
@@ -16,4 +16,39 @@ public class AlistSetting {
     private String alistUsername;
     private String alistPassword;
     private String alistUploadPath;
+
+    /**
+     * 图片传输方式："stream"（插件下载后上传，默认）或 "offline"（由 Alist 离线下载直接拉取）。
+     */
+    private String alistTransferMode;
+
+    /**
+     * 离线下载使用的 Alist 工具，默认为 SimpleHttp。
+     */
+    private String alistOfflineTool;
+
+    /**
+     * 上传目录下的分目录布局："flat"（默认）、"date"（按年/月）或 "hash"（按内容摘要前缀）。
+     */
+    private String alistDirectoryLayout;
+
+    /**
+     * 是否后台上传：先返回插件提供的本地地址，再在后台上传到 Alist 并改写文章封面。默认关闭。
+     */
+    private Boolean alistWriteBehind;
+
+    /**
+     * 是否每天自动清理上传目录中未被文章引用的图片。默认关闭。
+     */
+    private Boolean alistGcEnabled;
+
+    /**
+     * 清理的宽限期（天），修改时间在这之内的图片不清理。
+     */
+    private Integer alistGcGraceDays;
+
+    /**
+     * 每次清理最多删除的图片数。
+     */
+    private Integer alistGcMaxDeletes;
 }
@@ -0,0 +1,22 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+/**
+ * 向前端暴露的单个平台熔断器状态，前端据此把不可用平台的模型置灰。
+ */
+@Data
+public class CircuitBreakerStatus {
+    private String platform;
+    /**
+     * CLOSED / OPEN / HALF_OPEN
+     */
+    private String state;
+    private float failureRate;
+    private float slowCallRate;
+    private int recordedCalls;
+    /**
+     * OPEN 状态下距离下一次探测的秒数。
+     */
+    private long retryAfterSeconds;
+}
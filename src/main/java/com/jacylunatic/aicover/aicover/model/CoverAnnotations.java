@@ -0,0 +1,44 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 插件写入文章 (Post) metadata.annotations 的键。
+ * <p>
+ * 主题可以读取这些注解，在封面原图加载前渲染占位图并预留布局空间。
+ * PLACEHOLDER_FOR 记录占位信息对应的封面地址，主题应先确认它与当前封面一致再使用。
+ */
+public final class CoverAnnotations {
+
+    public static final String PREFIX = "aicover.jacylunatic.com/";
+    public static final String PLACEHOLDER_FOR = PREFIX + "placeholder-for";
+    public static final String WIDTH = PREFIX + "width";
+    public static final String HEIGHT = PREFIX + "height";
+    public static final String BLURHASH = PREFIX + "blurhash";
+    public static final String DOMINANT_COLOR = PREFIX + "dominant-color";
+    public static final String LQIP = PREFIX + "lqip";
+
+    private CoverAnnotations() {
+    }
+
+    /**
+     * 将占位信息转换为注解键值。
+     */
+    public static Map<String, String> of(String coverUrl, ImagePlaceholder placeholder) {
+        Map<String, String> annotations = new HashMap<>();
+        annotations.put(PLACEHOLDER_FOR, coverUrl);
+        annotations.put(WIDTH, String.valueOf(placeholder.getWidth()));
+        annotations.put(HEIGHT, String.valueOf(placeholder.getHeight()));
+        if (placeholder.getBlurHash() != null) {
+            annotations.put(BLURHASH, placeholder.getBlurHash());
+        }
+        if (placeholder.getDominantColor() != null) {
+            annotations.put(DOMINANT_COLOR, placeholder.getDominantColor());
+        }
+        if (placeholder.getLqip() != null) {
+            annotations.put(LQIP, placeholder.getLqip());
+        }
+        return annotations;
+    }
+}
@@ -0,0 +1,23 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 全站文章的封面覆盖情况。
+ */
+@Data
+public class CoverCoverage {
+    /**
+     * 索引是否已完成启动时的全量构建；未完成时计数可能偏小。
+     */
+    private boolean ready;
+    private long total;
+    private Map<CoverStatus, Long> counts;
+
+    /**
+     * 需要（重新）设置封面的文章数，即 MISSING 与 BROKEN 之和。
+     */
+    private long needsCover;
+}
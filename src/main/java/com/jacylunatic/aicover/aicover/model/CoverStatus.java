@@ -0,0 +1,26 @@
+package com.jacylunatic.aicover.aicover.model;
+
+/**
+ * 文章封面的状态。
+ */
+public enum CoverStatus {
+    /**
+     * 没有设置封面。
+     */
+    MISSING,
+
+    /**
+     * 本插件生成的封面（本地缓存或 Alist 中按内容寻址的文件）。
+     */
+    AI_GENERATED,
+
+    /**
+     * 作者手动设置的封面。
+     */
+    MANUAL,
+
+    /**
+     * 地址无效、本地缓存文件已被淘汰，或是会过期的平台临时链接。
+     */
+    BROKEN
+}
@@ -0,0 +1,37 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+/**
+ * 自检结果中的一行：某个目标（平台或 Alist）的某个阶段。
+ */
+@Data
+public class DiagnosticCheck {
+    /**
+     * 平台标识符或 "alist"。
+     */
+    private String target;
+
+    /**
+     * dns / connect / tls / auth / login / put / get
+     */
+    private String stage;
+
+    /**
+     * ok / failed / skipped
+     */
+    private String status;
+
+    /**
+     * 成功的采样次数。
+     */
+    private int samples;
+    private double p50Millis;
+    private double p95Millis;
+    private double maxMillis;
+
+    /**
+     * 失败或跳过的原因。
+     */
+    private String message;
+}
@@ -11,4 +11,9 @@ public class GenerateImageRequest {
     private String model;
     private String size;
     private boolean uploadToAlist;
+
+    /**
+     * 本次请求的总时限（秒），只能比设置中的时限更短；为空时使用设置。
+     */
+    private Integer timeoutSeconds;
 }
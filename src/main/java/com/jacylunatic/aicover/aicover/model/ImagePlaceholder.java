@@ -0,0 +1,23 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * 封面图的占位信息，主题可据此在原图加载完成前预留布局空间并渲染模糊占位图。
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImagePlaceholder {
+    private int width;
+    private int height;
+    private String blurHash;
+    /**
+     * 主色调，格式为 #rrggbb。
+     */
+    private String dominantColor;
+    /**
+     * 极小尺寸的 base64 预览图 (data URI)。
+     */
+    private String lqip;
+}
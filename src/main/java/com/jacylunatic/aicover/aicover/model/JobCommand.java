@@ -0,0 +1,22 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+/**
+ * 前端通过 WebSocket 发来的命令。
+ * <p>
+ * type 为 "start" 时启动一个生成任务，prompt/model/size/uploadToAlist 与 HTTP 接口含义相同；
+ * type 为 "cancel" 时取消 job 对应的任务。
+ */
+@Data
+public class JobCommand {
+    public static final String TYPE_START = "start";
+    public static final String TYPE_CANCEL = "cancel";
+
+    private String type;
+    private String job;
+    private String prompt;
+    private String model;
+    private String size;
+    private boolean uploadToAlist;
+}
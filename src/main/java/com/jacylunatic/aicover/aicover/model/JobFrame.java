@@ -0,0 +1,58 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * WebSocket 通道上发给前端的进度帧。字段名刻意缩短，以减少多任务并发时的帧大小。
+ * <ul>
+ *     <li>j：任务 ID（由前端在 start 命令中指定）</li>
+ *     <li>s：阶段代码，见 STAGE_* 常量；每个任务总以 D、C 或 E 结束</li>
+ *     <li>p：估算的进度百分比，0~100</li>
+ *     <li>u：图片地址，仅在出图或完成时携带</li>
+ *     <li>m：给用户看的进度文字</li>
+ *     <li>r：历史结果与本次提示词的相似度（0~1），仅在 G 帧中携带</li>
+ * </ul>
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JobFrame {
+
+    public static final String STAGE_ACCEPTED = "A";
+    public static final String STAGE_SUBMITTED = "S";
+    public static final String STAGE_RUNNING = "R";
+    /**
+     * 非终态的错误提示，任务仍可能成功（例如上传失败后回退到原始链接）。
+     */
+    public static final String STAGE_WARNING = "W";
+    /**
+     * 找到了提示词相近的历史结果，u 为可直接使用的图片地址，r 为相似度；生成仍在继续。
+     */
+    public static final String STAGE_SUGGESTION = "G";
+    public static final String STAGE_DONE = "D";
+    public static final String STAGE_ERROR = "E";
+    public static final String STAGE_CANCELED = "C";
+
+    private String j;
+    private String s;
+    private Integer p;
+    private String u;
+    private String m;
+    private Double r;
+
+    public JobFrame(String j, String s, Integer p, String u, String m) {
+        this.j = j;
+        this.s = s;
+        this.p = p;
+        this.u = u;
+        this.m = m;
+    }
+
+    public static JobFrame suggestion(String jobId, String imageUrl, Double similarity, String message) {
+        JobFrame frame = new JobFrame(jobId, STAGE_SUGGESTION, null, imageUrl, message);
+        frame.setR(similarity);
+        return frame;
+    }
+}
@@ -0,0 +1,46 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上传目录布局迁移的结果。
+ */
+@Data
+public class LayoutMigrationReport {
+    /**
+     * 迁移到的布局：date 或 hash。
+     */
+    private String layout;
+    private boolean dryRun;
+
+    /**
+     * 上传目录下（不含子目录）的文件数。
+     */
+    private int scanned;
+
+    /**
+     * 需要移动的文件数；试运行时只统计不移动。
+     */
+    private int planned;
+    private int moved;
+    private int failed;
+
+    /**
+     * 被封面以无法改写的地址引用（例如其他域名、反向代理地址或独立页面封面）而留在原处的文件数，
+     * 文件名列在 errors 中。
+     */
+    private int skipped;
+
+    /**
+     * 封面地址被改写为新路径的文章数。
+     */
+    private int postsUpdated;
+
+    /**
+     * 失败原因，最多保留前 20 条。
+     */
+    private List<String> errors = new ArrayList<>();
+}
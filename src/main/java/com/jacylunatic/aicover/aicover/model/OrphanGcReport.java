@@ -0,0 +1,58 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 清理上传目录中未被引用图片的结果。
+ */
+@Data
+public class OrphanGcReport {
+    private boolean dryRun;
+
+    /**
+     * 宽限期（天）：修改时间在这之内的图片即使未被引用也保留。
+     */
+    private int graceDays;
+
+    /**
+     * 文章封面引用到的不同文件名数。
+     */
+    private int referenced;
+
+    /**
+     * 扫描的目录数和图片文件数（含分目录）。
+     */
+    private int directories;
+    private int scanned;
+
+    /**
+     * 未被引用且超过宽限期的图片数及其总字节数；试运行时只统计不删除。
+     */
+    private int orphaned;
+    private long orphanedBytes;
+
+    /**
+     * 未被引用但仍在宽限期内（或无法确定修改时间）而保留的图片数。
+     */
+    private int tooRecent;
+    private int deleted;
+    private int failed;
+
+    /**
+     * 本次删除数达到上限，剩余的留给下一次清理。
+     */
+    private boolean truncated;
+
+    /**
+     * 待删除图片的路径示例，最多 20 条。
+     */
+    private List<String> samples = new ArrayList<>();
+
+    /**
+     * 失败原因，最多保留前 20 条。
+     */
+    private List<String> errors = new ArrayList<>();
+}
@@ -13,4 +13,74 @@ public class PluginMasterSetting {
     public static final String GROUP = "master-settings";
 
     private String models;
+
+    /**
+     * 插件启动时是否异步预热连接、Alist Token 和模型列表。未设置时视为开启。
+     */
+    private Boolean warmupOnStart;
+
+    /**
+     * 阻塞 I/O 的执行方式："virtual"（虚拟线程，默认）或 "boundedElastic"。
+     */
+    private String blockingIoMode;
+
+    /**
+     * 编辑草稿时是否在后台按标题预生成封面，默认关闭。
+     */
+    private Boolean speculativeGeneration;
+
+    /**
+     * 预生成使用的模型（"平台标识符:模型ID"），为空时使用模型列表中的第一个。
+     */
+    private String speculativeModel;
+
+    /**
+     * 每天最多预生成的次数。
+     */
+    private Integer speculativeDailyLimit;
+
+    /**
+     * 预生成使用的提示词模板，{title} 会替换为文章标题。为空时使用内置模板。
+     */
+    private String speculativePrompt;
+
+    /**
+     * 预生成图片的尺寸，例如 1280*720。为空时使用 1280*720。
+     */
+    private String speculativeSize;
+
+    /**
+     * 未上传到 Alist 时，是否把图片缓存到本地并由插件提供稳定地址。未设置时视为开启。
+     */
+    private Boolean localImageCache;
+
+    /**
+     * 本地图片缓存的容量上限（MB），超出后按最近访问时间淘汰。
+     */
+    private Integer localImageCacheMaxMb;
+
+    /**
+     * 同时驻留在内存中的图片字节总量上限（MB），超出时新的下载排队等待。
+     */
+    private Integer imageMemoryBudgetMb;
+
+    /**
+     * 单张图片超过该大小（MB）时不进内存，溢出到临时文件处理。
+     */
+    private Integer imageSpillThresholdMb;
+
+    /**
+     * 一次生成请求（含生成、缓存和上传）的总时限（秒），到期后取消仍在进行的工作。
+     */
+    private Integer requestTimeoutSeconds;
+
+    /**
+     * 生成前是否推荐提示词相近的历史结果，默认关闭。
+     */
+    private Boolean similarPromptSuggestions;
+
+    /**
+     * 推荐历史结果所需的最低相似度（Jaccard，0.5 ~ 1）。
+     */
+    private Double similarPromptThreshold;
 }
@@ -0,0 +1,18 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 封面索引中的一篇文章。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostCoverEntry {
+    private String postName;
+    private String title;
+    private String cover;
+    private CoverStatus status;
+}
@@ -19,6 +19,36 @@ public class ProgressUpdate {
      */
     private Boolean isFinal = false;
 
+    /**
+     * 最终图片的尺寸、BlurHash、主色调等占位信息，仅在图片经过插件（如上传 Alist）时提供。
+     */
+    private ImagePlaceholder placeholder;
+
+    /**
+     * 平台侧的异步任务 ID，仅在任务提交成功后的那条进度中携带。
+     */
+    private String taskId;
+
+    /**
+     * 多候选生成时，每张候选图的 ID，用于之后选中并上传。
+     */
+    private String candidateId;
+
+    /**
+     * 多候选生成时，产生这条进度的模型（"平台标识符:模型ID"）。
+     */
+    private String model;
+
+    /**
+     * 提示词相近的历史结果，可以直接选用，生成仍在继续。
+     */
+    private String suggestedImageUrl;
+
+    /**
+     * 历史结果的提示词与本次提示词的相似度（0 ~ 1），与 suggestedImageUrl 一起出现。
+     */
+    private Double similarity;
+
     public ProgressUpdate(String message) {
         this.message = message;
         this.isError = false;
@@ -47,6 +77,25 @@ public class ProgressUpdate {
         return update;
     }
 
+    /**
+     * 异步任务已提交到平台，携带平台返回的任务 ID。
+     */
+    public static ProgressUpdate taskSubmitted(String taskId, String message) {
+        ProgressUpdate update = new ProgressUpdate(message, false);
+        update.setTaskId(taskId);
+        return update;
+    }
+
+    /**
+     * 推荐一张提示词相近的历史图片，不是最终状态。
+     */
+    public static ProgressUpdate suggestion(String imageUrl, double similarity, String message) {
+        ProgressUpdate update = new ProgressUpdate(message, false);
+        update.setSuggestedImageUrl(imageUrl);
+        update.setSimilarity(similarity);
+        return update;
+    }
+
     /**
      * 包含中间结果的成功状态 (AI绘图成功，但还需上传Alist)
      */
@@ -0,0 +1,28 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 编辑草稿时在后台预先生成的封面，弹窗打开时直接展示。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpeculativeCover {
+    private String postName;
+
+    /**
+     * 生成时所依据的文章标题，标题变化较大时该封面作废。
+     */
+    private String title;
+    private String prompt;
+    private String model;
+
+    /**
+     * 平台返回的临时链接，尚未上传到存储。
+     */
+    private String imageUrl;
+    private long createdAt;
+}
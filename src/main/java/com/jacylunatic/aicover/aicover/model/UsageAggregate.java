@@ -0,0 +1,21 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+/**
+ * 用量聚合结果，key 为分组字段的取值（作者、平台、模型或日期）。
+ */
+@Data
+public class UsageAggregate {
+    private String key;
+    private long requests;
+    private long successes;
+    private long failures;
+    private long images;
+    private long averageDurationMillis;
+
+    /**
+     * 估算费用（元）。
+     */
+    private double estimatedCost;
+}
@@ -0,0 +1,29 @@
+package com.jacylunatic.aicover.aicover.model;
+
+import lombok.Data;
+
+/**
+ * 用量与配额设置。
+ */
+@Data
+public class UsageSetting {
+    /**
+     * 这个 GROUP 常量必须与 setting.yaml 中定义的 'group' 完全匹配。
+     */
+    public static final String GROUP = "usage-settings";
+
+    /**
+     * 每位作者每天最多发起的生成次数，为空或 0 表示不限制。
+     */
+    private Integer authorDailyQuota;
+
+    /**
+     * 各平台每天的生成次数上限，一行一个，格式为 "平台标识符=次数"。
+     */
+    private String providerDailyQuotas;
+
+    /**
+     * 每张图片的估算费用（元），一行一个，格式为 "平台标识符:模型ID=费用" 或 "平台标识符=费用"。
+     */
+    private String imageCosts;
+}
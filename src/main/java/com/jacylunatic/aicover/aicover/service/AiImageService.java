@@ -1,17 +1,38 @@
 package com.jacylunatic.aicover.aicover.service;
 
+import com.jacylunatic.aicover.aicover.model.ModelInfo;
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
 import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.candidates.CandidateRegistry;
 import com.jacylunatic.aicover.aicover.service.generators.ModelScopeImageGenerator;
 import com.jacylunatic.aicover.aicover.service.generators.SiliconFlowImageGenerator;
 import com.jacylunatic.aicover.aicover.service.generators.TongyiImageGenerator;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import com.jacylunatic.aicover.aicover.service.lifecycle.HttpClientProvider;
+import com.jacylunatic.aicover.aicover.service.resilience.ApiKeyPool;
+import com.jacylunatic.aicover.aicover.service.resilience.CircuitBreakerRegistry;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import com.jacylunatic.aicover.aicover.service.resilience.DeadlineExceededException;
+import com.jacylunatic.aicover.aicover.service.resilience.RetryPolicy;
+import com.jacylunatic.aicover.aicover.service.similarity.SimilarPromptCache;
+import com.jacylunatic.aicover.aicover.service.usage.UsageLedger;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import run.halo.app.plugin.ReactiveSettingFetcher;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -21,10 +42,33 @@ public class AiImageService {
     // 依赖注入 ReactiveSettingFetcher 以传递给子服务
     private final ReactiveSettingFetcher settingFetcher;
     private final AlistService alistService;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final RetryPolicy retryPolicy;
+    private final HttpClientProvider httpClientProvider;
+    private final GenerationLifecycleManager lifecycleManager;
+    private final PluginMetrics metrics;
+    private final CandidateRegistry candidateRegistry;
+    private final UsageLedger usageLedger;
+    private final LocalImageCache localImageCache;
+    private final ApiKeyPool apiKeyPool;
+    private final SimilarPromptCache similarPromptCache;
+    private final AlistWriteBehind alistWriteBehind;
+
+    private static final int MAX_CANDIDATE_MODELS = 4;
+    private static final int MAX_CANDIDATES_PER_MODEL = 4;
+    private static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 300;
+    private static final int MIN_REQUEST_TIMEOUT_SECONDS = 10;
 
     // 这个列表将在 init() 方法中被手动填充
     private List<ImageGenerator> imageGenerators;
 
+    /**
+     * 进行中的交互式（用户在弹窗中发起的）生成数，以及交互式生成开始的信号。
+     * 后台的预生成据此让路：有交互请求时不启动，交互请求开始时立即取消。
+     */
+    private final AtomicInteger interactiveInFlight = new AtomicInteger();
+    private final Sinks.Many<Boolean> interactiveStarts = Sinks.many().multicast().directBestEffort();
+
     /**
      * --- 最终修正：使用 @PostConstruct 手动创建和注册服务 ---
      * <p>
@@ -34,9 +78,10 @@ public class AiImageService {
     @PostConstruct
     public void init() {
         this.imageGenerators = List.of(
-            new TongyiImageGenerator(settingFetcher),
-            new SiliconFlowImageGenerator(settingFetcher),
-            new ModelScopeImageGenerator(settingFetcher)
+            new TongyiImageGenerator(settingFetcher, retryPolicy, httpClientProvider.webClient(), apiKeyPool),
+            new SiliconFlowImageGenerator(settingFetcher, retryPolicy, httpClientProvider.webClient(), apiKeyPool,
+                localImageCache),
+            new ModelScopeImageGenerator(settingFetcher, retryPolicy, httpClientProvider.webClient(), apiKeyPool)
         );
 
         log.info("============================================================");
@@ -45,62 +90,343 @@ public class AiImageService {
         if (imageGenerators.isEmpty()) {
             log.error("[Debug AiImageService] CRITICAL: No ImageGenerator implementations were created!");
         } else {
-            imageGenerators.forEach(generator ->
-                log.info("[Debug AiImageService]   - Registered generator for platform: '{}'", generator.getPlatformIdentifier())
-            );
+            imageGenerators.forEach(generator -> {
+                log.info("[Debug AiImageService]   - Registered generator for platform: '{}'", generator.getPlatformIdentifier());
+                // 预先创建熔断器，使状态接口从一开始就能列出所有平台
+                circuitBreakerRegistry.get(generator.getPlatformIdentifier());
+            });
         }
         log.info("============================================================");
     }
 
+    /**
+     * 替换生成器列表，仅供测试使用桩实现。
+     */
+    void setImageGenerators(List<ImageGenerator> imageGenerators) {
+        this.imageGenerators = imageGenerators;
+    }
+
+    /**
+     * 解析设置中的模型列表，返回包含平台信息的数据。
+     */
+    public Mono<List<ModelInfo>> getModels() {
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .map(setting -> {
+                String modelsString = setting.getModels();
+                if (modelsString == null || modelsString.isBlank()) {
+                    // 提供一个默认值，以防用户未配置
+                    return List.of(new ModelInfo("通义万相", "tongyi:wanx-v1"));
+                }
+                // 解析 "平台标识符,显示名称,模型ID" 格式
+                return Arrays.stream(modelsString.split("\\r?\\n"))
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && line.contains(","))
+                    .map(line -> {
+                        String[] parts = line.split(",", 3);
+                        if (parts.length == 3) {
+                            String platform = parts[0].trim();
+                            String displayName = parts[1].trim();
+                            String modelId = parts[2].trim();
+                            // 将 platform 和 modelId 组合成新的 value
+                            return new ModelInfo(displayName, platform + ":" + modelId);
+                        }
+                        return null;
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            });
+    }
+
+    /**
+     * 已注册的全部生成器，供预热、诊断等后台任务使用。
+     */
+    public List<ImageGenerator> getImageGenerators() {
+        return imageGenerators;
+    }
+
+    /**
+     * 用户在弹窗中发起的交互式生成，优先级高于一切后台生成。开启相似提示词推荐时，先推送相近的历史结果。
+     */
     public Flux<ProgressUpdate> generateImage(String prompt, String modelWithPlatform, String size, boolean uploadToAlist) {
+        return asInteractive(similarPromptCache.around(modelWithPlatform, size, prompt,
+            withDeadline(generate(prompt, modelWithPlatform, size, uploadToAlist, true))));
+    }
+
+    /**
+     * 在多个模型上并行生成候选图，每个模型生成 n 张。
+     * <p>
+     * 每张候选图完成后立即以一条带 candidateId 的进度发出，不等待最慢的模型；
+     * 某个模型失败只影响它自己的候选。候选图不上传存储，选中后再通过 {@link #useCandidate} 上传。
+     */
+    public Flux<ProgressUpdate> generateCandidates(String prompt, List<String> modelsWithPlatform, int n, String size) {
+        List<String> models = modelsWithPlatform.stream()
+            .map(String::trim)
+            .filter(id -> !id.isEmpty())
+            .distinct()
+            .limit(MAX_CANDIDATE_MODELS)
+            .toList();
+        if (models.isEmpty()) {
+            return Flux.just(ProgressUpdate.error("请至少选择一个模型。"));
+        }
+        int perModel = Math.max(1, Math.min(n, MAX_CANDIDATES_PER_MODEL));
+        Flux<ProgressUpdate> merged = Flux.merge(models.stream()
+                .map(modelWithPlatform -> candidatesFor(prompt, modelWithPlatform, perModel, size))
+                .toList())
+            .concatWith(Mono.fromSupplier(() -> {
+                ProgressUpdate done = new ProgressUpdate("全部候选图生成结束。");
+                done.setIsFinal(true);
+                return done;
+            }));
+        return asInteractive(withDeadline(merged));
+    }
+
+    /**
+     * 选中一张候选图：按需上传到 Alist，其余候选图不会被上传。
+     */
+    public Flux<ProgressUpdate> useCandidate(String candidateId, boolean uploadToAlist) {
+        return candidateRegistry.take(candidateId)
+            .map(candidate -> uploadToAlist
+                ? uploadGenerated(candidate.imageUrl())
+                : withDeadline(keepGenerated(candidate.imageUrl(), "已选用该候选图。")))
+            .orElseGet(() -> Flux.just(ProgressUpdate.error("候选图已失效，请重新生成。")));
+    }
+
+    private Flux<ProgressUpdate> candidatesFor(String prompt, String modelWithPlatform, int n, String size) {
         String[] parts = modelWithPlatform.split(":", 2);
-        if (parts.length != 2) {
-            return Flux.just(ProgressUpdate.error("无效的模型ID格式。"));
+        ImageGenerator generator = parts.length == 2 ? findGenerator(parts[0]) : null;
+        Flux<ProgressUpdate> updates;
+        if (generator == null) {
+            updates = Flux.just(ProgressUpdate.error("无效或不受支持的模型: " + modelWithPlatform));
+        } else {
+            String platform = parts[0];
+            String model = parts[1];
+            Flux<ProgressUpdate> stream = circuitBreakerRegistry.decorate(platform,
+                () -> cancelRemoteTaskOnCancel(generator, generator.generateImages(prompt, model, size, n)));
+            updates = usageLedger.meter(platform, model, size, lifecycleManager.track(platform, stream))
+                // 单个模型的异常不能中断其他模型的候选
+                .onErrorResume(error -> Flux.just(ProgressUpdate.error(error.getMessage())));
         }
-        String platform = parts[0];
-        String model = parts[1];
+        return updates.map(update -> {
+            update.setModel(modelWithPlatform);
+            if (update.getFinalImageUrl() != null) {
+                CandidateRegistry.Candidate candidate =
+                    candidateRegistry.register(modelWithPlatform, update.getFinalImageUrl());
+                update.setCandidateId(candidate.id());
+                update.setIsFinal(false);
+            }
+            return update;
+        });
+    }
+
+    private Flux<ProgressUpdate> asInteractive(Flux<ProgressUpdate> generation) {
+        return Flux.defer(() -> {
+            interactiveInFlight.incrementAndGet();
+            interactiveStarts.emitNext(true, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+            return generation.doFinally(signal -> interactiveInFlight.decrementAndGet());
+        });
+    }
 
-        ImageGenerator generator = imageGenerators.stream()
+    private ImageGenerator findGenerator(String platform) {
+        return imageGenerators.stream()
             .filter(gen -> gen.getPlatformIdentifier().equalsIgnoreCase(platform))
             .findFirst()
             .orElse(null);
+    }
 
+    /**
+     * 后台生成（预生成等），不上传存储，也不计入交互式生成。
+     */
+    public Flux<ProgressUpdate> generateInBackground(String prompt, String modelWithPlatform, String size) {
+        return withDeadline(generate(prompt, modelWithPlatform, size, false, false));
+    }
+
+    public boolean hasInteractiveGenerations() {
+        return interactiveInFlight.get() > 0;
+    }
+
+    /**
+     * 每当一个交互式生成开始时发出一个信号。
+     */
+    public Flux<Boolean> interactiveGenerationStarts() {
+        return interactiveStarts.asFlux();
+    }
+
+    /**
+     * 将一张已经生成好的图片（平台临时链接）上传到 Alist，用于用户选中预生成或候选图片时。
+     */
+    public Flux<ProgressUpdate> uploadGenerated(String tempImageUrl) {
+        return withDeadline(withAlistUpload(Flux.just(ProgressUpdate.intermediateSuccess(tempImageUrl, "AI 绘图成功！"))));
+    }
+
+    /**
+     * 为一次请求设定截止时间（取设置中的总时限，入口已经设定了更早的截止时间时沿用入口的），
+     * 生成、本地缓存、上传各阶段都从剩余时间推算自己的超时。到期时取消仍在进行的工作，并以一条错误进度结束。
+     */
+    private Flux<ProgressUpdate> withDeadline(Flux<ProgressUpdate> work) {
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .onErrorReturn(new PluginMasterSetting())
+            .map(setting -> Duration.ofSeconds(setting.getRequestTimeoutSeconds() == null
+                ? DEFAULT_REQUEST_TIMEOUT_SECONDS
+                : Math.max(MIN_REQUEST_TIMEOUT_SECONDS, setting.getRequestTimeoutSeconds())))
+            .flatMapMany(timeout -> Deadline.apply(work, timeout))
+            .onErrorResume(DeadlineExceededException.class, error -> {
+                log.warn("[Debug AiImageService] {}", error.getMessage());
+                metrics.increment("aicover.deadline.exceeded");
+                return Flux.just(ProgressUpdate.error(error.getMessage()));
+            });
+    }
+
+    /**
+     * 不上传到 Alist 时，把平台的临时链接换成本地缓存的稳定地址。缓存未开启或失败时使用原始链接。
+     */
+    public Flux<ProgressUpdate> keepGenerated(String tempImageUrl, String message) {
+        return localImageCache.store(tempImageUrl)
+            .map(localUrl -> ProgressUpdate.finalSuccess(localUrl, message))
+            .onErrorResume(error -> {
+                log.warn("[Debug AiImageService] Failed to cache image locally, using original URL: {}",
+                    error.getMessage());
+                return Mono.just(ProgressUpdate.finalSuccess(tempImageUrl, message + "（本地缓存失败，使用原始链接，该链接可能在数小时后失效）"));
+            })
+            .defaultIfEmpty(ProgressUpdate.finalSuccess(tempImageUrl, message))
+            .flux();
+    }
+
+    /**
+     * @param cacheLocally 不上传到 Alist 时是否缓存到本地；后台预生成的结果在被选用前只保留临时链接
+     */
+    private Flux<ProgressUpdate> generate(String prompt, String modelWithPlatform, String size, boolean uploadToAlist,
+        boolean cacheLocally) {
+        String[] parts = modelWithPlatform.split(":", 2);
+        if (parts.length != 2) {
+            return Flux.just(ProgressUpdate.error("无效的模型ID格式。"));
+        }
+        String platform = parts[0];
+        String model = parts[1];
+
+        ImageGenerator generator = findGenerator(platform);
         if (generator == null) {
             return Flux.just(ProgressUpdate.error("找不到支持平台 '" + platform + "' 的服务。"));
         }
         
-        Flux<ProgressUpdate> aiGenerationStream = generator.generateImage(prompt, model, size).cache(1);
+        // 熔断器在 OPEN 状态下会直接返回错误进度，避免请求陷入漫长的提交-超时循环
+        Flux<ProgressUpdate> aiGenerationStream = circuitBreakerRegistry
+            .decorate(platform, () -> cancelRemoteTaskOnCancel(generator,
+                generator.generateImage(prompt, model, size)));
 
+        Flux<ProgressUpdate> pipeline;
         if (!uploadToAlist) {
-            return aiGenerationStream.flatMap(update -> {
+            pipeline = aiGenerationStream.concatMap(update -> {
                  if (update.getFinalImageUrl() != null && !Boolean.TRUE.equals(update.getIsFinal())) {
-                    return Flux.just(ProgressUpdate.finalSuccess(update.getFinalImageUrl(), update.getMessage()));
+                    return cacheLocally
+                        ? keepGenerated(update.getFinalImageUrl(), update.getMessage())
+                        : Flux.just(ProgressUpdate.finalSuccess(update.getFinalImageUrl(), update.getMessage()));
                  }
                  return Flux.just(update);
             });
+        } else {
+            pipeline = withAlistUpload(aiGenerationStream);
         }
+        // 纳入生命周期管理：插件停止时拒绝新任务，并在排空超时后取消仍在轮询的任务；
+        // 计量在最外层，超出配额时不会提交到平台
+        return usageLedger.meter(platform, model, size, lifecycleManager.track(platform, pipeline));
+    }
 
-        Flux<ProgressUpdate> alistUploadStream = aiGenerationStream
-            .last()
-            .flatMapMany(lastUpdate -> {
-                String tempUrl = lastUpdate.getFinalImageUrl();
+    /**
+     * 进度流被取消（用户关闭弹窗、SSE 断开、插件停止）或超过截止时间时，通知平台取消已提交但尚未结束的远程任务，
+     * 避免继续占用额度和并发任务数。轮询本身随订阅取消而停止。
+     */
+    private Flux<ProgressUpdate> cancelRemoteTaskOnCancel(ImageGenerator generator,
+        Flux<ProgressUpdate> generation) {
+        return Flux.defer(() -> {
+            AtomicReference<String> pendingTaskId = new AtomicReference<>();
+            return generation
+                .doOnNext(update -> {
+                    if (update.getTaskId() != null) {
+                        pendingTaskId.set(update.getTaskId());
+                    } else if (update.getFinalImageUrl() != null || Boolean.TRUE.equals(update.getIsError())) {
+                        // 远程任务已经有了结果，无需再取消
+                        pendingTaskId.set(null);
+                    }
+                })
+                .doOnCancel(() -> cancelPending(generator, pendingTaskId))
+                .doOnError(DeadlineExceededException.class, error -> cancelPending(generator, pendingTaskId));
+        });
+    }
+
+    private void cancelPending(ImageGenerator generator, AtomicReference<String> pendingTaskId) {
+        String taskId = pendingTaskId.getAndSet(null);
+        metrics.increment("aicover.generation.canceled",
+            "platform", generator.getPlatformIdentifier(),
+            "remote", String.valueOf(taskId != null && generator.supportsRemoteCancel()));
+        if (taskId != null) {
+            cancelRemoteTask(generator, taskId);
+        }
+    }
+
+    private void cancelRemoteTask(ImageGenerator generator, String taskId) {
+        if (!generator.supportsRemoteCancel()) {
+            log.info("[Debug AiImageService] Stopped polling {} task {}, platform has no cancel API.",
+                generator.getPlatformIdentifier(), taskId);
+            return;
+        }
+        generator.cancelTask(taskId).subscribe(
+            null,
+            error -> log.warn("[Debug AiImageService] Failed to cancel {} task {}: {}",
+                generator.getPlatformIdentifier(), taskId, error.getMessage()),
+            () -> log.info("[Debug AiImageService] Cancelled {} task {}.",
+                generator.getPlatformIdentifier(), taskId));
+    }
+
+    /**
+     * AI 绘图完成后接着上传到 Alist。
+     * <p>
+     * 生成流只订阅一次（不再使用 cache），这样客户端断开或插件停止时，取消信号能够一路传到平台轮询。
+     */
+    private Flux<ProgressUpdate> withAlistUpload(Flux<ProgressUpdate> aiGenerationStream) {
+        return Flux.defer(() -> {
+            AtomicReference<ProgressUpdate> lastUpdate = new AtomicReference<>();
+
+            Flux<ProgressUpdate> alistUploadStream = Flux.defer(() -> {
+                String tempUrl = lastUpdate.get() == null ? null : lastUpdate.get().getFinalImageUrl();
                 if (tempUrl == null) {
                     return Flux.just(ProgressUpdate.error("AI绘图失败，无法继续上传到Alist。"));
                 }
-                return alistService.uploadImageFromUrl(tempUrl)
-                    .onErrorResume(error -> {
-                        String warningMessage = "图片已生成，但上传到 Alist 失败: " + error.getMessage();
-                        return Flux.just(
-                            ProgressUpdate.error(warningMessage),
-                            ProgressUpdate.finalSuccess(tempUrl, "图片已生成，但上传到 Alist 失败，已回退并使用原始链接。")
-                        );
-                    });
+                return alistWriteBehind.isEnabled()
+                    .flatMapMany(writeBehind -> writeBehind ? uploadInBackground(tempUrl) : uploadNow(tempUrl));
             });
 
-        return Flux.concat(
-            aiGenerationStream.filter(update -> update.getFinalImageUrl() == null),
-            alistUploadStream
-        );
+            return Flux.concat(
+                aiGenerationStream
+                    .doOnNext(lastUpdate::set)
+                    .filter(update -> update.getFinalImageUrl() == null),
+                alistUploadStream
+            );
+        });
+    }
+
+    private Flux<ProgressUpdate> uploadNow(String tempUrl) {
+        return alistService.uploadImageFromUrl(tempUrl)
+            .onErrorResume(error -> {
+                String warningMessage = "图片已生成，但上传到 Alist 失败: " + error.getMessage();
+                return Flux.just(
+                    ProgressUpdate.error(warningMessage),
+                    ProgressUpdate.finalSuccess(tempUrl, "图片已生成，但上传到 Alist 失败，已回退并使用原始链接。")
+                );
+            });
     }
-}
 
+    /**
+     * 后台上传：保存到本地后立即结束，本地保存失败时改为当场上传。
+     */
+    private Flux<ProgressUpdate> uploadInBackground(String tempUrl) {
+        return alistWriteBehind.accept(tempUrl)
+            .flux()
+            .onErrorResume(error -> {
+                log.warn("[Debug AiImageService] Failed to spool image for background upload, uploading now: {}",
+                    error.getMessage());
+                return uploadNow(tempUrl);
+            });
+    }
+}
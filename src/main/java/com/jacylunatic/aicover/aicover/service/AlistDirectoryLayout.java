@@ -0,0 +1,88 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * 上传目录下的分目录布局。
+ * <p>
+ * 每次上传后都要以 refresh 方式重新列出目标目录，所有文件放在同一个目录时，刷新耗时随历史文件数线性增长。
+ * 按月份或内容摘要前缀分目录后，每次只刷新一个小目录。
+ */
+public enum AlistDirectoryLayout {
+    /**
+     * 全部放在上传目录下（旧版本的行为）。
+     */
+    FLAT,
+
+    /**
+     * 按上传月份分目录，例如 /covers/2024/05。
+     */
+    DATE,
+
+    /**
+     * 按文件名（内容摘要）的前两位十六进制分为 256 个目录，例如 /covers/3a。
+     */
+    HASH;
+
+    /**
+     * 解析设置中的值，留空或无法识别时按 FLAT 处理。
+     */
+    public static AlistDirectoryLayout of(String value) {
+        if (value == null || value.isBlank()) {
+            return FLAT;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return FLAT;
+        }
+    }
+
+    /**
+     * 文件应当存放的目录。
+     *
+     * @param base     上传目录
+     * @param fileName 文件名
+     * @param date     上传日期，只有 DATE 布局使用
+     */
+    public String directory(String base, String fileName, LocalDate date) {
+        String root = base.endsWith("/") && base.length() > 1 ? base.substring(0, base.length() - 1) : base;
+        String prefix = "/".equals(root) ? "" : root;
+        return switch (this) {
+            case FLAT -> root;
+            case DATE -> prefix + String.format("/%04d/%02d", date.getYear(), date.getMonthValue());
+            case HASH -> prefix + "/" + bucket(fileName);
+        };
+    }
+
+    public String path(String base, String fileName, LocalDate date) {
+        String directory = directory(base, fileName, date);
+        return (directory.endsWith("/") ? directory : directory + "/") + fileName;
+    }
+
+    /**
+     * 内容寻址的文件名直接取前两位；其他文件名（例如离线下载按链接命名的文件）先做一次摘要，保证分布均匀。
+     */
+    static String bucket(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        if (lower.length() >= 2 && isHex(lower.charAt(0)) && isHex(lower.charAt(1))
+            && lower.indexOf('.') >= 64) {
+            return lower.substring(0, 2);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(fileName.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+    }
+}
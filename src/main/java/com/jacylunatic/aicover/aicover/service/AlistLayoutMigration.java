@@ -0,0 +1,262 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.LayoutMigrationReport;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.core.extension.content.Post;
+import run.halo.app.core.extension.content.SinglePage;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 把平铺在上传目录下的已有文件按当前的分目录布局分批移动到子目录，并改写引用了旧地址的文章封面。
+ * <p>
+ * 先完整列出上传目录再开始移动，避免边移动边分页导致漏项；同一目标目录的文件每批调用一次 /api/fs/move，
+ * 移动完成后每个目标目录只刷新一次，再逐个取得新路径的公开下载链接（Alist 生成的 raw_url）。
+ * 一批移动失败不影响其他批次，失败的文件留在原处，可以再次运行迁移。
+ * <p>
+ * 封面按文件名匹配：插件生成的文件名（内容摘要、UUID）无论通过哪个域名或代理地址引用都会改写；
+ * 其他文件名只改写 /d/ 或 /p/ 下的旧路径。被封面以无法改写的地址引用的文件（包括独立页面的封面）不移动，并在报告中列出。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AlistLayoutMigration {
+
+    private static final int LIST_PAGE_SIZE = 500;
+    private static final int MOVE_BATCH_SIZE = 50;
+    private static final int UPDATE_CONCURRENCY = 4;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final AlistService alistService;
+    private final ReactiveExtensionClient client;
+    private final PostCoverRewriter coverRewriter;
+    private final PluginMetrics metrics;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    record MovedFile(String oldPath, String newUrl) {}
+
+    /**
+     * 执行迁移。dryRun 为 true 时只统计需要移动的文件，不做任何修改。
+     */
+    public Mono<LayoutMigrationReport> migrate(boolean dryRun) {
+        return Mono.defer(() -> {
+            if (!running.compareAndSet(false, true)) {
+                return Mono.error(new IllegalStateException("已有迁移任务正在进行。"));
+            }
+            return alistService.prepareAlistContext()
+                .flatMap(context -> migrate((AlistSetting) context.get("setting"), (String) context.get("token"),
+                    dryRun))
+                .doFinally(signal -> running.set(false));
+        });
+    }
+
+    private Mono<LayoutMigrationReport> migrate(AlistSetting setting, String token, boolean dryRun) {
+        AlistDirectoryLayout layout = AlistDirectoryLayout.of(setting.getAlistDirectoryLayout());
+        if (layout == AlistDirectoryLayout.FLAT) {
+            return Mono.error(new IllegalStateException("当前上传目录布局为平铺，没有需要迁移的文件。"));
+        }
+        String base = AlistDirectoryLayout.FLAT.directory(setting.getAlistUploadPath(), "", LocalDate.now());
+        LayoutMigrationReport report = new LayoutMigrationReport();
+        report.setLayout(layout.name().toLowerCase());
+        report.setDryRun(dryRun);
+
+        return Mono.zip(listFiles(base, token, setting), unrewritableNames(base))
+            .flatMap(tuple -> {
+                List<AlistService.AlistEntry> files = tuple.getT1();
+                Set<String> unrewritable = tuple.getT2();
+                report.setScanned(files.size());
+                // 目标目录 -> 文件名，按年月分目录时用文件的修改时间近似上传时间
+                Map<String, List<String>> plan = new LinkedHashMap<>();
+                LocalDate today = LocalDate.now();
+                for (AlistService.AlistEntry file : files) {
+                    LocalDate date = file.modified() != null ? file.modified() : today;
+                    String target = layout.directory(base, file.name(), date);
+                    if (target.equals(base)) {
+                        continue;
+                    }
+                    if (unrewritable.contains(file.name())) {
+                        report.setSkipped(report.getSkipped() + 1);
+                        recordFailure(report, 0, child(base, file.name()) + " 被封面以无法改写的地址引用，未移动。");
+                        continue;
+                    }
+                    plan.computeIfAbsent(target, key -> new ArrayList<>()).add(file.name());
+                }
+                report.setPlanned(plan.values().stream().mapToInt(List::size).sum());
+                log.info("[LayoutMigration] {} of {} file(s) in {} to move into {} directories{}.",
+                    report.getPlanned(), files.size(), base, plan.size(), dryRun ? " (dry run)" : "");
+                if (dryRun || plan.isEmpty()) {
+                    return Mono.just(report);
+                }
+                Map<String, MovedFile> moved = new ConcurrentHashMap<>();
+                return Flux.fromIterable(plan.entrySet())
+                    .concatMap(entry -> moveDirectory(base, entry.getKey(), entry.getValue(), token, setting, report,
+                        moved))
+                    .then(Mono.defer(() -> rewriteCovers(moved, report)))
+                    .thenReturn(report);
+            })
+            .doOnSuccess(result -> log.info("[LayoutMigration] Finished: moved={}, failed={}, postsUpdated={}.",
+                result.getMoved(), result.getFailed(), result.getPostsUpdated()));
+    }
+
+    /**
+     * 被封面引用、但移动后无法改写的文件名：文章封面中 newCoverFor 不能识别的引用，以及独立页面的封面。
+     */
+    private Mono<Set<String>> unrewritableNames(String base) {
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        return client.listAll(Post.class, new ListOptions(), Sort.by("metadata.name"))
+            .doOnNext(post -> {
+                String cover = post.getSpec().getCover();
+                String name = AlistOrphanCollector.fileName(cover);
+                if (name != null && newCoverFor(cover, Map.of(name, new MovedFile(child(base, name), ""))) == null) {
+                    names.add(name);
+                }
+            })
+            .thenMany(client.listAll(SinglePage.class, new ListOptions(), Sort.by("metadata.name")))
+            .doOnNext(page -> {
+                String name = AlistOrphanCollector.fileName(page.getSpec().getCover());
+                if (name != null) {
+                    names.add(name);
+                }
+            })
+            .then(Mono.fromSupplier(() -> names));
+    }
+
+    /**
+     * 列出上传目录下的全部文件（不含子目录和自检用的测试对象）。只有第一页要求 Alist 刷新。
+     */
+    private Mono<List<AlistService.AlistEntry>> listFiles(String base, String token, AlistSetting setting) {
+        return alistService.listPage(base, 1, LIST_PAGE_SIZE, true, token, setting)
+            .map(page -> Map.entry(1, page))
+            .expand(current -> (long) current.getKey() * LIST_PAGE_SIZE < current.getValue().total()
+                ? alistService.listPage(base, current.getKey() + 1, LIST_PAGE_SIZE, false, token, setting)
+                    .filter(page -> !page.entries().isEmpty())
+                    .map(page -> Map.entry(current.getKey() + 1, page))
+                : Mono.empty())
+            .flatMapIterable(current -> current.getValue().entries())
+            .filter(entry -> !entry.directory() && !AlistService.DIAGNOSTIC_OBJECT.equals(entry.name()))
+            .collectList();
+    }
+
+    private Mono<Void> moveDirectory(String base, String target, List<String> names, String token,
+        AlistSetting setting, LayoutMigrationReport report, Map<String, MovedFile> moved) {
+        List<String> movedNames = new ArrayList<>();
+        return alistService.makeDirectory(target, token, setting)
+            .thenMany(Flux.fromIterable(names).buffer(MOVE_BATCH_SIZE))
+            .concatMap(batch -> alistService.moveObjects(base, target, batch, token, setting)
+                .then(Mono.fromRunnable(() -> {
+                    movedNames.addAll(batch);
+                    synchronized (report) {
+                        report.setMoved(report.getMoved() + batch.size());
+                    }
+                    metrics.add("aicover.alist.migrated_files", batch.size());
+                }))
+                .onErrorResume(error -> {
+                    recordFailure(report, batch.size(), "移动到 " + target + " 失败: " + error.getMessage());
+                    return Mono.empty();
+                }))
+            .then(Mono.defer(() -> movedNames.isEmpty() ? Mono.empty()
+                : alistService.refresh(target, token, setting)
+                    .onErrorResume(error -> {
+                        log.warn("[LayoutMigration] Refreshing {} failed, resolving files by polling: {}", target,
+                            error.getMessage());
+                        return Mono.empty();
+                    })
+                    .thenMany(Flux.fromIterable(movedNames))
+                    .flatMap(name -> alistService.publicUrl(child(target, name), token, setting)
+                        .doOnNext(url -> moved.put(name, new MovedFile(child(base, name), url)))
+                        .onErrorResume(error -> {
+                            recordFailure(report, 0, "获取 " + child(target, name) + " 的新地址失败，文章封面未改写: "
+                                + error.getMessage());
+                            return Mono.empty();
+                        }), UPDATE_CONCURRENCY)
+                    .then()))
+            .onErrorResume(error -> {
+                recordFailure(report, names.size() - movedNames.size(), "创建目录 " + target + " 失败: "
+                    + error.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * 把引用了已移动文件的文章封面改写为新地址，占位信息注解一并更新。
+     */
+    private Mono<Void> rewriteCovers(Map<String, MovedFile> moved, LayoutMigrationReport report) {
+        if (moved.isEmpty()) {
+            return Mono.empty();
+        }
+        return client.listAll(Post.class, new ListOptions(), Sort.by("metadata.name"))
+            .filter(post -> newCoverFor(post.getSpec().getCover(), moved) != null)
+            .flatMap(post -> coverRewriter.rewrite(post.getMetadata().getName(), cover -> newCoverFor(cover, moved))
+                .doOnNext(updated -> {
+                    synchronized (report) {
+                        report.setPostsUpdated(report.getPostsUpdated() + 1);
+                    }
+                })
+                .onErrorResume(error -> {
+                    recordFailure(report, 0, "改写文章 " + post.getMetadata().getName() + " 的封面失败: "
+                        + error.getMessage());
+                    return Mono.empty();
+                }), UPDATE_CONCURRENCY)
+            .then();
+    }
+
+    static String newCoverFor(String cover, Map<String, MovedFile> moved) {
+        if (!StringUtils.hasText(cover)) {
+            return null;
+        }
+        String rawPath;
+        try {
+            rawPath = URI.create(cover.trim()).getRawPath();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (rawPath == null) {
+            return null;
+        }
+        String name = UriUtils.decode(rawPath.substring(rawPath.lastIndexOf('/') + 1), StandardCharsets.UTF_8);
+        MovedFile file = moved.get(name);
+        if (file == null) {
+            return null;
+        }
+        // 插件生成的文件名唯一对应一张图片，raw_url、代理地址、其他域名下的引用都可以放心改写
+        if (AlistOrphanCollector.isGeneratedName(name)) {
+            return file.newUrl();
+        }
+        String encoded = UriUtils.encodePath(file.oldPath(), StandardCharsets.UTF_8);
+        return rawPath.endsWith("/d" + encoded) || rawPath.endsWith("/p" + encoded) ? file.newUrl() : null;
+    }
+
+    private static String child(String directory, String name) {
+        return (directory.endsWith("/") ? directory : directory + "/") + name;
+    }
+
+    private static void recordFailure(LayoutMigrationReport report, int files, String message) {
+        log.warn("[LayoutMigration] {}", message);
+        synchronized (report) {
+            report.setFailed(report.getFailed() + files);
+            if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+                report.getErrors().add(message);
+            }
+        }
+    }
+}
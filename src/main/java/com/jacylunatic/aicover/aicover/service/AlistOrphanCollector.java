@@ -0,0 +1,341 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.CoverAnnotations;
+import com.jacylunatic.aicover.aicover.model.OrphanGcReport;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.core.extension.content.Post;
+import run.halo.app.core.extension.content.SinglePage;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * 清理上传目录中没有被任何文章引用的图片。
+ * <p>
+ * 先分页读取全部文章和独立页面，收集封面（以及占位信息注解）引用的文件名；再分页列出上传目录及按布局产生的分目录，
+ * 未被引用、且修改时间早于宽限期的图片按目录分批调用 /api/fs/remove 删除。
+ * 只删除插件自己生成的文件名（内容摘要或旧版本的 UUID 加图片扩展名），上传目录与其他用途共用、
+ * 或被配置为 Alist 根目录时，其他文件不会被误删。
+ * 按文件名而不是完整地址匹配：同名文件在任何目录下被引用都会保留，迁移布局、换域名后的旧地址也不会误删。
+ * 文章正文中的图片链接不在检查范围内，通过“复制链接”插入正文的图片不受保护。
+ * 列表和删除之间有固定间隔，单次删除数有上限，避免短时间内向 Alist 和下游存储发出大量请求。
+ * 读取文章失败时整次清理中止，绝不在引用集合不完整的情况下删除。
+ */
+@Slf4j
+@Component
+public class AlistOrphanCollector {
+
+    private static final Duration FIRST_RUN_DELAY = Duration.ofMinutes(30);
+    private static final Duration RUN_INTERVAL = Duration.ofHours(24);
+    private static final Duration DEFAULT_PACING = Duration.ofSeconds(1);
+    private static final int POST_PAGE_SIZE = 200;
+    private static final int LIST_PAGE_SIZE = 500;
+    private static final int REMOVE_BATCH_SIZE = 20;
+    private static final int DEFAULT_GRACE_DAYS = 7;
+    private static final int DEFAULT_MAX_DELETES = 500;
+    private static final int MAX_REPORTED = 20;
+    // 只清理插件生成的图片：SHA-256 内容摘要或旧版本使用的 UUID 作为文件名；只进入按年月或按摘要前缀分目录时产生的子目录
+    private static final Pattern IMAGE_NAME = Pattern.compile(
+        "(?i)([0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})\\.(png|jpe?g|webp)");
+    private static final Pattern LAYOUT_DIRECTORY = Pattern.compile("\\d{4}|\\d{2}|[0-9a-f]{2}");
+    private static final int MAX_DEPTH = 2;
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final AlistService alistService;
+    private final ReactiveExtensionClient client;
+    private final GenerationLifecycleManager lifecycleManager;
+    private final PluginMetrics metrics;
+    private final Clock clock;
+    private final Duration pacing;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    record StoredFile(String directory, AlistService.AlistEntry entry) {}
+
+    public AlistOrphanCollector(ReactiveSettingFetcher settingFetcher, AlistService alistService,
+        ReactiveExtensionClient client, GenerationLifecycleManager lifecycleManager, PluginMetrics metrics) {
+        this(settingFetcher, alistService, client, lifecycleManager, metrics, Clock.systemDefaultZone(),
+            DEFAULT_PACING);
+    }
+
+    AlistOrphanCollector(ReactiveSettingFetcher settingFetcher, AlistService alistService,
+        ReactiveExtensionClient client, GenerationLifecycleManager lifecycleManager, PluginMetrics metrics,
+        Clock clock, Duration pacing) {
+        this.settingFetcher = settingFetcher;
+        this.alistService = alistService;
+        this.client = client;
+        this.lifecycleManager = lifecycleManager;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.pacing = pacing;
+    }
+
+    /**
+     * 开启定时清理时，启动 30 分钟后第一次运行，之后每天一次。
+     */
+    @PostConstruct
+    public void init() {
+        Disposable schedule = Flux.interval(FIRST_RUN_DELAY, RUN_INTERVAL)
+            .onBackpressureDrop()
+            .concatMap(tick -> settingFetcher.fetch(AlistSetting.GROUP, AlistSetting.class)
+                .filter(setting -> Boolean.TRUE.equals(setting.getAlistGcEnabled())
+                    && StringUtils.hasText(setting.getAlistUrl()))
+                .flatMap(setting -> collect(false))
+                .onErrorResume(error -> {
+                    log.warn("[OrphanGC] Scheduled run failed: {}", error.getMessage());
+                    return Mono.empty();
+                }), 1)
+            .subscribe();
+        lifecycleManager.registerResource("alist-orphan-gc", schedule);
+    }
+
+    /**
+     * 执行一次清理。dryRun 为 true 时只统计，不删除。
+     */
+    public Mono<OrphanGcReport> collect(boolean dryRun) {
+        return Mono.defer(() -> {
+            if (!running.compareAndSet(false, true)) {
+                return Mono.error(new IllegalStateException("已有清理任务正在进行。"));
+            }
+            return alistService.prepareAlistContext()
+                .flatMap(context -> collect((AlistSetting) context.get("setting"), (String) context.get("token"),
+                    dryRun))
+                .doFinally(signal -> running.set(false));
+        });
+    }
+
+    private Mono<OrphanGcReport> collect(AlistSetting setting, String token, boolean dryRun) {
+        int graceDays = positiveOr(setting.getAlistGcGraceDays(), DEFAULT_GRACE_DAYS);
+        int maxDeletes = positiveOr(setting.getAlistGcMaxDeletes(), DEFAULT_MAX_DELETES);
+        LocalDate today = LocalDate.now(clock);
+        LocalDate cutoff = today.minusDays(graceDays);
+        String base = AlistDirectoryLayout.FLAT.directory(setting.getAlistUploadPath(), "", today);
+        OrphanGcReport report = new OrphanGcReport();
+        report.setDryRun(dryRun);
+        report.setGraceDays(graceDays);
+
+        return referencedNames()
+            .flatMap(referenced -> {
+                report.setReferenced(referenced.size());
+                return listTree(base, 0, token, setting, report)
+                    .filter(file -> isGeneratedName(file.entry().name()))
+                    .doOnNext(file -> report.setScanned(report.getScanned() + 1))
+                    .filter(file -> !referenced.contains(file.entry().name()))
+                    .filter(file -> {
+                        LocalDate modified = file.entry().modified();
+                        if (modified == null || !modified.isBefore(cutoff)) {
+                            report.setTooRecent(report.getTooRecent() + 1);
+                            return false;
+                        }
+                        return true;
+                    })
+                    .collectList();
+            })
+            .flatMap(orphans -> {
+                report.setOrphaned(orphans.size());
+                report.setOrphanedBytes(orphans.stream().mapToLong(file -> file.entry().size()).sum());
+                orphans.stream().limit(MAX_REPORTED)
+                    .forEach(file -> report.getSamples().add(child(file.directory(), file.entry().name())));
+                report.setTruncated(orphans.size() > maxDeletes);
+                log.info("[OrphanGC] {} of {} image(s) under {} are unreferenced and older than {} day(s){}.",
+                    orphans.size(), report.getScanned(), base, graceDays, dryRun ? " (dry run)" : "");
+                if (dryRun || orphans.isEmpty()) {
+                    return Mono.just(report);
+                }
+                return Flux.fromIterable(batches(orphans.subList(0, Math.min(orphans.size(), maxDeletes))))
+                    .delayElements(pacing)
+                    .concatMap(batch -> remove(batch, token, setting, report))
+                    .then(Mono.just(report));
+            })
+            .doOnSuccess(result -> log.info("[OrphanGC] Finished: deleted={}, failed={}, truncated={}.",
+                result.getDeleted(), result.getFailed(), result.isTruncated()));
+    }
+
+    /**
+     * 分页读取全部文章和独立页面（含回收站中的，恢复后仍会用到），收集封面引用的文件名。
+     */
+    Mono<Set<String>> referencedNames() {
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        return listAll(Post.class)
+            .doOnNext(post -> {
+                addName(names, post.getSpec().getCover());
+                addPlaceholderName(names, post.getMetadata().getAnnotations());
+            })
+            .thenMany(listAll(SinglePage.class))
+            .doOnNext(page -> {
+                addName(names, page.getSpec().getCover());
+                addPlaceholderName(names, page.getMetadata().getAnnotations());
+            })
+            .then(Mono.fromSupplier(() -> names));
+    }
+
+    private <T extends Extension> Flux<T> listAll(Class<T> type) {
+        return listPage(type, 1)
+            .expand(page -> page.hasNext() ? listPage(type, page.getPage() + 1) : Mono.empty())
+            .flatMapIterable(ListResult::getItems);
+    }
+
+    private <T extends Extension> Mono<ListResult<T>> listPage(Class<T> type, int page) {
+        return client.listBy(type, new ListOptions(),
+            PageRequestImpl.of(page, POST_PAGE_SIZE, Sort.by("metadata.name")));
+    }
+
+    private static void addPlaceholderName(Set<String> names, Map<String, String> annotations) {
+        if (annotations != null) {
+            addName(names, annotations.get(CoverAnnotations.PLACEHOLDER_FOR));
+        }
+    }
+
+    private static void addName(Set<String> names, String url) {
+        String name = fileName(url);
+        if (name != null) {
+            names.add(name);
+        }
+    }
+
+    /**
+     * 是否为插件生成的文件名：内容摘要或旧版本的 UUID 加图片扩展名。这类文件名在任何地方出现都指向同一张图片。
+     */
+    public static boolean isGeneratedName(String name) {
+        return name != null && IMAGE_NAME.matcher(name).matches();
+    }
+
+    /**
+     * 地址中的文件名（解码后），没有时返回 null。地址不合法（例如含有未编码的空格）时按原文截取。
+     */
+    public static String fileName(String url) {
+        if (!StringUtils.hasText(url)) {
+            return null;
+        }
+        String path;
+        try {
+            path = URI.create(url.trim()).getRawPath();
+        } catch (IllegalArgumentException e) {
+            path = url.trim().replaceFirst("[?#].*$", "");
+        }
+        if (path == null) {
+            return null;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        try {
+            name = UriUtils.decode(name, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // 保留原文
+        }
+        return name.isEmpty() ? null : name;
+    }
+
+    /**
+     * 列出目录下的全部文件，并进入符合分目录布局的子目录。上传目录本身列出失败时中止，子目录失败时跳过该目录。
+     */
+    private Flux<StoredFile> listTree(String directory, int depth, String token, AlistSetting setting,
+        OrphanGcReport report) {
+        report.setDirectories(report.getDirectories() + 1);
+        return listDirectory(directory, token, setting)
+            .concatMap(entry -> {
+                if (!entry.directory()) {
+                    return AlistService.DIAGNOSTIC_OBJECT.equals(entry.name())
+                        ? Flux.empty()
+                        : Flux.just(new StoredFile(directory, entry));
+                }
+                if (depth >= MAX_DEPTH || !LAYOUT_DIRECTORY.matcher(entry.name()).matches()) {
+                    return Flux.empty();
+                }
+                String subdirectory = child(directory, entry.name());
+                return listTree(subdirectory, depth + 1, token, setting, report)
+                    .onErrorResume(error -> {
+                        recordError(report, "列出 " + subdirectory + " 失败，已跳过: " + error.getMessage());
+                        return Flux.empty();
+                    });
+            });
+    }
+
+    private Flux<AlistService.AlistEntry> listDirectory(String directory, String token, AlistSetting setting) {
+        return alistService.listPage(directory, 1, LIST_PAGE_SIZE, false, token, setting)
+            .map(page -> Map.entry(1, page))
+            .expand(current -> (long) current.getKey() * LIST_PAGE_SIZE < current.getValue().total()
+                ? Mono.delay(pacing)
+                    .then(alistService.listPage(directory, current.getKey() + 1, LIST_PAGE_SIZE, false, token, setting))
+                    .filter(page -> !page.entries().isEmpty())
+                    .map(page -> Map.entry(current.getKey() + 1, page))
+                : Mono.empty())
+            .flatMapIterable(current -> current.getValue().entries());
+    }
+
+    /**
+     * 按目录分批，每批最多 REMOVE_BATCH_SIZE 个文件。
+     */
+    private static List<Map.Entry<String, List<StoredFile>>> batches(List<StoredFile> files) {
+        Map<String, List<StoredFile>> byDirectory = new LinkedHashMap<>();
+        files.forEach(file -> byDirectory.computeIfAbsent(file.directory(), key -> new ArrayList<>()).add(file));
+        List<Map.Entry<String, List<StoredFile>>> batches = new ArrayList<>();
+        byDirectory.forEach((directory, inDirectory) -> {
+            for (int from = 0; from < inDirectory.size(); from += REMOVE_BATCH_SIZE) {
+                batches.add(Map.entry(directory,
+                    inDirectory.subList(from, Math.min(from + REMOVE_BATCH_SIZE, inDirectory.size()))));
+            }
+        });
+        return batches;
+    }
+
+    private Mono<Void> remove(Map.Entry<String, List<StoredFile>> batch, String token, AlistSetting setting,
+        OrphanGcReport report) {
+        List<String> names = batch.getValue().stream().map(file -> file.entry().name()).toList();
+        return alistService.removeObjects(batch.getKey(), names, token, setting)
+            .then(Mono.fromRunnable(() -> {
+                report.setDeleted(report.getDeleted() + names.size());
+                metrics.add("aicover.alist.gc_deleted", names.size());
+            }))
+            .onErrorResume(error -> {
+                report.setFailed(report.getFailed() + names.size());
+                recordError(report, "删除 " + batch.getKey() + " 下的 " + names.size() + " 个文件失败: "
+                    + error.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private static void recordError(OrphanGcReport report, String message) {
+        log.warn("[OrphanGC] {}", message);
+        synchronized (report) {
+            if (report.getErrors().size() < MAX_REPORTED) {
+                report.getErrors().add(message);
+            }
+        }
+    }
+
+    private static String child(String directory, String name) {
+        return (directory.endsWith("/") ? directory : directory + "/") + name;
+    }
+
+    private static int positiveOr(Integer value, int defaultValue) {
+        return value == null || value <= 0 ? defaultValue : value;
+    }
+}
@@ -4,29 +4,50 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.ImagePlaceholder;
 import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
-import io.netty.channel.ChannelOption;
+import com.jacylunatic.aicover.aicover.service.diagnostics.StageTiming;
+import com.jacylunatic.aicover.aicover.service.image.ImageMemoryBudget;
+import com.jacylunatic.aicover.aicover.service.image.ImagePlaceholderService;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import com.jacylunatic.aicover.aicover.service.lifecycle.HttpClientProvider;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatusCode;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
-import reactor.netty.http.client.HttpClient;
+import reactor.core.publisher.Sinks;
 import reactor.util.retry.Retry;
 import run.halo.app.plugin.ReactiveSettingFetcher;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
@@ -34,59 +55,531 @@ import java.util.UUID;
 public class AlistService {
 
     private final ReactiveSettingFetcher settingFetcher;
+    private final PluginMetrics metrics;
+    private final ImagePlaceholderService placeholderService;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    private static final WebClient fastWebClient = WebClient.builder()
-        .clientConnector(new ReactorClientHttpConnector(
-            HttpClient.create().responseTimeout(Duration.ofSeconds(20))
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)))
-        .build();
+    private final HttpClientProvider httpClientProvider;
+    private final BlockingIoScheduler blockingIo;
+    private final GenerationLifecycleManager lifecycleManager;
+    private final ImageMemoryBudget memoryBudget;
+    private final LocalImageCache localImageCache;
 
-    private static final WebClient uploadWebClient = WebClient.builder()
-        .clientConnector(new ReactorClientHttpConnector(
-            HttpClient.create().responseTimeout(Duration.ofMinutes(2))
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)))
-        .build();
+    private WebClient fastWebClient;
+    private WebClient uploadWebClient;
 
+    /**
+     * 上传批处理：每个文件的上传互不等待，上传完成的文件在一个短窗口内汇集成批，
+     * 每个目录只刷新一次，再逐个通过 /api/fs/get 取得 Alist 按站点地址生成的下载链接。
+     */
+    private static final Duration BATCH_WINDOW = Duration.ofMillis(200);
+    private static final int BATCH_MAX_SIZE = 16;
+    private static final int UPLOAD_CONCURRENCY = 4;
+
+    /**
+     * 批次中的一项。加入队列后图片归批次所有，由批次在该项自己的上传结束（成功、失败或取消）后释放。
+     *
+     * @param deadline  调用方的截止时间，批处理在自己的订阅中沿用；没有时为 null
+     * @param cancelled 调用方取消（关闭弹窗、连接断开、超过截止时间）时发出，批处理随之放弃该项
+     */
+    private record PendingUpload(DownloadedImage image, String uploadPath, String token, AlistSetting setting,
+                                 Deadline deadline, Sinks.One<Boolean> cancelled, Sinks.One<ProgressUpdate> result) {
+
+        /**
+         * 让批处理中属于该项的步骤服从调用方的截止时间和取消。
+         */
+        <T> Mono<T> bounded(Mono<T> step) {
+            return Deadline.within(step, deadline, "上传到 Alist").takeUntilOther(cancelled.asMono());
+        }
+    }
+
+    /**
+     * 图片的归属：调用方结束和交给上传批次两者先发生的一方取得图片，之后由它负责释放。
+     */
+    private static final class ImageHandle {
+
+        private final DownloadedImage image;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private ImageHandle(DownloadedImage image) {
+            this.image = image;
+        }
+
+        /**
+         * 把图片交给上传批次。调用方已经结束（图片已释放）时返回 false。
+         */
+        boolean handOff() {
+            return settled.compareAndSet(false, true);
+        }
+
+        /**
+         * 调用方结束时调用：图片还没有交给上传批次时才释放。
+         */
+        void releaseIfOwned() {
+            if (settled.compareAndSet(false, true)) {
+                image.release();
+            }
+        }
+    }
+
+    private final Sinks.Many<PendingUpload> uploadQueue = Sinks.many().unicast().onBackpressureBuffer();
+
+    /**
+     * 两个客户端共用插件私有的连接池，插件停止时随连接池一起释放。
+     */
+    @PostConstruct
+    public void init() {
+        fastWebClient = httpClientProvider.webClient(Duration.ofSeconds(20));
+        uploadWebClient = httpClientProvider.webClient(Duration.ofMinutes(2));
+        Disposable batcher = uploadQueue.asFlux()
+            // 慢的上传只占用一个并发名额，不会拖住已经上传完成的文件
+            .flatMap(this::upload, UPLOAD_CONCURRENCY)
+            .bufferTimeout(BATCH_MAX_SIZE, BATCH_WINDOW, true)
+            .flatMap(batch -> resolveBatch(batch)
+                .onErrorResume(error -> {
+                    // 兜底：批处理本身出错时，让批内尚未完成的调用方都收到错误
+                    batch.forEach(item -> item.result().tryEmitError(error));
+                    return Mono.empty();
+                }), UPLOAD_CONCURRENCY)
+            .subscribe();
+        lifecycleManager.registerResource("alist-upload-batcher", batcher);
+    }
+
+    /**
+     * Alist 默认 Token 有效期为 48 小时，这里保守地只缓存 30 分钟。
+     */
+    private static final Duration TOKEN_TTL = Duration.ofMinutes(30);
+
+    private static final String TRANSFER_MODE_OFFLINE = "offline";
+    private static final String DEFAULT_OFFLINE_TOOL = "SimpleHttp";
+    private static final Duration DOWNLOAD_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DOWNLOAD_READ_TIMEOUT = Duration.ofSeconds(20);
+    private static final int OFFLINE_POLL_ATTEMPTS = 60;
+    static final String DIAGNOSTIC_OBJECT = ".aicover-diagnostic.txt";
+
+    private final AtomicReference<CachedToken> cachedToken = new AtomicReference<>();
+
+    private record CachedToken(String cacheKey, String token, long expiresAtNanos) {}
+
+    /**
+     * 目录列表中的一项。modified 无法解析时为 null。
+     */
+    record AlistEntry(String name, boolean directory, LocalDate modified, String sign, long size) {}
+
+    /**
+     * 目录列表的一页，total 为目录下的总项数。
+     */
+    record AlistPage(List<AlistEntry> entries, long total) {}
+
+    /**
+     * 插件启动时预热：建立到 Alist 的连接并预先获取登录 Token。
+     * 未配置 Alist 时直接完成。
+     */
+    public Mono<Void> warmUp() {
+        return settingFetcher.fetch(AlistSetting.GROUP, AlistSetting.class)
+            .filter(this::isAlistConfigured)
+            .flatMap(this::loginCached)
+            .then();
+    }
+
+    /**
+     * 自检：重新登录（不使用缓存的 Token），上传一个很小的对象并获取其签名链接，各阶段分别计时。
+     * 某一阶段失败后不再继续，测试对象最后尽力删除。
+     */
+    public Mono<List<StageTiming>> probe() {
+        return Mono.defer(() -> settingFetcher.fetch(AlistSetting.GROUP, AlistSetting.class)
+            .filter(this::isAlistConfigured)
+            .switchIfEmpty(Mono.error(new IllegalStateException("Alist 配置不完整，请检查插件设置。")))
+            .flatMap(setting -> {
+                List<StageTiming> timings = new ArrayList<>();
+                String path = setting.getAlistUploadPath() + "/" + DIAGNOSTIC_OBJECT;
+                DownloadedImage probeObject = new DownloadedImage("aicover".getBytes(StandardCharsets.UTF_8), null);
+                return timedStage("login", timings, login(setting))
+                    .flatMap(token -> timedStage("put", timings, uploadToAlist(probeObject, path, token, setting))
+                        .then(timedStage("get", timings, refreshAlistStorage(path, token, setting)
+                            .then(getSignedUrl(path, token, setting))))
+                        .then(removeObject(path, token, setting))
+                        .onErrorResume(error -> removeObject(path, token, setting)))
+                    .onErrorResume(error -> Mono.empty())
+                    .then(Mono.fromSupplier(() -> List.copyOf(timings)));
+            }));
+    }
+
+    private static <T> Mono<T> timedStage(String stage, List<StageTiming> timings, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                .doOnSuccess(ignored -> timings.add(StageTiming.ok(stage, System.nanoTime() - start)))
+                .doOnError(error -> timings.add(StageTiming.failed(stage, System.nanoTime() - start, error)));
+        });
+    }
+
+    private Mono<Void> removeObject(String path, String token, AlistSetting setting) {
+        int separator = path.lastIndexOf('/');
+        return fastWebClient.post().uri(setting.getAlistUrl() + "/api/fs/remove")
+            .header("Authorization", token)
+            .header("Content-Type", "application/json")
+            .bodyValue(Map.of("dir", parentPath(path), "names", List.of(path.substring(separator + 1))))
+            .retrieve()
+            .toBodilessEntity()
+            .then()
+            .onErrorResume(error -> {
+                log.warn("[Debug AlistService] Failed to remove diagnostic object {}: {}", path, error.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * 上传整体受请求截止时间约束，到期时取消下载、轮询等仍在进行的步骤；
+     * 已经交给上传批处理的文件同样按这个截止时间放弃上传和签名轮询。
+     */
     public Flux<ProgressUpdate> uploadImageFromUrl(String tempImageUrl) {
         log.info("[Debug AlistService] uploadImageFromUrl method ENTERED. URL: {}", tempImageUrl);
+        return Deadline.limit(uploadWithinDeadline(tempImageUrl), "上传到 Alist", null);
+    }
+
+    private Flux<ProgressUpdate> uploadWithinDeadline(String tempImageUrl) {
         return prepareAlistContext()
             .flatMapMany(context -> {
                 log.info("[Debug AlistService] flatMapMany has been entered. Starting Alist process...");
                 AlistSetting setting = (AlistSetting) context.get("setting");
                 String token = (String) context.get("token");
 
+                Flux<ProgressUpdate> streaming = streamThroughPlugin(tempImageUrl, token, setting);
+                // 已在本地缓存中的图片（内联返回的图片）Alist 无法访问，只能由插件上传
+                boolean local = tempImageUrl.startsWith(LocalImageCache.URL_PREFIX);
                 return Flux.concat(
                     Mono.just(new ProgressUpdate("Alist 登录成功！"))
                         .doOnNext(p -> log.info("[Debug AlistService] Step 1: Emitting 'Login Success'")),
-                    Mono.just(new ProgressUpdate("正在下载临时图片..."))
-                         .doOnNext(p -> log.info("[Debug AlistService] Step 2: Emitting 'Downloading Image'")),
-                    downloadImage(tempImageUrl)
-                        .doOnSuccess(bytes -> log.info("[Debug AlistService] Step 2 SUCCESS: Image downloaded ({} bytes)", bytes != null ? bytes.length : 0))
-                        .flux()
-                        .concatMap(imageData -> Flux.concat(
-                            Mono.just(new ProgressUpdate("正在上传至 Alist..."))
-                                .doOnNext(p -> log.info("[Debug AlistService] Step 3: Emitting 'Uploading to Alist'")),
-                            uploadToAlist(imageData, token, setting)
-                                .doOnSuccess(path -> log.info("[Debug AlistService] Step 3 SUCCESS: Uploaded to path {}", path))
-                                .flux()
-                                .concatMap(uploadPath -> Flux.concat(
-                                    Mono.just(new ProgressUpdate("正在刷新 Alist 缓存..."))
-                                        .doOnNext(p -> log.info("[Debug AlistService] Step 4: Emitting 'Refreshing cache'")),
-                                    refreshAlistStorage(uploadPath, token, setting)
-                                        .then(Mono.just(new ProgressUpdate("缓存刷新成功！")))
-                                        .doOnSuccess(p -> log.info("[Debug AlistService] Step 4 SUCCESS: Cache refreshed")),
-                                    Mono.just(new ProgressUpdate("正在获取最终链接..."))
-                                         .doOnNext(p -> log.info("[Debug AlistService] Step 5: Emitting 'Polling for URL'")),
-                                    pollForSignedUrl(uploadPath, token, setting)
-                                        .doOnSuccess(p -> log.info("[Debug AlistService] Step 5 SUCCESS: Got final URL"))
-                                ))
-                        ))
+                    TRANSFER_MODE_OFFLINE.equals(setting.getAlistTransferMode()) && !local
+                        ? offlineDownload(tempImageUrl, token, setting, streaming)
+                        : streaming
                 );
             });
     }
 
-    private Mono<Map<String, Object>> prepareAlistContext() {
+    /**
+     * 插件中转：下载到 Halo 内存中（超过阈值时溢出到临时文件），计算摘要和占位信息后再上传到 Alist。
+     * 图片占用的内存预算在上传完成（或失败）后归还；已经加入上传批次的图片由批次在上传结束后归还，
+     * 调用方提前取消不会释放批次仍在读取的图片。
+     */
+    private Flux<ProgressUpdate> streamThroughPlugin(String tempImageUrl, String token, AlistSetting setting) {
+        return Flux.concat(
+            Mono.just(new ProgressUpdate("正在下载临时图片..."))
+                 .doOnNext(p -> log.info("[Debug AlistService] Step 2: Emitting 'Downloading Image'")),
+            loadImage(tempImageUrl)
+                .doOnSuccess(image -> log.info("[Debug AlistService] Step 2 SUCCESS: Image downloaded ({} bytes, sha256={})",
+                    image != null ? image.size() : 0, image != null ? image.sha256() : null))
+                .flux()
+                // 下载之后、存储之前：基于降采样解码计算尺寸、BlurHash、主色调等占位信息
+                .concatMap(image -> {
+                    ImageHandle handle = new ImageHandle(image);
+                    return placeholderService.compute(image)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMapMany(placeholder -> storeContentAddressed(handle, token, setting)
+                            .map(update -> attachPlaceholder(update, placeholder.orElse(null))))
+                        .doFinally(signal -> handle.releaseIfOwned());
+                })
+        );
+    }
+
+    /**
+     * 离线下载：把平台的临时链接交给 Alist，由 Alist 服务端直接拉取并存入上传目录，图片字节不经过 Halo。
+     * 提交失败（存储或下载工具不可用）、任务失败或超时都会回退到插件中转。
+     * <p>
+     * 任务结果中没有保存后的文件名，因此在提交前后各列出一次目标目录，以新出现的文件为准，
+     * 而不是只按链接推算文件名（推算错误时会在离线下载成功后再中转上传一份）。
+     */
+    private Flux<ProgressUpdate> offlineDownload(String tempImageUrl, String token, AlistSetting setting,
+        Flux<ProgressUpdate> fallback) {
+        String expectedName = fileNameFromUrl(tempImageUrl);
+        String directory = parentPath(uploadPathFor(setting, expectedName));
+        return Flux.concat(
+                Mono.just(new ProgressUpdate("正在提交 Alist 离线下载任务...")),
+                // 目标目录可能还不存在（例如按年月分目录的新月份），此时视为空目录
+                listNames(directory, token, setting).onErrorReturn(Set.of())
+                    .flatMapMany(before -> addOfflineDownload(tempImageUrl, directory, token, setting)
+                        .flatMapMany(taskId -> Flux.concat(
+                            Mono.just(new ProgressUpdate("Alist 正在从 AI 平台拉取图片...")),
+                            awaitOfflineDownload(taskId, token, setting)
+                                .then(listNames(directory, token, setting))
+                                .flatMap(after -> Mono.justOrEmpty(storedName(expectedName, before, after))
+                                    .switchIfEmpty(Mono.error(new RuntimeException(
+                                        "无法确定离线下载保存的文件名"))))
+                                .flatMap(name -> pollForSignedUrl(child(directory, name), token, setting))
+                                .doOnSuccess(p -> metrics.increment("aicover.alist.offline_downloads")))))
+            )
+            .onErrorResume(error -> {
+                log.warn("[Debug AlistService] Offline download failed, falling back to streaming upload: {}",
+                    error.getMessage());
+                metrics.increment("aicover.alist.offline_fallbacks");
+                return Flux.concat(
+                    Mono.just(new ProgressUpdate("Alist 离线下载不可用（" + error.getMessage() + "），改为由插件中转上传...")),
+                    fallback);
+            });
+    }
+
+    private Mono<String> addOfflineDownload(String url, String directory, String token, AlistSetting setting) {
+        String tool = StringUtils.hasText(setting.getAlistOfflineTool())
+            ? setting.getAlistOfflineTool() : DEFAULT_OFFLINE_TOOL;
+        log.info("[Debug AlistService] Submitting offline download to {} with tool {}", directory, tool);
+        return fastWebClient.post().uri(setting.getAlistUrl() + "/api/fs/add_offline_download")
+            .header("Authorization", token)
+            .header("Content-Type", "application/json")
+            .bodyValue(Map.of(
+                "path", directory,
+                "urls", List.of(url),
+                "tool", tool,
+                "delete_policy", "delete_on_upload_succeed"))
+            .retrieve()
+            .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(new RuntimeException("提交离线下载失败: " + parseAlistErrorMessage(errorBody)))))
+            .bodyToMono(String.class)
+            .flatMap(this::checkAlistResponse)
+            .flatMap(jsonResponse -> {
+                try {
+                    String taskId = objectMapper.readTree(jsonResponse).at("/data/tasks/0/id").asText("");
+                    if (!StringUtils.hasText(taskId)) {
+                        return Mono.error(new RuntimeException("响应中缺少离线下载任务 ID"));
+                    }
+                    return Mono.just(taskId);
+                } catch (JsonProcessingException e) {
+                    return Mono.error(new RuntimeException("解析离线下载响应失败", e));
+                }
+            });
+    }
+
+    /**
+     * 轮询离线下载任务直到成功，失败、取消或超时时返回错误。
+     */
+    private Mono<Void> awaitOfflineDownload(String taskId, String token, AlistSetting setting) {
+        return fastWebClient.post()
+            .uri(setting.getAlistUrl() + "/api/task/offline_download/info?tid=" + taskId)
+            .header("Authorization", token)
+            .retrieve()
+            .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(new RuntimeException("查询离线下载任务失败: " + parseAlistErrorMessage(errorBody)))))
+            .bodyToMono(String.class)
+            .flatMap(this::checkAlistResponse)
+            .flatMap(this::checkOfflineTaskState)
+            .retryWhen(Retry.fixedDelay(OFFLINE_POLL_ATTEMPTS, Duration.ofSeconds(2))
+                .filter(error -> error instanceof OfflineTaskRunningException)
+                .onRetryExhaustedThrow((spec, signal) -> new RuntimeException("离线下载超时")));
+    }
+
+    private Mono<Void> checkOfflineTaskState(String jsonResponse) {
+        try {
+            JsonNode data = objectMapper.readTree(jsonResponse).at("/data");
+            int state = data.at("/state").asInt(-1);
+            log.info("[Debug AlistService] Offline download task state: {}, progress: {}", state, data.at("/progress").asText());
+            // Alist 任务状态：0 等待、1 运行中、2 成功、8/9 等待重试，其余为取消或失败
+            return switch (state) {
+                case 2 -> Mono.empty();
+                case 0, 1, 8, 9 -> Mono.error(new OfflineTaskRunningException());
+                default -> Mono.error(new RuntimeException("离线下载任务失败: " + data.at("/error").asText("状态 " + state)));
+            };
+        } catch (JsonProcessingException e) {
+            return Mono.error(new RuntimeException("解析离线下载任务状态失败", e));
+        }
+    }
+
+    /**
+     * 离线下载工具通常按链接路径的最后一段命名文件，用于在目录中有多个新文件时挑出本次下载的文件。
+     */
+    private static String fileNameFromUrl(String url) {
+        String path = URI.create(url).getPath();
+        String name = path == null ? "" : path.substring(path.lastIndexOf('/') + 1);
+        return StringUtils.hasText(name) ? name : "cover.png";
+    }
+
+    /**
+     * 根据离线下载前后的目录列表确定保存后的文件名：优先取新出现且与推算一致的文件，
+     * 其次取唯一新出现的文件；没有新文件时，推算的文件名存在即视为被覆盖写入。无法确定时返回空。
+     */
+    static Optional<String> storedName(String expectedName, Set<String> before, Set<String> after) {
+        Set<String> added = new HashSet<>(after);
+        added.removeAll(before);
+        if (added.contains(expectedName)) {
+            return Optional.of(expectedName);
+        }
+        if (added.size() == 1) {
+            return Optional.of(added.iterator().next());
+        }
+        if (added.isEmpty() && after.contains(expectedName)) {
+            return Optional.of(expectedName);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 以 refresh 方式列出目录下的文件名（不含子目录）。
+     */
+    private Mono<Set<String>> listNames(String directory, String token, AlistSetting setting) {
+        return refreshDirectory(directory, token, setting)
+            .flatMap(jsonResponse -> {
+                try {
+                    Set<String> names = new HashSet<>();
+                    for (JsonNode item : objectMapper.readTree(jsonResponse).at("/data/content")) {
+                        if (!item.at("/is_dir").asBoolean(false)) {
+                            names.add(item.at("/name").asText());
+                        }
+                    }
+                    return Mono.just(names);
+                } catch (JsonProcessingException e) {
+                    return Mono.error(new RuntimeException("解析 Alist 目录列表失败", e));
+                }
+            });
+    }
+
+    private static String child(String directory, String name) {
+        return (directory.endsWith("/") ? directory : directory + "/") + name;
+    }
+
+    private Flux<ProgressUpdate> storeContentAddressed(ImageHandle handle, String token, AlistSetting setting) {
+        // 以内容的 SHA-256 作为文件名，相同内容只会存储一份（按年月分目录时为同一个月内只存一份）
+        String uploadPath = uploadPathFor(setting, handle.image.contentAddressedName());
+        return findExistingObject(uploadPath, token, setting)
+            .map(existing -> Flux.just(
+                new ProgressUpdate("检测到相同内容的图片已存在，跳过上传。"),
+                existing))
+            .switchIfEmpty(Mono.fromSupplier(() -> uploadAndResolve(handle, uploadPath, token, setting)))
+            .flatMapMany(updates -> updates);
+    }
+
+    /**
+     * 按设置的分目录布局算出文件的上传路径。
+     */
+    static String uploadPathFor(AlistSetting setting, String fileName) {
+        return AlistDirectoryLayout.of(setting.getAlistDirectoryLayout())
+            .path(setting.getAlistUploadPath(), fileName, LocalDate.now());
+    }
+
+    private ProgressUpdate attachPlaceholder(ProgressUpdate update, ImagePlaceholder placeholder) {
+        if (placeholder != null && Boolean.TRUE.equals(update.getIsFinal()) && update.getFinalImageUrl() != null) {
+            update.setPlaceholder(placeholder);
+            placeholderService.remember(update.getFinalImageUrl(), placeholder);
+        }
+        return update;
+    }
+
+    private Flux<ProgressUpdate> uploadAndResolve(ImageHandle handle, String uploadPath, String token, AlistSetting setting) {
+        return Flux.concat(
+            Mono.just(new ProgressUpdate("正在上传至 Alist..."))
+                .doOnNext(p -> log.info("[Debug AlistService] Step 3: Emitting 'Uploading to Alist'")),
+            uploadBatched(handle, uploadPath, token, setting)
+                .doOnSuccess(p -> log.info("[Debug AlistService] Step 3 SUCCESS: Uploaded and resolved {}", uploadPath))
+                .flux()
+        );
+    }
+
+    /**
+     * 加入上传批次，返回该文件自己的结果（带签名链接的最终进度）。加入后图片归批次所有。
+     * 批处理在自己的订阅中运行，调用方的截止时间随该项传过去，调用方取消时批处理放弃尚未完成的上传和解析。
+     */
+    private Mono<ProgressUpdate> uploadBatched(ImageHandle handle, String uploadPath, String token, AlistSetting setting) {
+        return Mono.deferContextual(context -> {
+            if (!handle.handOff()) {
+                return Mono.error(new IllegalStateException("上传已取消"));
+            }
+            Sinks.One<Boolean> cancelled = Sinks.one();
+            Sinks.One<ProgressUpdate> result = Sinks.one();
+            uploadQueue.emitNext(new PendingUpload(handle.image, uploadPath, token, setting,
+                    Deadline.current(context).orElse(null), cancelled, result),
+                Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+            return result.asMono().doOnCancel(() -> cancelled.tryEmitValue(true));
+        });
+    }
+
+    /**
+     * 上传一个文件，成功后交给解析阶段；失败时直接把错误交给调用方。
+     */
+    private Mono<PendingUpload> upload(PendingUpload item) {
+        return item.bounded(uploadToAlist(item.image(), item.uploadPath(), item.token(), item.setting())
+                .map(path -> item))
+            .onErrorResume(error -> {
+                item.result().tryEmitError(error);
+                return Mono.empty();
+            })
+            // 上传结束后图片不再被读取，此时才归还内存预算或删除临时文件
+            .doFinally(signal -> item.image().release());
+    }
+
+    private Mono<Void> resolveBatch(List<PendingUpload> batch) {
+        log.info("[Debug AlistService] Resolving upload batch of {} file(s).", batch.size());
+        metrics.increment("aicover.alist.upload_batches");
+        metrics.add("aicover.alist.batched_uploads", batch.size());
+        // 同一个 Alist 上的同一个目录只刷新一次
+        Map<String, List<PendingUpload>> byDirectory = new LinkedHashMap<>();
+        batch.forEach(item -> byDirectory
+            .computeIfAbsent(item.setting().getAlistUrl() + "\n" + parentPath(item.uploadPath()),
+                key -> new ArrayList<>())
+            .add(item));
+        return Flux.fromIterable(byDirectory.values())
+            .flatMap(this::resolveDirectory, UPLOAD_CONCURRENCY)
+            .then();
+    }
+
+    /**
+     * 刷新一个目录，再逐个取得批内各文件的下载链接。
+     * 链接取自 /api/fs/get 的 raw_url，由 Alist 按其站点地址生成，插件配置的 Alist 地址是内网地址时同样可以公开访问。
+     */
+    private Mono<Void> resolveDirectory(List<PendingUpload> items) {
+        PendingUpload first = items.get(0);
+        String directory = parentPath(first.uploadPath());
+        return refresh(directory, first.token(), first.setting())
+            .onErrorResume(error -> {
+                log.warn("[Debug AlistService] Refreshing {} failed, resolving files by polling: {}", directory, error.getMessage());
+                return Mono.empty();
+            })
+            .thenMany(Flux.fromIterable(items))
+            .flatMap(item -> item.bounded(pollForSignedUrl(item.uploadPath(), item.token(), item.setting()))
+                .doOnNext(item.result()::tryEmitValue)
+                .doOnError(item.result()::tryEmitError)
+                .onErrorResume(error -> Mono.empty()), UPLOAD_CONCURRENCY)
+            .then();
+    }
+
+    /**
+     * 以 refresh 方式列出目录，让 Alist 重新读取存储中的文件。
+     */
+    Mono<Void> refresh(String directory, String token, AlistSetting setting) {
+        return refreshDirectory(directory, token, setting).then();
+    }
+
+    /**
+     * 文件的公开下载链接（Alist 生成的 raw_url），刚写入的文件暂时查不到时短暂轮询。
+     */
+    Mono<String> publicUrl(String path, String token, AlistSetting setting) {
+        return pollForSignedUrl(path, token, setting).map(ProgressUpdate::getFinalImageUrl);
+    }
+
+    static String parentPath(String path) {
+        String parent = path.substring(0, path.lastIndexOf('/'));
+        return parent.isEmpty() ? "/" : parent;
+    }
+
+    /**
+     * 上传前的廉价存在性检查：对象已存在时直接返回其签名链接，否则返回空。
+     * 检查本身失败（网络抖动等）时同样返回空，退回到正常上传流程。
+     */
+    private Mono<ProgressUpdate> findExistingObject(String path, String token, AlistSetting setting) {
+        return getSignedUrl(path, token, setting)
+            .doOnNext(p -> {
+                log.info("[Debug AlistService] Object already exists at {}, skipping upload.", path);
+                metrics.increment("aicover.alist.dedup_hits");
+            })
+            .onErrorResume(error -> {
+                if (!(error instanceof AlistObjectNotFoundException)) {
+                    log.warn("[Debug AlistService] Existence check failed for {}, falling back to upload: {}", path, error.getMessage());
+                }
+                return Mono.empty();
+            });
+    }
+
+    Mono<Map<String, Object>> prepareAlistContext() {
         log.info("[Debug AlistService] prepareAlistContext method ENTERED.");
         return settingFetcher.fetch(AlistSetting.GROUP, AlistSetting.class)
             .doOnNext(setting -> log.info("[Debug AlistService] Successfully fetched settings: {}", setting))
@@ -100,13 +593,31 @@ public class AlistService {
                     return Mono.error(new IllegalStateException("Alist 配置不完整，请检查插件设置。"));
                 }
                 log.info("[Debug AlistService] Alist configuration is valid, proceeding to login.");
-                return login(setting).map(token -> Map.of("setting", setting, "token", token));
+                return loginCached(setting).map(token -> Map.of("setting", setting, "token", token));
             })
             .doOnNext(context -> log.info("[Debug AlistService] Context Mono is about to emit value: {}", context))
             .doOnError(error -> log.error("[Debug AlistService] Error in prepareAlistContext stream.", error));
     }
 
 
+    /**
+     * 复用未过期的 Token，避免每次上传都重新登录。配置变更后缓存键随之变化，自动重新登录。
+     */
+    private Mono<String> loginCached(AlistSetting setting) {
+        return Mono.defer(() -> {
+            String cacheKey = setting.getAlistUrl() + "|" + setting.getAlistUsername() + "|"
+                + setting.getAlistPassword().hashCode();
+            CachedToken cached = cachedToken.get();
+            if (cached != null && cached.cacheKey().equals(cacheKey)
+                && System.nanoTime() - cached.expiresAtNanos() < 0) {
+                log.info("[Debug AlistService] Reusing cached Alist token.");
+                return Mono.just(cached.token());
+            }
+            return login(setting).doOnNext(token -> cachedToken.set(
+                new CachedToken(cacheKey, token, System.nanoTime() + TOKEN_TTL.toNanos())));
+        });
+    }
+
     private Mono<String> login(AlistSetting setting) {
         String loginUrl = setting.getAlistUrl() + "/api/auth/login";
         Map<String, String> loginBody = Map.of("username", setting.getAlistUsername(), "password", setting.getAlistPassword());
@@ -152,41 +663,63 @@ public class AlistService {
         }
     }
 
-    private Mono<byte[]> downloadImage(String imageUrl) {
+    /**
+     * 本地缓存中的图片直接按文件上传，不再经过内存；其他地址从网络下载。
+     */
+    private Mono<DownloadedImage> loadImage(String imageUrl) {
+        if (!imageUrl.startsWith(LocalImageCache.URL_PREFIX)) {
+            return downloadImage(imageUrl);
+        }
+        String name = imageUrl.substring(LocalImageCache.URL_PREFIX.length());
+        return Mono.justOrEmpty(localImageCache.resolve(name))
+            .switchIfEmpty(Mono.error(new RuntimeException("本地缓存中找不到图片: " + name)))
+            .flatMap(path -> blockingIo.fromCallable(() ->
+                DownloadedImage.ofFile(path, Files.size(path), name.substring(0, name.lastIndexOf('.')))));
+    }
+
+    /**
+     * 先建立连接拿到响应长度，再按长度向内存预算申请额度后读取；预算不足时在这里等待。
+     * 连接和读取超时不超过请求剩余的时间。
+     */
+    private Mono<DownloadedImage> downloadImage(String imageUrl) {
         log.info("[Debug AlistService] Attempting to download image from: {}", imageUrl);
-        return Mono.fromCallable(() -> {
-            HttpURLConnection connection = (HttpURLConnection) new URL(imageUrl).openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(20000);
-            try {
+        return Mono.usingWhen(
+            Mono.deferContextual(context -> blockingIo.fromCallable(() -> {
+                HttpURLConnection connection = (HttpURLConnection) new URL(imageUrl).openConnection();
+                connection.setRequestMethod("GET");
+                connection.setConnectTimeout(timeoutMillis(Deadline.timeout(context, DOWNLOAD_CONNECT_TIMEOUT)));
+                connection.setReadTimeout(timeoutMillis(Deadline.timeout(context, DOWNLOAD_READ_TIMEOUT)));
                 int responseCode = connection.getResponseCode();
-                 log.info("[Debug AlistService] Image download response code: {}", responseCode);
-                if (responseCode >= 200 && responseCode < 300) {
-                    try (InputStream inputStream = connection.getInputStream(); ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-                        inputStream.transferTo(buffer);
-                        byte[] bytes = buffer.toByteArray();
-                        log.info("[Debug AlistService] Image download successful, {} bytes.", bytes.length);
-                        return bytes;
-                    }
-                } else {
+                log.info("[Debug AlistService] Image download response code: {}", responseCode);
+                if (responseCode < 200 || responseCode >= 300) {
+                    connection.disconnect();
                     throw new RuntimeException("下载临时图片失败: " + responseCode);
                 }
-            } finally {
-                connection.disconnect();
-            }
-        }).subscribeOn(Schedulers.boundedElastic());
+                return connection;
+            })),
+            // 边下载边计算摘要，无需再遍历一遍字节数组
+            connection -> memoryBudget.load(connection.getContentLengthLong(), connection::getInputStream)
+                .doOnNext(image -> log.info("[Debug AlistService] Image download successful, {} bytes{}.",
+                    image.size(), image.isOnDisk() ? " (spilled to disk)" : "")),
+            connection -> Mono.fromRunnable(connection::disconnect));
     }
 
-    private Mono<String> uploadToAlist(byte[] imageData, String token, AlistSetting setting) {
-        String fileName = UUID.randomUUID() + ".png";
-        String uploadPath = setting.getAlistUploadPath() + "/" + fileName;
-        log.info("[Debug AlistService] Attempting to upload {} bytes to Alist path: {}", imageData.length, uploadPath);
+    /**
+     * HttpURLConnection 的超时为 0 表示不限时，剩余时间已经用完时至少给 1 毫秒。
+     */
+    private static int timeoutMillis(Duration timeout) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeout.toMillis()));
+    }
+
+    private Mono<String> uploadToAlist(DownloadedImage image, String uploadPath, String token, AlistSetting setting) {
+        log.info("[Debug AlistService] Attempting to upload {} bytes to Alist path: {}", image.size(), uploadPath);
 
         return uploadWebClient.put().uri(setting.getAlistUrl() + "/api/fs/put")
             .header("Authorization", token)
             .header("File-Path", uploadPath)
-            .bodyValue(imageData)
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .contentLength(image.size())
+            .body(BodyInserters.fromResource(image.asResource()))
             .retrieve()
             .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
                 .flatMap(errorBody -> Mono.error(new RuntimeException("Alist 上传失败: " + parseAlistErrorMessage(errorBody)))))
@@ -196,9 +729,89 @@ public class AlistService {
             .thenReturn(uploadPath);
     }
 
+    /**
+     * 分页列出目录，只有 refresh 为 true 时才让 Alist 重新读取存储。
+     */
+    Mono<AlistPage> listPage(String directory, int page, int perPage, boolean refresh, String token,
+        AlistSetting setting) {
+        return fastWebClient.post().uri(setting.getAlistUrl() + "/api/fs/list")
+            .header("Authorization", token)
+            .header("Content-Type", "application/json")
+            .bodyValue(Map.of("path", directory, "page", page, "per_page", perPage, "refresh", refresh))
+            .retrieve()
+            .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(new RuntimeException("列出 Alist 目录失败: " + parseAlistErrorMessage(errorBody)))))
+            .bodyToMono(String.class)
+            .flatMap(this::checkAlistResponse)
+            .flatMap(jsonResponse -> {
+                try {
+                    JsonNode data = objectMapper.readTree(jsonResponse).at("/data");
+                    List<AlistEntry> entries = new ArrayList<>();
+                    for (JsonNode item : data.at("/content")) {
+                        entries.add(new AlistEntry(item.at("/name").asText(), item.at("/is_dir").asBoolean(false),
+                            parseModified(item.at("/modified").asText("")), item.at("/sign").asText(""),
+                            item.at("/size").asLong(0)));
+                    }
+                    return Mono.just(new AlistPage(entries, data.at("/total").asLong(entries.size())));
+                } catch (JsonProcessingException e) {
+                    return Mono.error(new RuntimeException("解析 Alist 目录列表失败", e));
+                }
+            });
+    }
+
+    private static LocalDate parseModified(String modified) {
+        try {
+            return StringUtils.hasText(modified) ? OffsetDateTime.parse(modified).toLocalDate() : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 创建目录，目录已存在时 Alist 同样返回成功。
+     */
+    Mono<Void> makeDirectory(String directory, String token, AlistSetting setting) {
+        return postJson("/api/fs/mkdir", Map.of("path", directory), "创建 Alist 目录失败: ", token, setting);
+    }
+
+    /**
+     * 把同一目录下的一批文件移动到另一个目录。
+     */
+    Mono<Void> moveObjects(String sourceDirectory, String targetDirectory, List<String> names, String token,
+        AlistSetting setting) {
+        return postJson("/api/fs/move", Map.of("src_dir", sourceDirectory, "dst_dir", targetDirectory, "names", names),
+            "移动 Alist 文件失败: ", token, setting);
+    }
+
+    /**
+     * 删除同一目录下的一批文件。
+     */
+    Mono<Void> removeObjects(String directory, List<String> names, String token, AlistSetting setting) {
+        return postJson("/api/fs/remove", Map.of("dir", directory, "names", names), "删除 Alist 文件失败: ", token,
+            setting);
+    }
+
+    private Mono<Void> postJson(String api, Map<String, Object> body, String errorPrefix, String token,
+        AlistSetting setting) {
+        return fastWebClient.post().uri(setting.getAlistUrl() + api)
+            .header("Authorization", token)
+            .header("Content-Type", "application/json")
+            .bodyValue(body)
+            .retrieve()
+            .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(new RuntimeException(errorPrefix + parseAlistErrorMessage(errorBody)))))
+            .bodyToMono(String.class)
+            .flatMap(this::checkAlistResponse)
+            .then();
+    }
+
     private Mono<Void> refreshAlistStorage(String uploadPath, String token, AlistSetting setting) {
-        String parentPath = uploadPath.substring(0, uploadPath.lastIndexOf('/'));
-        if (parentPath.isEmpty()) parentPath = "/";
+        return refreshDirectory(parentPath(uploadPath), token, setting).then();
+    }
+
+    private Mono<String> refreshDirectory(String parentPath, String token, AlistSetting setting) {
         log.info("[Debug AlistService] Attempting to refresh Alist cache for path: {}", parentPath);
 
         return fastWebClient.post().uri(setting.getAlistUrl() + "/api/fs/list")
@@ -209,9 +822,9 @@ public class AlistService {
             .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
                 .flatMap(errorBody -> Mono.error(new RuntimeException("Alist 缓存刷新失败: " + parseAlistErrorMessage(errorBody)))))
             .bodyToMono(String.class)
-            .doOnSuccess(response -> log.info("[Debug AlistService] Received cache refresh response: {}", response))
-            .flatMap(this::checkAlistResponse)
-            .then();
+            .doOnSuccess(response -> log.info("[Debug AlistService] Refreshed {} ({} chars).", parentPath,
+                response == null ? 0 : response.length()))
+            .flatMap(this::checkAlistResponse);
     }
 
     private Mono<ProgressUpdate> pollForSignedUrl(String path, String token, AlistSetting setting) {
@@ -240,7 +853,8 @@ public class AlistService {
         log.info("[Debug AlistService] Attempting to parse signed URL from response: {}", jsonResponse);
         try {
             JsonNode root = objectMapper.readTree(jsonResponse);
-            if (root.at("/code").asInt(-1) == 500 && "object not found".equals(root.at("/message").asText(""))) {
+            invalidateTokenIfUnauthorized(root);
+            if (root.at("/code").asInt(-1) == 500 && root.at("/message").asText("").contains("object not found")) {
                 return Mono.error(new AlistObjectNotFoundException());
             }
             String rawUrl = root.at("/data/raw_url").asText();
@@ -259,6 +873,7 @@ public class AlistService {
         log.info("[Debug AlistService] Checking Alist response: {}", jsonResponse);
         try {
             JsonNode root = objectMapper.readTree(jsonResponse);
+            invalidateTokenIfUnauthorized(root);
             if (root.at("/code").asInt(-1) == 200) {
                  log.info("[Debug AlistService] Alist response is OK (code 200).");
                 return Mono.just(jsonResponse);
@@ -273,6 +888,17 @@ public class AlistService {
         }
     }
 
+    /**
+     * Alist 在 Token 失效时仍返回 HTTP 200，只在响应体中给出 code 401。
+     * 此时丢弃缓存的 Token，下一次请求会重新登录。
+     */
+    private void invalidateTokenIfUnauthorized(JsonNode root) {
+        if (root.at("/code").asInt(-1) == 401) {
+            log.warn("[Debug AlistService] Alist token rejected, invalidating cached token.");
+            cachedToken.set(null);
+        }
+    }
+
     private boolean isAlistConfigured(AlistSetting setting) {
         return StringUtils.hasText(setting.getAlistUrl()) &&
                StringUtils.hasText(setting.getAlistUsername()) &&
@@ -302,5 +928,7 @@ public class AlistService {
     }
 
     private static class AlistObjectNotFoundException extends RuntimeException {}
+
+    private static class OfflineTaskRunningException extends RuntimeException {}
 }
 
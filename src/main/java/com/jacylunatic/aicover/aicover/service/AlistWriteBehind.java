@@ -0,0 +1,303 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.coverage.CoverIndex;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import com.jacylunatic.aicover.aicover.service.lifecycle.PluginPaths;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.halo.app.core.extension.content.Post;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 后台上传到 Alist（write-behind）。
+ * <p>
+ * 开启后，生成完成的图片先写入本地缓存并固定（不参与淘汰），立即以插件地址作为结果返回，
+ * 上传到 Alist 由后台队列完成，失败时按指数退避重试。待上传的图片记在数据目录下的日志文件中，插件重启后继续上传。
+ * 上传完成后，把封面仍指向本地地址的文章（由封面索引查出）改写为 Alist 地址；本地副本至少再保留一天，
+ * 期间保存的、仍引用本地地址的文章同样会被改写。只有在某一轮检查中已经没有文章引用本地地址时才取消固定，
+ * 改写失败的文章在之后的每一轮中重试，之后由本地缓存按容量正常淘汰。
+ */
+@Slf4j
+@Component
+public class AlistWriteBehind {
+
+    private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration UPLOAD_TIMEOUT = Duration.ofMinutes(5);
+    private static final Duration FIRST_RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(1);
+    private static final Duration KEEP_LOCAL_AFTER_UPLOAD = Duration.ofDays(1);
+    private static final int REWRITE_CONCURRENCY = 4;
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final AlistService alistService;
+    private final LocalImageCache localImageCache;
+    private final PostCoverRewriter coverRewriter;
+    private final CoverIndex coverIndex;
+    private final BlockingIoScheduler blockingIo;
+    private final GenerationLifecycleManager lifecycleManager;
+    private final PluginMetrics metrics;
+    private final Path journal;
+    private final Clock clock;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, SpoolEntry> entries = new ConcurrentHashMap<>();
+    private final Sinks.Many<Long> wakeups = Sinks.many().multicast().directBestEffort();
+
+    /**
+     * 一张等待上传（alistUrl 为 null）或已上传、本地副本尚未释放的图片。
+     *
+     * @param name                本地缓存中的文件名
+     * @param alistUrl            上传完成后的 Alist 地址
+     * @param attempts            已尝试上传的次数
+     * @param nextAttemptAtMillis 下次尝试上传的时间
+     * @param uploadedAtMillis    上传完成的时间
+     * @param lastError           最近一次上传失败的原因
+     */
+    record SpoolEntry(String name, String alistUrl, int attempts, long nextAttemptAtMillis, long uploadedAtMillis,
+                      String lastError) {
+        boolean uploaded() {
+            return alistUrl != null;
+        }
+    }
+
+    public AlistWriteBehind(ReactiveSettingFetcher settingFetcher, AlistService alistService,
+        LocalImageCache localImageCache, PostCoverRewriter coverRewriter, CoverIndex coverIndex,
+        BlockingIoScheduler blockingIo, GenerationLifecycleManager lifecycleManager, PluginMetrics metrics) {
+        this(settingFetcher, alistService, localImageCache, coverRewriter, coverIndex, blockingIo, lifecycleManager,
+            metrics, PluginPaths.dataDirectory().resolve("write-behind.json"), Clock.systemUTC());
+    }
+
+    AlistWriteBehind(ReactiveSettingFetcher settingFetcher, AlistService alistService,
+        LocalImageCache localImageCache, PostCoverRewriter coverRewriter, CoverIndex coverIndex,
+        BlockingIoScheduler blockingIo, GenerationLifecycleManager lifecycleManager, PluginMetrics metrics,
+        Path journal, Clock clock) {
+        this.settingFetcher = settingFetcher;
+        this.alistService = alistService;
+        this.localImageCache = localImageCache;
+        this.coverRewriter = coverRewriter;
+        this.coverIndex = coverIndex;
+        this.blockingIo = blockingIo;
+        this.lifecycleManager = lifecycleManager;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.clock = clock;
+    }
+
+    /**
+     * 读取上次停止时尚未完成的上传并重新固定本地文件，然后启动后台队列。
+     */
+    @PostConstruct
+    public void init() {
+        metrics.gauge("aicover.write_behind.pending",
+            () -> entries.values().stream().filter(entry -> !entry.uploaded()).count());
+        load();
+        Disposable worker = Flux.merge(Flux.interval(SWEEP_INTERVAL), wakeups.asFlux())
+            .onBackpressureDrop()
+            .concatMap(tick -> sweep()
+                .onErrorResume(error -> {
+                    log.warn("[WriteBehind] Sweep failed: {}", error.getMessage());
+                    return Mono.empty();
+                }), 1)
+            .subscribe();
+        lifecycleManager.registerResource("alist-write-behind", worker);
+    }
+
+    void load() {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        try {
+            List<SpoolEntry> saved = objectMapper.readValue(journal.toFile(), new TypeReference<List<SpoolEntry>>() {});
+            for (SpoolEntry entry : saved) {
+                if (localImageCache.pin(entry.name())) {
+                    entries.put(entry.name(), entry);
+                } else if (!entry.uploaded()) {
+                    log.warn("[WriteBehind] Local copy of {} is gone, dropping pending upload.", entry.name());
+                }
+            }
+            log.info("[WriteBehind] Restored {} spooled image(s).", entries.size());
+        } catch (IOException e) {
+            log.warn("[WriteBehind] Failed to read {}: {}", journal, e.getMessage());
+        }
+    }
+
+    public Mono<Boolean> isEnabled() {
+        return settingFetcher.fetch(AlistSetting.GROUP, AlistSetting.class)
+            .map(setting -> Boolean.TRUE.equals(setting.getAlistWriteBehind())
+                && StringUtils.hasText(setting.getAlistUrl()))
+            .defaultIfEmpty(false)
+            .onErrorReturn(false);
+    }
+
+    /**
+     * 把图片写入本地并排入上传队列，返回以插件地址结尾的进度；相同内容之前已经上传过时直接返回 Alist 地址。
+     */
+    public Mono<ProgressUpdate> accept(String imageUrl) {
+        return localImageCache.storePinned(imageUrl)
+            .flatMap(localUrl -> {
+                String name = localUrl.substring(LocalImageCache.URL_PREFIX.length());
+                SpoolEntry existing = entries.putIfAbsent(name,
+                    new SpoolEntry(name, null, 0, clock.millis(), 0, null));
+                if (existing != null && existing.uploaded()) {
+                    return Mono.just(ProgressUpdate.finalSuccess(existing.alistUrl(), "Alist 上传成功！"));
+                }
+                metrics.increment("aicover.write_behind.accepted");
+                return save()
+                    .doOnSuccess(ignored -> wakeups.tryEmitNext(clock.millis()))
+                    .thenReturn(ProgressUpdate.finalSuccess(localUrl,
+                        "图片已保存，正在后台上传到 Alist，完成后会自动把文章封面换成 Alist 地址。"));
+            });
+    }
+
+    /**
+     * 上传所有到期的图片，重试仍引用本地地址的文章的改写，并释放上传完成已满一天、且已经没有文章引用的本地副本。
+     */
+    Mono<Void> sweep() {
+        return Mono.defer(() -> {
+            long now = clock.millis();
+            List<SpoolEntry> due = entries.values().stream()
+                .filter(entry -> !entry.uploaded() && entry.nextAttemptAtMillis() <= now)
+                .sorted(Comparator.comparingLong(SpoolEntry::nextAttemptAtMillis))
+                .toList();
+            return Flux.fromIterable(due)
+                .concatMap(this::upload)
+                .then(Mono.defer(() -> release(now)));
+        });
+    }
+
+    private Mono<Void> upload(SpoolEntry entry) {
+        String name = entry.name();
+        return Deadline.apply(alistService.uploadImageFromUrl(LocalImageCache.URL_PREFIX + name), UPLOAD_TIMEOUT)
+            .filter(update -> Boolean.TRUE.equals(update.getIsFinal()) && update.getFinalImageUrl() != null)
+            .last()
+            .flatMap(update -> {
+                String alistUrl = update.getFinalImageUrl();
+                entries.put(name, new SpoolEntry(name, alistUrl, entry.attempts() + 1, 0, clock.millis(), null));
+                metrics.increment("aicover.write_behind.uploaded");
+                log.info("[WriteBehind] Uploaded {} after {} attempt(s).", name, entry.attempts() + 1);
+                return save().then(rewriteCovers(name, alistUrl));
+            })
+            .onErrorResume(error -> {
+                int attempts = entry.attempts() + 1;
+                Duration delay = retryDelay(attempts);
+                entries.put(name, new SpoolEntry(name, null, attempts, clock.millis() + delay.toMillis(), 0,
+                    error.getMessage()));
+                metrics.increment("aicover.write_behind.failures");
+                log.warn("[WriteBehind] Upload of {} failed (attempt {}), retrying in {}s: {}", name, attempts,
+                    delay.toSeconds(), error.getMessage());
+                return save();
+            });
+    }
+
+    static Duration retryDelay(int attempts) {
+        Duration delay = FIRST_RETRY_DELAY.multipliedBy(1L << Math.min(Math.max(attempts - 1, 0), 10));
+        return delay.compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : delay;
+    }
+
+    private Mono<Void> release(long now) {
+        List<SpoolEntry> uploaded = entries.values().stream().filter(SpoolEntry::uploaded).toList();
+        return Flux.fromIterable(uploaded)
+            // 上一轮改写失败、或上传后才保存的文章，在这里补上
+            .concatMap(entry -> rewriteCovers(entry.name(), entry.alistUrl()).thenReturn(entry))
+            .filter(entry -> entry.uploadedAtMillis() + KEEP_LOCAL_AFTER_UPLOAD.toMillis() <= now
+                && !coverIndex.isLocallyReferenced(entry.name()))
+            .filter(entry -> entries.remove(entry.name(), entry))
+            .doOnNext(entry -> localImageCache.unpin(entry.name()))
+            .count()
+            .flatMap(released -> {
+                if (released == 0) {
+                    return Mono.empty();
+                }
+                log.info("[WriteBehind] Released {} local copy(ies) of uploaded images.", released);
+                return save();
+            });
+    }
+
+    /**
+     * 把封面仍是本地地址的文章改写为 Alist 地址。
+     */
+    private Mono<Void> rewriteCovers(String name, String alistUrl) {
+        return Flux.fromIterable(coverIndex.postsWithLocalCover(name))
+            .flatMap(postName -> coverRewriter.rewrite(postName,
+                    cover -> name.equals(localName(cover)) ? alistUrl : null)
+                .onErrorResume(error -> {
+                    log.warn("[WriteBehind] Failed to rewrite cover of post {}: {}", postName, error.getMessage());
+                    return Mono.empty();
+                }), REWRITE_CONCURRENCY)
+            .count()
+            .doOnNext(count -> {
+                if (count > 0) {
+                    log.info("[WriteBehind] Switched {} post cover(s) to {}.", count, alistUrl);
+                }
+            })
+            .then();
+    }
+
+    /**
+     * 文章保存后调用：封面引用的本地图片已经上传完成时，改写为 Alist 地址。
+     */
+    public void onPostSaved(Post post) {
+        String name = localName(post.getSpec().getCover());
+        SpoolEntry entry = name == null ? null : entries.get(name);
+        if (entry == null || !entry.uploaded()) {
+            return;
+        }
+        coverRewriter.rewrite(post.getMetadata().getName(), cover -> name.equals(localName(cover))
+                ? entry.alistUrl() : null)
+            .subscribe(null, error -> log.warn("[WriteBehind] Failed to rewrite cover of post {}: {}",
+                post.getMetadata().getName(), error.getMessage()));
+    }
+
+    /**
+     * 封面指向本地缓存时（相对地址或带站点域名的绝对地址）返回缓存文件名，否则返回 null。
+     */
+    static String localName(String cover) {
+        return LocalImageCache.nameInUrl(cover);
+    }
+
+    private Mono<Void> save() {
+        return blockingIo.fromRunnable(this::persist);
+    }
+
+    private synchronized void persist() {
+        List<SpoolEntry> snapshot = new ArrayList<>(entries.values());
+        try {
+            Files.createDirectories(journal.getParent());
+            Path part = journal.resolveSibling(journal.getFileName() + ".part");
+            objectMapper.writeValue(part.toFile(), snapshot);
+            Files.move(part, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[WriteBehind] Failed to write {}: {}", journal, e.getMessage());
+        }
+    }
+
+    SpoolEntry entry(String name) {
+        return entries.get(name);
+    }
+}
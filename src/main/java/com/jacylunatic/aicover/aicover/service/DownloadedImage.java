@@ -0,0 +1,117 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 下载完成的图片及其内容摘要。
+ * <p>
+ * 图片要么在内存中（占用 {@link com.jacylunatic.aicover.aicover.service.image.ImageMemoryBudget} 的预算），
+ * 要么在磁盘上（溢出的临时文件或本地缓存文件）。处理完成后必须调用 {@link #release()} 归还预算或删除临时文件。
+ *
+ * @param bytes     内存中的图片内容，在磁盘上时为 null
+ * @param file      图片所在的文件，在内存中时为 null
+ * @param size      图片字节数
+ * @param sha256    下载过程中顺带计算的 SHA-256（小写十六进制），用作去重存储的文件名
+ * @param onRelease 归还预算或删除临时文件的动作
+ */
+public record DownloadedImage(byte[] bytes, Path file, long size, String sha256, Runnable onRelease) {
+
+    /**
+     * 不计入预算的小对象，例如自检用的测试文件。
+     */
+    public DownloadedImage(byte[] bytes, String sha256) {
+        this(bytes, null, bytes.length, sha256, () -> {
+        });
+    }
+
+    public static DownloadedImage inMemory(byte[] bytes, String sha256, Runnable release) {
+        return new DownloadedImage(bytes, null, bytes.length, sha256, once(release));
+    }
+
+    public static DownloadedImage spilled(Path file, long size, String sha256, Runnable release) {
+        return new DownloadedImage(null, file, size, sha256, once(release));
+    }
+
+    /**
+     * 已经在磁盘上的图片（例如本地缓存中的文件），release 时不删除文件。
+     */
+    public static DownloadedImage ofFile(Path file, long size, String sha256) {
+        return new DownloadedImage(null, file, size, sha256, () -> {
+        });
+    }
+
+    /**
+     * 图片内容在文件中（溢出的临时文件或本地缓存文件），而不是在内存中。
+     */
+    public boolean isOnDisk() {
+        return file != null;
+    }
+
+    public InputStream openStream() throws IOException {
+        return isOnDisk() ? Files.newInputStream(file) : new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * 作为请求体使用的资源：内存中的图片直接包装字节数组，溢出的图片从文件流式读取。
+     */
+    public Resource asResource() {
+        return isOnDisk() ? new FileSystemResource(file) : new ByteArrayResource(bytes);
+    }
+
+    public void release() {
+        onRelease.run();
+    }
+
+    /**
+     * 根据文件头识别图片格式，返回带点的扩展名。无法识别时按 PNG 处理，与旧版本保持一致。
+     */
+    public String extension() {
+        try (InputStream input = openStream()) {
+            return extensionOf(input.readNBytes(12));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 根据文件头（至少前 12 个字节）识别图片格式，供只读取了文件头的调用方使用。
+     */
+    public static String extensionOf(byte[] header) {
+        if (header.length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8
+            && (header[2] & 0xFF) == 0xFF) {
+            return ".jpg";
+        }
+        if (header.length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F'
+            && header[3] == 'F' && header[8] == 'W' && header[9] == 'E' && header[10] == 'B'
+            && header[11] == 'P') {
+            return ".webp";
+        }
+        return ".png";
+    }
+
+    /**
+     * 按内容寻址的文件名，例如 "3a7bd3e2...c1.png"。
+     */
+    public String contentAddressedName() {
+        return sha256 + extension();
+    }
+
+    private static Runnable once(Runnable action) {
+        AtomicBoolean done = new AtomicBoolean();
+        return () -> {
+            if (done.compareAndSet(false, true)) {
+                action.run();
+            }
+        };
+    }
+}
@@ -2,6 +2,7 @@ package com.jacylunatic.aicover.aicover.service;
 
 import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * AI 图像生成器接口。
@@ -29,4 +30,63 @@ public interface ImageGenerator {
      */
     Flux<ProgressUpdate> generateImage(String prompt, String model, String size);
 
+    /**
+     * 一次生成多张图片，每张图片完成时各发出一条带 finalImageUrl 的进度。
+     * 默认并行发起 n 个独立任务；支持单次任务出多张图的平台应当覆盖此方法。
+     *
+     * @param n 图片数量
+     */
+    default Flux<ProgressUpdate> generateImages(String prompt, String model, String size, int n) {
+        if (n <= 1) {
+            return generateImage(prompt, model, size);
+        }
+        return Flux.range(0, n).flatMap(i -> generateImage(prompt, model, size));
+    }
+
+    /**
+     * 平台 API 的基础地址，用于连接预热和诊断。
+     *
+     * @return 基础地址，未知时返回 null
+     */
+    default String getBaseUrl() {
+        return null;
+    }
+
+    /**
+     * 预热与平台之间的连接（DNS 解析、TCP 与 TLS 握手），在插件启动时异步调用。
+     * 返回的 Mono 只用于计时，其结果与错误都会被调用方忽略。
+     *
+     * @return 预热完成信号，默认不做任何事
+     */
+    default Mono<Void> warmUp() {
+        return Mono.empty();
+    }
+
+    /**
+     * 用配置的 API Key 调用一个不消耗额度的查询接口，用于自检时验证鉴权和平台可用性。
+     *
+     * @return 成功时完成；不支持时以 UnsupportedOperationException 结束
+     */
+    default Mono<Void> checkCredentials() {
+        return Mono.error(new UnsupportedOperationException("该平台不支持鉴权检查"));
+    }
+
+    /**
+     * 平台是否提供取消异步任务的接口。
+     */
+    default boolean supportsRemoteCancel() {
+        return false;
+    }
+
+    /**
+     * 取消平台侧的异步任务，在用户关闭弹窗、插件停止等情况下调用。
+     * 没有取消接口的平台默认不做任何事：进度流被取消后轮询会立即停止，只是平台侧的任务会继续跑完。
+     *
+     * @param taskId 提交任务时平台返回的任务 ID
+     * @return 取消完成信号，调用方只记录错误，不会重试
+     */
+    default Mono<Void> cancelTask(String taskId) {
+        return Mono.empty();
+    }
+
 }
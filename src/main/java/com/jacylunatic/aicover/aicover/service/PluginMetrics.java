@@ -0,0 +1,82 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 插件内部的轻量级指标登记处。
+ * <p>
+ * Halo 并不会把宿主的 MeterRegistry 共享给插件上下文，因此这里用 LongAdder 维护计数器、
+ * 用 Supplier 维护瞬时值（gauge），并通过 /api/plugins/aicover/metrics 统一对外暴露。
+ * 指标键的格式为 "name{tag1=value1,tag2=value2}"，便于后续对接 Prometheus 等系统。
+ */
+@Component
+public class PluginMetrics {
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * 计数器加一。
+     *
+     * @param name 指标名
+     * @param tags 成对出现的标签键值，例如 "platform", "tongyi"
+     */
+    public void increment(String name, String... tags) {
+        add(name, 1, tags);
+    }
+
+    public void add(String name, long delta, String... tags) {
+        counters.computeIfAbsent(key(name, tags), k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * 注册一个瞬时值指标，每次读取快照时都会重新调用 supplier。
+     */
+    public void gauge(String name, Supplier<? extends Number> supplier, String... tags) {
+        gauges.put(key(name, tags), supplier);
+    }
+
+    public long count(String name, String... tags) {
+        LongAdder adder = counters.get(key(name, tags));
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 返回按键名排序的全部指标快照。
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> result = new TreeMap<>();
+        counters.forEach((key, adder) -> result.put(key, adder.sum()));
+        gauges.forEach((key, supplier) -> {
+            Number value = supplier.get();
+            if (value != null) {
+                result.put(key, value);
+            }
+        });
+        return result;
+    }
+
+    static String key(String name, String... tags) {
+        if (tags == null || tags.length == 0) {
+            return name;
+        }
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("指标标签必须成对出现: " + name);
+        }
+        StringBuilder builder = new StringBuilder(name).append('{');
+        for (int i = 0; i < tags.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(tags[i]).append('=').append(tags[i + 1]);
+        }
+        return builder.append('}').toString();
+    }
+}
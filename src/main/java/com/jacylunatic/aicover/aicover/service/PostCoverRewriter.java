@@ -0,0 +1,57 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.jacylunatic.aicover.aicover.model.CoverAnnotations;
+import com.jacylunatic.aicover.aicover.service.coverage.CoverIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import run.halo.app.core.extension.content.Post;
+import run.halo.app.extension.ReactiveExtensionClient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * 把文章封面从旧地址改写为新地址（迁移目录布局、后台上传完成后使用）。
+ * <p>
+ * 每次都重新读取最新版本再改写，版本冲突时重试；占位信息注解指向旧封面时一并改为新地址，
+ * 改写成功后同步更新封面索引。
+ */
+@Component
+@RequiredArgsConstructor
+public class PostCoverRewriter {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final ReactiveExtensionClient client;
+    private final CoverIndex coverIndex;
+
+    /**
+     * @param newCoverFor 由当前封面得到新封面，不需要改写时返回 null
+     * @return 改写后的文章；文章不存在或不需要改写时为空
+     */
+    public Mono<Post> rewrite(String postName, UnaryOperator<String> newCoverFor) {
+        return client.fetch(Post.class, postName)
+            .flatMap(latest -> {
+                String oldCover = latest.getSpec().getCover();
+                String newCover = newCoverFor.apply(oldCover);
+                if (newCover == null || newCover.equals(oldCover)) {
+                    return Mono.empty();
+                }
+                latest.getSpec().setCover(newCover);
+                Map<String, String> annotations = latest.getMetadata().getAnnotations();
+                if (annotations != null && Objects.equals(oldCover, annotations.get(CoverAnnotations.PLACEHOLDER_FOR))) {
+                    Map<String, String> updated = new HashMap<>(annotations);
+                    updated.put(CoverAnnotations.PLACEHOLDER_FOR, newCover);
+                    latest.getMetadata().setAnnotations(updated);
+                }
+                return client.update(latest);
+            })
+            .retryWhen(Retry.max(MAX_ATTEMPTS).filter(OptimisticLockingFailureException.class::isInstance))
+            .doOnNext(coverIndex::upsert);
+    }
+}
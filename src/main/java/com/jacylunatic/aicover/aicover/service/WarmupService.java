@@ -0,0 +1,121 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacylunatic.aicover.aicover.model.AiPlatformSettings;
+import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.ModelInfo;
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 插件启动后的异步预热。
+ * <p>
+ * 部署后的第一次生成需要承担 DNS 解析、与各平台的 TLS 握手、Alist 登录以及 Jackson/Reactor
+ * 相关代码的 JIT 预热。这里在后台提前完成这些工作，并逐项记录耗时，便于评估冷启动的收益。
+ * 任何一步失败或超时都只记录日志，不影响插件启动和后续请求。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WarmupService {
+
+    private static final Duration STEP_TIMEOUT = Duration.ofSeconds(15);
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final AiImageService aiImageService;
+    private final AlistService alistService;
+    private final BlockingIoScheduler blockingIo;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 在后台线程上启动预热，立即返回。
+     */
+    public Disposable warmUpAsync() {
+        return blockingIo.scheduler()
+            .flatMap(scheduler -> warmUp().subscribeOn(scheduler))
+            .subscribe(null, error -> log.warn("[Warmup] Warm-up aborted: {}", error.getMessage()));
+    }
+
+    Mono<Void> warmUp() {
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .flatMap(setting -> {
+                if (Boolean.FALSE.equals(setting.getWarmupOnStart())) {
+                    log.info("[Warmup] Warm-up on start is disabled.");
+                    return Mono.empty();
+                }
+                return runWarmup();
+            });
+    }
+
+    private Mono<Void> runWarmup() {
+        long start = System.nanoTime();
+        log.info("[Warmup] Starting warm-up...");
+        Mono<Void> primeSettings = timed("settings", Mono.when(
+            settingFetcher.fetch(AiPlatformSettings.GROUP, AiPlatformSettings.class),
+            settingFetcher.fetch(AlistSetting.GROUP, AlistSetting.class)));
+
+        return aiImageService.getModels()
+            .map(models -> models.stream()
+                .map(ModelInfo::getId)
+                .map(id -> id.split(":", 2)[0].toLowerCase())
+                .collect(Collectors.toSet()))
+            .flatMap(platforms -> Mono.when(
+                primeSettings,
+                timed("alist login", alistService.warmUp()),
+                timed("jackson", Mono.fromCallable(() -> objectMapper.readValue(
+                    objectMapper.writeValueAsString(ProgressUpdate.finalSuccess("about:blank", "warmup")),
+                    ProgressUpdate.class))),
+                warmUpGenerators(platforms)))
+            .doOnSuccess(ignored -> log.info("[Warmup] Warm-up finished in {} ms",
+                elapsedMillis(start)));
+    }
+
+    /**
+     * 只预热模型列表中实际配置了的平台。
+     */
+    private Mono<Void> warmUpGenerators(Set<String> platforms) {
+        return Flux.fromIterable(aiImageService.getImageGenerators())
+            .filter(generator -> platforms.contains(generator.getPlatformIdentifier()))
+            .filter(generator -> generator.getBaseUrl() != null)
+            .flatMap(generator -> {
+                String platform = generator.getPlatformIdentifier();
+                String host = URI.create(generator.getBaseUrl()).getHost();
+                Mono<InetAddress[]> resolve = blockingIo.fromCallable(() -> InetAddress.getAllByName(host));
+                return timed(platform + " dns", resolve)
+                    .then(timed(platform + " connect", generator.warmUp()));
+            })
+            .then();
+    }
+
+    private Mono<Void> timed(String step, Mono<?> work) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return work.timeout(STEP_TIMEOUT)
+                .then()
+                .doOnSuccess(ignored -> log.info("[Warmup] {} warmed up in {} ms", step, elapsedMillis(start)))
+                .onErrorResume(error -> {
+                    log.warn("[Warmup] {} failed after {} ms: {}", step, elapsedMillis(start), error.getMessage());
+                    return Mono.empty();
+                });
+        });
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,62 @@
+package com.jacylunatic.aicover.aicover.service.candidates;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 多候选生成的结果登记处。
+ * <p>
+ * 候选图在生成后只保留平台的临时链接，不上传存储；作者选中其中一张时再按 ID 取出上传。
+ * 只接受登记过的 ID，避免选中接口被用来让插件下载任意地址。
+ */
+@Component
+public class CandidateRegistry {
+
+    static final int MAX_CANDIDATES = 128;
+    static final Duration MAX_AGE = Duration.ofHours(1);
+
+    public record Candidate(String id, String model, String imageUrl, long createdAt) {}
+
+    private final Map<String, Candidate> candidates = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Candidate> eldest) {
+                return size() > MAX_CANDIDATES;
+            }
+        });
+
+    private final Clock clock;
+
+    public CandidateRegistry() {
+        this(Clock.systemUTC());
+    }
+
+    CandidateRegistry(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Candidate register(String model, String imageUrl) {
+        Candidate candidate = new Candidate(UUID.randomUUID().toString(), model, imageUrl,
+            clock.millis());
+        candidates.put(candidate.id(), candidate);
+        return candidate;
+    }
+
+    /**
+     * 取出并移除一张候选图，过期或不存在时返回空。
+     */
+    public Optional<Candidate> take(String id) {
+        Candidate candidate = candidates.remove(id);
+        if (candidate == null || clock.millis() - candidate.createdAt() > MAX_AGE.toMillis()) {
+            return Optional.empty();
+        }
+        return Optional.of(candidate);
+    }
+}
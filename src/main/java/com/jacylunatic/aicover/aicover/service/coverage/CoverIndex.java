@@ -0,0 +1,271 @@
+package com.jacylunatic.aicover.aicover.service.coverage;
+
+import com.jacylunatic.aicover.aicover.model.CoverAnnotations;
+import com.jacylunatic.aicover.aicover.model.CoverCoverage;
+import com.jacylunatic.aicover.aicover.model.CoverStatus;
+import com.jacylunatic.aicover.aicover.model.PostCoverEntry;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import run.halo.app.core.extension.content.Post;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.ReactiveExtensionClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 全站文章封面状态的内存索引：文章名 → 封面状态。
+ * <p>
+ * 启动时分页列出全部文章构建一次，之后由文章更新、发布、删除事件增量维护，
+ * 统计接口直接读取计数器，列表接口按状态取出有序的文章名集合，都不需要再遍历文章。
+ * 构建期间收到的事件优先：事件处理过的文章，构建时读到的旧数据不会覆盖它。
+ * <p>
+ * 另外记录封面指向本地缓存的文章（含回收站中的，恢复后仍会用到），本地缓存淘汰时跳过这些文件；
+ * 索引构建完成前无法确定引用关系，本地缓存暂不淘汰。
+ */
+@Slf4j
+@Component
+public class CoverIndex {
+
+    private static final int PAGE_SIZE = 200;
+    private static final Duration BUILD_RETRY_DELAY = Duration.ofSeconds(30);
+    // 本插件存储的图片都以内容摘要命名
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile(".*/[0-9a-f]{64}\\.(png|jpg|webp)$");
+
+    private final ReactiveExtensionClient client;
+    private final LocalImageCache localImageCache;
+    private final PluginMetrics metrics;
+    private final GenerationLifecycleManager lifecycleManager;
+
+    private record Entry(String title, String cover, CoverStatus status) {}
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<CoverStatus, Set<String>> byStatus = new EnumMap<>(CoverStatus.class);
+    private final Map<CoverStatus, AtomicLong> counts = new EnumMap<>(CoverStatus.class);
+    // 本地缓存文件名 -> 封面引用它的文章名，以及反向的文章名 -> 文件名
+    private final Map<String, Set<String>> localReferences = new ConcurrentHashMap<>();
+    private final Map<String, String> localCoverOf = new ConcurrentHashMap<>();
+    // 构建期间由事件更新过的文章
+    private final Set<String> touchedDuringBuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready;
+
+    public CoverIndex(ReactiveExtensionClient client, LocalImageCache localImageCache, PluginMetrics metrics,
+        GenerationLifecycleManager lifecycleManager) {
+        this.client = client;
+        this.localImageCache = localImageCache;
+        this.metrics = metrics;
+        this.lifecycleManager = lifecycleManager;
+        for (CoverStatus status : CoverStatus.values()) {
+            byStatus.put(status, new ConcurrentSkipListSet<>());
+            counts.put(status, new AtomicLong());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        localImageCache.setReferenceCheck(this::isLocallyReferenced);
+        for (CoverStatus status : CoverStatus.values()) {
+            metrics.gauge("aicover.cover_index.posts", counts.get(status)::get, "status", status.name().toLowerCase());
+        }
+        Disposable build = build()
+            .retryWhen(Retry.fixedDelay(3, BUILD_RETRY_DELAY)
+                .doBeforeRetry(signal -> log.warn("[CoverIndex] Build failed, retrying: {}",
+                    signal.failure().getMessage())))
+            .subscribe(total -> log.info("[CoverIndex] Indexed {} post(s).", total),
+                error -> log.error("[CoverIndex] Failed to build cover index: {}", error.getMessage()));
+        lifecycleManager.registerResource("cover-index-build", build);
+    }
+
+    /**
+     * 逐页列出全部文章并写入索引，返回处理的文章数。
+     */
+    Mono<Long> build() {
+        AtomicLong indexed = new AtomicLong();
+        return listPage(1)
+            .expand(page -> page.hasNext() ? listPage(page.getPage() + 1) : Mono.empty())
+            .doOnNext(page -> page.getItems().forEach(post -> {
+                if (!touchedDuringBuild.contains(post.getMetadata().getName())) {
+                    apply(post);
+                }
+                indexed.incrementAndGet();
+            }))
+            .then(Mono.fromSupplier(() -> {
+                ready = true;
+                touchedDuringBuild.clear();
+                return indexed.get();
+            }));
+    }
+
+    private Mono<ListResult<Post>> listPage(int page) {
+        return client.listBy(Post.class, new ListOptions(),
+            PageRequestImpl.of(page, PAGE_SIZE, Sort.by("metadata.name")));
+    }
+
+    /**
+     * 文章创建、更新或发布后调用。
+     */
+    public void upsert(Post post) {
+        if (!ready) {
+            touchedDuringBuild.add(post.getMetadata().getName());
+        }
+        apply(post);
+    }
+
+    /**
+     * 文章被彻底删除后调用。
+     */
+    public void remove(String postName) {
+        if (!ready) {
+            touchedDuringBuild.add(postName);
+        }
+        put(postName, null);
+        referenceLocal(postName, null);
+    }
+
+    /**
+     * 本地缓存中的文件是否仍被文章封面引用。索引构建完成前一律视为引用。
+     */
+    public boolean isLocallyReferenced(String fileName) {
+        return !ready || localReferences.containsKey(fileName);
+    }
+
+    /**
+     * 封面引用本地缓存中这个文件的文章名。
+     */
+    public Set<String> postsWithLocalCover(String fileName) {
+        Set<String> posts = localReferences.get(fileName);
+        return posts == null ? Set.of() : Set.copyOf(posts);
+    }
+
+    private synchronized void referenceLocal(String postName, String fileName) {
+        String previous = fileName == null ? localCoverOf.remove(postName) : localCoverOf.put(postName, fileName);
+        if (Objects.equals(previous, fileName)) {
+            return;
+        }
+        if (previous != null) {
+            localReferences.computeIfPresent(previous, (key, posts) -> {
+                posts.remove(postName);
+                return posts.isEmpty() ? null : posts;
+            });
+        }
+        if (fileName != null) {
+            localReferences.computeIfAbsent(fileName, key -> ConcurrentHashMap.newKeySet()).add(postName);
+        }
+    }
+
+    private void apply(Post post) {
+        String name = post.getMetadata().getName();
+        referenceLocal(name, LocalImageCache.nameInUrl(post.getSpec().getCover()));
+        // 移入回收站的文章不再需要封面
+        if (post.getMetadata().getDeletionTimestamp() != null || Boolean.TRUE.equals(post.getSpec().getDeleted())) {
+            put(name, null);
+            return;
+        }
+        String cover = post.getSpec().getCover();
+        put(name, new Entry(post.getSpec().getTitle(), cover, classify(cover, post.getMetadata().getAnnotations())));
+    }
+
+    private synchronized void put(String name, Entry entry) {
+        Entry previous = entry == null ? entries.remove(name) : entries.put(name, entry);
+        CoverStatus before = previous == null ? null : previous.status();
+        CoverStatus after = entry == null ? null : entry.status();
+        if (before == after) {
+            return;
+        }
+        if (before != null) {
+            byStatus.get(before).remove(name);
+            counts.get(before).decrementAndGet();
+        }
+        if (after != null) {
+            byStatus.get(after).add(name);
+            counts.get(after).incrementAndGet();
+        }
+    }
+
+    CoverStatus classify(String cover, Map<String, String> annotations) {
+        if (!StringUtils.hasText(cover)) {
+            return CoverStatus.MISSING;
+        }
+        if (cover.startsWith(LocalImageCache.URL_PREFIX)) {
+            String name = cover.substring(LocalImageCache.URL_PREFIX.length());
+            return localImageCache.contains(name) ? CoverStatus.AI_GENERATED : CoverStatus.BROKEN;
+        }
+        URI uri;
+        try {
+            uri = URI.create(cover.trim());
+        } catch (IllegalArgumentException e) {
+            return CoverStatus.BROKEN;
+        }
+        String scheme = uri.getScheme();
+        boolean relative = scheme == null && cover.startsWith("/");
+        if (!relative && !"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return CoverStatus.BROKEN;
+        }
+        if (isExpiringLink(uri)) {
+            return CoverStatus.BROKEN;
+        }
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        boolean generated = CONTENT_ADDRESSED.matcher(path).matches()
+            || (annotations != null && cover.equals(annotations.get(CoverAnnotations.PLACEHOLDER_FOR)));
+        return generated ? CoverStatus.AI_GENERATED : CoverStatus.MANUAL;
+    }
+
+    /**
+     * 带过期签名的对象存储链接（AI 平台返回的临时链接都是这种），迟早会失效。
+     */
+    public static boolean isExpiringLink(URI uri) {
+        if (uri.getRawQuery() == null) {
+            return false;
+        }
+        Map<String, List<String>> params = UriComponentsBuilder.fromUri(uri).build().getQueryParams();
+        return params.containsKey("Expires") || params.containsKey("X-Amz-Expires")
+            || params.containsKey("x-oss-expires");
+    }
+
+    public CoverCoverage coverage() {
+        CoverCoverage coverage = new CoverCoverage();
+        Map<CoverStatus, Long> snapshot = new EnumMap<>(CoverStatus.class);
+        counts.forEach((status, count) -> snapshot.put(status, count.get()));
+        coverage.setReady(ready);
+        coverage.setCounts(snapshot);
+        coverage.setTotal(snapshot.values().stream().mapToLong(Long::longValue).sum());
+        coverage.setNeedsCover(snapshot.get(CoverStatus.MISSING) + snapshot.get(CoverStatus.BROKEN));
+        return coverage;
+    }
+
+    /**
+     * 按文章名排序分页列出某个状态的文章，page 从 1 开始。
+     */
+    public List<PostCoverEntry> list(CoverStatus status, int page, int size) {
+        return byStatus.get(status).stream()
+            .skip((long) (Math.max(page, 1) - 1) * size)
+            .limit(size)
+            .map(name -> {
+                Entry entry = entries.get(name);
+                return entry == null ? null : new PostCoverEntry(name, entry.title(), entry.cover(), entry.status());
+            })
+            .filter(Objects::nonNull)
+            .toList();
+    }
+}
@@ -0,0 +1,156 @@
+package com.jacylunatic.aicover.aicover.service.diagnostics;
+
+import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.DiagnosticCheck;
+import com.jacylunatic.aicover.aicover.service.AiImageService;
+import com.jacylunatic.aicover.aicover.service.AlistService;
+import com.jacylunatic.aicover.aicover.service.ImageGenerator;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 连通性与延迟自检：对每个平台和 Alist 分阶段计时，帮助判断慢在 DNS、TLS、平台还是存储。
+ * <p>
+ * 每个目标的各阶段按顺序执行，可重复多次以计算分位数；不同目标之间并行。
+ * 平台的鉴权检查只调用查询类接口，不会提交生成任务、不消耗额度。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DiagnosticsService {
+
+    public static final int MAX_REPEAT = 10;
+    private static final Duration NETWORK_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration STAGE_TIMEOUT = Duration.ofSeconds(20);
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final AiImageService aiImageService;
+    private final AlistService alistService;
+    private final BlockingIoScheduler blockingIo;
+
+    public Mono<List<DiagnosticCheck>> run(int repeat) {
+        int samples = Math.max(1, Math.min(repeat, MAX_REPEAT));
+        Flux<List<DiagnosticCheck>> generators = Flux.fromIterable(aiImageService.getImageGenerators())
+            .flatMapSequential(generator -> diagnoseGenerator(generator, samples));
+        Mono<List<DiagnosticCheck>> alist = settingFetcher.fetch(AlistSetting.GROUP, AlistSetting.class)
+            .filter(setting -> StringUtils.hasText(setting.getAlistUrl()))
+            .flatMap(setting -> diagnoseEndpoint("alist", URI.create(setting.getAlistUrl()),
+                alistService.probe(), samples))
+            .defaultIfEmpty(List.of(skipped("alist", "login", "未配置 Alist")));
+        return Flux.concat(generators, alist)
+            .flatMapIterable(checks -> checks)
+            .collectList();
+    }
+
+    private Mono<List<DiagnosticCheck>> diagnoseGenerator(ImageGenerator generator, int samples) {
+        String target = generator.getPlatformIdentifier();
+        if (generator.getBaseUrl() == null) {
+            return Mono.just(List.of(skipped(target, "dns", "未提供基础地址")));
+        }
+        Mono<List<StageTiming>> auth = timed("auth", generator.checkCredentials()).map(List::of);
+        return diagnoseEndpoint(target, URI.create(generator.getBaseUrl()), auth, samples);
+    }
+
+    /**
+     * 对一个地址做 samples 次采样：每次先测网络各阶段，再执行 extraStages（鉴权、存储读写等）。
+     * 网络阶段失败时本次采样不再执行后续阶段。
+     */
+    Mono<List<DiagnosticCheck>> diagnoseEndpoint(String target, URI uri, Mono<List<StageTiming>> extraStages,
+        int samples) {
+        Mono<List<StageTiming>> sample = blockingIo.fromCallable(() -> NetworkProbe.probe(uri, NETWORK_TIMEOUT))
+            .flatMap(network -> network.stream().anyMatch(timing -> timing.error() != null && !timing.skipped())
+                ? Mono.just(network)
+                : extraStages
+                    .timeout(STAGE_TIMEOUT)
+                    .onErrorResume(error -> Mono.just(List.of(StageTiming.failed("probe", 0, error))))
+                    .map(extra -> {
+                        List<StageTiming> all = new ArrayList<>(network);
+                        all.addAll(extra);
+                        return all;
+                    }));
+        return Flux.range(0, samples)
+            .concatMap(i -> sample)
+            .collectList()
+            .map(all -> summarize(target, all))
+            .doOnNext(checks -> log.info("[Diagnostics] {}: {}", target, checks));
+    }
+
+    /**
+     * 给一个只关心成败的调用计时。UnsupportedOperationException 表示该平台不支持这项检查。
+     */
+    static Mono<StageTiming> timed(String stage, Mono<Void> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                .then(Mono.fromSupplier(() -> StageTiming.ok(stage, System.nanoTime() - start)))
+                .onErrorResume(UnsupportedOperationException.class,
+                    error -> Mono.just(StageTiming.skipped(stage, error.getMessage())))
+                .onErrorResume(error -> Mono.just(StageTiming.failed(stage, System.nanoTime() - start, error)));
+        });
+    }
+
+    static List<DiagnosticCheck> summarize(String target, List<List<StageTiming>> samples) {
+        Map<String, List<StageTiming>> byStage = new LinkedHashMap<>();
+        samples.forEach(sample -> sample.forEach(timing ->
+            byStage.computeIfAbsent(timing.stage(), key -> new ArrayList<>()).add(timing)));
+        List<DiagnosticCheck> checks = new ArrayList<>();
+        byStage.forEach((stage, timings) -> {
+            DiagnosticCheck check = new DiagnosticCheck();
+            check.setTarget(target);
+            check.setStage(stage);
+            long[] succeeded = timings.stream()
+                .filter(StageTiming::succeeded)
+                .mapToLong(StageTiming::nanos)
+                .sorted()
+                .toArray();
+            check.setSamples(succeeded.length);
+            if (succeeded.length > 0) {
+                check.setP50Millis(percentile(succeeded, 0.5));
+                check.setP95Millis(percentile(succeeded, 0.95));
+                check.setMaxMillis(succeeded[succeeded.length - 1] / 1_000_000.0);
+            }
+            StageTiming lastProblem = timings.stream()
+                .filter(timing -> !timing.succeeded())
+                .reduce((first, second) -> second)
+                .orElse(null);
+            if (lastProblem == null) {
+                check.setStatus("ok");
+            } else {
+                check.setStatus(lastProblem.skipped() ? "skipped" : "failed");
+                check.setMessage(lastProblem.error());
+            }
+            checks.add(check);
+        });
+        return checks;
+    }
+
+    /**
+     * 最近秩法求分位数，返回毫秒。
+     */
+    static double percentile(long[] sortedNanos, double quantile) {
+        int rank = (int) Math.ceil(quantile * sortedNanos.length);
+        return sortedNanos[Math.max(0, rank - 1)] / 1_000_000.0;
+    }
+
+    private static DiagnosticCheck skipped(String target, String stage, String message) {
+        DiagnosticCheck check = new DiagnosticCheck();
+        check.setTarget(target);
+        check.setStage(stage);
+        check.setStatus("skipped");
+        check.setMessage(message);
+        return check;
+    }
+}
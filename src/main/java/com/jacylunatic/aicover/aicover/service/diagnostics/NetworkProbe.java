@@ -0,0 +1,68 @@
+package com.jacylunatic.aicover.aicover.service.diagnostics;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分阶段测量到某个地址的 DNS 解析、TCP 连接和 TLS 握手耗时。
+ * <p>
+ * 直接使用阻塞 Socket 而不是 WebClient：连接池会复用已有连接，测不出握手本身的耗时。
+ * 注意 JVM 会缓存 DNS 结果（默认 30 秒），重复采样时 DNS 阶段通常接近 0。
+ */
+final class NetworkProbe {
+
+    private NetworkProbe() {
+    }
+
+    /**
+     * 依次执行各阶段，某一阶段失败后不再继续。阻塞调用，需要在阻塞 I/O 调度器上执行。
+     */
+    static List<StageTiming> probe(URI uri, Duration timeout) {
+        List<StageTiming> timings = new ArrayList<>();
+        String host = uri.getHost();
+        boolean tls = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : (tls ? 443 : 80);
+        int timeoutMillis = (int) timeout.toMillis();
+
+        long start = System.nanoTime();
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(host);
+            timings.add(StageTiming.ok("dns", System.nanoTime() - start));
+        } catch (IOException e) {
+            timings.add(StageTiming.failed("dns", System.nanoTime() - start, e));
+            return timings;
+        }
+
+        String stage = "connect";
+        try (Socket socket = new Socket()) {
+            start = System.nanoTime();
+            socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+            timings.add(StageTiming.ok(stage, System.nanoTime() - start));
+
+            if (!tls) {
+                timings.add(StageTiming.skipped("tls", "非 HTTPS 地址"));
+                return timings;
+            }
+            stage = "tls";
+            start = System.nanoTime();
+            try (SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                .createSocket(socket, host, port, false)) {
+                sslSocket.setSoTimeout(timeoutMillis);
+                sslSocket.startHandshake();
+                timings.add(StageTiming.ok(stage, System.nanoTime() - start));
+            }
+        } catch (IOException e) {
+            timings.add(StageTiming.failed(stage, System.nanoTime() - start, e));
+        }
+        return timings;
+    }
+}
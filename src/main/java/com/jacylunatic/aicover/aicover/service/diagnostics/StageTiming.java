@@ -0,0 +1,29 @@
+package com.jacylunatic.aicover.aicover.service.diagnostics;
+
+/**
+ * 一次采样中单个阶段的耗时。
+ *
+ * @param stage   阶段名
+ * @param nanos   耗时（纳秒），失败时为失败前已花费的时间
+ * @param error   失败原因，成功时为 null
+ * @param skipped 该阶段不适用（例如 http 地址没有 TLS 握手）
+ */
+public record StageTiming(String stage, long nanos, String error, boolean skipped) {
+
+    public static StageTiming ok(String stage, long nanos) {
+        return new StageTiming(stage, nanos, null, false);
+    }
+
+    public static StageTiming failed(String stage, long nanos, Throwable error) {
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        return new StageTiming(stage, nanos, message, false);
+    }
+
+    public static StageTiming skipped(String stage, String reason) {
+        return new StageTiming(stage, 0, reason, true);
+    }
+
+    public boolean succeeded() {
+        return error == null && !skipped;
+    }
+}
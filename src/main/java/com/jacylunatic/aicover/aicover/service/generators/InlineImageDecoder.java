@@ -0,0 +1,64 @@
+package com.jacylunatic.aicover.aicover.service.generators;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 从 OpenAI 兼容的图片生成响应中流式取出第一张内联图片（b64_json）。
+ * <p>
+ * 用 Jackson 的流式解析器逐个读取 token，遇到 b64_json 字段时由 readBinaryValue 边读边做 Base64 解码并写入输出流，
+ * 完整的 JSON 字符串和解码后的字节数组都不会出现在内存中。其余字符串字段在跳过时同样不会被整体读出。
+ * 平台忽略了 response_format、仍然返回链接时，记下第一个 url 字段供调用方回退。
+ */
+final class InlineImageDecoder {
+
+    static final String FORMAT_B64_JSON = "b64_json";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * @param imageBytes   写入输出流的图片字节数，没有内联图片时为 0
+     * @param url          响应中的第一个图片链接
+     * @param errorMessage 响应中的第一个 message 字段，用于拼出错误提示
+     */
+    record Result(long imageBytes, String url, String errorMessage) {
+        boolean hasImage() {
+            return imageBytes > 0;
+        }
+    }
+
+    private InlineImageDecoder() {
+    }
+
+    static Result decode(InputStream input, OutputStream output) throws IOException {
+        long imageBytes = 0;
+        String url = null;
+        String errorMessage = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.FIELD_NAME) {
+                    continue;
+                }
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                    // 对象和数组继续向内遍历
+                    continue;
+                }
+                if (FORMAT_B64_JSON.equals(field) && imageBytes == 0) {
+                    imageBytes = parser.readBinaryValue(output);
+                } else if ("url".equals(field) && url == null) {
+                    url = parser.getText();
+                } else if ("message".equals(field) && errorMessage == null) {
+                    errorMessage = parser.getText();
+                }
+            }
+        }
+        return new Result(imageBytes, url, errorMessage);
+    }
+}
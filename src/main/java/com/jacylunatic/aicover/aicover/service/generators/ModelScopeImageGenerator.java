@@ -6,9 +6,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jacylunatic.aicover.aicover.model.AiPlatformSettings;
 import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
 import com.jacylunatic.aicover.aicover.service.ImageGenerator;
+import com.jacylunatic.aicover.aicover.service.resilience.ApiKeyPool;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import com.jacylunatic.aicover.aicover.service.resilience.ProviderApiException;
+import com.jacylunatic.aicover.aicover.service.resilience.RetryPolicy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -16,6 +21,7 @@ import run.halo.app.plugin.ReactiveSettingFetcher;
 
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -23,36 +29,80 @@ import java.util.Map;
 public class ModelScopeImageGenerator implements ImageGenerator {
 
     private final ReactiveSettingFetcher settingFetcher;
-    private final WebClient webClient = WebClient.builder().build();
+    private final RetryPolicy retryPolicy;
+    private final WebClient webClient;
+    private final ApiKeyPool keyPool;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private static final String BASE_URL = "https://api-inference.modelscope.cn/";
+    private static final Duration SUBMIT_RETRY_WINDOW = Duration.ofSeconds(30);
+    // 轮询间隔为 5 秒，单次查询的重试窗口不宜过长，否则会挤占后续轮询
+    private static final Duration POLL_RETRY_WINDOW = Duration.ofSeconds(15);
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(5);
+    // 轮询时长由请求的截止时间决定，这里只是没有截止时间时的兜底上限
+    private static final Duration MAX_TASK_DURATION = Duration.ofMinutes(30);
 
     @Override
     public String getPlatformIdentifier() {
         return "modelscope";
     }
 
+    @Override
+    public String getBaseUrl() {
+        return BASE_URL;
+    }
+
+    @Override
+    public Mono<Void> warmUp() {
+        return webClient.head().uri(BASE_URL).exchangeToMono(ClientResponse::releaseBody);
+    }
+
+    /**
+     * 列出 API-Inference 可用的模型，不消耗额度。
+     */
+    @Override
+    public Mono<Void> checkCredentials() {
+        return settingFetcher.fetch(AiPlatformSettings.GROUP, AiPlatformSettings.class)
+            .switchIfEmpty(Mono.just(new AiPlatformSettings()))
+            .map(setting -> ApiKeyPool.parseKeys(setting.getModelscopeApiKey()))
+            .filter(keys -> !keys.isEmpty())
+            .switchIfEmpty(Mono.error(new IllegalStateException("未在插件设置中找到魔塔（ModelScope）的 API Key (MODELSCOPE_SDK_TOKEN)")))
+            .flatMap(keys -> keyPool.withKey(getPlatformIdentifier(), keys, lease -> webClient.get()
+                    .uri(BASE_URL + "v1/models")
+                    .header("Authorization", "Bearer " + lease.key())
+                    .retrieve()
+                    .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .flatMap(errorBody -> Mono.error(ProviderApiException.from(response,
+                            "魔塔鉴权检查失败: " + parseErrorMessage(errorBody)))))
+                    .toBodilessEntity()
+                    .doOnError(lease::reportFailure)
+                    .flux())
+                .then());
+    }
+
     @Override
     public Flux<ProgressUpdate> generateImage(String prompt, String model, String size) {
-        Mono<String> apiKeyMono = settingFetcher.fetch(AiPlatformSettings.GROUP, AiPlatformSettings.class)
+        Mono<List<String>> apiKeysMono = settingFetcher.fetch(AiPlatformSettings.GROUP, AiPlatformSettings.class)
             .switchIfEmpty(Mono.just(new AiPlatformSettings()))
             .flatMap(setting -> {
-                String apiKey = setting.getModelscopeApiKey();
-                if (apiKey == null || apiKey.isBlank()) {
+                List<String> apiKeys = ApiKeyPool.parseKeys(setting.getModelscopeApiKey());
+                if (apiKeys.isEmpty()) {
                     return Mono.error(new IllegalStateException("未在插件设置中找到魔塔（ModelScope）的 API Key (MODELSCOPE_SDK_TOKEN)"));
                 }
-                return Mono.just(apiKey);
+                return Mono.just(apiKeys);
             });
 
-        return apiKeyMono.flux().concatMap(apiKey ->
-            Flux.concat(
-                Mono.just(new ProgressUpdate("正在提交至魔塔（ModelScope）...")),
-                submitGenerationTask(prompt, model, size, apiKey)
-                    .flux()
-                    .concatMap(taskId -> pollTaskResultWithProgress(taskId, apiKey))
-            )
-        );
+        // 每次提交重新选择 Key；轮询必须使用提交任务时的 Key，提交成功后租约覆盖整个任务
+        return apiKeysMono.flatMapMany(apiKeys -> Flux.concat(
+            Mono.just(new ProgressUpdate("正在提交至魔塔（ModelScope）...")),
+            keyPool.withKey(getPlatformIdentifier(), apiKeys,
+                lease -> submitGenerationTask(prompt, model, size, lease.key()),
+                retryPolicy.transientErrors(getPlatformIdentifier(), "submit", SUBMIT_RETRY_WINDOW),
+                (lease, taskId) -> Flux.concat(
+                    Mono.just(ProgressUpdate.taskSubmitted(taskId, "任务已提交，等待魔塔处理...")),
+                    pollTaskResultWithProgress(taskId, lease.key())))
+        ));
     }
 
     private Mono<String> submitGenerationTask(String prompt, String model, String size, String apiKey) {
@@ -79,7 +129,9 @@ public class ModelScopeImageGenerator implements ImageGenerator {
             .bodyValue(requestBody)
             .retrieve()
             .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
-                .flatMap(errorBody -> Mono.error(new RuntimeException("魔塔 API 请求失败: " + parseErrorMessage(errorBody)))))
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(ProviderApiException.from(response,
+                    "魔塔 API 请求失败: " + parseErrorMessage(errorBody)))))
             .bodyToMono(String.class)
             .flatMap(this::parseTaskIdFromResponse);
     }
@@ -91,21 +143,15 @@ public class ModelScopeImageGenerator implements ImageGenerator {
 
         // 使用 Flux.interval 定期轮询，每次轮询都发送进度更新以保持 SSE 连接
         // 使用 concatMap 确保每次轮询按顺序执行，避免并发问题
-        return Flux.interval(Duration.ZERO, Duration.ofSeconds(5))
-            .concatMap(attempt -> {
-                if (attempt >= 60) {
-                    // 超过最大轮询次数
-                    return Mono.just(ProgressUpdate.error("图片生成超时（5分钟），请稍后再试。"));
-                }
-                
-                // 执行一次轮询，每次轮询都会发送进度更新
-                return pollOnce(url, apiKey);
-            })
+        // 魔塔没有公开的任务取消接口，订阅被取消（包括到达截止时间）时 interval 随之停止，不会再发起查询
+        Flux<ProgressUpdate> polling = Flux.interval(Duration.ZERO, POLL_INTERVAL)
+            // 执行一次轮询，每次轮询都会发送进度更新
+            .concatMap(attempt -> pollOnce(url, apiKey))
             .takeUntil(update -> {
                 // 收到最终结果（成功或失败）时停止轮询
                 return update.getFinalImageUrl() != null || Boolean.TRUE.equals(update.getIsError());
-            })
-            .take(61); // 最多 60 次轮询 + 1 次超时消息
+            });
+        return Deadline.limit(polling, "魔塔图片生成", MAX_TASK_DURATION);
     }
 
     private Mono<ProgressUpdate> pollOnce(String url, String apiKey) {
@@ -115,8 +161,12 @@ public class ModelScopeImageGenerator implements ImageGenerator {
             .header("X-ModelScope-Task-Type", "image_generation")
             .retrieve()
             .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
-                .flatMap(errorBody -> Mono.error(new RuntimeException("查询任务状态失败: " + parseErrorMessage(errorBody)))))
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(ProviderApiException.from(response,
+                    "查询任务状态失败: " + parseErrorMessage(errorBody)))))
             .bodyToMono(String.class)
+            // 暂时性错误先按退避策略重试，避免一次查询失败就终止整个轮询
+            .retryWhen(retryPolicy.transientErrors(getPlatformIdentifier(), "poll", POLL_RETRY_WINDOW))
             .flatMap(this::checkTaskStatusAndReturnProgress)
             .onErrorResume(error -> {
                 log.error("[ModelScope] Error polling task status", error);
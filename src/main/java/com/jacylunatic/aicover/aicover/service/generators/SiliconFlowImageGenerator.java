@@ -6,30 +6,86 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jacylunatic.aicover.aicover.model.AiPlatformSettings;
 import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
 import com.jacylunatic.aicover.aicover.service.ImageGenerator;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.resilience.ApiKeyPool;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import com.jacylunatic.aicover.aicover.service.resilience.ProviderApiException;
+import com.jacylunatic.aicover.aicover.service.resilience.RetryPolicy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import run.halo.app.plugin.ReactiveSettingFetcher;
 
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @RequiredArgsConstructor
 public class SiliconFlowImageGenerator implements ImageGenerator {
 
     private final ReactiveSettingFetcher settingFetcher;
-    private final WebClient webClient = WebClient.builder().build();
+    private final RetryPolicy retryPolicy;
+    private final WebClient webClient;
+    private final ApiKeyPool keyPool;
+    private final LocalImageCache localImageCache;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final String BASE_URL = "https://api.siliconflow.cn/v1/";
+    private static final Duration RETRY_WINDOW = Duration.ofSeconds(30);
+    // 同步接口本身没有超时，由请求的截止时间决定；这里只是没有截止时间时的兜底上限
+    private static final Duration MAX_CALL_DURATION = Duration.ofMinutes(10);
+    // 解码内联图片时向响应流预取的数据块数
+    private static final int INLINE_READ_AHEAD = 4;
+
     @Override
     public String getPlatformIdentifier() {
         return "siliconflow";
     }
 
+    @Override
+    public String getBaseUrl() {
+        return BASE_URL;
+    }
+
+    @Override
+    public Mono<Void> warmUp() {
+        return webClient.head().uri(BASE_URL).exchangeToMono(ClientResponse::releaseBody);
+    }
+
+    /**
+     * 查询账户信息，不消耗额度。
+     */
+    @Override
+    public Mono<Void> checkCredentials() {
+        return settingFetcher.fetch(AiPlatformSettings.GROUP, AiPlatformSettings.class)
+            .switchIfEmpty(Mono.just(new AiPlatformSettings()))
+            .map(setting -> ApiKeyPool.parseKeys(setting.getSiliconflowApiKey()))
+            .filter(keys -> !keys.isEmpty())
+            .switchIfEmpty(Mono.error(new IllegalStateException("未在插件设置中找到硅基流动的 API Key。")))
+            .flatMap(keys -> keyPool.withKey(getPlatformIdentifier(), keys, lease -> webClient.get()
+                    .uri(BASE_URL + "user/info")
+                    .header("Authorization", "Bearer " + lease.key())
+                    .retrieve()
+                    .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .flatMap(errorBody -> Mono.error(ProviderApiException.from(response,
+                            "硅基流动鉴权检查失败: " + errorBody))))
+                    .toBodilessEntity()
+                    .doOnError(lease::reportFailure)
+                    .flux())
+                .then());
+    }
+
     @Override
     public Flux<ProgressUpdate> generateImage(String prompt, String model, String size) {
         // --- 核心改造：获取统一的 AI 平台设置 ---
@@ -37,40 +93,86 @@ public class SiliconFlowImageGenerator implements ImageGenerator {
             .switchIfEmpty(Mono.just(new AiPlatformSettings()));
 
         return settingMono.flux().concatMap(setting -> {
-            // --- 核心改造：调用 siliconflowApiKey 的 getter ---
-            String apiKey = setting.getSiliconflowApiKey();
-            if (apiKey == null || apiKey.isBlank()) {
+            // --- 核心改造：调用 siliconflowApiKey 的 getter，可以配置多个 Key ---
+            List<String> apiKeys = ApiKeyPool.parseKeys(setting.getSiliconflowApiKey());
+            if (apiKeys.isEmpty()) {
                 return Flux.just(ProgressUpdate.error("未在插件设置中找到硅基流动的 API Key。"));
             }
+            boolean inline = InlineImageDecoder.FORMAT_B64_JSON.equals(setting.getSiliconflowResponseFormat());
+            // 每次尝试重新选择 Key，被限流或鉴权失败的 Key 不会原地重试
             return Flux.concat(
                 Mono.just(new ProgressUpdate("正在提交至硅基流动...")),
-                callApi(prompt, model, size, apiKey)
+                Deadline.limit(keyPool.withKey(getPlatformIdentifier(), apiKeys,
+                        lease -> callApi(prompt, model, size, inline, lease.key()),
+                        retryPolicy.transientErrors(getPlatformIdentifier(), "generate", RETRY_WINDOW),
+                        (lease, update) -> Flux.just(update)),
+                    "硅基流动图片生成", MAX_CALL_DURATION)
             );
         });
     }
 
-    private Flux<ProgressUpdate> callApi(String prompt, String model, String size, String apiKey) {
-        String url = "https://api.siliconflow.cn/v1/images/generations";
+    private Mono<ProgressUpdate> callApi(String prompt, String model, String size, boolean inline,
+        String apiKey) {
+        String url = BASE_URL + "images/generations";
         String formattedSize = size.replace('*', 'x');
 
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
         requestBody.put("prompt", prompt);
         requestBody.put("image_size", formattedSize);
+        if (inline) {
+            requestBody.put("response_format", InlineImageDecoder.FORMAT_B64_JSON);
+        }
 
         log.info("[SiliconFlow] Sending request to SiliconFlow API with body: {}", requestBody);
 
-        return webClient.post()
+        WebClient.RequestHeadersSpec<?> request = webClient.post()
             .uri(url)
             .header("Authorization", "Bearer " + apiKey)
             .header("Content-Type", "application/json")
-            .bodyValue(requestBody)
-            .retrieve()
-            .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
-                .flatMap(errorBody -> Mono.error(new RuntimeException("硅基流动 API 请求失败: " + errorBody))))
-            .bodyToMono(String.class)
-            .flatMap(this::parseResponse)
-            .flux();
+            .bodyValue(requestBody);
+        return inline
+            ? request.exchangeToMono(this::storeInlineImage)
+            : request.retrieve()
+                .onStatus(HttpStatusCode::isError, this::toApiException)
+                .bodyToMono(String.class)
+                .flatMap(this::parseResponse);
+    }
+
+    private Mono<ProviderApiException> toApiException(ClientResponse response) {
+        return response.bodyToMono(String.class)
+            .defaultIfEmpty("")
+            .map(errorBody -> ProviderApiException.from(response, "硅基流动 API 请求失败: " + errorBody));
+    }
+
+    /**
+     * b64_json 模式：响应体以数据块流的形式交给流式解析器，解码出的图片字节直接写入本地缓存的临时文件，
+     * 最终返回插件提供的图片地址。平台仍然返回链接时按链接处理。
+     */
+    private Mono<ProgressUpdate> storeInlineImage(ClientResponse response) {
+        if (response.statusCode().isError()) {
+            return toApiException(response).flatMap(Mono::error);
+        }
+        Flux<DataBuffer> body = response.bodyToFlux(DataBuffer.class);
+        AtomicReference<InlineImageDecoder.Result> parsed = new AtomicReference<>();
+        return localImageCache.storeInline(output -> {
+                try (InputStream input = DataBufferUtils.subscriberInputStream(body, INLINE_READ_AHEAD)) {
+                    InlineImageDecoder.Result result = InlineImageDecoder.decode(input, output);
+                    parsed.set(result);
+                    log.info("[SiliconFlow] Decoded {} inline image bytes.", result.imageBytes());
+                    return result.hasImage();
+                }
+            })
+            .map(localUrl -> ProgressUpdate.finalSuccess(localUrl, "硅基流动绘图成功！"))
+            .switchIfEmpty(Mono.fromSupplier(() -> {
+                InlineImageDecoder.Result result = parsed.get();
+                if (result != null && result.url() != null) {
+                    return ProgressUpdate.finalSuccess(result.url(), "硅基流动绘图成功！");
+                }
+                log.error("在硅基流动响应中未找到内联图片。");
+                return ProgressUpdate.error(result != null && result.errorMessage() != null
+                    ? result.errorMessage() : "无法从硅基流动响应中解析图片");
+            }));
     }
 
     private Mono<ProgressUpdate> parseResponse(String jsonResponse) {
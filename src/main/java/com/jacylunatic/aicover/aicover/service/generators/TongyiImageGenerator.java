@@ -6,9 +6,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jacylunatic.aicover.aicover.model.AiPlatformSettings;
 import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
 import com.jacylunatic.aicover.aicover.service.ImageGenerator;
+import com.jacylunatic.aicover.aicover.service.resilience.ApiKeyPool;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import com.jacylunatic.aicover.aicover.service.resilience.ProviderApiException;
+import com.jacylunatic.aicover.aicover.service.resilience.RetryPolicy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -16,15 +21,31 @@ import reactor.util.retry.Retry;
 import run.halo.app.plugin.ReactiveSettingFetcher;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @RequiredArgsConstructor
 public class TongyiImageGenerator implements ImageGenerator {
 
     private final ReactiveSettingFetcher settingFetcher;
-    private final WebClient webClient = WebClient.builder().build();
+    private final RetryPolicy retryPolicy;
+    private final WebClient webClient;
+    private final ApiKeyPool keyPool;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    // 轮询和取消必须使用提交任务时的 Key
+    private final Map<String, String> taskKeys = new ConcurrentHashMap<>();
+
+    private static final String BASE_URL = "https://dashscope.aliyuncs.com/api/v1/";
+    private static final Duration SUBMIT_RETRY_WINDOW = Duration.ofSeconds(30);
+    private static final Duration POLL_RETRY_WINDOW = Duration.ofSeconds(20);
+    private static final Duration CANCEL_RETRY_WINDOW = Duration.ofSeconds(10);
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(2);
+    // 轮询时长由请求的截止时间决定，这里只是没有截止时间时的兜底上限
+    private static final Duration MAX_TASK_DURATION = Duration.ofMinutes(30);
+    private static final int MAX_IMAGES_PER_TASK = 4;
 
     private static class PollAgainException extends RuntimeException {}
 
@@ -33,36 +54,110 @@ public class TongyiImageGenerator implements ImageGenerator {
         return "tongyi";
     }
 
+    @Override
+    public String getBaseUrl() {
+        return BASE_URL;
+    }
+
+    @Override
+    public Mono<Void> warmUp() {
+        return webClient.head().uri(BASE_URL).exchangeToMono(ClientResponse::releaseBody);
+    }
+
+    /**
+     * 查询最近的一个任务，不会提交新任务。
+     */
+    @Override
+    public Mono<Void> checkCredentials() {
+        return fetchApiKeys().flatMap(keys -> keyPool.withKey(getPlatformIdentifier(), keys, lease -> webClient.get()
+                .uri(BASE_URL + "tasks?page_no=1&page_size=1")
+                .header("Authorization", "Bearer " + lease.key())
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                    .defaultIfEmpty("")
+                    .flatMap(errorBody -> Mono.error(ProviderApiException.from(response,
+                        "通义万相鉴权检查失败: " + parseErrorMessage(errorBody)))))
+                .toBodilessEntity()
+                .doOnError(lease::reportFailure)
+                .flux())
+            .then());
+    }
+
+    @Override
+    public boolean supportsRemoteCancel() {
+        return true;
+    }
+
+    /**
+     * 调用 DashScope 的任务取消接口。只有仍在排队（PENDING）的任务能被取消，
+     * 已经开始运行的任务会返回错误，由调用方记录后忽略。
+     */
+    @Override
+    public Mono<Void> cancelTask(String taskId) {
+        String taskKey = taskKeys.remove(taskId);
+        // 插件重启前提交的任务没有记录，退回到第一个 Key
+        Mono<String> apiKeyMono = taskKey != null ? Mono.just(taskKey) : fetchApiKeys().map(keys -> keys.get(0));
+        return apiKeyMono.flatMap(apiKey -> webClient.post()
+            .uri(BASE_URL + "tasks/" + taskId + "/cancel")
+            .header("Authorization", "Bearer " + apiKey)
+            .retrieve()
+            .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(ProviderApiException.from(response,
+                    "取消通义万相任务失败: " + parseErrorMessage(errorBody)))))
+            .toBodilessEntity()
+            .retryWhen(retryPolicy.transientErrors(getPlatformIdentifier(), "cancel", CANCEL_RETRY_WINDOW))
+            .then());
+    }
+
     @Override
     public Flux<ProgressUpdate> generateImage(String prompt, String model, String size) {
+        return generateImages(prompt, model, size, 1);
+    }
+
+    /**
+     * 通义万相支持通过 n 参数在一个任务中生成多张图（最多 4 张），比提交多个任务更省并发配额。
+     */
+    @Override
+    public Flux<ProgressUpdate> generateImages(String prompt, String model, String size, int n) {
+        int count = Math.max(1, Math.min(n, MAX_IMAGES_PER_TASK));
+        // 每次提交重新选择 Key，提交成功后用同一个 Key 轮询
+        return fetchApiKeys().flatMapMany(keys -> Flux.concat(
+            Mono.just(new ProgressUpdate("正在提交至通义万相...")),
+            keyPool.withKey(getPlatformIdentifier(), keys,
+                lease -> submitGenerationTask(prompt, model, size, count, lease.key()),
+                retryPolicy.transientErrors(getPlatformIdentifier(), "submit", SUBMIT_RETRY_WINDOW),
+                (lease, taskId) -> {
+                    taskKeys.put(taskId, lease.key());
+                    return Flux.concat(
+                            Mono.just(ProgressUpdate.taskSubmitted(taskId, "任务已提交，等待通义万相处理...")),
+                            pollTaskResultWithProgress(taskId, lease.key()))
+                        // 被取消时由 cancelTask 取走 Key
+                        .doOnTerminate(() -> taskKeys.remove(taskId));
+                })
+        ));
+    }
+    
+    private Mono<List<String>> fetchApiKeys() {
         // --- 核心改造：获取统一的 AI 平台设置 ---
-        Mono<String> apiKeyMono = settingFetcher.fetch(AiPlatformSettings.GROUP, AiPlatformSettings.class)
+        return settingFetcher.fetch(AiPlatformSettings.GROUP, AiPlatformSettings.class)
             .switchIfEmpty(Mono.just(new AiPlatformSettings()))
             .flatMap(setting -> {
-                // --- 核心改造：调用 tongyiApiKey 的 getter ---
-                String apiKey = setting.getTongyiApiKey();
-                if (apiKey == null || apiKey.isBlank()) {
+                // --- 核心改造：调用 tongyiApiKey 的 getter，可以配置多个 Key ---
+                List<String> apiKeys = ApiKeyPool.parseKeys(setting.getTongyiApiKey());
+                if (apiKeys.isEmpty()) {
                     return Mono.error(new IllegalStateException("未在插件设置中找到通义万相的 API-KEY"));
                 }
-                return Mono.just(apiKey);
+                return Mono.just(apiKeys);
             });
-
-        return apiKeyMono.flux().concatMap(apiKey ->
-            Flux.concat(
-                Mono.just(new ProgressUpdate("正在提交至通义万相...")),
-                submitGenerationTask(prompt, model, size, apiKey)
-                    .flux()
-                    .concatMap(taskId -> pollTaskResultWithProgress(taskId, apiKey))
-            )
-        );
     }
-    
+
     // ... (其余私有方法保持不变)
 
-    private Mono<String> submitGenerationTask(String prompt, String model, String size, String apiKey) {
-        String url = "https://dashscope.aliyuncs.com/api/v1/services/aigc/text2image/image-synthesis";
+    private Mono<String> submitGenerationTask(String prompt, String model, String size, int n, String apiKey) {
+        String url = BASE_URL + "services/aigc/text2image/image-synthesis";
         Map<String, Object> requestBody = Map.of(
-            "model", model, "input", Map.of("prompt", prompt), "parameters", Map.of("size", size, "n", 1)
+            "model", model, "input", Map.of("prompt", prompt), "parameters", Map.of("size", size, "n", n)
         );
         return webClient.post()
             .uri(url)
@@ -72,28 +167,31 @@ public class TongyiImageGenerator implements ImageGenerator {
             .bodyValue(requestBody)
             .retrieve()
             .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
-                .flatMap(errorBody -> Mono.error(new RuntimeException("AI 服务请求失败: " + parseErrorMessage(errorBody)))))
+                .defaultIfEmpty("")
+                .flatMap(errorBody -> Mono.error(ProviderApiException.from(response,
+                    "AI 服务请求失败: " + parseErrorMessage(errorBody)))))
             .bodyToMono(String.class)
             .flatMap(this::parseTaskIdFromResponse);
     }
     
     private Flux<ProgressUpdate> pollTaskResultWithProgress(String taskId, String apiKey) {
-        String url = "https://dashscope.aliyuncs.com/api/v1/tasks/" + taskId;
+        String url = BASE_URL + "tasks/" + taskId;
 
         return webClient.get()
             .uri(url)
             .header("Authorization", "Bearer " + apiKey)
             .retrieve()
             .bodyToMono(String.class)
+            // 单次查询的暂时性错误在这里消化，不打断整体轮询
+            .retryWhen(retryPolicy.transientErrors(getPlatformIdentifier(), "poll", POLL_RETRY_WINDOW))
             .flatMap(this::checkTaskStatusAndDecideNextAction)
-            .retryWhen(Retry.fixedDelay(60, Duration.ofSeconds(2))
-                .filter(error -> error instanceof PollAgainException)
-                .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) ->
-                    new RuntimeException("图片生成超时（2分钟），请稍后再试。")))
-            .flux();
+            .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, POLL_INTERVAL)
+                .filter(error -> error instanceof PollAgainException))
+            .transform(polling -> Deadline.limit(polling, "通义万相图片生成", MAX_TASK_DURATION))
+            .flatMapIterable(updates -> updates);
     }
 
-    private Mono<ProgressUpdate> checkTaskStatusAndDecideNextAction(String jsonResponse) {
+    private Mono<List<ProgressUpdate>> checkTaskStatusAndDecideNextAction(String jsonResponse) {
         try {
             JsonNode root = objectMapper.readTree(jsonResponse);
             String taskStatus = root.at("/output/task_status").asText();
@@ -101,22 +199,29 @@ public class TongyiImageGenerator implements ImageGenerator {
 
             switch (taskStatus) {
                 case "SUCCEEDED":
-                    JsonNode urlNode = root.at("/output/results/0/url");
-                    if (urlNode.isMissingNode() || !urlNode.isTextual()) {
-                        return Mono.just(ProgressUpdate.error("任务成功，但未在响应中找到图片 URL。"));
+                    // n > 1 时 results 中有多张图，部分图片可能单独失败（只有 code/message，没有 url）
+                    List<ProgressUpdate> images = new ArrayList<>();
+                    for (JsonNode result : root.at("/output/results")) {
+                        JsonNode urlNode = result.get("url");
+                        if (urlNode != null && urlNode.isTextual()) {
+                            images.add(ProgressUpdate.intermediateSuccess(urlNode.asText(), "AI 绘图成功！"));
+                        }
+                    }
+                    if (images.isEmpty()) {
+                        return Mono.just(List.of(ProgressUpdate.error("任务成功，但未在响应中找到图片 URL。")));
                     }
-                    return Mono.just(ProgressUpdate.intermediateSuccess(urlNode.asText(), "AI 绘图成功！"));
+                    return Mono.just(images);
                 case "FAILED":
                     String errorMessage = root.at("/output/message").asText("任务执行失败");
-                    return Mono.just(ProgressUpdate.error(errorMessage));
+                    return Mono.just(List.of(ProgressUpdate.error(errorMessage)));
                 case "PENDING":
                 case "RUNNING":
                     return Mono.error(new PollAgainException());
                 default:
-                    return Mono.just(ProgressUpdate.error("未知的任务状态: " + taskStatus));
+                    return Mono.just(List.of(ProgressUpdate.error("未知的任务状态: " + taskStatus)));
             }
         } catch (JsonProcessingException e) {
-            return Mono.just(ProgressUpdate.error("解析任务状态响应失败: " + e.getMessage()));
+            return Mono.just(List.of(ProgressUpdate.error("解析任务状态响应失败: " + e.getMessage())));
         }
     }
 
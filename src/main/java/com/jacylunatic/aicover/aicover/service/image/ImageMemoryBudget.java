@@ -0,0 +1,312 @@
+package com.jacylunatic.aicover.aicover.service.image;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.service.DownloadedImage;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.PluginPaths;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 插件内所有图片字节（下载、占位信息计算、上传）共用的内存预算。
+ * <p>
+ * 图片在内存中停留期间占用预算，处理完成后归还；预算不足时请求排队等待（先到先得），
+ * 而不是继续在堆上分配，批量生成时也不会把 Halo 推向频繁 GC 或 OOM。
+ * 超过溢出阈值（或长度未知、读取后超过阈值）的图片不进内存，直接写入数据目录下的临时文件。
+ */
+@Slf4j
+@Component
+public class ImageMemoryBudget {
+
+    private static final long MB = 1024L * 1024L;
+    private static final long DEFAULT_BUDGET_MB = 64;
+    private static final long DEFAULT_SPILL_THRESHOLD_MB = 8;
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final BlockingIoScheduler blockingIo;
+    private final PluginMetrics metrics;
+    private final Path spillDirectory;
+
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private long capacity = DEFAULT_BUDGET_MB * MB;
+    private long used;
+    private final AtomicLong spilledBytes = new AtomicLong();
+
+    private record Waiter(long bytes, CompletableFuture<Reservation> granted) {}
+
+    record Limits(long capacity, long spillThreshold) {}
+
+    public ImageMemoryBudget(ReactiveSettingFetcher settingFetcher, BlockingIoScheduler blockingIo,
+        PluginMetrics metrics) {
+        this(settingFetcher, blockingIo, metrics, PluginPaths.dataDirectory().resolve("spill"));
+    }
+
+    ImageMemoryBudget(ReactiveSettingFetcher settingFetcher, BlockingIoScheduler blockingIo, PluginMetrics metrics,
+        Path spillDirectory) {
+        this.settingFetcher = settingFetcher;
+        this.blockingIo = blockingIo;
+        this.metrics = metrics;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * 注册指标，并清理上次停止时遗留的溢出文件。
+     */
+    @PostConstruct
+    public void init() {
+        metrics.gauge("aicover.image_memory.used_bytes", this::usedBytes);
+        metrics.gauge("aicover.image_memory.capacity_bytes", this::capacityBytes);
+        metrics.gauge("aicover.image_memory.waiting", this::waitingCount);
+        metrics.gauge("aicover.image_memory.spilled_bytes", spilledBytes::get);
+        try {
+            Files.createDirectories(spillDirectory);
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                files.forEach(file -> {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        log.warn("[MemoryBudget] Failed to delete stale spill file {}: {}", file, e.getMessage());
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.warn("[MemoryBudget] Failed to prepare spill directory {}: {}", spillDirectory, e.getMessage());
+        }
+    }
+
+    /**
+     * 把一张图片读入内存或溢出到临时文件，同时计算 SHA-256。
+     * <p>
+     * 已知长度且不超过阈值时按长度申请预算；长度未知时先按阈值申请，读完后归还多余部分。
+     * 实际长度超出申请量时改为溢出到文件并归还全部预算。返回的图片用完后必须调用 {@link DownloadedImage#release()}。
+     *
+     * @param contentLength 响应声明的长度，未知时为 -1
+     * @param opener        打开输入流的阻塞调用，流由这里负责关闭
+     */
+    public Mono<DownloadedImage> load(long contentLength, Callable<InputStream> opener) {
+        return limits().flatMap(limits -> {
+            if (contentLength > limits.spillThreshold()) {
+                return blockingIo.fromCallable(() -> {
+                    try (InputStream input = opener.call()) {
+                        return spill(new byte[0], 0, input);
+                    }
+                });
+            }
+            long expected = contentLength >= 0 ? contentLength : limits.spillThreshold();
+            return reserve(expected)
+                .flatMap(reservation -> blockingIo.fromCallable(() -> {
+                        try (InputStream input = opener.call()) {
+                            return readIntoMemory(input, reservation);
+                        }
+                    })
+                    .doOnError(error -> reservation.release())
+                    .doOnCancel(reservation::release))
+                .doOnDiscard(DownloadedImage.class, DownloadedImage::release);
+        });
+    }
+
+    private DownloadedImage readIntoMemory(InputStream input, Reservation reservation) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        DigestInputStream digesting = new DigestInputStream(input, digest);
+        byte[] buffer = new byte[(int) reservation.bytes()];
+        int read = digesting.readNBytes(buffer, 0, buffer.length);
+        int next = read == buffer.length ? digesting.read() : -1;
+        if (next != -1) {
+            // 比申请的预算大：已读部分连同剩余内容一起写入文件，不再占用内存
+            reservation.release();
+            byte[] head = Arrays.copyOf(buffer, read + 1);
+            head[read] = (byte) next;
+            return spillDigested(head, digesting, digest);
+        }
+        byte[] bytes = read == buffer.length ? buffer : Arrays.copyOf(buffer, read);
+        reservation.shrink(bytes.length);
+        return DownloadedImage.inMemory(bytes, HexFormat.of().formatHex(digest.digest()), reservation::release);
+    }
+
+    private DownloadedImage spill(byte[] head, int length, InputStream input) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(head, 0, length);
+        return spillDigested(Arrays.copyOf(head, length), new DigestInputStream(input, digest), digest);
+    }
+
+    private DownloadedImage spillDigested(byte[] head, InputStream rest, MessageDigest digest) throws Exception {
+        Files.createDirectories(spillDirectory);
+        Path file = Files.createTempFile(spillDirectory, "image-", ".bin");
+        try (OutputStream output = Files.newOutputStream(file)) {
+            output.write(head);
+            rest.transferTo(output);
+        } catch (Exception e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        long size = Files.size(file);
+        spilledBytes.addAndGet(size);
+        metrics.increment("aicover.image_memory.spills");
+        log.info("[MemoryBudget] Spilled {} bytes to {}.", size, file.getFileName());
+        return DownloadedImage.spilled(file, size, HexFormat.of().formatHex(digest.digest()), () -> {
+            try {
+                Files.deleteIfExists(file);
+                spilledBytes.addAndGet(-size);
+            } catch (IOException e) {
+                log.warn("[MemoryBudget] Failed to delete spill file {}: {}", file, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 申请若干字节的预算，不足时排队等待。超过总预算的申请按总预算计，避免永远等不到。
+     * 取消订阅会放弃排队；已经拿到的预算由持有者负责归还。
+     */
+    public Mono<Reservation> reserve(long bytes) {
+        return Mono.defer(() -> {
+            Waiter waiter;
+            synchronized (this) {
+                long clamped = Math.max(0, Math.min(bytes, capacity));
+                if (waiters.isEmpty() && used + clamped <= capacity) {
+                    used += clamped;
+                    return Mono.just(new Reservation(clamped));
+                }
+                waiter = new Waiter(clamped, new CompletableFuture<>());
+                waiters.addLast(waiter);
+            }
+            metrics.increment("aicover.image_memory.waits");
+            return Mono.fromFuture(waiter.granted(), true)
+                .doOnCancel(() -> abandon(waiter))
+                // 取消与放行同时发生时，已经放行但没能送达的预算在这里归还
+                .doOnDiscard(Reservation.class, Reservation::release);
+        });
+    }
+
+    private void abandon(Waiter waiter) {
+        boolean removed;
+        synchronized (this) {
+            removed = waiters.remove(waiter);
+        }
+        if (!removed) {
+            waiter.granted().thenAccept(Reservation::release);
+        }
+    }
+
+    private void giveBack(long bytes) {
+        synchronized (this) {
+            used -= bytes;
+        }
+        drain();
+    }
+
+    /**
+     * 按排队顺序放行能放下的等待者。队首放不下时后面的也不放行，保证大图片不会一直被小图片插队。
+     */
+    private void drain() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                next = waiters.peekFirst();
+                if (next == null || used + next.bytes() > capacity) {
+                    return;
+                }
+                waiters.pollFirst();
+                used += next.bytes();
+            }
+            next.granted().complete(new Reservation(next.bytes()));
+        }
+    }
+
+    Mono<Limits> limits() {
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .onErrorReturn(new PluginMasterSetting())
+            .map(setting -> {
+                long budget = megabytes(setting.getImageMemoryBudgetMb(), DEFAULT_BUDGET_MB);
+                long threshold = Math.min(budget, megabytes(setting.getImageSpillThresholdMb(),
+                    DEFAULT_SPILL_THRESHOLD_MB));
+                resize(budget);
+                return new Limits(budget, threshold);
+            });
+    }
+
+    /**
+     * 调整总预算。调小时已发放的预算不会收回，只是后续申请需要等待更久。
+     */
+    void resize(long newCapacity) {
+        synchronized (this) {
+            if (capacity == newCapacity) {
+                return;
+            }
+            capacity = newCapacity;
+        }
+        drain();
+    }
+
+    synchronized long usedBytes() {
+        return used;
+    }
+
+    synchronized long capacityBytes() {
+        return capacity;
+    }
+
+    synchronized int waitingCount() {
+        return waiters.size();
+    }
+
+    private static long megabytes(Integer value, long defaultValue) {
+        return (value == null || value <= 0 ? defaultValue : value) * MB;
+    }
+
+    /**
+     * 一笔已发放的预算。可以先缩小到实际用量，释放是幂等的。
+     */
+    public final class Reservation {
+        private final AtomicLong bytes;
+
+        private Reservation(long bytes) {
+            this.bytes = new AtomicLong(bytes);
+        }
+
+        public long bytes() {
+            return bytes.get();
+        }
+
+        /**
+         * 归还超出实际用量的部分。
+         */
+        public void shrink(long actual) {
+            long current;
+            do {
+                current = bytes.get();
+                if (actual >= current) {
+                    return;
+                }
+            } while (!bytes.compareAndSet(current, actual));
+            giveBack(current - actual);
+        }
+
+        public void release() {
+            long held = bytes.getAndSet(0);
+            if (held > 0) {
+                giveBack(held);
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.jacylunatic.aicover.aicover.service.image;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacylunatic.aicover.aicover.model.ImagePlaceholder;
+import com.jacylunatic.aicover.aicover.service.AlistOrphanCollector;
+import com.jacylunatic.aicover.aicover.service.DownloadedImage;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.PluginPaths;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 计算封面图的尺寸、BlurHash、主色调和 LQIP。
+ * <p>
+ * 只读取图片头获取原始尺寸，像素部分按步长降采样解码到约 64 像素见方，
+ * 因此即使是几 MB 的原图，整个计算也只需要几毫秒。
+ * 计算结果按图片持久化到数据目录，文章保存时（包括草稿）据此把占位信息回写到文章注解上，插件重启后仍然有效。
+ * 插件生成的文件名按内容命名，因此以文件名为键，图片从本地缓存转存到 Alist、或 Alist 的访问地址变化后仍能找到。
+ */
+@Slf4j
+@Service
+public class ImagePlaceholderService {
+
+    private static final int SAMPLE_TARGET = 64;
+    private static final int LQIP_TARGET = 16;
+    private static final int BLURHASH_COMPONENTS_X = 4;
+    private static final int BLURHASH_COMPONENTS_Y = 3;
+    private static final int MAX_REMEMBERED = 2048;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path store;
+    private final BlockingIoScheduler blockingIo;
+
+    private final Map<String, ImagePlaceholder> recentPlaceholders = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImagePlaceholder> eldest) {
+                return size() > MAX_REMEMBERED;
+            }
+        });
+
+    record StoredPlaceholder(String key, ImagePlaceholder placeholder) {}
+
+    public ImagePlaceholderService(BlockingIoScheduler blockingIo) {
+        this(PluginPaths.dataDirectory().resolve("placeholders.json"), blockingIo);
+    }
+
+    ImagePlaceholderService(Path store, BlockingIoScheduler blockingIo) {
+        this.store = store;
+        this.blockingIo = blockingIo;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!Files.exists(store)) {
+            return;
+        }
+        try {
+            List<StoredPlaceholder> saved = objectMapper.readValue(store.toFile(),
+                new TypeReference<List<StoredPlaceholder>>() {});
+            for (StoredPlaceholder entry : saved) {
+                recentPlaceholders.put(entry.key(), entry.placeholder());
+            }
+            log.info("[Placeholder] Restored {} placeholder(s).", recentPlaceholders.size());
+        } catch (IOException e) {
+            log.warn("[Placeholder] Failed to read {}: {}", store, e.getMessage());
+        }
+    }
+
+    /**
+     * 计算占位信息。图片格式无法识别时返回空，不影响后续存储流程。
+     */
+    public Mono<ImagePlaceholder> compute(DownloadedImage image) {
+        // 溢出到文件的图片直接按文件读取，不再整张读回内存
+        return blockingIo.fromCallable(() -> computeBlocking(image.isOnDisk()
+                ? image.file().toFile() : new ByteArrayInputStream(image.bytes())))
+            .flatMap(Mono::justOrEmpty)
+            .onErrorResume(error -> {
+                log.warn("[Placeholder] Failed to compute placeholder: {}", error.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * 记录某个最终图片地址对应的占位信息，并在后台写入磁盘。
+     */
+    public void remember(String imageUrl, ImagePlaceholder placeholder) {
+        String key = key(imageUrl);
+        if (key == null || placeholder == null) {
+            return;
+        }
+        recentPlaceholders.put(key, placeholder);
+        blockingIo.fromRunnable(this::persist).subscribe();
+    }
+
+    public Optional<ImagePlaceholder> lookup(String imageUrl) {
+        String key = key(imageUrl);
+        return key == null ? Optional.empty() : Optional.ofNullable(recentPlaceholders.get(key));
+    }
+
+    /**
+     * 插件生成的图片以文件名为键，其他地址按原文。
+     */
+    static String key(String imageUrl) {
+        if (imageUrl == null || imageUrl.isBlank()) {
+            return null;
+        }
+        String name = AlistOrphanCollector.fileName(imageUrl);
+        return AlistOrphanCollector.isGeneratedName(name) ? name : imageUrl.trim();
+    }
+
+    synchronized void persist() {
+        List<StoredPlaceholder> snapshot = new ArrayList<>();
+        synchronized (recentPlaceholders) {
+            recentPlaceholders.forEach((key, placeholder) -> snapshot.add(new StoredPlaceholder(key, placeholder)));
+        }
+        try {
+            Files.createDirectories(store.getParent());
+            Path part = store.resolveSibling(store.getFileName() + ".part");
+            objectMapper.writeValue(part.toFile(), snapshot);
+            Files.move(part, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[Placeholder] Failed to write {}: {}", store, e.getMessage());
+        }
+    }
+
+    Optional<ImagePlaceholder> computeBlocking(byte[] bytes) throws IOException {
+        return computeBlocking(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * @param source ImageIO 可以识别的输入，这里是 File 或 InputStream
+     */
+    private Optional<ImagePlaceholder> computeBlocking(Object source) throws IOException {
+        long start = System.nanoTime();
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                return Optional.empty();
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / SAMPLE_TARGET);
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage sample = toRgb(reader.read(0, param));
+
+                int sampleWidth = sample.getWidth();
+                int sampleHeight = sample.getHeight();
+                int[] pixels = sample.getRGB(0, 0, sampleWidth, sampleHeight, null, 0, sampleWidth);
+
+                ImagePlaceholder placeholder = new ImagePlaceholder();
+                placeholder.setWidth(width);
+                placeholder.setHeight(height);
+                placeholder.setBlurHash(BlurHashEncoder.encode(pixels, sampleWidth, sampleHeight,
+                    BLURHASH_COMPONENTS_X, BLURHASH_COMPONENTS_Y));
+                placeholder.setDominantColor(dominantColor(pixels));
+                placeholder.setLqip(lqip(sample));
+                log.info("[Placeholder] Computed placeholder for {}x{} image in {} ms",
+                    width, height, (System.nanoTime() - start) / 1_000_000);
+                return Optional.of(placeholder);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 将颜色量化到每通道 4 位后统计直方图，取出现次数最多的色块的平均颜色。
+     */
+    static String dominantColor(int[] pixels) {
+        int[] counts = new int[4096];
+        long[] sumR = new long[4096];
+        long[] sumG = new long[4096];
+        long[] sumB = new long[4096];
+        for (int pixel : pixels) {
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            int bucket = ((r >> 4) << 8) | ((g >> 4) << 4) | (b >> 4);
+            counts[bucket]++;
+            sumR[bucket] += r;
+            sumG[bucket] += g;
+            sumB[bucket] += b;
+        }
+        int best = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > counts[best]) {
+                best = i;
+            }
+        }
+        int count = Math.max(1, counts[best]);
+        return String.format("#%02x%02x%02x", sumR[best] / count, sumG[best] / count, sumB[best] / count);
+    }
+
+    private static String lqip(BufferedImage sample) throws IOException {
+        double scale = (double) LQIP_TARGET / Math.max(sample.getWidth(), sample.getHeight());
+        int width = Math.max(1, (int) Math.round(sample.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(sample.getHeight() * scale));
+        BufferedImage tiny = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = tiny.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(sample, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(tiny, "jpg", output);
+        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(output.toByteArray());
+    }
+
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+}
@@ -0,0 +1,359 @@
+package com.jacylunatic.aicover.aicover.service.image;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.service.DownloadedImage;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.HttpClientProvider;
+import com.jacylunatic.aicover.aicover.service.lifecycle.PluginPaths;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 生成图片的本地磁盘缓存。
+ * <p>
+ * 通义万相、魔塔返回的结果链接几小时后就会失效，未开启 Alist 上传时直接写进文章封面会在之后失效。
+ * 这里把选中的图片下载到插件数据目录，按内容寻址（SHA-256 + 扩展名）存放，
+ * 通过 /api/plugins/aicover/images/{name} 提供访问。总大小超过上限时按最近访问时间淘汰，
+ * 仍被文章封面引用的文件（往往是该图片唯一的副本）和等待后台上传的文件不会被淘汰。
+ * <p>
+ * 下载直接流式写入临时文件，不在内存中保留整张图片。
+ */
+@Slf4j
+@Component
+public class LocalImageCache {
+
+    public static final String URL_PREFIX = "/api/plugins/aicover/images/";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[0-9a-f]{64}\\.(png|jpg|webp)");
+    private static final long DEFAULT_MAX_MB = 512;
+    // 淘汰到上限的 90%，避免每次写入都触发淘汰
+    private static final double EVICT_TARGET_RATIO = 0.9;
+    private static final Duration DOWNLOAD_TIMEOUT = Duration.ofMinutes(2);
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final HttpClientProvider httpClientProvider;
+    private final BlockingIoScheduler blockingIo;
+    private final PluginMetrics metrics;
+    private final Path directory;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    // 等待后台上传的图片，淘汰时跳过
+    private final Set<String> pinned = ConcurrentHashMap.newKeySet();
+    // 文件是否仍被文章封面引用，由封面索引注册；未注册时不做判断
+    private volatile Predicate<String> referenced = name -> false;
+    private WebClient webClient;
+
+    private static final class Entry {
+        private final long size;
+        private volatile long lastAccess;
+
+        Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    public LocalImageCache(ReactiveSettingFetcher settingFetcher, HttpClientProvider httpClientProvider,
+        BlockingIoScheduler blockingIo, PluginMetrics metrics) {
+        this(settingFetcher, httpClientProvider, blockingIo, metrics,
+            PluginPaths.dataDirectory().resolve("image-cache"));
+    }
+
+    LocalImageCache(ReactiveSettingFetcher settingFetcher, HttpClientProvider httpClientProvider,
+        BlockingIoScheduler blockingIo, PluginMetrics metrics, Path directory) {
+        this.settingFetcher = settingFetcher;
+        this.httpClientProvider = httpClientProvider;
+        this.blockingIo = blockingIo;
+        this.metrics = metrics;
+        this.directory = directory;
+    }
+
+    /**
+     * 扫描已有的缓存文件重建索引。重启后没有访问记录，以文件修改时间作为最近访问时间。
+     */
+    @PostConstruct
+    public void init() {
+        webClient = httpClientProvider.webClient(DOWNLOAD_TIMEOUT);
+        metrics.gauge("aicover.image_cache.bytes", totalBytes::get);
+        metrics.gauge("aicover.image_cache.files", entries::size);
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> {
+                    String name = file.getFileName().toString();
+                    try {
+                        if (NAME_PATTERN.matcher(name).matches()) {
+                            long size = Files.size(file);
+                            entries.put(name, new Entry(size, Files.getLastModifiedTime(file).toMillis()));
+                            totalBytes.addAndGet(size);
+                        } else if (name.endsWith(".part")) {
+                            // 上次停止时未完成的下载
+                            Files.deleteIfExists(file);
+                        }
+                    } catch (IOException e) {
+                        log.warn("[ImageCache] Failed to index {}: {}", file, e.getMessage());
+                    }
+                });
+            }
+            log.info("[ImageCache] Indexed {} cached image(s), {} bytes.", entries.size(), totalBytes.get());
+        } catch (IOException e) {
+            log.warn("[ImageCache] Failed to prepare cache directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * 把平台的临时链接下载到本地缓存，返回插件提供的稳定地址。缓存未开启时返回空。
+     */
+    public Mono<String> store(String imageUrl) {
+        if (imageUrl.startsWith(URL_PREFIX)) {
+            // 内联返回的图片生成时就已经在缓存里了
+            return Mono.just(imageUrl);
+        }
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .filter(setting -> !Boolean.FALSE.equals(setting.getLocalImageCache()))
+            .flatMap(setting -> download(imageUrl)
+                .flatMap(part -> blockingIo.fromCallable(() -> {
+                    String name = commit(part, false);
+                    evictIfNeeded(maxBytes(setting));
+                    return name;
+                }))
+                .map(name -> URL_PREFIX + name));
+    }
+
+    /**
+     * 与 {@link #store(String)} 相同，但不受"本地缓存"开关影响，并且在 {@link #unpin(String)} 之前不会被淘汰。
+     * 供后台上传使用：上传完成前本地文件是图片唯一可靠的副本。返回插件地址。
+     */
+    public Mono<String> storePinned(String imageUrl) {
+        if (imageUrl.startsWith(URL_PREFIX)) {
+            String name = imageUrl.substring(URL_PREFIX.length());
+            if (!pin(name)) {
+                return Mono.error(new IllegalStateException("本地缓存中找不到图片: " + name));
+            }
+            return Mono.just(imageUrl);
+        }
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .flatMap(setting -> download(imageUrl)
+                .flatMap(part -> blockingIo.fromCallable(() -> {
+                    String name = commit(part, true);
+                    evictIfNeeded(maxBytes(setting));
+                    return URL_PREFIX + name;
+                })));
+    }
+
+    /**
+     * 固定缓存中已有的文件，使其不被淘汰。文件不存在时返回 false。与淘汰互斥，不会固定一个正在被删除的文件。
+     */
+    public synchronized boolean pin(String name) {
+        if (!entries.containsKey(name)) {
+            return false;
+        }
+        pinned.add(name);
+        return true;
+    }
+
+    /**
+     * 取消固定，之后按最近访问时间正常淘汰。
+     */
+    public void unpin(String name) {
+        pinned.remove(name);
+    }
+
+    /**
+     * 注册引用检查：返回 true 的文件在淘汰时跳过。封面索引依赖本缓存，因此由索引在初始化时反向注册。
+     */
+    public void setReferenceCheck(Predicate<String> referenced) {
+        this.referenced = referenced;
+    }
+
+    /**
+     * 地址指向本地缓存时（相对地址或带站点域名的绝对地址）返回缓存文件名，否则返回 null。
+     */
+    public static String nameInUrl(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        String rawPath;
+        try {
+            rawPath = URI.create(url.trim()).getRawPath();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (rawPath == null || !rawPath.contains(URL_PREFIX)) {
+            return null;
+        }
+        String name = rawPath.substring(rawPath.lastIndexOf(URL_PREFIX) + URL_PREFIX.length());
+        return name.isEmpty() || name.contains("/") ? null : name;
+    }
+
+    /**
+     * 把生成器直接给出的图片内容（例如响应中内联的 b64_json）写入缓存，返回插件地址；writer 没有写入图片时返回空。
+     * 内联图片没有平台链接可以回退，因此不受"本地缓存"开关影响。
+     */
+    public Mono<String> storeInline(ContentWriter writer) {
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .flatMap(setting -> blockingIo.fromCallable(() -> {
+                    Path part = Files.createTempFile(directory, "inline-", ".part");
+                    try {
+                        boolean written;
+                        try (OutputStream output = Files.newOutputStream(part)) {
+                            written = writer.writeTo(output);
+                        }
+                        if (!written) {
+                            Files.deleteIfExists(part);
+                            return Optional.<String>empty();
+                        }
+                        String name = commit(part, false);
+                        evictIfNeeded(maxBytes(setting));
+                        return Optional.of(name);
+                    } catch (Exception e) {
+                        Files.deleteIfExists(part);
+                        throw e;
+                    }
+                })
+                .flatMap(Mono::justOrEmpty))
+            .map(name -> URL_PREFIX + name);
+    }
+
+    /**
+     * 在阻塞线程上把图片内容写入缓存的临时文件。
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        /**
+         * @return 是否写入了图片内容
+         */
+        boolean writeTo(OutputStream output) throws Exception;
+    }
+
+    /**
+     * 缓存中是否有这个文件，不记录访问。
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * 按文件名查找缓存文件，并记录一次访问。文件名不合法或不存在时返回空。
+     */
+    public Optional<Path> resolve(String name) {
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            return Optional.empty();
+        }
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            metrics.increment("aicover.image_cache.requests", "result", "miss");
+            return Optional.empty();
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        metrics.increment("aicover.image_cache.requests", "result", "hit");
+        return Optional.of(directory.resolve(name));
+    }
+
+    private Mono<Path> download(String imageUrl) {
+        return blockingIo.fromCallable(() -> Files.createTempFile(directory, "download-", ".part"))
+            // 下载不超过请求剩余的时间，超时后临时文件同样会被删除
+            .flatMap(part -> Deadline.limit(DataBufferUtils.write(
+                    webClient.get().uri(URI.create(imageUrl)).retrieve().bodyToFlux(DataBuffer.class), part),
+                    "缓存图片到本地", DOWNLOAD_TIMEOUT)
+                .thenReturn(part)
+                .onErrorResume(error -> blockingIo.fromCallable(() -> Files.deleteIfExists(part))
+                    .then(Mono.error(error))));
+    }
+
+    /**
+     * 计算摘要并把临时文件改名为内容寻址的文件名；相同内容已存在时丢弃临时文件。
+     * pin 为 true 时在文件加入索引之前固定，其他线程的淘汰看到它时它已经是固定的。
+     */
+    private String commit(Path part, boolean pin) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] header;
+        try (InputStream input = new DigestInputStream(Files.newInputStream(part), digest)) {
+            header = input.readNBytes(12);
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        String name = HexFormat.of().formatHex(digest.digest()) + DownloadedImage.extensionOf(header);
+        if (pin) {
+            pinned.add(name);
+        }
+        Path target = directory.resolve(name);
+        if (entries.containsKey(name)) {
+            Files.deleteIfExists(part);
+            entries.get(name).lastAccess = System.currentTimeMillis();
+            return name;
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long size = Files.size(target);
+        if (entries.putIfAbsent(name, new Entry(size, System.currentTimeMillis())) == null) {
+            totalBytes.addAndGet(size);
+        }
+        metrics.increment("aicover.image_cache.stored");
+        log.info("[ImageCache] Cached {} ({} bytes).", name, size);
+        return name;
+    }
+
+    private synchronized void evictIfNeeded(long maxBytes) {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+        long target = (long) (maxBytes * EVICT_TARGET_RATIO);
+        List<Map.Entry<String, Entry>> byAge = entries.entrySet().stream()
+            .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+            .toList();
+        for (Map.Entry<String, Entry> candidate : byAge) {
+            if (totalBytes.get() <= target) {
+                break;
+            }
+            if (pinned.contains(candidate.getKey()) || referenced.test(candidate.getKey())) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(directory.resolve(candidate.getKey()));
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    totalBytes.addAndGet(-candidate.getValue().size);
+                    metrics.increment("aicover.image_cache.evicted");
+                }
+            } catch (IOException e) {
+                log.warn("[ImageCache] Failed to evict {}: {}", candidate.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private static long maxBytes(PluginMasterSetting setting) {
+        Integer maxMb = setting.getLocalImageCacheMaxMb();
+        return (maxMb == null || maxMb <= 0 ? DEFAULT_MAX_MB : maxMb) * 1024L * 1024L;
+    }
+}
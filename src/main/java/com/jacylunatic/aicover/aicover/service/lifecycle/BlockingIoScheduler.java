@@ -0,0 +1,81 @@
+package com.jacylunatic.aicover.aicover.service.lifecycle;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+/**
+ * 插件内所有阻塞 I/O（HttpURLConnection 下载、ExtensionClient、DNS 解析等）共用的调度器。
+ * <p>
+ * 默认使用虚拟线程：每个阻塞调用占用一个虚拟线程，等待 I/O 时不占用平台线程，
+ * 高并发下不会像 boundedElastic 那样堆出大量平台线程或排队。
+ * 可在全局设置中切回 boundedElastic，以便在虚拟线程出现钉住（pinning）等问题时回退。
+ */
+@Slf4j
+@Component
+public class BlockingIoScheduler implements Disposable {
+
+    public static final String MODE_VIRTUAL = "virtual";
+    public static final String MODE_BOUNDED_ELASTIC = "boundedElastic";
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final Scheduler virtualThreads =
+        Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "aicover-virtual");
+
+    public BlockingIoScheduler(ReactiveSettingFetcher settingFetcher, GenerationLifecycleManager lifecycleManager) {
+        this.settingFetcher = settingFetcher;
+        lifecycleManager.registerResource("virtual-thread-scheduler", this);
+    }
+
+    /**
+     * 在配置的调度器上执行一个阻塞调用。
+     */
+    public <T> Mono<T> fromCallable(Callable<T> blockingCall) {
+        return scheduler().flatMap(scheduler -> Mono.fromCallable(blockingCall).subscribeOn(scheduler));
+    }
+
+    /**
+     * 在配置的调度器上执行一个没有返回值的阻塞调用。
+     */
+    public Mono<Void> fromRunnable(Runnable blockingCall) {
+        return scheduler().flatMap(scheduler -> Mono.fromRunnable(blockingCall).subscribeOn(scheduler));
+    }
+
+    /**
+     * 按全局设置选择调度器，未设置时使用虚拟线程。
+     */
+    public Mono<Scheduler> scheduler() {
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .map(setting -> select(setting.getBlockingIoMode()))
+            .defaultIfEmpty(virtualThreads)
+            .onErrorReturn(virtualThreads);
+    }
+
+    Scheduler select(String mode) {
+        if (MODE_BOUNDED_ELASTIC.equals(mode) || virtualThreads.isDisposed()) {
+            return Schedulers.boundedElastic();
+        }
+        return virtualThreads;
+    }
+
+    @Override
+    public void dispose() {
+        if (!virtualThreads.isDisposed()) {
+            log.info("[Lifecycle] Disposing virtual-thread scheduler.");
+            virtualThreads.dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return virtualThreads.isDisposed();
+    }
+}
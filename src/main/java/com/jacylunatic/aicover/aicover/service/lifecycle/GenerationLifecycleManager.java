@@ -0,0 +1,187 @@
+package com.jacylunatic.aicover.aicover.service.lifecycle;
+
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 管理生成任务与插件资源的生命周期。
+ * <p>
+ * 插件停止或热更新时依次执行：
+ * <ol>
+ *     <li>停止接收新的生成任务；</li>
+ *     <li>在超时时间内等待进行中的任务完成，超时后统一取消，取消信号会一路传到平台轮询并取消远程任务；</li>
+ *     <li>释放连接池、调度器等登记过的资源。</li>
+ * </ol>
+ * 远程任务不会写入磁盘：停止后已经没有人在等它的结果，下次启动也无从恢复。
+ */
+@Slf4j
+@Component
+public class GenerationLifecycleManager {
+
+    public static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration CANCEL_GRACE = Duration.ofSeconds(2);
+
+    /**
+     * 旧版本在停止时写入的远程任务列表（含明文提示词），启动时删除。
+     */
+    private final Path legacyStateFile;
+    private final AtomicBoolean accepting = new AtomicBoolean(true);
+    private final Sinks.One<Boolean> stopSignal = Sinks.one();
+    private final Map<String, InFlightJob> inFlight = new ConcurrentHashMap<>();
+    private final List<Map.Entry<String, Disposable>> resources = new CopyOnWriteArrayList<>();
+
+    public GenerationLifecycleManager() {
+        this(PluginPaths.dataDirectory().resolve("resumable-tasks.json"));
+    }
+
+    GenerationLifecycleManager(Path legacyStateFile) {
+        this.legacyStateFile = legacyStateFile;
+    }
+
+    /**
+     * 插件启动时调用：清理旧版本遗留的任务文件。
+     */
+    public void start() {
+        try {
+            if (Files.deleteIfExists(legacyStateFile)) {
+                log.info("[Lifecycle] Deleted leftover task state {}", legacyStateFile);
+            }
+        } catch (IOException e) {
+            log.warn("[Lifecycle] Failed to delete leftover task state {}: {}", legacyStateFile, e.getMessage());
+        }
+    }
+
+    /**
+     * 登记一个需要在插件停止时释放的资源，按登记的逆序释放。
+     */
+    public void registerResource(String name, Disposable resource) {
+        resources.add(Map.entry(name, resource));
+    }
+
+    public boolean isAccepting() {
+        return accepting.get();
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 将一次生成纳入生命周期管理：插件停止时拒绝新任务，并在排空超时后取消进行中的任务。
+     */
+    public Flux<ProgressUpdate> track(String platform, Flux<ProgressUpdate> generation) {
+        return Flux.defer(() -> {
+            if (!accepting.get()) {
+                return Flux.just(ProgressUpdate.error("插件正在停止或重新加载，暂不接受新的生成任务，请稍后再试。"));
+            }
+            InFlightJob job = new InFlightJob(platform);
+            inFlight.put(job.id, job);
+            return generation
+                .doOnComplete(() -> job.completed = true)
+                .takeUntilOther(stopSignal.asMono())
+                .concatWith(Mono.fromSupplier(() -> job.completed
+                    ? null
+                    : ProgressUpdate.error("插件已停止，生成任务已取消。")))
+                .doFinally(signal -> {
+                    inFlight.remove(job.id);
+                    job.finished.tryEmitEmpty();
+                });
+        });
+    }
+
+    /**
+     * 插件停止时调用。该方法会阻塞至多 drainTimeout + 2 秒。
+     *
+     * @return 排空超时后被取消的任务数，全部正常结束或已经停止过时为 0
+     */
+    public int shutdown(Duration drainTimeout) {
+        if (!accepting.compareAndSet(true, false)) {
+            return 0;
+        }
+        log.info("[Lifecycle] Stopping: no longer accepting jobs, draining {} in-flight job(s)...",
+            inFlight.size());
+        int cancelled = 0;
+        if (!awaitDrained(drainTimeout)) {
+            cancelled = inFlight.size();
+            log.warn("[Lifecycle] {} job(s) still running after {}, cancelling them: {}",
+                cancelled, drainTimeout, inFlight.values().stream()
+                    .collect(Collectors.groupingBy(job -> job.platform, Collectors.counting())));
+            stopSignal.tryEmitValue(true);
+            awaitDrained(CANCEL_GRACE);
+        }
+        disposeResources();
+        return cancelled;
+    }
+
+    /**
+     * Spring 关闭插件上下文时的兜底，正常情况下 shutdown 已由插件的 stop() 调用过。
+     */
+    @PreDestroy
+    public void destroy() {
+        shutdown(Duration.ZERO);
+    }
+
+    /**
+     * 等待当前登记的任务全部结束，最多等待 timeout。此时已不再接收新任务，等待的集合不会再增长。
+     */
+    private boolean awaitDrained(Duration timeout) {
+        List<Mono<Void>> finished = inFlight.values().stream().map(job -> job.finished.asMono()).toList();
+        if (finished.isEmpty() || timeout.isZero()) {
+            return inFlight.isEmpty();
+        }
+        try {
+            Mono.when(finished).block(timeout);
+        } catch (IllegalStateException e) {
+            // 超时
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return inFlight.isEmpty();
+    }
+
+    private void disposeResources() {
+        List<Map.Entry<String, Disposable>> reversed = new ArrayList<>(resources);
+        Collections.reverse(reversed);
+        for (Map.Entry<String, Disposable> resource : reversed) {
+            try {
+                resource.getValue().dispose();
+            } catch (Exception e) {
+                log.warn("[Lifecycle] Failed to dispose {}: {}", resource.getKey(), e.getMessage());
+            }
+        }
+        resources.clear();
+    }
+
+    private static class InFlightJob {
+        private final String id = UUID.randomUUID().toString();
+        private final String platform;
+        private final Sinks.Empty<Void> finished = Sinks.empty();
+        private volatile boolean completed;
+
+        InFlightJob(String platform) {
+            this.platform = platform;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jacylunatic.aicover.aicover.service.lifecycle;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * 插件内所有 WebClient 共用的连接池。
+ * <p>
+ * 以前每个服务各自用 HttpClient.create() 建立客户端，连接挂在 Reactor Netty 的全局连接池上，
+ * 插件卸载后也不会释放。现在统一使用插件私有的 ConnectionProvider，并在插件停止时由
+ * {@link GenerationLifecycleManager} 释放，避免多次热更新后泄漏 Socket。
+ */
+@Slf4j
+@Component
+public class HttpClientProvider implements Disposable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private final ConnectionProvider connectionProvider = ConnectionProvider.builder("aicover")
+        .maxConnections(64)
+        .maxIdleTime(Duration.ofSeconds(30))
+        .evictInBackground(Duration.ofSeconds(60))
+        .pendingAcquireTimeout(Duration.ofSeconds(30))
+        .build();
+
+    public HttpClientProvider(GenerationLifecycleManager lifecycleManager) {
+        lifecycleManager.registerResource("http-connection-pool", this);
+    }
+
+    /**
+     * 不设响应超时的 WebClient。
+     */
+    public WebClient webClient() {
+        return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient()))
+            .build();
+    }
+
+    public WebClient webClient(Duration responseTimeout) {
+        return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient().responseTimeout(responseTimeout)))
+            .build();
+    }
+
+    public HttpClient httpClient() {
+        return HttpClient.create(connectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    public void dispose() {
+        if (!connectionProvider.isDisposed()) {
+            log.info("[Lifecycle] Disposing HTTP connection pool.");
+            connectionProvider.dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return connectionProvider.isDisposed();
+    }
+}
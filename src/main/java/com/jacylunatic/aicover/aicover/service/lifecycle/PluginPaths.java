@@ -0,0 +1,23 @@
+package com.jacylunatic.aicover.aicover.service.lifecycle;
+
+import java.nio.file.Path;
+
+/**
+ * 插件在本地磁盘上的数据目录。
+ * <p>
+ * 与 Halo 的工作目录保持一致：优先使用 HALO_WORK_DIR 环境变量，否则为 ~/.halo2，
+ * 插件的数据统一放在其下的 aicover-data 子目录中，随 Halo 数据卷一起持久化。
+ */
+public final class PluginPaths {
+
+    private PluginPaths() {
+    }
+
+    public static Path dataDirectory() {
+        String workDir = System.getenv("HALO_WORK_DIR");
+        Path base = workDir != null && !workDir.isBlank()
+            ? Path.of(workDir)
+            : Path.of(System.getProperty("user.home"), ".halo2");
+        return base.resolve("aicover-data");
+    }
+}
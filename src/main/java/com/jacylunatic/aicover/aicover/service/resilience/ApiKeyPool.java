@@ -0,0 +1,247 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 按平台管理多个 API Key，在它们之间分摊请求。
+ * <p>
+ * 单个账号的 QPS 和并发任务数有限，配置多个 Key 后按"进行中请求最少"选择，
+ * 并列时轮流使用。返回 429 或鉴权失败的 Key 进入冷却期，冷却期内不再被选中；
+ * 全部 Key 都在冷却时退回到最早结束冷却的那个，行为与只配置一个 Key 时相同。
+ * <p>
+ * 每次提交都重新租用 Key：返回 429 或 401/403 的 Key 立即换用其他可用的 Key；无 Key 可换时，
+ * 429 和其余暂时性错误按调用方给出的重试策略退避重试，每次重试同样重新选择 Key。
+ * 异步任务型平台必须用提交任务的 Key 轮询结果，因此提交成功后租约延续到整个任务结束。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ApiKeyPool {
+
+    static final Duration RATE_LIMIT_COOLDOWN = Duration.ofSeconds(60);
+    static final Duration AUTH_FAILURE_COOLDOWN = Duration.ofMinutes(10);
+
+    private final PluginMetrics metrics;
+    private final Map<String, KeyState> states = new ConcurrentHashMap<>();
+    private final AtomicLong rotation = new AtomicLong();
+
+    /**
+     * 解析设置中的 Key 列表，支持换行或逗号分隔，去重后保持原有顺序。
+     */
+    public static List<String> parseKeys(String configured) {
+        if (configured == null || configured.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(configured.split("[\\r\\n,]+"))
+            .map(String::trim)
+            .filter(key -> !key.isEmpty())
+            .distinct()
+            .toList();
+    }
+
+    /**
+     * 租用一个 Key 执行 body，body 结束、出错或被取消时归还。
+     */
+    public <T> Flux<T> withKey(String platform, List<String> keys, Function<Lease, Flux<T>> body) {
+        return Flux.using(() -> acquire(platform, keys), body, Lease::release);
+    }
+
+    /**
+     * 每次尝试租用一个新的 Key 执行 attempt，成功后由 body 继续使用同一个 Key，body 结束、出错或被取消时归还。
+     * <p>
+     * 429 和 401/403 只与当前 Key 有关：还有其他未冷却的 Key 时立即换用。无 Key 可换时，401/403 直接失败；
+     * 429 与其余错误一样交给 retry，按退避和 Retry-After 等待后重新租用 Key。
+     */
+    public <S, T> Flux<T> withKey(String platform, List<String> keys, Function<Lease, Mono<S>> attempt,
+        Retry retry, BiFunction<Lease, S, Flux<T>> body) {
+        Mono<Leased<S>> leased = attempt(platform, keys, attempt, keys.size() - 1)
+            .retryWhen(Retry.from(signals -> retry.generateCompanion(signals.concatMap(signal ->
+                authFailure(signal.failure())
+                    ? Mono.<Retry.RetrySignal>error(signal.failure())
+                    : Mono.just(signal.copy())))));
+        return Flux.usingWhen(leased, current -> body.apply(current.lease(), current.value()),
+            current -> Mono.fromRunnable(current.lease()::release));
+    }
+
+    private <S> Mono<Leased<S>> attempt(String platform, List<String> keys, Function<Lease, Mono<S>> attempt,
+        int rotationsLeft) {
+        return Mono.defer(() -> {
+            Lease lease = acquire(platform, keys);
+            return attempt.apply(lease)
+                .map(value -> new Leased<>(lease, value))
+                .doOnSuccess(value -> {
+                    if (value == null) {
+                        lease.release();
+                    }
+                })
+                .doOnCancel(lease::release)
+                .onErrorResume(error -> {
+                    lease.reportFailure(error);
+                    lease.release();
+                    if (!keyScoped(error) || rotationsLeft <= 0 || !hasAvailableKey(platform, keys)) {
+                        return Mono.error(error);
+                    }
+                    metrics.increment("aicover.apikey.rotations", "platform", platform);
+                    log.warn("[KeyPool] Key {} of {} was rejected, switching to another key.",
+                        lease.state.fingerprint, platform);
+                    return attempt(platform, keys, attempt, rotationsLeft - 1);
+                });
+        });
+    }
+
+    /**
+     * 429 和 401/403 是当前 Key 的问题，换一个 Key 可能成功，原地重试则不会。
+     */
+    static boolean keyScoped(Throwable error) {
+        if (!(error instanceof ProviderApiException apiError)) {
+            return false;
+        }
+        int status = apiError.getStatusCode();
+        return status == 429 || status == 401 || status == 403;
+    }
+
+    /**
+     * 鉴权失败等多久都不会恢复，不值得等待重试。
+     */
+    static boolean authFailure(Throwable error) {
+        return error instanceof ProviderApiException apiError
+            && (apiError.getStatusCode() == 401 || apiError.getStatusCode() == 403);
+    }
+
+    private boolean hasAvailableKey(String platform, List<String> keys) {
+        long now = System.currentTimeMillis();
+        return keys.stream().anyMatch(key -> !state(platform, key).coolingDown(now));
+    }
+
+    Lease acquire(String platform, List<String> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("未配置 " + platform + " 的 API Key");
+        }
+        long now = System.currentTimeMillis();
+        List<KeyState> candidates = keys.stream().map(key -> state(platform, key)).toList();
+        int offset = (int) Math.floorMod(rotation.getAndIncrement(), (long) candidates.size());
+        KeyState chosen = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            KeyState candidate = candidates.get((offset + i) % candidates.size());
+            if (candidate.coolingDown(now)) {
+                continue;
+            }
+            if (chosen == null || candidate.inFlight.get() < chosen.inFlight.get()) {
+                chosen = candidate;
+            }
+        }
+        if (chosen == null) {
+            chosen = candidates.stream()
+                .min(Comparator.comparingLong(state -> state.cooldownUntil))
+                .orElseThrow();
+            log.warn("[KeyPool] All {} key(s) of {} are cooling down, falling back to {}.",
+                candidates.size(), platform, chosen.fingerprint);
+        }
+        chosen.inFlight.incrementAndGet();
+        metrics.increment("aicover.apikey.requests", "platform", platform, "key", chosen.fingerprint);
+        return new Lease(chosen);
+    }
+
+    private KeyState state(String platform, String key) {
+        return states.computeIfAbsent(platform + "\n" + key, ignored -> {
+            KeyState state = new KeyState(platform, key, fingerprint(key));
+            metrics.gauge("aicover.apikey.in_flight", state.inFlight::get,
+                "platform", platform, "key", state.fingerprint);
+            metrics.gauge("aicover.apikey.cooling_down",
+                () -> state.coolingDown(System.currentTimeMillis()) ? 1 : 0,
+                "platform", platform, "key", state.fingerprint);
+            return state;
+        });
+    }
+
+    /**
+     * 指标和日志中只出现 Key 的末 4 位。
+     */
+    static String fingerprint(String key) {
+        return key.length() <= 4 ? "****" : "..." + key.substring(key.length() - 4);
+    }
+
+    private static final class KeyState {
+        private final String platform;
+        private final String key;
+        private final String fingerprint;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long cooldownUntil;
+
+        KeyState(String platform, String key, String fingerprint) {
+            this.platform = platform;
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+
+        boolean coolingDown(long now) {
+            return cooldownUntil > now;
+        }
+    }
+
+    private record Leased<S>(Lease lease, S value) {
+    }
+
+    /**
+     * 一次 Key 租约。
+     */
+    public final class Lease {
+        private final KeyState state;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(KeyState state) {
+            this.state = state;
+        }
+
+        public String key() {
+            return state.key;
+        }
+
+        /**
+         * 报告一次请求失败。429 按 Retry-After（没有时 60 秒）冷却，401/403 冷却 10 分钟，其余错误不影响 Key 的状态。
+         */
+        public void reportFailure(Throwable error) {
+            if (!(error instanceof ProviderApiException apiError)) {
+                return;
+            }
+            int status = apiError.getStatusCode();
+            Duration cooldown;
+            if (status == 429) {
+                cooldown = apiError.getRetryAfter() != null ? apiError.getRetryAfter() : RATE_LIMIT_COOLDOWN;
+            } else if (status == 401 || status == 403) {
+                cooldown = AUTH_FAILURE_COOLDOWN;
+            } else {
+                return;
+            }
+            state.cooldownUntil = System.currentTimeMillis() + cooldown.toMillis();
+            metrics.increment("aicover.apikey.cooldowns", "platform", state.platform, "key", state.fingerprint,
+                "status", String.valueOf(status));
+            log.warn("[KeyPool] Key {} of {} returned {}, cooling down for {}s.",
+                state.fingerprint, state.platform, status, cooldown.toSeconds());
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                state.inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * 单个 AI 平台的熔断器。
+ * <p>
+ * 基于最近 N 次调用的滑动窗口统计失败率和慢调用率：
+ * <ul>
+ *     <li>CLOSED：正常放行，窗口内任一比率超过阈值即跳闸进入 OPEN。</li>
+ *     <li>OPEN：直接拒绝，等待 openDuration 后进入 HALF_OPEN。</li>
+ *     <li>HALF_OPEN：只放行少量探测请求，全部成功则恢复 CLOSED，任一失败则重新 OPEN。</li>
+ * </ul>
+ * 所有状态变更都在 synchronized 方法中完成，调用量很低，无需更细粒度的锁。
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 一次调用的结果。
+     */
+    public enum Outcome {
+        SUCCESS, FAILURE
+    }
+
+    private final String name;
+    private final CircuitBreakerConfig config;
+    private final LongSupplier nanoClock;
+
+    // 环形缓冲区，记录最近 windowSize 次调用：bit0 = 失败，bit1 = 慢调用
+    private final byte[] window;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failedCalls;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenPermitsInUse;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(String name, CircuitBreakerConfig config) {
+        this(name, config, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, CircuitBreakerConfig config, LongSupplier nanoClock) {
+        this.name = name;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.window = new byte[config.windowSize()];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreakerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 申请一次调用许可。返回 true 时，调用方必须在结束后调用 {@link #onResult} 或 {@link #releasePermission}。
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAtNanos < config.openDuration().toNanos()) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitsInUse >= config.halfOpenProbes()) {
+                return false;
+            }
+            halfOpenPermitsInUse++;
+        }
+        return true;
+    }
+
+    /**
+     * 调用被取消、无法判定结果时归还许可，不计入统计。
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenPermitsInUse > 0) {
+            halfOpenPermitsInUse--;
+        }
+    }
+
+    /**
+     * 记录一次调用的结果和耗时。
+     */
+    public synchronized void onResult(Outcome outcome, Duration elapsed) {
+        boolean failed = outcome == Outcome.FAILURE;
+        boolean slow = elapsed.compareTo(config.slowCallThreshold()) >= 0;
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitsInUse > 0) {
+                halfOpenPermitsInUse--;
+            }
+            if (failed || slow) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSuccesses >= config.halfOpenProbes()) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // 跳闸前发出的请求迟到的结果，直接忽略
+            return;
+        }
+
+        record(failed, slow);
+        if (recordedCalls >= config.minimumCalls()
+            && (getFailureRate() >= config.failureRateThreshold()
+            || getSlowCallRate() >= config.slowCallRateThreshold())) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    public synchronized State getState() {
+        // 读取状态时顺带处理 OPEN 的超时，使外部看到的状态与下一次请求的行为一致
+        if (state == State.OPEN
+            && nanoClock.getAsLong() - openedAtNanos >= config.openDuration().toNanos()) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    public synchronized float getFailureRate() {
+        return recordedCalls == 0 ? 0f : (float) failedCalls / recordedCalls;
+    }
+
+    public synchronized float getSlowCallRate() {
+        return recordedCalls == 0 ? 0f : (float) slowCalls / recordedCalls;
+    }
+
+    public synchronized int getRecordedCalls() {
+        return recordedCalls;
+    }
+
+    /**
+     * OPEN 状态下距离进入 HALF_OPEN 的剩余时间，其他状态返回 0。
+     */
+    public synchronized Duration getRemainingOpenDuration() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        long remaining = config.openDuration().toNanos() - (nanoClock.getAsLong() - openedAtNanos);
+        return Duration.ofNanos(Math.max(0, remaining));
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (recordedCalls == window.length) {
+            byte evicted = window[windowIndex];
+            if ((evicted & 1) != 0) {
+                failedCalls--;
+            }
+            if ((evicted & 2) != 0) {
+                slowCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        window[windowIndex] = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+        windowIndex = (windowIndex + 1) % window.length;
+        if (failed) {
+            failedCalls++;
+        }
+        if (slow) {
+            slowCalls++;
+        }
+    }
+
+    private void transitionTo(State newState) {
+        if (state == newState) {
+            return;
+        }
+        log.warn("[CircuitBreaker] '{}' state changed: {} -> {} (failureRate={}, slowCallRate={})",
+            name, state, newState, getFailureRate(), getSlowCallRate());
+        state = newState;
+        halfOpenPermitsInUse = 0;
+        halfOpenSuccesses = 0;
+        if (newState == State.OPEN) {
+            openedAtNanos = nanoClock.getAsLong();
+        }
+        if (newState == State.CLOSED) {
+            windowIndex = 0;
+            recordedCalls = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import java.time.Duration;
+
+/**
+ * 熔断器参数。
+ *
+ * @param windowSize            滑动窗口大小（最近多少次调用）
+ * @param minimumCalls          窗口内至少累计多少次调用才开始计算比率
+ * @param failureRateThreshold  失败率阈值 (0~1)
+ * @param slowCallThreshold     超过该耗时即视为慢调用
+ * @param slowCallRateThreshold 慢调用率阈值 (0~1)
+ * @param openDuration          跳闸后保持 OPEN 的时长
+ * @param halfOpenProbes        HALF_OPEN 状态下允许同时放行的探测请求数
+ */
+public record CircuitBreakerConfig(
+    int windowSize,
+    int minimumCalls,
+    float failureRateThreshold,
+    Duration slowCallThreshold,
+    float slowCallRateThreshold,
+    Duration openDuration,
+    int halfOpenProbes
+) {
+
+    public CircuitBreakerConfig {
+        if (windowSize <= 0 || minimumCalls <= 0 || halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("熔断器窗口与探测数必须为正数");
+        }
+    }
+
+    /**
+     * 以给定的慢调用阈值构建默认配置：窗口 20 次、至少 5 次，失败率或慢调用率达到 50% 即跳闸，
+     * 跳闸 60 秒后放行 2 个探测请求。
+     */
+    public static CircuitBreakerConfig withSlowCallThreshold(Duration slowCallThreshold) {
+        return new CircuitBreakerConfig(20, 5, 0.5f, slowCallThreshold, 0.5f,
+            Duration.ofSeconds(60), 2);
+    }
+}
@@ -0,0 +1,137 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import com.jacylunatic.aicover.aicover.model.CircuitBreakerStatus;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 按平台管理熔断器，并负责把熔断逻辑套在 ImageGenerator 的进度流外面。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CircuitBreakerRegistry {
+
+    /**
+     * 各平台的慢调用阈值：异步任务型平台本身就慢，阈值需要相应放宽。
+     */
+    private static final Map<String, Duration> SLOW_CALL_THRESHOLDS = Map.of(
+        "tongyi", Duration.ofSeconds(90),
+        "modelscope", Duration.ofMinutes(3),
+        "siliconflow", Duration.ofSeconds(60)
+    );
+    private static final Duration DEFAULT_SLOW_CALL_THRESHOLD = Duration.ofMinutes(2);
+
+    private final PluginMetrics metrics;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreaker get(String platform) {
+        return breakers.computeIfAbsent(platform.toLowerCase(), this::create);
+    }
+
+    /**
+     * 用熔断器包装一次生成调用。
+     * <p>
+     * OPEN 时直接返回一条错误进度，不再向平台发起请求；否则按进度流的结果记录成功或失败：
+     * 出现 finalImageUrl 视为成功，出现 isError 或流异常视为失败，被取消则只归还许可。
+     */
+    public Flux<ProgressUpdate> decorate(String platform, Supplier<Flux<ProgressUpdate>> call) {
+        return Flux.defer(() -> {
+            CircuitBreaker breaker = get(platform);
+            if (!breaker.tryAcquirePermission()) {
+                metrics.increment("aicover.breaker.rejected", "platform", breaker.getName());
+                long seconds = Math.max(1, breaker.getRemainingOpenDuration().toSeconds());
+                return Flux.just(ProgressUpdate.error("平台 '" + breaker.getName()
+                    + "' 近期故障率过高，已暂停调用（熔断保护中），请约 " + seconds + " 秒后重试或切换其他模型。"));
+            }
+
+            long startNanos = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean(false);
+            Runnable onSuccess = () -> {
+                if (recorded.compareAndSet(false, true)) {
+                    breaker.onResult(CircuitBreaker.Outcome.SUCCESS, elapsedSince(startNanos));
+                }
+            };
+            Runnable onFailure = () -> {
+                if (recorded.compareAndSet(false, true)) {
+                    metrics.increment("aicover.breaker.failures", "platform", breaker.getName());
+                    breaker.onResult(CircuitBreaker.Outcome.FAILURE, elapsedSince(startNanos));
+                }
+            };
+
+            return call.get()
+                .doOnNext(update -> {
+                    if (update.getFinalImageUrl() != null) {
+                        onSuccess.run();
+                    } else if (Boolean.TRUE.equals(update.getIsError())) {
+                        onFailure.run();
+                    }
+                })
+                .doOnError(error -> onFailure.run())
+                .doFinally(signal -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        if (signal == SignalType.ON_COMPLETE) {
+                            // 正常结束却没有产出图片，同样视为失败
+                            metrics.increment("aicover.breaker.failures", "platform", breaker.getName());
+                            breaker.onResult(CircuitBreaker.Outcome.FAILURE, elapsedSince(startNanos));
+                        } else {
+                            breaker.releasePermission();
+                        }
+                    }
+                });
+        });
+    }
+
+    public List<CircuitBreakerStatus> statuses() {
+        return breakers.values().stream()
+            .sorted(Comparator.comparing(CircuitBreaker::getName))
+            .map(CircuitBreakerRegistry::toStatus)
+            .toList();
+    }
+
+    private CircuitBreaker create(String platform) {
+        Duration slowCallThreshold =
+            SLOW_CALL_THRESHOLDS.getOrDefault(platform, DEFAULT_SLOW_CALL_THRESHOLD);
+        CircuitBreaker breaker = new CircuitBreaker(platform,
+            CircuitBreakerConfig.withSlowCallThreshold(slowCallThreshold));
+        // 0 = CLOSED, 1 = HALF_OPEN, 2 = OPEN，便于在监控中画阶梯图
+        metrics.gauge("aicover.breaker.state", () -> switch (breaker.getState()) {
+            case CLOSED -> 0;
+            case HALF_OPEN -> 1;
+            case OPEN -> 2;
+        }, "platform", platform);
+        metrics.gauge("aicover.breaker.failure_rate", breaker::getFailureRate, "platform", platform);
+        metrics.gauge("aicover.breaker.slow_call_rate", breaker::getSlowCallRate, "platform", platform);
+        log.info("[CircuitBreaker] Created circuit breaker for platform '{}', slow call threshold {}",
+            platform, slowCallThreshold);
+        return breaker;
+    }
+
+    private static CircuitBreakerStatus toStatus(CircuitBreaker breaker) {
+        CircuitBreakerStatus status = new CircuitBreakerStatus();
+        status.setPlatform(breaker.getName());
+        status.setState(breaker.getState().name());
+        status.setFailureRate(breaker.getFailureRate());
+        status.setSlowCallRate(breaker.getSlowCallRate());
+        status.setRecordedCalls(breaker.getRecordedCalls());
+        status.setRetryAfterSeconds(breaker.getRemainingOpenDuration().toSeconds());
+        return status;
+    }
+
+    private static Duration elapsedSince(long startNanos) {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,154 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * 一次请求的截止时间，通过 Reactor Context 传给生成、缓存、上传等各个阶段。
+ * <p>
+ * 入口处用 {@link #apply} 设定时限，之后每个阶段都用 {@link #limit} 从剩余时间推算自己的超时：
+ * 剩余时间用完时立即取消上游的工作（停止轮询、断开连接、归还资源），并以 {@link DeadlineExceededException} 结束。
+ * 重试策略同样不会把重试安排到截止时间之后。
+ */
+public final class Deadline {
+
+    private static final String CONTEXT_KEY = Deadline.class.getName();
+
+    private final long expiresAtNanos;
+    private final Duration budget;
+
+    private Deadline(long expiresAtNanos, Duration budget) {
+        this.expiresAtNanos = expiresAtNanos;
+        this.budget = budget;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos(), budget);
+    }
+
+    /**
+     * 设定时限时给出的总时长。
+     */
+    public Duration getBudget() {
+        return budget;
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public static Optional<Deadline> current(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    /**
+     * 为整条流设定时限，从订阅时开始计时。下游已经设定了更早的截止时间时沿用下游的。
+     */
+    public static <T> Flux<T> apply(Flux<T> flux, Duration budget) {
+        return Flux.deferContextual(context -> {
+            Deadline requested = after(budget);
+            Deadline deadline = current(context)
+                .filter(existing -> existing.expiresAtNanos - requested.expiresAtNanos <= 0)
+                .orElse(requested);
+            return limit(flux, "本次请求", null).contextWrite(ctx -> ctx.put(CONTEXT_KEY, deadline));
+        });
+    }
+
+    /**
+     * 只为上游写入截止时间，不限制这条流本身，供入口（例如控制器按请求参数）收紧时限。
+     * 真正的限制由上游的 {@link #apply} 和各阶段的 {@link #limit} 执行。
+     */
+    public static <T> Flux<T> tighten(Flux<T> flux, Duration budget) {
+        return flux.contextWrite(context -> {
+            Deadline requested = after(budget);
+            return current(context)
+                .filter(existing -> existing.expiresAtNanos - requested.expiresAtNanos <= 0)
+                .map(existing -> context)
+                .orElseGet(() -> context.put(CONTEXT_KEY, requested));
+        });
+    }
+
+    /**
+     * 在另一条订阅（例如后台的上传批处理）中沿用调用方捕获的截止时间并限制该阶段。deadline 为 null 时不限时。
+     */
+    public static <T> Mono<T> within(Mono<T> mono, Deadline deadline, String stage) {
+        if (deadline == null) {
+            return mono;
+        }
+        return limit(mono, stage, null).contextWrite(context -> context.put(CONTEXT_KEY, deadline));
+    }
+
+    /**
+     * 某个阶段可用的时长：剩余时间与阶段上限中较短的一个。两者都没有时返回 null，表示不限时。
+     */
+    public static Duration timeout(ContextView context, Duration cap) {
+        Duration remaining = current(context).map(Deadline::remaining).orElse(null);
+        if (remaining == null) {
+            return cap;
+        }
+        return cap == null || remaining.compareTo(cap) < 0 ? remaining : cap;
+    }
+
+    /**
+     * 限制一个阶段的耗时，超时时取消该阶段并抛出 {@link DeadlineExceededException}。
+     *
+     * @param stage 阶段名称，用于错误提示
+     * @param cap   阶段自身的上限，没有时传 null
+     */
+    public static <T> Mono<T> limit(Mono<T> mono, String stage, Duration cap) {
+        return Mono.deferContextual(context -> {
+            Duration timeout = timeout(context, cap);
+            if (timeout == null) {
+                return mono;
+            }
+            Deadline binding = binding(context, cap);
+            if (timeout.isZero()) {
+                return Mono.error(exceeded(stage, binding, cap));
+            }
+            return mono.timeout(timeout, Mono.error(() -> exceeded(stage, binding, cap)));
+        });
+    }
+
+    /**
+     * 限制一条流从订阅到结束的总耗时（而不是相邻两个元素之间的间隔）。
+     */
+    public static <T> Flux<T> limit(Flux<T> flux, String stage, Duration cap) {
+        return Flux.deferContextual(context -> {
+            Duration timeout = timeout(context, cap);
+            if (timeout == null) {
+                return flux;
+            }
+            Deadline binding = binding(context, cap);
+            if (timeout.isZero()) {
+                return Flux.error(exceeded(stage, binding, cap));
+            }
+            long endNanos = System.nanoTime() + timeout.toNanos();
+            return flux.timeout(untilEnd(endNanos), item -> untilEnd(endNanos),
+                Flux.defer(() -> Flux.error(exceeded(stage, binding, cap))));
+        });
+    }
+
+    private static Mono<Long> untilEnd(long endNanos) {
+        return Mono.delay(Duration.ofNanos(Math.max(0, endNanos - System.nanoTime())));
+    }
+
+    /**
+     * 决定本阶段超时的截止时间；由阶段上限决定时返回 null。
+     */
+    private static Deadline binding(ContextView context, Duration cap) {
+        return current(context)
+            .filter(deadline -> cap == null || deadline.remaining().compareTo(cap) < 0)
+            .orElse(null);
+    }
+
+    private static DeadlineExceededException exceeded(String stage, Deadline binding, Duration cap) {
+        String message = binding != null
+            ? stage + "超时：已超过本次请求的时限（" + binding.getBudget().toSeconds() + " 秒），已取消。"
+            : stage + "超时（" + cap.toSeconds() + " 秒），已取消。";
+        return new DeadlineExceededException(stage, message);
+    }
+}
@@ -0,0 +1,20 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+/**
+ * 某个阶段超过了本次请求的时限（或阶段自身的上限）时抛出，上游的工作此时已经被取消。
+ * <p>
+ * 不属于暂时性错误，重试策略不会重试它。
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private final String stage;
+
+    public DeadlineExceededException(String stage, String message) {
+        super(message);
+        this.stage = stage;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+}
@@ -0,0 +1,69 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.ClientResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * AI 平台或存储后端返回 HTTP 错误状态码时抛出的异常。
+ * <p>
+ * 与普通 RuntimeException 不同，它保留了状态码和 Retry-After，
+ * 使重试策略可以区分 429/5xx 等暂时性错误与鉴权失败、参数错误等永久性错误。
+ */
+public class ProviderApiException extends RuntimeException {
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public ProviderApiException(String message, int statusCode, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * 从错误响应构建异常，顺带解析 Retry-After 响应头。
+     */
+    public static ProviderApiException from(ClientResponse response, String message) {
+        String retryAfterHeader = response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        return new ProviderApiException(message, response.statusCode().value(),
+            parseRetryAfter(retryAfterHeader));
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return 服务端要求的等待时长，未提供时为 null
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Retry-After 既可以是秒数，也可以是 HTTP 日期。
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException ignored) {
+            // 不是秒数，继续尝试按 HTTP 日期解析
+        }
+        try {
+            Instant until = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(Instant.now(), until);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import io.netty.channel.ConnectTimeoutException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.PrematureCloseException;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 所有外部 HTTP 调用共用的暂时性错误重试策略。
+ * <p>
+ * 只重试 429、502、503、504 和连接被重置/提前关闭等暂时性错误，鉴权失败、参数错误等永久性错误立即抛出。
+ * 重试间隔采用带抖动的指数退避，并优先遵守服务端返回的 Retry-After；
+ * 所有重试必须在给定的总时限内完成，超出时限则放弃并抛出最后一次的错误。
+ * 订阅上下文中带有请求截止时间（{@link Deadline}）时，总时限不会超过剩余时间。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetryPolicy {
+
+    private static final Set<Integer> TRANSIENT_STATUS_CODES = Set.of(429, 502, 503, 504);
+    private static final int MAX_RETRIES = 4;
+    private static final Duration BASE_BACKOFF = Duration.ofMillis(500);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(10);
+
+    private final PluginMetrics metrics;
+
+    /**
+     * 构建一个 Reactor Retry，用于 retryWhen。
+     *
+     * @param platform   平台标识，用于日志和指标
+     * @param operation  操作名（如 submit、poll），用于日志和指标
+     * @param maxElapsed 从本次订阅开始，所有重试（含等待）必须在该时长内完成
+     */
+    public Retry transientErrors(String platform, String operation, Duration maxElapsed) {
+        return Retry.from(signals -> Flux.deferContextual(context -> {
+            long deadlineNanos = System.nanoTime() + Deadline.timeout(context, maxElapsed).toNanos();
+            return signals.concatMap(signal -> {
+                Throwable failure = signal.failure();
+                if (!isTransient(failure)) {
+                    return Mono.error(failure);
+                }
+                long attempt = signal.totalRetries() + 1;
+                if (attempt > MAX_RETRIES) {
+                    metrics.increment("aicover.retry.exhausted", "platform", platform, "operation", operation);
+                    return Mono.error(failure);
+                }
+                Duration delay = nextDelay(attempt, failure);
+                if (System.nanoTime() + delay.toNanos() > deadlineNanos) {
+                    log.warn("[Retry] {} {} gave up: next delay {} exceeds the overall deadline",
+                        platform, operation, delay);
+                    metrics.increment("aicover.retry.exhausted", "platform", platform, "operation", operation);
+                    return Mono.error(failure);
+                }
+                metrics.increment("aicover.retry.attempts", "platform", platform, "operation", operation);
+                log.warn("[Retry] {} {} failed with transient error '{}', retry #{} in {} ms",
+                    platform, operation, failure.getMessage(), attempt, delay.toMillis());
+                return Mono.delay(delay).thenReturn(attempt);
+            });
+        }));
+    }
+
+    /**
+     * 判断是否为暂时性错误。
+     */
+    public static boolean isTransient(Throwable error) {
+        if (error instanceof ProviderApiException apiException) {
+            return TRANSIENT_STATUS_CODES.contains(apiException.getStatusCode());
+        }
+        if (error instanceof WebClientResponseException responseException) {
+            return TRANSIENT_STATUS_CODES.contains(responseException.getStatusCode().value());
+        }
+        if (error instanceof WebClientRequestException requestException) {
+            // 请求阶段的异常（连接失败、连接被重置等），此时服务端尚未给出任何响应
+            return isConnectionFailure(requestException.getCause());
+        }
+        return isConnectionFailure(error);
+    }
+
+    private static boolean isConnectionFailure(Throwable error) {
+        if (error == null) {
+            return false;
+        }
+        if (error instanceof PrematureCloseException
+            || error instanceof ConnectException
+            || error instanceof ConnectTimeoutException) {
+            return true;
+        }
+        if (error instanceof IOException) {
+            String message = error.getMessage();
+            return message != null && (message.contains("Connection reset")
+                || message.contains("Connection prematurely closed"));
+        }
+        return false;
+    }
+
+    /**
+     * 第 attempt 次重试前的等待时长：在 [backoff/2, backoff] 之间随机抖动，避免大量请求同时重试，
+     * 服务端给出 Retry-After 时取二者中的较大值。
+     */
+    static Duration nextDelay(long attempt, Throwable failure) {
+        long exponential = BASE_BACKOFF.toMillis() << Math.min(attempt - 1, 16);
+        long capped = Math.min(exponential, MAX_BACKOFF.toMillis());
+        long jittered = capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+        Duration delay = Duration.ofMillis(jittered);
+        if (failure instanceof ProviderApiException apiException && apiException.getRetryAfter() != null
+            && apiException.getRetryAfter().compareTo(delay) > 0) {
+            return apiException.getRetryAfter();
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,64 @@
+package com.jacylunatic.aicover.aicover.service.similarity;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * MinHash 签名与 LSH 分段。
+ * <p>
+ * 用 64 个形如 (a·x + b) mod p 的哈希函数计算签名，两个签名中相同位置相等的比例是 Jaccard 相似度的无偏估计。
+ * 签名分为 32 段、每段 2 行，只要有一段完全相同就成为候选，相似度 0.5 时成为候选的概率已超过 99.9%，
+ * 最终是否命中由调用方用精确的 Jaccard 相似度确认。
+ */
+final class MinHash {
+
+    static final int NUM_HASHES = 64;
+    static final int BANDS = 32;
+    static final int ROWS = NUM_HASHES / BANDS;
+
+    private static final long PRIME = (1L << 31) - 1;
+    private static final long[] A = new long[NUM_HASHES];
+    private static final long[] B = new long[NUM_HASHES];
+
+    static {
+        // 固定种子：签名在插件重启前后保持一致
+        Random random = new Random(0x5eed_c0feL);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            A[i] = 1 + random.nextInt(Integer.MAX_VALUE - 1);
+            B[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    private MinHash() {
+    }
+
+    static int[] signature(Set<String> features) {
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String feature : features) {
+            long x = mix(feature.hashCode()) & 0x7fffffffL;
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int hash = (int) ((A[i] * x + B[i]) % PRIME);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 第 band 段的桶键，不同段的桶键互不相同。
+     */
+    static long bandKey(int[] signature, int band) {
+        int from = band * ROWS;
+        return ((long) band << 32) | (Arrays.hashCode(Arrays.copyOfRange(signature, from, from + ROWS)) & 0xffffffffL);
+    }
+
+    // String.hashCode 的低位分布较差，先打散一次
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
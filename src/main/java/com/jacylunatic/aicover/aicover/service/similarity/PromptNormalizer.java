@@ -0,0 +1,98 @@
+package com.jacylunatic.aicover.aicover.service.similarity;
+
+import java.text.Normalizer;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 把提示词归一化为一组特征，用于估计两个提示词的相似度。
+ * <p>
+ * 先做 NFKC 归一化（全角标点、全角字母转半角）并转为小写，标点和空白只作为分隔符。
+ * 拉丁字母和数字按单词切分；中日韩文字没有空格分词，按连续片段取单字和相邻两字，
+ * 因此"科技 博客 封面"和"博客封面, 科技"得到几乎相同的特征集合，与词序无关。
+ * 虚词和"生成""绘制"之类的请求用语不参与比较。
+ */
+final class PromptNormalizer {
+
+    private static final Set<String> LATIN_STOP_WORDS = Set.of(
+        "a", "an", "the", "of", "and", "or", "with", "for", "in", "on", "at", "to", "by", "is", "are", "this", "that",
+        "please", "generate", "draw", "create", "image", "picture");
+
+    // 按长度从长到短替换，避免"一张"先被"一"拆开
+    private static final List<String> CJK_STOP_WORDS = List.of(
+        "帮我", "给我", "一个", "一张", "一幅", "生成", "绘制",
+        "的", "了", "和", "与", "及", "并", "或", "请").stream()
+        .sorted(Comparator.comparingInt(String::length).reversed())
+        .toList();
+
+    private PromptNormalizer() {
+    }
+
+    static Set<String> features(String prompt) {
+        String text = Normalizer.normalize(prompt == null ? "" : prompt, Normalizer.Form.NFKC)
+            .toLowerCase(Locale.ROOT);
+        for (String stopWord : CJK_STOP_WORDS) {
+            text = text.replace(stopWord, " ");
+        }
+        Set<String> features = new LinkedHashSet<>();
+        StringBuilder latin = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushLatin(latin, features);
+                cjk.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(cjk, features);
+                latin.appendCodePoint(codePoint);
+            } else {
+                flushLatin(latin, features);
+                flushCjk(cjk, features);
+            }
+        }
+        flushLatin(latin, features);
+        flushCjk(cjk, features);
+        return features;
+    }
+
+    private static void flushLatin(StringBuilder word, Set<String> features) {
+        if (!word.isEmpty() && !LATIN_STOP_WORDS.contains(word.toString())) {
+            features.add("w:" + word);
+        }
+        word.setLength(0);
+    }
+
+    private static void flushCjk(StringBuilder run, Set<String> features) {
+        int[] codePoints = run.codePoints().toArray();
+        for (int i = 0; i < codePoints.length; i++) {
+            features.add("c:" + Character.toString(codePoints[i]));
+            if (i + 1 < codePoints.length) {
+                features.add("b:" + Character.toString(codePoints[i]) + Character.toString(codePoints[i + 1]));
+            }
+        }
+        run.setLength(0);
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 两个特征集合的 Jaccard 相似度。
+     */
+    static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        long common = smaller.stream().filter(larger::contains).count();
+        return (double) common / (a.size() + b.size() - common);
+    }
+}
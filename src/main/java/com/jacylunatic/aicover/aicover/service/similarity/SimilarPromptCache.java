@@ -0,0 +1,225 @@
+package com.jacylunatic.aicover.aicover.service.similarity;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.coverage.CoverIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 近似重复提示词的结果缓存。
+ * <p>
+ * 每次生成成功后，按（模型、尺寸）记录归一化后的提示词特征和图片地址，并以 MinHash 签名的 LSH 分段建立索引。
+ * 新的生成开始前先查找相似度达到阈值的历史结果，找到时立即推送一条建议进度，用户可以直接选用，
+ * 生成不受影响、照常进行。只记录稳定的地址（本地缓存或 Alist），平台的临时链接过期后不再有用。
+ */
+@Slf4j
+@Component
+public class SimilarPromptCache {
+
+    private static final int MAX_ENTRIES_PER_KEY = 200;
+    private static final int MAX_KEYS = 32;
+    private static final Duration MAX_AGE = Duration.ofDays(7);
+    private static final double DEFAULT_THRESHOLD = 0.8;
+    private static final double MIN_THRESHOLD = 0.5;
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final PluginMetrics metrics;
+    private final Clock clock;
+
+    /**
+     * 按访问顺序排列，模型或尺寸的组合超出上限时丢弃最久未使用的一组，足以应付改配置的场景。
+     * 读写都在 buckets 上加锁，每组内部的查找和记录另由 Bucket 自己加锁。
+     */
+    private final LinkedHashMap<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            return size() > MAX_KEYS;
+        }
+    };
+
+    record Match(String prompt, String imageUrl, double similarity) {}
+
+    private record Entry(String prompt, Set<String> features, int[] signature, String imageUrl, Instant createdAt) {}
+
+    public SimilarPromptCache(ReactiveSettingFetcher settingFetcher, PluginMetrics metrics) {
+        this(settingFetcher, metrics, Clock.systemUTC());
+    }
+
+    SimilarPromptCache(ReactiveSettingFetcher settingFetcher, PluginMetrics metrics, Clock clock) {
+        this.settingFetcher = settingFetcher;
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    /**
+     * 未开启时原样返回生成流；开启时先推送相似的历史结果（如果有），并在生成成功后记录本次结果。
+     *
+     * @param modelWithPlatform "平台标识符:模型ID"
+     */
+    public Flux<ProgressUpdate> around(String modelWithPlatform, String size, String prompt,
+        Flux<ProgressUpdate> generation) {
+        return settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class)
+            .defaultIfEmpty(new PluginMasterSetting())
+            .onErrorReturn(new PluginMasterSetting())
+            .flatMapMany(setting -> {
+                if (!Boolean.TRUE.equals(setting.getSimilarPromptSuggestions())) {
+                    return generation;
+                }
+                String key = key(modelWithPlatform, size);
+                Flux<ProgressUpdate> suggestion = Flux.defer(() -> {
+                    Match match = find(key, prompt, threshold(setting));
+                    if (match == null) {
+                        metrics.increment("aicover.similar_prompt.misses");
+                        return Flux.empty();
+                    }
+                    metrics.increment("aicover.similar_prompt.hits");
+                    return Flux.just(ProgressUpdate.suggestion(match.imageUrl(), match.similarity(),
+                        String.format("找到提示词相近（%.0f%%）的历史图片：\"%s\"，可直接选用；新的图片仍在生成。",
+                            match.similarity() * 100, match.prompt())));
+                });
+                return Flux.concat(suggestion, generation.doOnNext(update -> {
+                    if (Boolean.TRUE.equals(update.getIsFinal()) && !Boolean.TRUE.equals(update.getIsError())
+                        && update.getFinalImageUrl() != null) {
+                        record(key, prompt, update.getFinalImageUrl());
+                    }
+                }));
+            });
+    }
+
+    static double threshold(PluginMasterSetting setting) {
+        Double value = setting.getSimilarPromptThreshold();
+        if (value == null || value.isNaN()) {
+            return DEFAULT_THRESHOLD;
+        }
+        return Math.min(1.0, Math.max(MIN_THRESHOLD, value));
+    }
+
+    static String key(String modelWithPlatform, String size) {
+        return modelWithPlatform + "|" + (size == null ? "" : size);
+    }
+
+    /**
+     * 查找相似度不低于阈值的最相近的历史结果，没有时返回 null。
+     */
+    Match find(String key, String prompt, double threshold) {
+        Bucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.get(key);
+        }
+        Set<String> features = PromptNormalizer.features(prompt);
+        if (bucket == null || features.isEmpty()) {
+            return null;
+        }
+        return bucket.find(features, MinHash.signature(features), threshold, clock.instant().minus(MAX_AGE));
+    }
+
+    /**
+     * 记录一次成功生成的结果。临时链接不记录。
+     */
+    void record(String key, String prompt, String imageUrl) {
+        if (!isStable(imageUrl)) {
+            return;
+        }
+        Set<String> features = PromptNormalizer.features(prompt);
+        if (features.isEmpty()) {
+            return;
+        }
+        Bucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        }
+        bucket.put(new Entry(prompt, features, MinHash.signature(features), imageUrl, clock.instant()));
+        log.debug("[SimilarPrompt] Recorded result for {}: {}", key, imageUrl);
+    }
+
+    private static boolean isStable(String imageUrl) {
+        try {
+            return !CoverIndex.isExpiringLink(URI.create(imageUrl.trim()));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 同一（模型、尺寸）下的历史结果：按特征集合去重的 LRU 表，加上 LSH 分段索引。
+     */
+    private static final class Bucket {
+
+        private final LinkedHashMap<Set<String>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<Long, List<Entry>> bands = new HashMap<>();
+
+        synchronized void put(Entry entry) {
+            Entry previous = entries.put(entry.features(), entry);
+            if (previous != null) {
+                unindex(previous);
+            }
+            for (int band = 0; band < MinHash.BANDS; band++) {
+                bands.computeIfAbsent(MinHash.bandKey(entry.signature(), band), k -> new ArrayList<>(1)).add(entry);
+            }
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > MAX_ENTRIES_PER_KEY) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                unindex(evicted);
+            }
+        }
+
+        private void unindex(Entry entry) {
+            for (int band = 0; band < MinHash.BANDS; band++) {
+                long bandKey = MinHash.bandKey(entry.signature(), band);
+                List<Entry> bucket = bands.get(bandKey);
+                if (bucket != null) {
+                    bucket.remove(entry);
+                    if (bucket.isEmpty()) {
+                        bands.remove(bandKey);
+                    }
+                }
+            }
+        }
+
+        synchronized Match find(Set<String> features, int[] signature, double threshold, Instant notBefore) {
+            Set<Entry> candidates = new HashSet<>();
+            for (int band = 0; band < MinHash.BANDS; band++) {
+                List<Entry> bucket = bands.get(MinHash.bandKey(signature, band));
+                if (bucket != null) {
+                    candidates.addAll(bucket);
+                }
+            }
+            Entry best = null;
+            double bestSimilarity = 0;
+            for (Entry candidate : candidates) {
+                if (candidate.createdAt().isBefore(notBefore)) {
+                    continue;
+                }
+                // 签名只用来缩小范围，是否命中以精确的 Jaccard 相似度为准
+                double similarity = PromptNormalizer.jaccard(features, candidate.features());
+                if (similarity >= threshold && similarity > bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            entries.get(best.features());
+            return new Match(best.prompt(), best.imageUrl(), bestSimilarity);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.jacylunatic.aicover.aicover.service.speculative;
+
+import com.jacylunatic.aicover.aicover.model.ModelInfo;
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.SpeculativeCover;
+import com.jacylunatic.aicover.aicover.service.AiImageService;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 草稿编辑期间的封面预生成。
+ * <p>
+ * 文章标题变化后等待一段时间（防抖），再用当前标题在后台生成一张封面，放入有界缓存；
+ * 作者打开弹窗时直接展示，省去 10 秒到 2 分钟的等待。预生成运行在最低优先级的通道上：
+ * 同一时间最多一个，有交互式生成时不启动，交互式生成开始时立即取消（连同平台侧的任务）。
+ * 每天的预生成次数有上限，标题变化较大时已有结果作废、进行中的预生成取消。
+ */
+@Slf4j
+@Service
+public class SpeculativeCoverService implements Disposable {
+
+    private static final Duration DEBOUNCE = Duration.ofSeconds(30);
+    private static final Duration MAX_AGE = Duration.ofHours(12);
+    private static final int MAX_CACHED = 32;
+    private static final int DEFAULT_DAILY_LIMIT = 20;
+    private static final double SUBSTANTIAL_CHANGE_SIMILARITY = 0.5;
+    static final String DEFAULT_PROMPT = "为博客文章《{title}》设计一张简洁美观、富有意境的封面图，不要包含文字";
+    static final String DEFAULT_SIZE = "1280*720";
+
+    private final ReactiveSettingFetcher settingFetcher;
+    private final AiImageService aiImageService;
+    private final PluginMetrics metrics;
+    private final Duration debounce;
+
+    private final Map<String, Disposable> debouncing = new ConcurrentHashMap<>();
+    private final AtomicReference<RunningSpeculation> running = new AtomicReference<>();
+    private final Map<String, SpeculativeCover> cache = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SpeculativeCover> eldest) {
+                return size() > MAX_CACHED;
+            }
+        });
+    private final DailyBudget dailyBudget;
+
+    private static class RunningSpeculation {
+        private final String postName;
+        private final String title;
+        private volatile Disposable subscription = Disposable.disposed();
+
+        RunningSpeculation(String postName, String title) {
+            this.postName = postName;
+            this.title = title;
+        }
+    }
+
+    public SpeculativeCoverService(ReactiveSettingFetcher settingFetcher, AiImageService aiImageService,
+        PluginMetrics metrics, GenerationLifecycleManager lifecycleManager) {
+        this(settingFetcher, aiImageService, metrics, lifecycleManager, DEBOUNCE, Clock.systemDefaultZone());
+    }
+
+    SpeculativeCoverService(ReactiveSettingFetcher settingFetcher, AiImageService aiImageService,
+        PluginMetrics metrics, GenerationLifecycleManager lifecycleManager, Duration debounce, Clock clock) {
+        this.settingFetcher = settingFetcher;
+        this.aiImageService = aiImageService;
+        this.metrics = metrics;
+        this.debounce = debounce;
+        this.dailyBudget = new DailyBudget(clock);
+        lifecycleManager.registerResource("speculative-generation", this);
+    }
+
+    /**
+     * 文章草稿更新时调用。已有封面的文章不做预生成。
+     */
+    public void onDraftUpdated(String postName, String title, boolean hasCover) {
+        if (hasCover || !StringUtils.hasText(title)) {
+            return;
+        }
+        // 标题变化较大：已有结果和进行中的预生成都作废
+        SpeculativeCover cached = cache.get(postName);
+        if (cached != null) {
+            if (!changedSubstantially(cached.getTitle(), title)) {
+                return;
+            }
+            cache.remove(postName);
+            metrics.increment("aicover.speculative.dropped", "reason", "changed");
+        }
+        RunningSpeculation current = running.get();
+        if (current != null && current.postName.equals(postName)) {
+            if (!changedSubstantially(current.title, title)) {
+                return;
+            }
+            cancelRunning(current, "changed");
+        }
+
+        Disposable timer = Mono.delay(debounce)
+            .then(settingFetcher.fetch(PluginMasterSetting.GROUP, PluginMasterSetting.class))
+            .filter(setting -> Boolean.TRUE.equals(setting.getSpeculativeGeneration()))
+            .subscribe(setting -> speculate(postName, title, setting),
+                error -> log.warn("[Speculative] Debounce for post {} failed: {}", postName, error.getMessage()),
+                () -> debouncing.remove(postName));
+        Disposable previous = debouncing.put(postName, timer);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    /**
+     * 取出文章的预生成封面。标题变化较大的结果在草稿更新时已经作废，这里只需检查是否过期
+     * （平台的临时链接通常只保留一天）。
+     */
+    public Optional<SpeculativeCover> lookup(String postName) {
+        SpeculativeCover cover = cache.get(postName);
+        if (cover == null) {
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() - cover.getCreatedAt() > MAX_AGE.toMillis()) {
+            cache.remove(postName);
+            metrics.increment("aicover.speculative.dropped", "reason", "expired");
+            return Optional.empty();
+        }
+        metrics.increment("aicover.speculative.hits");
+        return Optional.of(cover);
+    }
+
+    /**
+     * 预生成的封面被采用后移出缓存。
+     */
+    public void consume(String postName) {
+        cache.remove(postName);
+    }
+
+    private void speculate(String postName, String title, PluginMasterSetting setting) {
+        if (aiImageService.hasInteractiveGenerations()) {
+            metrics.increment("aicover.speculative.skipped", "reason", "interactive");
+            return;
+        }
+        int dailyLimit = setting.getSpeculativeDailyLimit() == null
+            ? DEFAULT_DAILY_LIMIT : setting.getSpeculativeDailyLimit();
+        if (!dailyBudget.tryAcquire(dailyLimit)) {
+            metrics.increment("aicover.speculative.skipped", "reason", "daily_limit");
+            log.info("[Speculative] Daily limit of {} reached, skipping post {}.", dailyLimit, postName);
+            return;
+        }
+        RunningSpeculation speculation = new RunningSpeculation(postName, title);
+        if (!running.compareAndSet(null, speculation)) {
+            dailyBudget.release();
+            metrics.increment("aicover.speculative.skipped", "reason", "busy");
+            return;
+        }
+
+        String prompt = prompt(setting, title);
+        String size = StringUtils.hasText(setting.getSpeculativeSize())
+            ? setting.getSpeculativeSize().trim() : DEFAULT_SIZE;
+        AtomicReference<String> imageUrl = new AtomicReference<>();
+        speculation.subscription = resolveModel(setting)
+            .flatMapMany(model -> aiImageService.generateInBackground(prompt, model, size)
+                .doOnNext(update -> {
+                    if (update.getFinalImageUrl() != null && !Boolean.TRUE.equals(update.getIsError())) {
+                        imageUrl.set(update.getFinalImageUrl());
+                    }
+                })
+                .then(Mono.fromSupplier(() -> Optional.ofNullable(imageUrl.get())))
+                .map(url -> url.map(value -> new SpeculativeCover(postName, title, prompt, model, value,
+                    System.currentTimeMillis()))))
+            // 最低优先级：交互式生成一开始就让出，取消会一路传到平台侧的任务
+            .takeUntilOther(aiImageService.interactiveGenerationStarts()
+                .next()
+                .doOnNext(ignored -> metrics.increment("aicover.speculative.preempted")))
+            .doFinally(signal -> running.compareAndSet(speculation, null))
+            .subscribe(result -> result.ifPresent(cover -> {
+                cache.put(postName, cover);
+                metrics.increment("aicover.speculative.generated");
+                log.info("[Speculative] Pre-generated cover for post {}: {}", postName, cover.getImageUrl());
+            }), error -> log.warn("[Speculative] Pre-generation for post {} failed: {}", postName, error.getMessage()));
+    }
+
+    /**
+     * 按设置中的模板生成提示词，模板中没有 {title} 时把标题附在末尾。
+     */
+    static String prompt(PluginMasterSetting setting, String title) {
+        String template = StringUtils.hasText(setting.getSpeculativePrompt())
+            ? setting.getSpeculativePrompt().trim() : DEFAULT_PROMPT;
+        return template.contains("{title}")
+            ? template.replace("{title}", title)
+            : template + "：" + title;
+    }
+
+    private Mono<String> resolveModel(PluginMasterSetting setting) {
+        if (StringUtils.hasText(setting.getSpeculativeModel())) {
+            return Mono.just(setting.getSpeculativeModel().trim());
+        }
+        return aiImageService.getModels()
+            .flatMap(models -> Mono.justOrEmpty(models.stream().findFirst().map(ModelInfo::getId)));
+    }
+
+    private void cancelRunning(RunningSpeculation speculation, String reason) {
+        if (running.compareAndSet(speculation, null)) {
+            speculation.subscription.dispose();
+            metrics.increment("aicover.speculative.dropped", "reason", reason);
+        }
+    }
+
+    /**
+     * 基于字符二元组的 Jaccard 相似度判断标题是否变化较大，对中英文标题都适用。
+     */
+    static boolean changedSubstantially(String before, String after) {
+        Set<String> a = bigrams(before);
+        Set<String> b = bigrams(after);
+        if (a.isEmpty() && b.isEmpty()) {
+            return false;
+        }
+        Set<String> intersection = new HashSet<>(a);
+        intersection.retainAll(b);
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        return (double) intersection.size() / union.size() < SUBSTANTIAL_CHANGE_SIMILARITY;
+    }
+
+    private static Set<String> bigrams(String text) {
+        String normalized = text == null ? "" : text.toLowerCase().replaceAll("\\s+", " ").trim();
+        Set<String> grams = new HashSet<>();
+        if (normalized.length() == 1) {
+            grams.add(normalized);
+        }
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    @Override
+    public void dispose() {
+        List.copyOf(debouncing.values()).forEach(Disposable::dispose);
+        debouncing.clear();
+        RunningSpeculation current = running.getAndSet(null);
+        if (current != null) {
+            current.subscription.dispose();
+        }
+    }
+
+    /**
+     * 按自然日重置的预生成次数上限。
+     */
+    private static class DailyBudget {
+        private final Clock clock;
+        private LocalDate day;
+        private int used;
+
+        DailyBudget(Clock clock) {
+            this.clock = clock;
+            this.day = LocalDate.now(clock);
+        }
+
+        synchronized boolean tryAcquire(int limit) {
+            LocalDate today = LocalDate.now(clock);
+            if (!today.equals(day)) {
+                day = today;
+                used = 0;
+            }
+            if (used >= limit) {
+                return false;
+            }
+            used++;
+            return true;
+        }
+
+        synchronized void release() {
+            used = Math.max(0, used - 1);
+        }
+    }
+}
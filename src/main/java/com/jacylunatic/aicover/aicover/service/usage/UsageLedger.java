@@ -0,0 +1,445 @@
+package com.jacylunatic.aicover.aicover.service.usage;
+
+import com.jacylunatic.aicover.aicover.model.AiCoverUsage;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.model.UsageAggregate;
+import com.jacylunatic.aicover.aicover.model.UsageSetting;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.router.selector.FieldSelector;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static run.halo.app.extension.index.query.QueryFactory.and;
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+import static run.halo.app.extension.index.query.QueryFactory.greaterThanOrEqual;
+import static run.halo.app.extension.index.query.QueryFactory.lessThanOrEqual;
+
+/**
+ * 生成用量台账与每日配额。
+ * <p>
+ * 每次生成结束时在内存中按 (日期, 作者, 平台, 模型, 尺寸) 累加 LongAdder 计数，热路径上不做任何存储写入；
+ * 后台每分钟把有变化的条目批量写入 {@link AiCoverUsage} 扩展，插件停止时再写一次。
+ * 内存中保存的是当天的累计值而不是增量，写入是幂等的覆盖，写失败下一轮会重试。
+ * <p>
+ * 配额在提交到平台之前检查：作者与平台当天的请求数达到上限时直接返回错误进度，不会产生费用。
+ * 配额同时跨多个条目（作者的配额覆盖所有平台，平台的配额覆盖所有作者），检查和计入请求数在同一把锁内完成，
+ * 并发请求不会一起越过配额；锁内只有内存计数，设置在加锁之前读取。
+ */
+@Slf4j
+@Component
+public class UsageLedger implements Disposable {
+
+    static final String SYSTEM_AUTHOR = "system";
+    private static final Duration FLUSH_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration FINAL_FLUSH_TIMEOUT = Duration.ofSeconds(5);
+    private static final long COST_SCALE = 1000;
+
+    private final ReactiveExtensionClient client;
+    private final ReactiveSettingFetcher settingFetcher;
+    private final PluginMetrics metrics;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    // 每天第一次用到时从存储加载当天的累计值，之后以内存为准
+    private final Map<String, Mono<Void>> loadedDays = new ConcurrentHashMap<>();
+    private final Object admissionLock = new Object();
+    private final Disposable flushTimer;
+
+    public UsageLedger(ReactiveExtensionClient client, ReactiveSettingFetcher settingFetcher,
+        PluginMetrics metrics, GenerationLifecycleManager lifecycleManager) {
+        this.client = client;
+        this.settingFetcher = settingFetcher;
+        this.metrics = metrics;
+        this.flushTimer = Flux.interval(FLUSH_INTERVAL, FLUSH_INTERVAL)
+            .onBackpressureDrop()
+            .concatMap(tick -> flush().onErrorResume(error -> {
+                log.warn("[Usage] Periodic flush failed, will retry: {}", error.getMessage());
+                return Mono.empty();
+            }))
+            .subscribe();
+        lifecycleManager.registerResource("usage-ledger", this);
+    }
+
+    /**
+     * 为一次生成计量：先检查配额，未超限才订阅真正的生成流，结束（成功、失败或取消）时记一笔。
+     */
+    public Flux<ProgressUpdate> meter(String platform, String model, String size, Flux<ProgressUpdate> generation) {
+        return currentAuthor().flatMapMany(author -> {
+            String day = LocalDate.now().toString();
+            return ensureLoaded(day)
+                .then(settingFetcher.fetch(UsageSetting.GROUP, UsageSetting.class))
+                .defaultIfEmpty(new UsageSetting())
+                .flatMapMany(setting -> {
+                    String rejection;
+                    Bucket bucket = null;
+                    synchronized (admissionLock) {
+                        rejection = quotaViolation(day, author, platform, setting);
+                        if (rejection == null) {
+                            bucket = admit(day, author, platform, model, size);
+                        }
+                    }
+                    if (rejection != null) {
+                        metrics.increment("aicover.usage.rejected", "platform", platform);
+                        log.info("[Usage] Rejected generation for author '{}' on {}: {}", author, platform, rejection);
+                        return Flux.just(ProgressUpdate.error(rejection));
+                    }
+                    return track(bucket, platform, model, generation);
+                });
+        });
+    }
+
+    private Flux<ProgressUpdate> track(Bucket bucket, String platform, String model,
+        Flux<ProgressUpdate> generation) {
+        return Flux.defer(() -> {
+            long start = System.currentTimeMillis();
+            LongAdder images = new LongAdder();
+            AtomicBoolean failed = new AtomicBoolean();
+            return generation
+                .doOnNext(update -> {
+                    if (Boolean.TRUE.equals(update.getIsError())) {
+                        failed.set(true);
+                    } else if (update.getFinalImageUrl() != null) {
+                        images.increment();
+                    }
+                })
+                .doFinally(signal -> complete(bucket, platform, model,
+                    System.currentTimeMillis() - start, images.intValue(), failed.get()));
+        });
+    }
+
+    /**
+     * 按日期区间（含两端，yyyy-MM-dd）聚合用量。groupBy 可以是 author、platform、model、size 或 day。
+     */
+    public Mono<List<UsageAggregate>> aggregate(LocalDate from, LocalDate to, String groupBy) {
+        Function<AiCoverUsage.Spec, String> keyFn = switch (groupBy == null ? "" : groupBy) {
+            case "platform" -> AiCoverUsage.Spec::getPlatform;
+            case "model" -> spec -> spec.getPlatform() + ":" + spec.getModel();
+            case "size" -> AiCoverUsage.Spec::getSize;
+            case "day" -> AiCoverUsage.Spec::getDay;
+            default -> AiCoverUsage.Spec::getAuthor;
+        };
+        ListOptions options = new ListOptions();
+        options.setFieldSelector(FieldSelector.of(and(
+            greaterThanOrEqual("spec.day", from.toString()),
+            lessThanOrEqual("spec.day", to.toString()))));
+        return client.listAll(AiCoverUsage.class, options, Sort.unsorted())
+            .collectMap(usage -> usage.getMetadata().getName(), AiCoverUsage::getSpec)
+            .map(stored -> {
+                // 内存中的累计值比存储新，尚未写入的条目以内存为准
+                Map<String, AiCoverUsage.Spec> merged = new HashMap<>(stored);
+                buckets.forEach((name, bucket) -> {
+                    if (bucket.day.compareTo(from.toString()) >= 0 && bucket.day.compareTo(to.toString()) <= 0) {
+                        merged.put(name, bucket.toSpec());
+                    }
+                });
+                return merged.values().stream()
+                    .collect(Collectors.groupingBy(keyFn, Collectors.toList()))
+                    .entrySet().stream()
+                    .map(entry -> toAggregate(entry.getKey(), entry.getValue()))
+                    .sorted((a, b) -> Long.compare(b.getRequests(), a.getRequests()))
+                    .toList();
+            });
+    }
+
+    /**
+     * 把有变化的条目批量写入存储。
+     */
+    public Mono<Void> flush() {
+        List<Bucket> dirty = buckets.values().stream()
+            .filter(bucket -> bucket.dirty.getAndSet(false))
+            .toList();
+        if (dirty.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(dirty)
+            .concatMap(bucket -> upsert(bucket).onErrorResume(error -> {
+                bucket.dirty.set(true);
+                log.warn("[Usage] Failed to persist usage {}: {}", bucket.name, error.getMessage());
+                return Mono.empty();
+            }))
+            .then(Mono.fromRunnable(() -> {
+                metrics.add("aicover.usage.flushed", dirty.size());
+                // 只保留当天的条目，过去的日期已经写入存储
+                String today = LocalDate.now().toString();
+                buckets.values().removeIf(bucket -> !bucket.day.equals(today) && !bucket.dirty.get());
+                loadedDays.keySet().removeIf(day -> !day.equals(today));
+            }));
+    }
+
+    private Mono<Void> upsert(Bucket bucket) {
+        return client.fetch(AiCoverUsage.class, bucket.name)
+            .flatMap(existing -> {
+                existing.setSpec(bucket.toSpec());
+                return client.update(existing);
+            })
+            .switchIfEmpty(Mono.defer(() -> {
+                AiCoverUsage usage = new AiCoverUsage();
+                Metadata metadata = new Metadata();
+                metadata.setName(bucket.name);
+                usage.setMetadata(metadata);
+                usage.setSpec(bucket.toSpec());
+                return client.create(usage);
+            }))
+            .retryWhen(Retry.max(3).filter(OptimisticLockingFailureException.class::isInstance))
+            .then();
+    }
+
+    private Mono<Void> ensureLoaded(String day) {
+        return loadedDays.computeIfAbsent(day, key -> {
+            ListOptions options = new ListOptions();
+            options.setFieldSelector(FieldSelector.of(equal("spec.day", key)));
+            return client.listAll(AiCoverUsage.class, options, Sort.unsorted())
+                .doOnNext(usage -> buckets.computeIfAbsent(usage.getMetadata().getName(),
+                    name -> Bucket.fromSpec(name, usage.getSpec())))
+                .then()
+                .doOnError(error -> {
+                    loadedDays.remove(key);
+                    log.warn("[Usage] Failed to load usage for {}: {}", key, error.getMessage());
+                })
+                // 加载失败时不阻塞生成，本次按内存中的计数检查配额
+                .onErrorResume(error -> Mono.empty())
+                .cache();
+        });
+    }
+
+    /**
+     * 超出配额时返回给用户的提示，未超出时返回 null。调用方需持有 admissionLock。
+     */
+    private String quotaViolation(String day, String author, String platform, UsageSetting setting) {
+        Integer authorQuota = setting.getAuthorDailyQuota();
+        if (!SYSTEM_AUTHOR.equals(author) && authorQuota != null && authorQuota > 0
+            && requestsToday(day, bucket -> bucket.author.equals(author)) >= authorQuota) {
+            return "今日生成次数已达上限（" + authorQuota + " 次），请明天再试。";
+        }
+        Long providerQuota = parseQuotas(setting.getProviderDailyQuotas()).get(platform.toLowerCase());
+        if (providerQuota != null && providerQuota > 0
+            && requestsToday(day, bucket -> bucket.platform.equalsIgnoreCase(platform)) >= providerQuota) {
+            return "平台 '" + platform + "' 今日的生成次数已达上限（" + providerQuota + " 次）。";
+        }
+        return null;
+    }
+
+    private long requestsToday(String day, Predicate<Bucket> filter) {
+        return buckets.values().stream()
+            .filter(bucket -> bucket.day.equals(day) && filter.test(bucket))
+            .mapToLong(bucket -> bucket.requests.sum())
+            .sum();
+    }
+
+    private Bucket admit(String day, String author, String platform, String model, String size) {
+        String name = bucketName(day, author, platform, model, size);
+        Bucket bucket = buckets.computeIfAbsent(name, key -> new Bucket(key, day, author, platform, model, size));
+        bucket.requests.increment();
+        bucket.dirty.set(true);
+        return bucket;
+    }
+
+    private void complete(Bucket bucket, String platform, String model, long durationMillis, int images,
+        boolean failed) {
+        if (images > 0) {
+            bucket.successes.increment();
+            bucket.images.add(images);
+        } else if (failed) {
+            bucket.failures.increment();
+        }
+        bucket.durationMillis.add(durationMillis);
+        bucket.dirty.set(true);
+        if (images > 0) {
+            // 费用表放在设置中，读取失败不影响计数
+            settingFetcher.fetch(UsageSetting.GROUP, UsageSetting.class)
+                .map(setting -> estimateCostMilli(setting.getImageCosts(), platform, model) * images)
+                .subscribe(cost -> {
+                        bucket.costMilli.add(cost);
+                        bucket.dirty.set(true);
+                    },
+                    error -> log.debug("[Usage] Failed to read image costs: {}", error.getMessage()));
+        }
+    }
+
+    private static Mono<String> currentAuthor() {
+        return ReactiveSecurityContextHolder.getContext()
+            .map(SecurityContext::getAuthentication)
+            .filter(Authentication::isAuthenticated)
+            .map(Authentication::getName)
+            .filter(StringUtils::hasText)
+            // 预生成等后台任务没有登录上下文
+            .defaultIfEmpty(SYSTEM_AUTHOR);
+    }
+
+    /**
+     * 解析 "平台标识符=次数" 形式的多行配置，键统一转为小写。
+     */
+    static Map<String, Long> parseQuotas(String text) {
+        Map<String, Long> quotas = new HashMap<>();
+        if (!StringUtils.hasText(text)) {
+            return quotas;
+        }
+        Arrays.stream(text.split("\\r?\\n"))
+            .map(String::trim)
+            .filter(line -> line.contains("="))
+            .forEach(line -> {
+                String[] parts = line.split("=", 2);
+                try {
+                    quotas.put(parts[0].trim().toLowerCase(), Long.parseLong(parts[1].trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("[Usage] Ignoring invalid quota line: '{}'", line);
+                }
+            });
+        return quotas;
+    }
+
+    /**
+     * 按 "平台:模型=费用" 优先、"平台=费用" 次之的顺序查找单张图片的估算费用，返回千分之一元。
+     */
+    static long estimateCostMilli(String costs, String platform, String model) {
+        if (!StringUtils.hasText(costs)) {
+            return 0;
+        }
+        Map<String, Long> table = new HashMap<>();
+        Arrays.stream(costs.split("\\r?\\n"))
+            .map(String::trim)
+            .filter(line -> line.contains("="))
+            .forEach(line -> {
+                String[] parts = line.split("=", 2);
+                try {
+                    table.put(parts[0].trim().toLowerCase(),
+                        Math.round(Double.parseDouble(parts[1].trim()) * COST_SCALE));
+                } catch (NumberFormatException e) {
+                    log.warn("[Usage] Ignoring invalid cost line: '{}'", line);
+                }
+            });
+        String platformKey = platform.toLowerCase();
+        Long cost = table.get(platformKey + ":" + model.toLowerCase());
+        if (cost == null) {
+            cost = table.get(platformKey);
+        }
+        return cost == null ? 0 : cost;
+    }
+
+    static String bucketName(String day, String author, String platform, String model, String size) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.join("\n", author, platform, model, size)
+                .getBytes(StandardCharsets.UTF_8));
+            return "usage-" + day + "-" + HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static UsageAggregate toAggregate(String key, List<AiCoverUsage.Spec> specs) {
+        UsageAggregate aggregate = new UsageAggregate();
+        aggregate.setKey(key);
+        long duration = 0;
+        long cost = 0;
+        for (AiCoverUsage.Spec spec : specs) {
+            aggregate.setRequests(aggregate.getRequests() + spec.getRequests());
+            aggregate.setSuccesses(aggregate.getSuccesses() + spec.getSuccesses());
+            aggregate.setFailures(aggregate.getFailures() + spec.getFailures());
+            aggregate.setImages(aggregate.getImages() + spec.getImages());
+            duration += spec.getTotalDurationMillis();
+            cost += spec.getEstimatedCostMilli();
+        }
+        aggregate.setAverageDurationMillis(aggregate.getRequests() == 0 ? 0 : duration / aggregate.getRequests());
+        aggregate.setEstimatedCost((double) cost / COST_SCALE);
+        return aggregate;
+    }
+
+    @Override
+    public void dispose() {
+        flushTimer.dispose();
+        try {
+            flush().block(FINAL_FLUSH_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.warn("[Usage] Final flush failed, {} bucket(s) lost: {}",
+                buckets.values().stream().filter(bucket -> bucket.dirty.get()).count(), e.getMessage());
+        }
+    }
+
+    /**
+     * 单个组合当天的条带化计数器。
+     */
+    private static class Bucket {
+        private final String name;
+        private final String day;
+        private final String author;
+        private final String platform;
+        private final String model;
+        private final String size;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder images = new LongAdder();
+        private final LongAdder durationMillis = new LongAdder();
+        private final LongAdder costMilli = new LongAdder();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        Bucket(String name, String day, String author, String platform, String model, String size) {
+            this.name = name;
+            this.day = day;
+            this.author = author;
+            this.platform = platform;
+            this.model = model;
+            this.size = size;
+        }
+
+        static Bucket fromSpec(String name, AiCoverUsage.Spec spec) {
+            Bucket bucket = new Bucket(name, spec.getDay(), spec.getAuthor(), spec.getPlatform(),
+                spec.getModel(), spec.getSize());
+            bucket.requests.add(spec.getRequests());
+            bucket.successes.add(spec.getSuccesses());
+            bucket.failures.add(spec.getFailures());
+            bucket.images.add(spec.getImages());
+            bucket.durationMillis.add(spec.getTotalDurationMillis());
+            bucket.costMilli.add(spec.getEstimatedCostMilli());
+            return bucket;
+        }
+
+        AiCoverUsage.Spec toSpec() {
+            AiCoverUsage.Spec spec = new AiCoverUsage.Spec();
+            spec.setDay(day);
+            spec.setAuthor(author);
+            spec.setPlatform(platform);
+            spec.setModel(model);
+            spec.setSize(size);
+            spec.setRequests(requests.sum());
+            spec.setSuccesses(successes.sum());
+            spec.setFailures(failures.sum());
+            spec.setImages(images.sum());
+            spec.setTotalDurationMillis(durationMillis.sum());
+            spec.setEstimatedCostMilli(costMilli.sum());
+            return spec;
+        }
+    }
+}
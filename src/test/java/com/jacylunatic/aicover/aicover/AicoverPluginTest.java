@@ -1,10 +1,13 @@
 package com.jacylunatic.aicover.aicover;
 
+import com.jacylunatic.aicover.aicover.service.WarmupService;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import run.halo.app.extension.SchemeManager;
 import run.halo.app.plugin.PluginContext;
 
 @ExtendWith(MockitoExtension.class)
@@ -13,6 +16,15 @@ class AicoverPluginTest {
     @Mock
     PluginContext context;
 
+    @Mock
+    WarmupService warmupService;
+
+    @Mock
+    GenerationLifecycleManager lifecycleManager;
+
+    @Mock
+    SchemeManager schemeManager;
+
     @InjectMocks
     AicoverPlugin plugin;
 
@@ -0,0 +1,163 @@
+package com.jacylunatic.aicover.aicover.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacylunatic.aicover.aicover.model.JobFrame;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.AiImageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GenerationWebSocketEndpointTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Sinks.Many<String> inbound = Sinks.many().unicast().onBackpressureBuffer();
+    private final List<JobFrame> frames = new CopyOnWriteArrayList<>();
+    private final AtomicInteger cancelledGenerations = new AtomicInteger();
+    private AiImageService aiImageService;
+    private Disposable connection;
+
+    @BeforeEach
+    void setUp() {
+        aiImageService = mock(AiImageService.class);
+        when(aiImageService.generateImage(anyString(), anyString(), anyString(), anyBoolean()))
+            .thenReturn(Flux.<ProgressUpdate>never().doOnCancel(cancelledGenerations::incrementAndGet));
+
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("session");
+        when(session.receive()).thenReturn(inbound.asFlux().map(GenerationWebSocketEndpointTest::message));
+        when(session.textMessage(anyString())).thenAnswer(invocation -> message(invocation.getArgument(0)));
+        when(session.send(any())).thenAnswer(invocation -> {
+            Publisher<WebSocketMessage> outbound = invocation.getArgument(0);
+            return Flux.from(outbound).doOnNext(message -> frames.add(parse(message))).then();
+        });
+        connection = new GenerationWebSocketEndpoint(aiImageService).handler().handle(session).subscribe();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connection.dispose();
+    }
+
+    @Test
+    void rejectsJobsBeyondThePerSessionCapAndCancelsTheRestOnClose() {
+        for (int i = 1; i <= 9; i++) {
+            start("job-" + i, "prompt");
+        }
+
+        assertThat(frames).filteredOn(frame -> JobFrame.STAGE_ACCEPTED.equals(frame.getS())).hasSize(8);
+        assertThat(frames).filteredOn(frame -> "job-9".equals(frame.getJ()))
+            .singleElement()
+            .satisfies(frame -> {
+                assertThat(frame.getS()).isEqualTo(JobFrame.STAGE_ERROR);
+                assertThat(frame.getM()).contains("任务过多");
+            });
+
+        connection.dispose();
+        assertThat(cancelledGenerations).hasValue(8);
+    }
+
+    @Test
+    void cancelEndsTheJobWithACancelledFrameAndFreesItsSlot() {
+        start("job-1", "prompt");
+        send("{\"type\":\"cancel\",\"job\":\"job-1\"}");
+
+        assertThat(frames).extracting(JobFrame::getS)
+            .containsExactly(JobFrame.STAGE_ACCEPTED, JobFrame.STAGE_CANCELED);
+        assertThat(cancelledGenerations).hasValue(1);
+
+        // 已取消的任务 ID 可以重新使用
+        start("job-1", "prompt");
+        assertThat(frames).last().extracting(JobFrame::getS).isEqualTo(JobFrame.STAGE_ACCEPTED);
+    }
+
+    @Test
+    void everyJobEndsWithExactlyOneTerminalFrame() {
+        when(aiImageService.generateImage(eq("ok"), anyString(), anyString(), anyBoolean()))
+            .thenReturn(Flux.just(new ProgressUpdate("生成中"), ProgressUpdate.finalSuccess("/a.png", "完成")));
+        when(aiImageService.generateImage(eq("warning"), anyString(), anyString(), anyBoolean()))
+            .thenReturn(Flux.just(ProgressUpdate.error("上传失败")));
+        when(aiImageService.generateImage(eq("empty"), anyString(), anyString(), anyBoolean()))
+            .thenReturn(Flux.empty());
+        when(aiImageService.generateImage(eq("failing"), anyString(), anyString(), anyBoolean()))
+            .thenReturn(Flux.error(new RuntimeException("平台故障")));
+
+        start("ok", "ok");
+        start("warning", "warning");
+        start("empty", "empty");
+        start("failing", "failing");
+
+        assertThat(stages("ok")).containsExactly(JobFrame.STAGE_ACCEPTED, JobFrame.STAGE_RUNNING,
+            JobFrame.STAGE_DONE);
+        assertThat(stages("warning")).containsExactly(JobFrame.STAGE_ACCEPTED, JobFrame.STAGE_WARNING,
+            JobFrame.STAGE_ERROR);
+        assertThat(frames).filteredOn(frame -> "warning".equals(frame.getJ())).last()
+            .extracting(JobFrame::getM).isEqualTo("上传失败");
+        assertThat(stages("empty")).containsExactly(JobFrame.STAGE_ACCEPTED, JobFrame.STAGE_ERROR);
+        assertThat(stages("failing")).containsExactly(JobFrame.STAGE_ACCEPTED, JobFrame.STAGE_ERROR);
+    }
+
+    @Test
+    void suggestionsCarryTheirUrlAndSimilarity() {
+        when(aiImageService.generateImage(eq("similar"), anyString(), anyString(), anyBoolean()))
+            .thenReturn(Flux.just(ProgressUpdate.suggestion("/old.png", 0.9, "找到相近的图片"),
+                ProgressUpdate.finalSuccess("/new.png", "完成")));
+
+        start("similar", "similar");
+
+        assertThat(frames).filteredOn(frame -> JobFrame.STAGE_SUGGESTION.equals(frame.getS()))
+            .singleElement()
+            .satisfies(frame -> {
+                assertThat(frame.getU()).isEqualTo("/old.png");
+                assertThat(frame.getR()).isEqualTo(0.9);
+            });
+    }
+
+    private List<String> stages(String jobId) {
+        return frames.stream().filter(frame -> jobId.equals(frame.getJ())).map(JobFrame::getS).toList();
+    }
+
+    private void start(String jobId, String prompt) {
+        send("{\"type\":\"start\",\"job\":\"" + jobId + "\",\"prompt\":\"" + prompt
+            + "\",\"model\":\"tongyi:wanx-v1\"}");
+    }
+
+    private void send(String command) {
+        assertThat(inbound.tryEmitNext(command).isSuccess()).isTrue();
+    }
+
+    private JobFrame parse(WebSocketMessage message) {
+        try {
+            return objectMapper.readValue(message.getPayloadAsText(), JobFrame.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static WebSocketMessage message(String text) {
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT,
+            DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,137 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.candidates.CandidateRegistry;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import com.jacylunatic.aicover.aicover.service.lifecycle.HttpClientProvider;
+import com.jacylunatic.aicover.aicover.service.resilience.ApiKeyPool;
+import com.jacylunatic.aicover.aicover.service.resilience.CircuitBreakerRegistry;
+import com.jacylunatic.aicover.aicover.service.resilience.RetryPolicy;
+import com.jacylunatic.aicover.aicover.service.similarity.SimilarPromptCache;
+import com.jacylunatic.aicover.aicover.service.usage.UsageLedger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AiImageServiceTest {
+
+    private static final String LOCAL_URL = LocalImageCache.URL_PREFIX + "a.png";
+
+    private AlistService alistService;
+    private LocalImageCache localImageCache;
+    private AiImageService service;
+    private final AtomicInteger fastCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.empty());
+        CircuitBreakerRegistry circuitBreakerRegistry = mock(CircuitBreakerRegistry.class);
+        when(circuitBreakerRegistry.decorate(anyString(), any())).thenAnswer(invocation -> {
+            Supplier<Flux<ProgressUpdate>> call = invocation.getArgument(1);
+            return call.get();
+        });
+        GenerationLifecycleManager lifecycleManager = mock(GenerationLifecycleManager.class);
+        when(lifecycleManager.track(anyString(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        UsageLedger usageLedger = mock(UsageLedger.class);
+        when(usageLedger.meter(anyString(), anyString(), anyString(), any()))
+            .thenAnswer(invocation -> invocation.getArgument(3));
+        alistService = mock(AlistService.class);
+        localImageCache = mock(LocalImageCache.class);
+        when(localImageCache.store(anyString())).thenReturn(Mono.just(LOCAL_URL));
+
+        service = new AiImageService(settingFetcher, alistService, circuitBreakerRegistry, mock(RetryPolicy.class),
+            mock(HttpClientProvider.class), lifecycleManager, new PluginMetrics(), new CandidateRegistry(),
+            usageLedger, localImageCache, mock(ApiKeyPool.class), mock(SimilarPromptCache.class),
+            mock(AlistWriteBehind.class));
+        service.setImageGenerators(List.of(
+            generator("fast", () -> {
+                int call = fastCalls.incrementAndGet();
+                return Flux.just(new ProgressUpdate("生成中"),
+                    ProgressUpdate.intermediateSuccess("https://fast.example.com/" + call + ".png", "AI 绘图成功！"));
+            }),
+            generator("broken", () -> Flux.error(new RuntimeException("平台故障"))),
+            generator("slow", () -> Flux.just(
+                    ProgressUpdate.intermediateSuccess("https://slow.example.com/1.png", "AI 绘图成功！"))
+                .delaySubscription(Duration.ofMillis(200)))));
+    }
+
+    @Test
+    void fansOutToEveryModelAndIsolatesFailures() {
+        List<ProgressUpdate> updates = service.generateCandidates("a cat",
+                List.of("fast:m1", "broken:m2", "slow:m3", "fast:m1", "unknown:m4"), 2, "1024*1024")
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        List<ProgressUpdate> candidates = updates.stream().filter(update -> update.getCandidateId() != null).toList();
+        assertThat(candidates).extracting(ProgressUpdate::getModel)
+            .containsExactlyInAnyOrder("fast:m1", "fast:m1", "slow:m3", "slow:m3");
+        assertThat(candidates).allSatisfy(update -> assertThat(update.getIsFinal()).isFalse());
+        // 重复的模型只生成一次，每个模型各生成 n 张
+        assertThat(fastCalls).hasValue(2);
+        assertThat(updates).filteredOn(update -> Boolean.TRUE.equals(update.getIsError()))
+            .extracting(ProgressUpdate::getModel)
+            .containsExactlyInAnyOrder("broken:m2", "unknown:m4");
+        // 快的模型不用等慢的模型，最后一条是汇总
+        assertThat(updates.indexOf(candidates.get(0))).isLessThan(updates.size() - 2);
+        assertThat(updates.get(0).getModel()).isNotEqualTo("slow:m3");
+        assertThat(updates).last().extracting(ProgressUpdate::getIsFinal).isEqualTo(true);
+        verify(alistService, never()).uploadImageFromUrl(anyString());
+        verify(localImageCache, never()).store(anyString());
+    }
+
+    @Test
+    void onlyTheChosenCandidateIsStoredAndOnlyOnce() {
+        List<ProgressUpdate> candidates = service.generateCandidates("a cat", List.of("fast:m1"), 2, "1024*1024")
+            .filter(update -> update.getCandidateId() != null)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+        ProgressUpdate chosen = candidates.get(1);
+
+        List<ProgressUpdate> used = service.useCandidate(chosen.getCandidateId(), false)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(used).last().satisfies(update -> {
+            assertThat(update.getIsFinal()).isTrue();
+            assertThat(update.getFinalImageUrl()).isEqualTo(LOCAL_URL);
+        });
+        verify(localImageCache).store(chosen.getFinalImageUrl());
+        verify(localImageCache, never()).store(candidates.get(0).getFinalImageUrl());
+
+        assertThat(service.useCandidate(chosen.getCandidateId(), false).blockLast(Duration.ofSeconds(5)))
+            .satisfies(update -> assertThat(update.getIsError()).isTrue());
+    }
+
+    private static ImageGenerator generator(String platform, Supplier<Flux<ProgressUpdate>> images) {
+        return new ImageGenerator() {
+            @Override
+            public String getPlatformIdentifier() {
+                return platform;
+            }
+
+            @Override
+            public Flux<ProgressUpdate> generateImage(String prompt, String model, String size) {
+                return Flux.defer(images);
+            }
+        };
+    }
+}
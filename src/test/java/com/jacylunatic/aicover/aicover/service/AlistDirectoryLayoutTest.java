@@ -0,0 +1,36 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlistDirectoryLayoutTest {
+
+    private static final String HASH_NAME = "3a" + "0".repeat(62) + ".png";
+    private static final LocalDate DATE = LocalDate.of(2024, 5, 17);
+
+    @Test
+    void parsesSettingValues() {
+        assertThat(AlistDirectoryLayout.of(null)).isEqualTo(AlistDirectoryLayout.FLAT);
+        assertThat(AlistDirectoryLayout.of("Date")).isEqualTo(AlistDirectoryLayout.DATE);
+        assertThat(AlistDirectoryLayout.of(" hash ")).isEqualTo(AlistDirectoryLayout.HASH);
+        assertThat(AlistDirectoryLayout.of("weekly")).isEqualTo(AlistDirectoryLayout.FLAT);
+    }
+
+    @Test
+    void placesFilesIntoShards() {
+        assertThat(AlistDirectoryLayout.FLAT.path("/covers/", HASH_NAME, DATE)).isEqualTo("/covers/" + HASH_NAME);
+        assertThat(AlistDirectoryLayout.DATE.path("/covers", HASH_NAME, DATE)).isEqualTo("/covers/2024/05/" + HASH_NAME);
+        assertThat(AlistDirectoryLayout.HASH.path("/covers", HASH_NAME, DATE)).isEqualTo("/covers/3a/" + HASH_NAME);
+        assertThat(AlistDirectoryLayout.HASH.directory("/", HASH_NAME, DATE)).isEqualTo("/3a");
+        assertThat(AlistDirectoryLayout.FLAT.path("/", HASH_NAME, DATE)).isEqualTo("/" + HASH_NAME);
+    }
+
+    @Test
+    void hashesNamesThatAreNotContentAddressed() {
+        String bucket = AlistDirectoryLayout.bucket("ab-cover.png");
+        assertThat(bucket).hasSize(2).matches("[0-9a-f]{2}").isEqualTo(AlistDirectoryLayout.bucket("ab-cover.png"));
+    }
+}
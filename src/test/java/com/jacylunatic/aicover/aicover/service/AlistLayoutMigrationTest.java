@@ -0,0 +1,44 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlistLayoutMigrationTest {
+
+    private static final Map<String, AlistLayoutMigration.MovedFile> MOVED = Map.of("a b.png",
+        new AlistLayoutMigration.MovedFile("/my covers/a b.png", "https://alist.example.com/d/my%20covers/ab/a%20b.png?sign=new"));
+
+    @Test
+    void rewritesCoversPointingAtTheOldPath() {
+        assertThat(AlistLayoutMigration.newCoverFor(
+            "https://alist.example.com/d/my%20covers/a%20b.png?sign=old", MOVED))
+            .isEqualTo("https://alist.example.com/d/my%20covers/ab/a%20b.png?sign=new");
+        assertThat(AlistLayoutMigration.newCoverFor("https://alist.example.com/p/my%20covers/a%20b.png", MOVED))
+            .isNotNull();
+    }
+
+    @Test
+    void rewritesPluginGeneratedNamesReferencedThroughAnyAddress() {
+        String name = "3a7bd3e2360a3d29eea436fcfb7e44c735d117c42d1c1835420b6b9942dd4f1b.png";
+        String newUrl = "https://alist.example.com/d/covers/3a/" + name + "?sign=new";
+        Map<String, AlistLayoutMigration.MovedFile> moved = Map.of(name,
+            new AlistLayoutMigration.MovedFile("/covers/" + name, newUrl));
+
+        // raw_url 指向存储、经过反向代理或换过域名的地址
+        assertThat(AlistLayoutMigration.newCoverFor("https://cdn.example.com/covers/" + name + "?sign=old", moved))
+            .isEqualTo(newUrl);
+        assertThat(AlistLayoutMigration.newCoverFor("https://blog.example.com/alist/d/covers/" + name, moved))
+            .isEqualTo(newUrl);
+    }
+
+    @Test
+    void leavesOtherCoversAlone() {
+        assertThat(AlistLayoutMigration.newCoverFor(null, MOVED)).isNull();
+        assertThat(AlistLayoutMigration.newCoverFor("https://cdn.example.com/a%20b.png", MOVED)).isNull();
+        assertThat(AlistLayoutMigration.newCoverFor("https://alist.example.com/d/other/a%20b.png", MOVED)).isNull();
+        assertThat(AlistLayoutMigration.newCoverFor("https://alist.example.com/d/my%20covers/c.png", MOVED)).isNull();
+    }
+}
@@ -0,0 +1,176 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.OrphanGcReport;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import run.halo.app.core.extension.content.Post;
+import run.halo.app.core.extension.content.SinglePage;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.PageRequest;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AlistOrphanCollectorTest {
+
+    private static final LocalDate OLD = LocalDate.parse("2025-12-01");
+    private static final LocalDate TODAY = LocalDate.parse("2026-01-10");
+    private static final String REFERENCED = "1".repeat(64) + ".png";
+    private static final String ORPHAN = "2".repeat(64) + ".png";
+    private static final String RECENT = "3".repeat(64) + ".webp";
+    private static final String PAGE_COVER = "4".repeat(64) + ".jpg";
+    private static final String LEGACY_ORPHAN = "0f8fad5b-d9cb-469f-a165-70867728950e.png";
+
+    private final AlistSetting setting = new AlistSetting();
+    private AlistService alistService;
+    private ReactiveExtensionClient client;
+    private PluginMetrics metrics;
+    private AlistOrphanCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        setting.setAlistUploadPath("/covers/");
+        alistService = mock(AlistService.class);
+        when(alistService.prepareAlistContext()).thenReturn(Mono.just(Map.of("setting", setting, "token", "t")));
+        when(alistService.removeObjects(anyString(), anyList(), eq("t"), eq(setting))).thenReturn(Mono.empty());
+        // 上传目录与其他用途共用：photo.png 不是插件生成的文件名，即使没有被引用也不会被删除
+        listing("/covers",
+            file(REFERENCED, OLD), file(ORPHAN, OLD), file(RECENT, TODAY), file("photo.png", OLD),
+            file("notes.txt", OLD), file(AlistService.DIAGNOSTIC_OBJECT, OLD),
+            directory("2025"), directory("private"));
+        listing("/covers/2025", directory("12"));
+        listing("/covers/2025/12", file(LEGACY_ORPHAN, OLD), file(PAGE_COVER, OLD));
+
+        client = mock(ReactiveExtensionClient.class);
+        when(client.listBy(eq(Post.class), any(ListOptions.class), any(PageRequest.class)))
+            .thenReturn(Mono.just(new ListResult<>(1, 200, 2, List.of(
+                post("https://alist.example.com/d/covers/" + REFERENCED + "?sign=x"),
+                post("https://blog.example.com/upload/other.png")))));
+        when(client.listBy(eq(SinglePage.class), any(ListOptions.class), any(PageRequest.class)))
+            .thenReturn(Mono.just(new ListResult<>(1, 200, 1, List.of(
+                page("https://alist.example.com/d/covers/2025/12/" + PAGE_COVER)))));
+        metrics = new PluginMetrics();
+        collector = new AlistOrphanCollector(mock(ReactiveSettingFetcher.class), alistService, client,
+            mock(GenerationLifecycleManager.class), metrics,
+            Clock.fixed(Instant.parse("2026-01-10T08:00:00Z"), ZoneOffset.UTC), Duration.ZERO);
+    }
+
+    @Test
+    void dryRunOnlyReports() {
+        OrphanGcReport report = collector.collect(true).block(Duration.ofSeconds(5));
+
+        assertThat(report.getReferenced()).isEqualTo(3);
+        assertThat(report.getDirectories()).isEqualTo(3);
+        assertThat(report.getScanned()).isEqualTo(5);
+        assertThat(report.getOrphaned()).isEqualTo(2);
+        assertThat(report.getOrphanedBytes()).isEqualTo(2048);
+        assertThat(report.getTooRecent()).isEqualTo(1);
+        assertThat(report.getSamples()).containsExactly("/covers/" + ORPHAN, "/covers/2025/12/" + LEGACY_ORPHAN);
+        verify(alistService, never()).removeObjects(anyString(), anyList(), anyString(), any());
+    }
+
+    @Test
+    void deletesOrphansPerDirectoryUpToTheLimit() {
+        OrphanGcReport report = collector.collect(false).block(Duration.ofSeconds(5));
+
+        assertThat(report.getDeleted()).isEqualTo(2);
+        assertThat(report.isTruncated()).isFalse();
+        verify(alistService).removeObjects("/covers", List.of(ORPHAN), "t", setting);
+        verify(alistService).removeObjects("/covers/2025/12", List.of(LEGACY_ORPHAN), "t", setting);
+        assertThat(metrics.count("aicover.alist.gc_deleted")).isEqualTo(2);
+
+        setting.setAlistGcMaxDeletes(1);
+        report = collector.collect(false).block(Duration.ofSeconds(5));
+        assertThat(report.getDeleted()).isEqualTo(1);
+        assertThat(report.isTruncated()).isTrue();
+    }
+
+    @Test
+    void neverDeletesWhenPostsCannotBeRead() {
+        when(client.listBy(eq(Post.class), any(ListOptions.class), any(PageRequest.class)))
+            .thenReturn(Mono.error(new RuntimeException("boom")));
+
+        assertThatThrownBy(() -> collector.collect(false).block(Duration.ofSeconds(5))).hasMessageContaining("boom");
+        verify(alistService, never()).removeObjects(anyString(), anyList(), anyString(), any());
+    }
+
+    @Test
+    void extractsDecodedFileNames() {
+        assertThat(AlistOrphanCollector.fileName("https://alist.example.com/d/covers/a%20b.png?sign=x"))
+            .isEqualTo("a b.png");
+        assertThat(AlistOrphanCollector.fileName("https://alist.example.com/d/covers/a b.png")).isEqualTo("a b.png");
+        assertThat(AlistOrphanCollector.fileName("/upload/")).isNull();
+        assertThat(AlistOrphanCollector.fileName(null)).isNull();
+    }
+
+    private void listing(String directory, AlistService.AlistEntry... entries) {
+        when(alistService.listPage(eq(directory), eq(1), anyInt(), eq(false), eq("t"), eq(setting)))
+            .thenReturn(Mono.just(new AlistService.AlistPage(List.of(entries), entries.length)));
+    }
+
+    @Test
+    void onlyPluginGeneratedNamesAreCandidates() {
+        // 上传目录为 Alist 根目录时，其中的其他文件同样不会被删除
+        setting.setAlistUploadPath("/");
+        listing("/", file(ORPHAN, OLD), file("holiday.jpg", OLD), file("backup.png", OLD));
+
+        OrphanGcReport report = collector.collect(false).block(Duration.ofSeconds(5));
+
+        assertThat(report.getScanned()).isEqualTo(1);
+        verify(alistService).removeObjects("/", List.of(ORPHAN), "t", setting);
+    }
+
+    private static AlistService.AlistEntry file(String name, LocalDate modified) {
+        return new AlistService.AlistEntry(name, false, modified, "", 1024);
+    }
+
+    private static AlistService.AlistEntry directory(String name) {
+        return new AlistService.AlistEntry(name, true, OLD, "", 0);
+    }
+
+    private static SinglePage page(String cover) {
+        SinglePage page = new SinglePage();
+        Metadata metadata = new Metadata();
+        metadata.setName(cover);
+        page.setMetadata(metadata);
+        SinglePage.SinglePageSpec spec = new SinglePage.SinglePageSpec();
+        spec.setCover(cover);
+        page.setSpec(spec);
+        return page;
+    }
+
+    private static Post post(String cover) {
+        Post post = new Post();
+        Metadata metadata = new Metadata();
+        metadata.setName(cover);
+        post.setMetadata(metadata);
+        Post.PostSpec spec = new Post.PostSpec();
+        spec.setCover(cover);
+        post.setSpec(spec);
+        return post;
+    }
+}
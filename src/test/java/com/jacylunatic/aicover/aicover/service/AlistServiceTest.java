@@ -0,0 +1,267 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.jacylunatic.aicover.aicover.model.AlistSetting;
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.image.ImageMemoryBudget;
+import com.jacylunatic.aicover.aicover.service.image.ImagePlaceholderService;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import com.jacylunatic.aicover.aicover.service.lifecycle.HttpClientProvider;
+import com.jacylunatic.aicover.aicover.service.resilience.Deadline;
+import com.jacylunatic.aicover.aicover.service.resilience.DeadlineExceededException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlistServiceTest {
+
+    private static final String PUBLIC_URL = "http://alist.example.com";
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String baseUrl;
+    private final Set<String> uploaded = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger listCalls = new AtomicInteger();
+    private final CountDownLatch putStarted = new CountDownLatch(1);
+    private volatile CountDownLatch putGate = new CountDownLatch(0);
+    private final AtomicInteger released = new AtomicInteger();
+    private final CountDownLatch releasedLatch = new CountDownLatch(1);
+
+    private ReactiveSettingFetcher settingFetcher;
+    private HttpClientProvider httpClientProvider;
+    private BlockingIoScheduler blockingIo;
+    private AlistService alistService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // 临时图片：每个路径返回不同的内容，保证内容寻址的文件名不同
+        server.createContext("/img/", exchange -> respond(exchange,
+            ("image " + exchange.getRequestURI().getPath()).getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/api/auth/login", exchange ->
+            respond(exchange, "{\"code\":200,\"data\":{\"token\":\"token\"}}"));
+        // 上传之前对象不存在；上传之后按 Alist 的站点地址（与插件配置的内网地址不同）生成 raw_url
+        server.createContext("/api/fs/get", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String path = body.replaceAll(".*\"path\":\"([^\"]*)\".*", "$1");
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            respond(exchange, uploaded.contains(name)
+                ? "{\"code\":200,\"data\":{\"raw_url\":\"" + PUBLIC_URL + "/d" + path + "?sign=s-"
+                    + name.substring(0, 8) + "\"}}"
+                : "{\"code\":500,\"message\":\"object not found\"}");
+        });
+        server.createContext("/api/fs/put", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            putStarted.countDown();
+            await(putGate);
+            String path = exchange.getRequestHeaders().getFirst("File-Path");
+            uploaded.add(path.substring(path.lastIndexOf('/') + 1));
+            respond(exchange, "{\"code\":200}");
+        });
+        server.createContext("/api/fs/list", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            listCalls.incrementAndGet();
+            respond(exchange, "{\"code\":200,\"data\":{\"content\":[]}}");
+        });
+        // 上传可能被测试卡住，请求需要并行处理
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        AlistSetting setting = new AlistSetting();
+        setting.setAlistUrl(baseUrl);
+        setting.setAlistUsername("admin");
+        setting.setAlistPassword("secret");
+        setting.setAlistUploadPath("/covers");
+        settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(AlistSetting.GROUP), eq(AlistSetting.class))).thenReturn(Mono.just(setting));
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.empty());
+
+        GenerationLifecycleManager lifecycleManager = mock(GenerationLifecycleManager.class);
+        httpClientProvider = new HttpClientProvider(lifecycleManager);
+        blockingIo = new BlockingIoScheduler(settingFetcher, lifecycleManager);
+        PluginMetrics metrics = new PluginMetrics();
+        alistService = new AlistService(settingFetcher, metrics, new ImagePlaceholderService(blockingIo),
+            httpClientProvider, blockingIo, lifecycleManager, new ImageMemoryBudget(settingFetcher, blockingIo, metrics),
+            mock(LocalImageCache.class));
+        alistService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClientProvider.dispose();
+        blockingIo.dispose();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentUploadsShareOneDirectoryRefresh() {
+        List<ProgressUpdate> results = Flux.range(0, 3)
+            .flatMap(i -> alistService.uploadImageFromUrl(baseUrl + "/img/" + i + ".png").last())
+            .collectList()
+            .block(Duration.ofSeconds(15));
+
+        assertThat(results).hasSize(3).allSatisfy(update -> {
+            assertThat(update.getIsFinal()).isTrue();
+            assertThat(update.getFinalImageUrl()).startsWith(PUBLIC_URL + "/d/covers/").contains("?sign=s-");
+        });
+        assertThat(uploaded).hasSize(3);
+        assertThat(listCalls).hasValue(1);
+    }
+
+    @Test
+    void slowUploadDoesNotHoldBackOthers() throws Exception {
+        putGate = new CountDownLatch(1);
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        server.removeContext("/api/fs/put");
+        server.createContext("/api/fs/put", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            String path = exchange.getRequestHeaders().getFirst("File-Path");
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            if (first.compareAndSet(true, false)) {
+                // 第一个上传卡住，直到其他上传完成
+                slowStarted.countDown();
+                await(putGate);
+            }
+            uploaded.add(name);
+            respond(exchange, "{\"code\":200}");
+        });
+
+        CompletableFuture<ProgressUpdate> slow = alistService.uploadImageFromUrl(baseUrl + "/img/slow.png").last().toFuture();
+        assertThat(slowStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        ProgressUpdate fast = alistService.uploadImageFromUrl(baseUrl + "/img/fast.png").last()
+            .block(Duration.ofSeconds(10));
+
+        assertThat(fast.getFinalImageUrl()).startsWith(PUBLIC_URL + "/d/covers/");
+        assertThat(slow).isNotDone();
+        putGate.countDown();
+        assertThat(slow.get(10, TimeUnit.SECONDS).getFinalImageUrl()).startsWith(PUBLIC_URL + "/d/covers/");
+    }
+
+    @Test
+    void callerCancellationAbandonsItsBatchedUploadAndReleasesTheImageOnce() throws Exception {
+        AlistService service = newService(trackingBudget());
+        putGate = new CountDownLatch(1);
+
+        Disposable caller = service.uploadImageFromUrl(baseUrl + "/img/cancelled.png").subscribe();
+        assertThat(putStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(released).hasValue(0);
+        // 调用方离开（关闭弹窗、连接断开），上传仍卡在 Alist 上
+        caller.dispose();
+
+        assertThat(releasedLatch.await(5, TimeUnit.SECONDS)).isTrue();
+        putGate.countDown();
+        Thread.sleep(300);
+        assertThat(released).hasValue(1);
+        // 放弃的文件不再刷新目录、轮询签名
+        assertThat(listCalls).hasValue(0);
+    }
+
+    @Test
+    void batchedUploadHonoursTheCallersDeadline() throws Exception {
+        AlistService service = newService(trackingBudget());
+        putGate = new CountDownLatch(1);
+
+        assertThatThrownBy(() -> Deadline.apply(service.uploadImageFromUrl(baseUrl + "/img/slow.png"),
+                Duration.ofMillis(500)).blockLast(Duration.ofSeconds(10)))
+            .isInstanceOf(DeadlineExceededException.class);
+        assertThat(releasedLatch.await(5, TimeUnit.SECONDS)).isTrue();
+        putGate.countDown();
+        assertThat(released).hasValue(1);
+    }
+
+    @Test
+    void offlineDownloadNameComesFromTheDirectoryListing() {
+        Set<String> before = Set.of("old.png");
+        // 工具实际保存的文件名与按链接推算的不同
+        assertThat(AlistService.storedName("a.png", before, Set.of("old.png", "a_1.png"))).contains("a_1.png");
+        assertThat(AlistService.storedName("a.png", before, Set.of("old.png", "a.png", "b.png"))).contains("a.png");
+        assertThat(AlistService.storedName("old.png", before, Set.of("old.png"))).contains("old.png");
+        assertThat(AlistService.storedName("a.png", before, Set.of("old.png", "b.png", "c.png"))).isEmpty();
+        assertThat(AlistService.storedName("a.png", before, before)).isEmpty();
+    }
+
+    /**
+     * 记录图片何时被释放的内存预算。
+     */
+    private ImageMemoryBudget trackingBudget() {
+        ImageMemoryBudget budget = mock(ImageMemoryBudget.class);
+        when(budget.load(anyLong(), any())).thenAnswer(invocation -> Mono.fromCallable(() -> {
+            Callable<InputStream> opener = invocation.getArgument(1);
+            byte[] bytes;
+            try (InputStream input = opener.call()) {
+                bytes = input.readAllBytes();
+            }
+            String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+            return DownloadedImage.inMemory(bytes, sha256, () -> {
+                released.incrementAndGet();
+                releasedLatch.countDown();
+            });
+        }));
+        return budget;
+    }
+
+    private AlistService newService(ImageMemoryBudget budget) {
+        AlistService service = new AlistService(settingFetcher, new PluginMetrics(),
+            new ImagePlaceholderService(blockingIo), httpClientProvider, blockingIo, mock(GenerationLifecycleManager.class), budget, mock(LocalImageCache.class));
+        service.init();
+        return service;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        respond(exchange, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
@@ -0,0 +1,199 @@
+package com.jacylunatic.aicover.aicover.service;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.coverage.CoverIndex;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AlistWriteBehindTest {
+
+    private static final String NAME = "3a7bd3e2360a3d29eea436fcfb7e44c735d117c42d1c1835420b6b9942dd4f1b.png";
+    private static final String LOCAL_URL = LocalImageCache.URL_PREFIX + NAME;
+    private static final String ALIST_URL = "https://alist.example.com/d/covers/" + NAME + "?sign=abc";
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2026-01-01T00:00:00Z"));
+    private AlistService alistService;
+    private LocalImageCache localImageCache;
+    private PostCoverRewriter coverRewriter;
+    private CoverIndex coverIndex;
+    private BlockingIoScheduler blockingIo;
+    private PluginMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.just(new PluginMasterSetting()));
+        blockingIo = new BlockingIoScheduler(settingFetcher, mock(GenerationLifecycleManager.class));
+        alistService = mock(AlistService.class);
+        localImageCache = mock(LocalImageCache.class);
+        when(localImageCache.storePinned(anyString())).thenReturn(Mono.just(LOCAL_URL));
+        when(localImageCache.pin(NAME)).thenReturn(true);
+        coverRewriter = mock(PostCoverRewriter.class);
+        coverIndex = mock(CoverIndex.class);
+        metrics = new PluginMetrics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingIo.dispose();
+    }
+
+    private AlistWriteBehind newWriteBehind() {
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+        return new AlistWriteBehind(mock(ReactiveSettingFetcher.class), alistService, localImageCache, coverRewriter,
+            coverIndex, blockingIo, mock(GenerationLifecycleManager.class), metrics, tempDir.resolve("write-behind.json"),
+            clock);
+    }
+
+    @Test
+    void returnsLocalUrlThenUploadsAndSwitchesCovers() {
+        AlistWriteBehind writeBehind = newWriteBehind();
+        ProgressUpdate accepted = writeBehind.accept("https://dashscope.example.com/a.png?Expires=1").block();
+        assertThat(accepted.getFinalImageUrl()).isEqualTo(LOCAL_URL);
+        assertThat(accepted.getIsFinal()).isTrue();
+        verify(alistService, never()).uploadImageFromUrl(anyString());
+
+        when(alistService.uploadImageFromUrl(LOCAL_URL)).thenReturn(Flux.just(
+            new ProgressUpdate("Alist 登录成功！"), ProgressUpdate.finalSuccess(ALIST_URL, "Alist 上传成功！")));
+        when(coverIndex.postsWithLocalCover(NAME)).thenReturn(Set.of("with-local-cover"));
+        AtomicReference<UnaryOperator<String>> rewrite = new AtomicReference<>();
+        when(coverRewriter.rewrite(eq("with-local-cover"), any())).thenAnswer(invocation -> {
+            rewrite.set(invocation.getArgument(1));
+            return Mono.empty();
+        });
+
+        writeBehind.sweep().block(Duration.ofSeconds(5));
+
+        assertThat(writeBehind.entry(NAME).alistUrl()).isEqualTo(ALIST_URL);
+        assertThat(rewrite.get().apply(LOCAL_URL)).isEqualTo(ALIST_URL);
+        assertThat(rewrite.get().apply("/other.png")).isNull();
+        // 同一张图片再次生成时直接得到 Alist 地址
+        assertThat(writeBehind.accept("https://dashscope.example.com/a.png").block().getFinalImageUrl())
+            .isEqualTo(ALIST_URL);
+    }
+
+    @Test
+    void backsOffAfterFailuresAndResumesAfterRestart() {
+        AlistWriteBehind writeBehind = newWriteBehind();
+        writeBehind.accept("https://dashscope.example.com/a.png").block();
+        when(alistService.uploadImageFromUrl(LOCAL_URL)).thenReturn(Flux.error(new RuntimeException("Alist 不可用")));
+
+        writeBehind.sweep().block(Duration.ofSeconds(5));
+        AlistWriteBehind.SpoolEntry failed = writeBehind.entry(NAME);
+        assertThat(failed.uploaded()).isFalse();
+        assertThat(failed.attempts()).isEqualTo(1);
+        assertThat(failed.lastError()).isEqualTo("Alist 不可用");
+        assertThat(failed.nextAttemptAtMillis()).isEqualTo(now.get().plusSeconds(30).toEpochMilli());
+
+        // 还没到重试时间
+        writeBehind.sweep().block(Duration.ofSeconds(5));
+        assertThat(writeBehind.entry(NAME).attempts()).isEqualTo(1);
+
+        AlistWriteBehind restarted = newWriteBehind();
+        restarted.load();
+        assertThat(restarted.entry(NAME)).isEqualTo(failed);
+        verify(localImageCache).pin(NAME);
+
+        now.set(now.get().plusSeconds(31));
+        when(alistService.uploadImageFromUrl(LOCAL_URL)).thenReturn(Flux.just(
+            ProgressUpdate.finalSuccess(ALIST_URL, "Alist 上传成功！")));
+        restarted.sweep().block(Duration.ofSeconds(5));
+        assertThat(restarted.entry(NAME).alistUrl()).isEqualTo(ALIST_URL);
+
+        // 上传一天后释放本地副本
+        now.set(now.get().plus(Duration.ofDays(1)));
+        restarted.sweep().block(Duration.ofSeconds(5));
+        assertThat(restarted.entry(NAME)).isNull();
+        verify(localImageCache).unpin(NAME);
+    }
+
+    @Test
+    void keepsTheLocalCopyWhilePostsStillReferenceIt() {
+        AlistWriteBehind writeBehind = newWriteBehind();
+        writeBehind.accept("https://dashscope.example.com/a.png").block();
+        when(alistService.uploadImageFromUrl(LOCAL_URL)).thenReturn(Flux.just(
+            ProgressUpdate.finalSuccess(ALIST_URL, "Alist 上传成功！")));
+        // 改写失败，文章仍引用本地地址
+        when(coverIndex.postsWithLocalCover(NAME)).thenReturn(Set.of("draft"));
+        when(coverIndex.isLocallyReferenced(NAME)).thenReturn(true);
+        when(coverRewriter.rewrite(eq("draft"), any())).thenReturn(Mono.error(new RuntimeException("版本冲突")));
+        writeBehind.sweep().block(Duration.ofSeconds(5));
+
+        now.set(now.get().plus(Duration.ofDays(2)));
+        writeBehind.sweep().block(Duration.ofSeconds(5));
+        assertThat(writeBehind.entry(NAME)).isNotNull();
+        verify(localImageCache, never()).unpin(NAME);
+
+        // 下一轮改写成功后，引用消失，本地副本才释放
+        when(coverRewriter.rewrite(eq("draft"), any())).thenAnswer(invocation -> {
+            when(coverIndex.postsWithLocalCover(NAME)).thenReturn(Set.of());
+            when(coverIndex.isLocallyReferenced(NAME)).thenReturn(false);
+            return Mono.empty();
+        });
+        writeBehind.sweep().block(Duration.ofSeconds(5));
+        assertThat(writeBehind.entry(NAME)).isNull();
+        verify(localImageCache).unpin(NAME);
+    }
+
+    @Test
+    void retryDelayDoublesUpToOneHour() {
+        assertThat(AlistWriteBehind.retryDelay(1)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(AlistWriteBehind.retryDelay(3)).isEqualTo(Duration.ofMinutes(2));
+        assertThat(AlistWriteBehind.retryDelay(20)).isEqualTo(Duration.ofHours(1));
+    }
+
+    @Test
+    void recognizesLocalCoversOnly() {
+        assertThat(AlistWriteBehind.localName(LOCAL_URL)).isEqualTo(NAME);
+        assertThat(AlistWriteBehind.localName("https://blog.example.com" + LOCAL_URL + "?v=1")).isEqualTo(NAME);
+        assertThat(AlistWriteBehind.localName(ALIST_URL)).isNull();
+        assertThat(AlistWriteBehind.localName(LocalImageCache.URL_PREFIX)).isNull();
+        assertThat(AlistWriteBehind.localName(null)).isNull();
+    }
+}
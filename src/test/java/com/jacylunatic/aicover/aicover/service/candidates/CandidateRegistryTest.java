@@ -0,0 +1,69 @@
+package com.jacylunatic.aicover.aicover.service.candidates;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandidateRegistryTest {
+
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2026-01-01T00:00:00Z"));
+    private final CandidateRegistry registry = new CandidateRegistry(new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.get();
+        }
+    });
+
+    @Test
+    void candidatesCanBeTakenOnlyOnce() {
+        CandidateRegistry.Candidate candidate = registry.register("tongyi:wanx-v1", "https://example.com/a.png");
+
+        assertThat(registry.take(candidate.id())).contains(candidate);
+        assertThat(registry.take(candidate.id())).isEmpty();
+        assertThat(registry.take("unknown")).isEmpty();
+    }
+
+    @Test
+    void expiredCandidatesAreRejected() {
+        CandidateRegistry.Candidate fresh = registry.register("tongyi:wanx-v1", "https://example.com/a.png");
+        CandidateRegistry.Candidate stale = registry.register("tongyi:wanx-v1", "https://example.com/b.png");
+
+        now.set(now.get().plus(CandidateRegistry.MAX_AGE));
+        assertThat(registry.take(fresh.id())).contains(fresh);
+
+        now.set(now.get().plus(Duration.ofMillis(1)));
+        assertThat(registry.take(stale.id())).isEmpty();
+    }
+
+    @Test
+    void oldestCandidatesAreEvictedBeyondTheLimit() {
+        List<CandidateRegistry.Candidate> registered = new ArrayList<>();
+        for (int i = 0; i <= CandidateRegistry.MAX_CANDIDATES; i++) {
+            registered.add(registry.register("tongyi:wanx-v1", "https://example.com/" + i + ".png"));
+        }
+
+        assertThat(registry.take(registered.get(0).id())).isEmpty();
+        assertThat(registry.take(registered.get(1).id())).contains(registered.get(1));
+        assertThat(registry.take(registered.get(CandidateRegistry.MAX_CANDIDATES).id()))
+            .contains(registered.get(CandidateRegistry.MAX_CANDIDATES));
+    }
+}
@@ -0,0 +1,155 @@
+package com.jacylunatic.aicover.aicover.service.coverage;
+
+import com.jacylunatic.aicover.aicover.model.CoverAnnotations;
+import com.jacylunatic.aicover.aicover.model.CoverCoverage;
+import com.jacylunatic.aicover.aicover.model.CoverStatus;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import run.halo.app.core.extension.content.Post;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.PageRequest;
+import run.halo.app.extension.ReactiveExtensionClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CoverIndexTest {
+
+    private static final String HASH = "a".repeat(64);
+
+    private ReactiveExtensionClient client;
+    private LocalImageCache localImageCache;
+    private PluginMetrics metrics;
+    private CoverIndex index;
+
+    @BeforeEach
+    void setUp() {
+        client = mock(ReactiveExtensionClient.class);
+        localImageCache = mock(LocalImageCache.class);
+        when(localImageCache.contains(HASH + ".png")).thenReturn(true);
+        metrics = new PluginMetrics();
+        index = new CoverIndex(client, localImageCache, metrics, mock(GenerationLifecycleManager.class));
+    }
+
+    @Test
+    void classifiesCovers() {
+        assertThat(index.classify(null, null)).isEqualTo(CoverStatus.MISSING);
+        assertThat(index.classify(" ", null)).isEqualTo(CoverStatus.MISSING);
+        assertThat(index.classify(LocalImageCache.URL_PREFIX + HASH + ".png", null))
+            .isEqualTo(CoverStatus.AI_GENERATED);
+        assertThat(index.classify(LocalImageCache.URL_PREFIX + "b".repeat(64) + ".png", null))
+            .isEqualTo(CoverStatus.BROKEN);
+        assertThat(index.classify("https://alist.example.com/d/covers/" + HASH + ".webp", null))
+            .isEqualTo(CoverStatus.AI_GENERATED);
+        assertThat(index.classify("https://cdn.example.com/photo.jpg", null)).isEqualTo(CoverStatus.MANUAL);
+        assertThat(index.classify("/upload/photo.jpg", null)).isEqualTo(CoverStatus.MANUAL);
+        assertThat(index.classify("https://oss.example.com/img.png?X-Amz-Expires=3600&X-Amz-Signature=x", null))
+            .isEqualTo(CoverStatus.BROKEN);
+        assertThat(index.classify("ftp://example.com/a.png", null)).isEqualTo(CoverStatus.BROKEN);
+        assertThat(index.classify("https://exa mple.com/a.png", null)).isEqualTo(CoverStatus.BROKEN);
+
+        String cover = "https://alist.example.com/d/covers/custom.png";
+        assertThat(index.classify(cover, Map.of(CoverAnnotations.PLACEHOLDER_FOR, cover)))
+            .isEqualTo(CoverStatus.AI_GENERATED);
+    }
+
+    @Test
+    void buildsFromAllPagesAndCountsByStatus() {
+        when(client.listBy(eq(Post.class), any(ListOptions.class), any(PageRequest.class)))
+            .thenAnswer(invocation -> {
+                PageRequest request = invocation.getArgument(2);
+                List<Post> items = request.getPageNumber() == 1
+                    ? List.of(post("a", null), post("b", "https://cdn.example.com/b.jpg"))
+                    : List.of(post("c", LocalImageCache.URL_PREFIX + HASH + ".png"));
+                return Mono.just(new ListResult<>(request.getPageNumber(), 2, 3, items));
+            });
+
+        index.init();
+
+        CoverCoverage coverage = index.coverage();
+        assertThat(coverage.isReady()).isTrue();
+        assertThat(coverage.getTotal()).isEqualTo(3);
+        assertThat(coverage.getNeedsCover()).isEqualTo(1);
+        assertThat(coverage.getCounts()).containsEntry(CoverStatus.MISSING, 1L)
+            .containsEntry(CoverStatus.MANUAL, 1L)
+            .containsEntry(CoverStatus.AI_GENERATED, 1L);
+        assertThat(metrics.snapshot()).containsEntry("aicover.cover_index.posts{status=missing}", 1L);
+    }
+
+    @Test
+    void eventsMoveEntriesBetweenStatuses() {
+        index.upsert(post("b", null));
+        index.upsert(post("a", null));
+        assertThat(index.list(CoverStatus.MISSING, 1, 10))
+            .extracting(entry -> entry.getPostName())
+            .containsExactly("a", "b");
+
+        index.upsert(post("a", "https://cdn.example.com/a.jpg"));
+        index.remove("b");
+        index.remove("unknown");
+
+        CoverCoverage coverage = index.coverage();
+        assertThat(coverage.getTotal()).isEqualTo(1);
+        assertThat(coverage.getCounts()).containsEntry(CoverStatus.MISSING, 0L)
+            .containsEntry(CoverStatus.MANUAL, 1L);
+        assertThat(index.list(CoverStatus.MANUAL, 1, 10)).singleElement()
+            .satisfies(entry -> assertThat(entry.getCover()).isEqualTo("https://cdn.example.com/a.jpg"));
+        assertThat(index.list(CoverStatus.MANUAL, 2, 10)).isEmpty();
+    }
+
+    @Test
+    void eventsDuringBuildWinOverStaleListing() {
+        index.upsert(post("a", "https://cdn.example.com/a.jpg"));
+        when(client.listBy(eq(Post.class), any(ListOptions.class), any(PageRequest.class)))
+            .thenReturn(Mono.just(new ListResult<>(1, 200, 1, List.of(post("a", null)))));
+
+        index.build().block();
+
+        assertThat(index.coverage().getCounts()).containsEntry(CoverStatus.MANUAL, 1L)
+            .containsEntry(CoverStatus.MISSING, 0L);
+    }
+
+    @Test
+    void tracksPostsWhoseCoverIsALocalFile() {
+        String local = HASH + ".png";
+        when(client.listBy(eq(Post.class), any(ListOptions.class), any(PageRequest.class)))
+            .thenReturn(Mono.just(new ListResult<>(1, 200, 0, List.of())));
+        // 构建完成前引用关系不完整，一律视为引用
+        assertThat(index.isLocallyReferenced(local)).isTrue();
+        index.build().block();
+        assertThat(index.isLocallyReferenced(local)).isFalse();
+
+        index.upsert(post("a", LocalImageCache.URL_PREFIX + local));
+        index.upsert(post("b", "https://blog.example.com" + LocalImageCache.URL_PREFIX + local));
+        assertThat(index.postsWithLocalCover(local)).containsExactlyInAnyOrder("a", "b");
+
+        index.upsert(post("a", "https://alist.example.com/d/covers/" + local));
+        index.remove("b");
+        assertThat(index.postsWithLocalCover(local)).isEmpty();
+        assertThat(index.isLocallyReferenced(local)).isFalse();
+    }
+
+    private static Post post(String name, String cover) {
+        Post post = new Post();
+        Metadata metadata = new Metadata();
+        metadata.setName(name);
+        post.setMetadata(metadata);
+        Post.PostSpec spec = new Post.PostSpec();
+        spec.setTitle("标题 " + name);
+        spec.setCover(cover);
+        post.setSpec(spec);
+        return post;
+    }
+}
@@ -0,0 +1,127 @@
+package com.jacylunatic.aicover.aicover.service.diagnostics;
+
+import com.jacylunatic.aicover.aicover.model.DiagnosticCheck;
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.service.AiImageService;
+import com.jacylunatic.aicover.aicover.service.AlistService;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DiagnosticsServiceTest {
+
+    private HttpServer server;
+    private BlockingIoScheduler blockingIo;
+    private DiagnosticsService diagnosticsService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 本地替身服务器：/ok 模拟鉴权成功，/denied 模拟 Key 失效
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/denied", exchange -> {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+        });
+        server.start();
+
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.empty());
+        blockingIo = new BlockingIoScheduler(settingFetcher, mock(GenerationLifecycleManager.class));
+        diagnosticsService = new DiagnosticsService(settingFetcher, mock(AiImageService.class),
+            mock(AlistService.class), blockingIo);
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingIo.dispose();
+        server.stop(0);
+    }
+
+    @Test
+    void reportsEveryStageWithPercentilesAgainstLocalServer() {
+        Map<String, DiagnosticCheck> checks = byStage(diagnosticsService.diagnoseEndpoint("local", baseUri(),
+            DiagnosticsService.timed("auth", call("/ok")).map(List::of), 3));
+
+        assertThat(checks.keySet()).containsExactly("dns", "connect", "tls", "auth");
+        assertThat(checks.get("tls").getStatus()).isEqualTo("skipped");
+        for (String stage : List.of("dns", "connect", "auth")) {
+            DiagnosticCheck check = checks.get(stage);
+            assertThat(check.getStatus()).as(stage).isEqualTo("ok");
+            assertThat(check.getSamples()).as(stage).isEqualTo(3);
+            assertThat(check.getP50Millis()).as(stage).isLessThanOrEqualTo(check.getP95Millis());
+            assertThat(check.getP95Millis()).as(stage).isLessThanOrEqualTo(check.getMaxMillis());
+        }
+    }
+
+    @Test
+    void reportsAuthFailureSeparatelyFromConnectivity() {
+        Map<String, DiagnosticCheck> checks = byStage(diagnosticsService.diagnoseEndpoint("local", baseUri(),
+            DiagnosticsService.timed("auth", call("/denied")).map(List::of), 1));
+
+        assertThat(checks.get("connect").getStatus()).isEqualTo("ok");
+        assertThat(checks.get("auth").getStatus()).isEqualTo("failed");
+        assertThat(checks.get("auth").getMessage()).contains("401");
+    }
+
+    @Test
+    void stopsAtConnectWhenNothingListens() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        Map<String, DiagnosticCheck> checks = byStage(diagnosticsService.diagnoseEndpoint("local",
+            URI.create("http://127.0.0.1:" + closedPort + "/"),
+            DiagnosticsService.timed("auth", Mono.empty()).map(List::of), 1));
+
+        assertThat(checks.get("dns").getStatus()).isEqualTo("ok");
+        assertThat(checks.get("connect").getStatus()).isEqualTo("failed");
+        assertThat(checks).doesNotContainKey("auth");
+    }
+
+    @Test
+    void percentileUsesNearestRank() {
+        long[] nanos = {1_000_000, 2_000_000, 3_000_000, 4_000_000};
+
+        assertThat(DiagnosticsService.percentile(nanos, 0.5)).isEqualTo(2.0);
+        assertThat(DiagnosticsService.percentile(nanos, 0.95)).isEqualTo(4.0);
+    }
+
+    private URI baseUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    private Mono<Void> call(String path) {
+        return WebClient.create(baseUri() + path.substring(1)).get().retrieve().toBodilessEntity().then();
+    }
+
+    private static Map<String, DiagnosticCheck> byStage(Mono<List<DiagnosticCheck>> result) {
+        return result.block(Duration.ofSeconds(15)).stream()
+            .collect(Collectors.toMap(DiagnosticCheck::getStage, Function.identity(),
+                (a, b) -> a, java.util.LinkedHashMap::new));
+    }
+}
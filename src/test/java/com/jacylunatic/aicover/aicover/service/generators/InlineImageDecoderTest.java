@@ -0,0 +1,43 @@
+package com.jacylunatic.aicover.aicover.service.generators;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InlineImageDecoderTest {
+
+    @Test
+    void decodesFirstInlineImageIntoTheOutputStream() throws Exception {
+        byte[] image = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(image);
+        String json = "{\"created\":1,\"data\":[{\"revised_prompt\":\"cover\",\"b64_json\":\""
+            + Base64.getEncoder().encodeToString(image) + "\"},{\"b64_json\":\"AAAA\"}]}";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        InlineImageDecoder.Result result = InlineImageDecoder.decode(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), output);
+
+        assertThat(result.hasImage()).isTrue();
+        assertThat(result.imageBytes()).isEqualTo(image.length);
+        assertThat(output.toByteArray()).isEqualTo(image);
+    }
+
+    @Test
+    void reportsUrlOrErrorWhenNoInlineImage() throws Exception {
+        InlineImageDecoder.Result withUrl = InlineImageDecoder.decode(new ByteArrayInputStream(
+            "{\"images\":[{\"url\":\"https://example.com/a.png\"}],\"timings\":{\"inference\":1.2}}"
+                .getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream());
+        InlineImageDecoder.Result withError = InlineImageDecoder.decode(new ByteArrayInputStream(
+            "{\"error\":{\"message\":\"invalid size\"}}".getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream());
+
+        assertThat(withUrl.hasImage()).isFalse();
+        assertThat(withUrl.url()).isEqualTo("https://example.com/a.png");
+        assertThat(withError.errorMessage()).isEqualTo("invalid size");
+    }
+}
@@ -0,0 +1,124 @@
+package com.jacylunatic.aicover.aicover.service.image;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.service.DownloadedImage;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImageMemoryBudgetTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @TempDir
+    Path tempDir;
+
+    private BlockingIoScheduler blockingIo;
+    private PluginMetrics metrics;
+    private ImageMemoryBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        PluginMasterSetting setting = new PluginMasterSetting();
+        setting.setImageMemoryBudgetMb(1);
+        setting.setImageSpillThresholdMb(1);
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.just(setting));
+
+        blockingIo = new BlockingIoScheduler(settingFetcher, mock(GenerationLifecycleManager.class));
+        metrics = new PluginMetrics();
+        budget = new ImageMemoryBudget(settingFetcher, blockingIo, metrics, tempDir.resolve("spill"));
+        budget.init();
+        budget.limits().block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingIo.dispose();
+    }
+
+    @Test
+    void waitsForBudgetInsteadOfAllocating() {
+        ImageMemoryBudget.Reservation first = budget.reserve(700 * 1024).block();
+        AtomicReference<ImageMemoryBudget.Reservation> second = new AtomicReference<>();
+        budget.reserve(700 * 1024).subscribe(second::set);
+
+        assertThat(second.get()).isNull();
+        assertThat(budget.waitingCount()).isEqualTo(1);
+        assertThat(metrics.snapshot()).containsEntry("aicover.image_memory.used_bytes", 700L * 1024);
+
+        first.release();
+
+        assertThat(second.get()).isNotNull();
+        assertThat(budget.usedBytes()).isEqualTo(700 * 1024);
+        second.get().release();
+        second.get().release();
+        assertThat(budget.usedBytes()).isZero();
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueue() {
+        ImageMemoryBudget.Reservation first = budget.reserve(MB).block();
+        Disposable waiting = budget.reserve(1).subscribe();
+        assertThat(budget.waitingCount()).isEqualTo(1);
+
+        waiting.dispose();
+        first.release();
+
+        assertThat(budget.waitingCount()).isZero();
+        assertThat(budget.usedBytes()).isZero();
+    }
+
+    @Test
+    void keepsSmallImagesInMemoryAndReturnsUnusedBudget() {
+        byte[] content = new byte[300 * 1024];
+        // 长度未知时先按阈值申请，读完后只保留实际大小
+        DownloadedImage image = budget.load(-1, () -> new ByteArrayInputStream(content))
+            .block(Duration.ofSeconds(5));
+
+        assertThat(image.isOnDisk()).isFalse();
+        assertThat(image.size()).isEqualTo(content.length);
+        assertThat(budget.usedBytes()).isEqualTo(content.length);
+
+        image.release();
+        assertThat(budget.usedBytes()).isZero();
+    }
+
+    @Test
+    void spillsImagesLargerThanTheThresholdToDisk() throws Exception {
+        byte[] content = new byte[(int) (1.5 * MB)];
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xD8;
+        content[2] = (byte) 0xFF;
+        DownloadedImage image = budget.load(-1, () -> new ByteArrayInputStream(content))
+            .block(Duration.ofSeconds(5));
+
+        assertThat(image.isOnDisk()).isTrue();
+        assertThat(Files.size(image.file())).isEqualTo(content.length);
+        assertThat(image.extension()).isEqualTo(".jpg");
+        assertThat(budget.usedBytes()).isZero();
+        assertThat(metrics.count("aicover.image_memory.spills")).isEqualTo(1);
+
+        image.release();
+        assertThat(image.file()).doesNotExist();
+    }
+}
@@ -0,0 +1,101 @@
+package com.jacylunatic.aicover.aicover.service.image;
+
+import com.jacylunatic.aicover.aicover.model.ImagePlaceholder;
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImagePlaceholderServiceTest {
+
+    private static final String NAME = "3a7bd3e2360a3d29eea436fcfb7e44c735d117c42d1c1835420b6b9942dd4f1b.png";
+
+    @TempDir
+    Path tempDir;
+
+    private final BlockingIoScheduler blockingIo = newBlockingIo();
+    private final ImagePlaceholderService service = new ImagePlaceholderService(Path.of("unused.json"), blockingIo);
+
+    private static BlockingIoScheduler newBlockingIo() {
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.empty());
+        return new BlockingIoScheduler(settingFetcher, mock(GenerationLifecycleManager.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingIo.dispose();
+    }
+
+    @Test
+    void encodesSolidBlackAsReferenceBlurHash() {
+        assertThat(BlurHashEncoder.encode(new int[64 * 48], 64, 48, 4, 3))
+            .isEqualTo("L00000fQfQfQfQfQfQfQfQfQfQfQ");
+    }
+
+    @Test
+    void computesDimensionsAndColorsFromDownsampledDecode() throws IOException {
+        BufferedImage image = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(0x20, 0x60, 0xc0));
+        graphics.fillRect(0, 0, 1280, 720);
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 200, 200);
+        graphics.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+
+        ImagePlaceholder placeholder = service.computeBlocking(png.toByteArray()).orElseThrow();
+
+        assertThat(placeholder.getWidth()).isEqualTo(1280);
+        assertThat(placeholder.getHeight()).isEqualTo(720);
+        assertThat(placeholder.getDominantColor()).isEqualTo("#2060c0");
+        assertThat(placeholder.getBlurHash()).hasSize(28);
+        assertThat(placeholder.getLqip()).startsWith("data:image/jpeg;base64,");
+    }
+
+    @Test
+    void returnsEmptyForUnknownFormat() throws IOException {
+        assertThat(service.computeBlocking(new byte[] {1, 2, 3, 4})).isEmpty();
+    }
+
+    @Test
+    void placeholdersSurviveRestartAndFollowTheFileName() {
+        ImagePlaceholder placeholder = new ImagePlaceholder();
+        placeholder.setWidth(1280);
+        placeholder.setHeight(720);
+        placeholder.setBlurHash("L00000fQfQfQfQfQfQfQfQfQfQfQ");
+        Path store = tempDir.resolve("placeholders.json");
+        ImagePlaceholderService first = new ImagePlaceholderService(store, blockingIo);
+        first.remember(LocalImageCache.URL_PREFIX + NAME, placeholder);
+        first.remember("https://blog.example.com/upload/photo.png", placeholder);
+        first.persist();
+
+        ImagePlaceholderService restarted = new ImagePlaceholderService(store, blockingIo);
+        restarted.load();
+
+        // 图片转存到 Alist 后地址变了，文件名不变
+        assertThat(restarted.lookup("https://alist.example.com/d/covers/" + NAME + "?sign=abc")).contains(placeholder);
+        assertThat(restarted.lookup("https://blog.example.com/upload/photo.png")).contains(placeholder);
+        assertThat(restarted.lookup("https://blog.example.com/upload/other.png")).isEmpty();
+        assertThat(restarted.lookup(null)).isEmpty();
+    }
+}
@@ -0,0 +1,144 @@
+package com.jacylunatic.aicover.aicover.service.image;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.BlockingIoScheduler;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import com.jacylunatic.aicover.aicover.service.lifecycle.HttpClientProvider;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LocalImageCacheTest {
+
+    private static final int IMAGE_BYTES = 700 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private HttpClientProvider httpClientProvider;
+    private BlockingIoScheduler blockingIo;
+    private LocalImageCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // 每个路径返回一张内容不同的"图片"
+        server.createContext("/", exchange -> {
+            byte[] body = new byte[IMAGE_BYTES];
+            Arrays.fill(body, (byte) exchange.getRequestURI().getPath().hashCode());
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        PluginMasterSetting setting = new PluginMasterSetting();
+        setting.setLocalImageCacheMaxMb(1);
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.just(setting));
+
+        GenerationLifecycleManager lifecycleManager = mock(GenerationLifecycleManager.class);
+        httpClientProvider = new HttpClientProvider(lifecycleManager);
+        blockingIo = new BlockingIoScheduler(settingFetcher, lifecycleManager);
+        cache = new LocalImageCache(settingFetcher, httpClientProvider, blockingIo, new PluginMetrics(),
+            tempDir.resolve("image-cache"));
+        cache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClientProvider.dispose();
+        blockingIo.dispose();
+        server.stop(0);
+    }
+
+    @Test
+    void storesContentAddressedAndDeduplicates() {
+        String first = store("/a.png");
+        String again = store("/a.png");
+
+        assertThat(first).startsWith(LocalImageCache.URL_PREFIX).matches(".*/[0-9a-f]{64}\\.png");
+        assertThat(again).isEqualTo(first);
+        assertThat(cache.resolve(nameOf(first))).hasValueSatisfying(path ->
+            assertThat(path).exists().hasSize(IMAGE_BYTES));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverCapacity() throws Exception {
+        String first = store("/a.png");
+        String second = store("/b.png");
+
+        assertThat(cache.resolve(nameOf(first))).isEmpty();
+        assertThat(cache.resolve(nameOf(second))).isPresent();
+        try (var files = Files.list(tempDir.resolve("image-cache"))) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void pinnedImagesSurviveEvictionUntilUnpinned() {
+        String pinned = cache.storePinned("http://127.0.0.1:" + server.getAddress().getPort() + "/a.png")
+            .block(Duration.ofSeconds(10));
+        String second = store("/b.png");
+
+        assertThat(cache.resolve(nameOf(pinned))).isPresent();
+        assertThat(cache.resolve(nameOf(second))).isEmpty();
+
+        cache.unpin(nameOf(pinned));
+        store("/c.png");
+        assertThat(cache.contains(nameOf(pinned))).isFalse();
+    }
+
+    @Test
+    void coversReferencedByPostsAreNeverEvicted() {
+        String referenced = store("/a.png");
+        cache.setReferenceCheck(nameOf(referenced)::equals);
+        String second = store("/b.png");
+
+        assertThat(cache.resolve(nameOf(referenced))).isPresent();
+        assertThat(cache.resolve(nameOf(second))).isEmpty();
+    }
+
+    @Test
+    void findsCacheNamesInRelativeAndAbsoluteUrls() {
+        String name = "a".repeat(64) + ".png";
+        assertThat(LocalImageCache.nameInUrl(LocalImageCache.URL_PREFIX + name)).isEqualTo(name);
+        assertThat(LocalImageCache.nameInUrl("https://blog.example.com" + LocalImageCache.URL_PREFIX + name + "?v=1"))
+            .isEqualTo(name);
+        assertThat(LocalImageCache.nameInUrl("https://alist.example.com/d/covers/" + name)).isNull();
+        assertThat(LocalImageCache.nameInUrl(null)).isNull();
+    }
+
+    @Test
+    void rejectsNamesOutsideTheCache() {
+        assertThat(cache.resolve("../secret.png")).isEmpty();
+        assertThat(cache.resolve("abc.png")).isEmpty();
+    }
+
+    private String store(String path) {
+        return cache.store("http://127.0.0.1:" + server.getAddress().getPort() + path)
+            .block(Duration.ofSeconds(10));
+    }
+
+    private static String nameOf(String url) {
+        return url.substring(LocalImageCache.URL_PREFIX.length());
+    }
+}
@@ -0,0 +1,82 @@
+package com.jacylunatic.aicover.aicover.service.lifecycle;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 对比虚拟线程与 boundedElastic 在大量并发阻塞调用下的平台线程数与延迟。
+ * <p>
+ * 运行方式：./gradlew benchmark
+ */
+@Tag("benchmark")
+class BlockingIoSchedulerBenchmarkTest {
+
+    private static final int CONCURRENCY = 2000;
+    private static final Duration BLOCKING_CALL = Duration.ofMillis(50);
+
+    @Test
+    void virtualThreadsUseFewerPlatformThreadsThanBoundedElastic() {
+        Scheduler virtual = Schedulers.fromExecutorService(
+            Executors.newVirtualThreadPerTaskExecutor(), "benchmark-virtual");
+        Scheduler elastic = Schedulers.newBoundedElastic(
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+            "benchmark-elastic");
+        try {
+            // 预热一轮，排除类加载与 JIT 的影响
+            run(virtual, 200);
+            run(elastic, 200);
+
+            Result virtualResult = run(virtual, CONCURRENCY);
+            Result elasticResult = run(elastic, CONCURRENCY);
+
+            System.out.println("virtual threads : " + virtualResult);
+            System.out.println("boundedElastic  : " + elasticResult);
+
+            assertThat(virtualResult.peakThreads()).isLessThan(elasticResult.peakThreads());
+            assertThat(virtualResult.wallMillis()).isLessThan(elasticResult.wallMillis());
+        } finally {
+            virtual.dispose();
+            elastic.dispose();
+        }
+    }
+
+    private static Result run(Scheduler scheduler, int concurrency) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+
+        List<Long> latencies = Flux.range(0, concurrency)
+            .flatMap(i -> {
+                // 延迟从提交时算起，包含在调度器队列中等待线程的时间
+                long submitted = System.nanoTime();
+                return Mono.fromCallable(() -> {
+                    Thread.sleep(BLOCKING_CALL.toMillis());
+                    return (System.nanoTime() - submitted) / 1_000_000;
+                }).subscribeOn(scheduler);
+            }, concurrency)
+            .collectList()
+            .block(Duration.ofMinutes(5));
+
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        return new Result(threads.getPeakThreadCount(), wallMillis,
+            sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.99)],
+            Arrays.stream(sorted).max().orElse(0));
+    }
+
+    private record Result(int peakThreads, long wallMillis, long p50Millis, long p99Millis, long maxMillis) {
+    }
+}
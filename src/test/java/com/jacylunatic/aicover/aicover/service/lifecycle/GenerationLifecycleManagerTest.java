@@ -0,0 +1,161 @@
+package com.jacylunatic.aicover.aicover.service.lifecycle;
+
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.sun.management.UnixOperatingSystemMXBean;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GenerationLifecycleManagerTest {
+
+    private static final int RELOAD_CYCLES = 50;
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void rejectsNewJobsAfterShutdown() {
+        GenerationLifecycleManager manager = new GenerationLifecycleManager(tempDir.resolve("state.json"));
+        manager.shutdown(Duration.ZERO);
+
+        List<ProgressUpdate> updates = manager.track("tongyi",
+            Flux.just(ProgressUpdate.finalSuccess("http://example.com/a.png", "done")))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(updates).hasSize(1);
+        assertThat(updates.get(0).getIsError()).isTrue();
+    }
+
+    @Test
+    void cancelsJobsThatOutliveTheDrainTimeoutWithoutPersistingThem() throws Exception {
+        Path legacyState = tempDir.resolve("state.json");
+        Files.writeString(legacyState, "[{\"prompt\":\"a cat\"}]");
+        GenerationLifecycleManager manager = new GenerationLifecycleManager(legacyState);
+        manager.start();
+        assertThat(legacyState).doesNotExist();
+
+        List<ProgressUpdate> received = new CopyOnWriteArrayList<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        manager.track("tongyi", Flux.concat(
+                Flux.just(ProgressUpdate.taskSubmitted("task-1", "submitted")),
+                Flux.<ProgressUpdate>never()).doOnCancel(() -> cancelled.set(true)))
+            .subscribe(received::add);
+        assertThat(manager.shutdown(Duration.ofMillis(100))).isEqualTo(1);
+
+        assertThat(manager.inFlightCount()).isZero();
+        assertThat(cancelled).isTrue();
+        assertThat(received).last().extracting(ProgressUpdate::getIsError).isEqualTo(true);
+        assertThat(legacyState).doesNotExist();
+    }
+
+    @Test
+    void shutdownReturnsAsSoonAsInFlightJobsFinish() {
+        GenerationLifecycleManager manager = new GenerationLifecycleManager(tempDir.resolve("state.json"));
+        List<ProgressUpdate> received = new CopyOnWriteArrayList<>();
+        manager.track("tongyi", Flux.just(ProgressUpdate.finalSuccess("http://example.com/a.png", "done"))
+                .delaySubscription(Duration.ofMillis(100)))
+            .subscribe(received::add);
+
+        long start = System.nanoTime();
+        assertThat(manager.shutdown(Duration.ofSeconds(10))).isZero();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        assertThat(received).singleElement().extracting(ProgressUpdate::getIsFinal).isEqualTo(true);
+        assertThat(manager.inFlightCount()).isZero();
+    }
+
+    @Test
+    void repeatedReloadsDoNotLeakThreadsSocketsOrHeap() throws Exception {
+        // 先完整跑一轮，让 Reactor/Netty 的全局线程和类加载稳定下来再取基线
+        reloadOnce(0);
+        long baselineThreads = Thread.activeCount();
+        long baselineFds = openFileDescriptors();
+        long baselineHeap = usedHeapAfterGc();
+
+        for (int i = 1; i <= RELOAD_CYCLES; i++) {
+            reloadOnce(i);
+        }
+
+        assertThat((long) Thread.activeCount()).isLessThanOrEqualTo(baselineThreads + 8);
+        if (baselineFds >= 0) {
+            assertThat(openFileDescriptors()).isLessThanOrEqualTo(baselineFds + 16);
+        }
+        assertThat(usedHeapAfterGc()).isLessThanOrEqualTo(baselineHeap + 32L * 1024 * 1024);
+    }
+
+    private void reloadOnce(int cycle) {
+        GenerationLifecycleManager manager =
+            new GenerationLifecycleManager(tempDir.resolve("state-" + cycle + ".json"));
+        HttpClientProvider httpClientProvider = new HttpClientProvider(manager);
+        manager.start();
+
+        String body = httpClientProvider.webClient(Duration.ofSeconds(5))
+            .get()
+            .uri("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+            .retrieve()
+            .bodyToMono(String.class)
+            .block(Duration.ofSeconds(5));
+        assertThat(body).isEqualTo("ok");
+
+        manager.track("siliconflow",
+                Flux.interval(Duration.ofMillis(10)).map(tick -> new ProgressUpdate("tick")))
+            .subscribe();
+        manager.shutdown(Duration.ofMillis(50));
+
+        assertThat(manager.inFlightCount()).isZero();
+        assertThat(httpClientProvider.isDisposed()).isTrue();
+    }
+
+    private static long openFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof UnixOperatingSystemMXBean unix) {
+            return unix.getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,194 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ApiKeyPoolTest {
+
+    private final PluginMetrics metrics = new PluginMetrics();
+    private final ApiKeyPool pool = new ApiKeyPool(metrics);
+    private final RetryPolicy retryPolicy = new RetryPolicy(metrics);
+    private final List<String> keys = List.of("sk-aaaa", "sk-bbbb", "sk-cccc");
+
+    @Test
+    void parsesNewlineAndCommaSeparatedKeys() {
+        assertThat(ApiKeyPool.parseKeys(" sk-aaaa \nsk-bbbb,sk-cccc\n\nsk-aaaa")).isEqualTo(keys);
+        assertThat(ApiKeyPool.parseKeys(null)).isEmpty();
+    }
+
+    @Test
+    void prefersKeyWithFewestInFlightRequests() {
+        ApiKeyPool.Lease first = pool.acquire("tongyi", keys);
+        ApiKeyPool.Lease second = pool.acquire("tongyi", keys);
+        ApiKeyPool.Lease third = pool.acquire("tongyi", keys);
+
+        assertThat(List.of(first.key(), second.key(), third.key())).containsExactlyInAnyOrderElementsOf(keys);
+
+        second.release();
+        assertThat(pool.acquire("tongyi", keys).key()).isEqualTo(second.key());
+    }
+
+    @Test
+    void skipsKeysInCooldownAfterRateLimit() {
+        ApiKeyPool.Lease limited = pool.acquire("tongyi", keys);
+        limited.reportFailure(new ProviderApiException("too many requests", 429, Duration.ofMinutes(5)));
+        limited.release();
+
+        for (int i = 0; i < 10; i++) {
+            ApiKeyPool.Lease lease = pool.acquire("tongyi", keys);
+            assertThat(lease.key()).isNotEqualTo(limited.key());
+            lease.release();
+        }
+        assertThat(metrics.snapshot())
+            .containsEntry("aicover.apikey.cooling_down{platform=tongyi,key=..."
+                + limited.key().substring(3) + "}", 1);
+    }
+
+    @Test
+    void fallsBackToAKeyWhenAllAreCoolingDown() {
+        List<String> single = List.of("sk-only");
+        ApiKeyPool.Lease lease = pool.acquire("siliconflow", single);
+        lease.reportFailure(new ProviderApiException("unauthorized", 401, null));
+        lease.release();
+
+        assertThat(pool.acquire("siliconflow", single).key()).isEqualTo("sk-only");
+    }
+
+    @Test
+    void ignoresNonRateLimitFailures() {
+        List<String> single = List.of("sk-only");
+        ApiKeyPool.Lease lease = pool.acquire("modelscope", single);
+        lease.reportFailure(new ProviderApiException("bad request", 400, null));
+        lease.reportFailure(new RuntimeException("timeout"));
+
+        assertThat(metrics.count("aicover.apikey.cooldowns", "platform", "modelscope", "key", "...only",
+            "status", "400")).isZero();
+    }
+
+    @Test
+    void switchesToAnotherKeyWhenTheSubmitIsRateLimited() {
+        List<String> attempted = new CopyOnWriteArrayList<>();
+        List<String> polledWith = pool.withKey("tongyi", keys,
+                lease -> {
+                    attempted.add(lease.key());
+                    return attempted.size() == 1
+                        ? Mono.error(new ProviderApiException("too many requests", 429, null))
+                        : Mono.just("task-1");
+                },
+                retryPolicy.transientErrors("tongyi", "submit", Duration.ofSeconds(30)),
+                (lease, taskId) -> Flux.just(lease.key()))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(attempted).hasSize(2).doesNotHaveDuplicates();
+        // 轮询使用提交成功的那个 Key
+        assertThat(polledWith).containsExactly(attempted.get(1));
+        assertThat(metrics.count("aicover.retry.attempts", "platform", "tongyi", "operation", "submit")).isZero();
+        assertThat(metrics.count("aicover.apikey.rotations", "platform", "tongyi")).isEqualTo(1);
+        assertNothingInFlight("tongyi", keys);
+    }
+
+    @Test
+    void doesNotRetryAnUnauthorizedKeyWhenNoOtherKeyIsAvailable() {
+        List<String> single = List.of("sk-only");
+        List<String> attempted = new CopyOnWriteArrayList<>();
+
+        assertThatThrownBy(() -> pool.withKey("siliconflow", single,
+                lease -> {
+                    attempted.add(lease.key());
+                    return Mono.<String>error(new ProviderApiException("unauthorized", 401, null));
+                },
+                retryPolicy.transientErrors("siliconflow", "generate", Duration.ofSeconds(30)),
+                (lease, value) -> Flux.just(value))
+            .blockLast(Duration.ofSeconds(5)))
+            .isInstanceOf(ProviderApiException.class);
+
+        assertThat(attempted).containsExactly("sk-only");
+        assertThat(metrics.count("aicover.retry.attempts", "platform", "siliconflow", "operation", "generate"))
+            .isZero();
+        assertNothingInFlight("siliconflow", single);
+    }
+
+    @Test
+    void retriesARateLimitedSingleKeyAfterRetryAfter() {
+        List<String> single = List.of("sk-only");
+        List<Long> attemptedAt = new CopyOnWriteArrayList<>();
+        String result = pool.withKey("tongyi", single,
+                lease -> {
+                    attemptedAt.add(System.nanoTime());
+                    return attemptedAt.size() == 1
+                        ? Mono.error(new ProviderApiException("too many requests", 429, Duration.ofSeconds(1)))
+                        : Mono.just("task-1");
+                },
+                retryPolicy.transientErrors("tongyi", "submit", Duration.ofSeconds(30)),
+                (lease, taskId) -> Flux.just(taskId))
+            .blockLast(Duration.ofSeconds(5));
+
+        assertThat(result).isEqualTo("task-1");
+        assertThat(attemptedAt).hasSize(2);
+        assertThat(Duration.ofNanos(attemptedAt.get(1) - attemptedAt.get(0))).isGreaterThanOrEqualTo(
+            Duration.ofMillis(900));
+        assertThat(metrics.count("aicover.retry.attempts", "platform", "tongyi", "operation", "submit"))
+            .isEqualTo(1);
+        assertNothingInFlight("tongyi", single);
+    }
+
+    @Test
+    void retriesTransientErrorsWithAFreshLease() {
+        List<String> attempted = new CopyOnWriteArrayList<>();
+        String result = pool.withKey("modelscope", keys,
+                lease -> {
+                    attempted.add(lease.key());
+                    return attempted.size() == 1
+                        ? Mono.error(new ProviderApiException("service unavailable", 503, null))
+                        : Mono.just("task-1");
+                },
+                retryPolicy.transientErrors("modelscope", "submit", Duration.ofSeconds(30)),
+                (lease, taskId) -> Flux.just(taskId))
+            .blockLast(Duration.ofSeconds(5));
+
+        assertThat(result).isEqualTo("task-1");
+        assertThat(attempted).hasSize(2);
+        assertThat(metrics.count("aicover.retry.attempts", "platform", "modelscope", "operation", "submit"))
+            .isEqualTo(1);
+        // 503 与 Key 无关，不进入冷却
+        assertThat(metrics.count("aicover.apikey.cooldowns", "platform", "modelscope", "key",
+            ApiKeyPool.fingerprint(attempted.get(0)), "status", "503")).isZero();
+        assertNothingInFlight("modelscope", keys);
+    }
+
+    @Test
+    void keepsTheLeaseUntilTheBodyEnds() {
+        List<Integer> inFlightDuringBody = new CopyOnWriteArrayList<>();
+        pool.withKey("tongyi", List.of("sk-only"), lease -> Mono.just("task-1"),
+                retryPolicy.transientErrors("tongyi", "submit", Duration.ofSeconds(30)),
+                (lease, taskId) -> Flux.defer(() -> {
+                    inFlightDuringBody.add(inFlight("tongyi", "sk-only"));
+                    return Flux.error(new RuntimeException("轮询失败"));
+                }))
+            .onErrorResume(error -> Flux.empty())
+            .blockLast(Duration.ofSeconds(5));
+
+        assertThat(inFlightDuringBody).containsExactly(1);
+        assertNothingInFlight("tongyi", List.of("sk-only"));
+    }
+
+    private void assertNothingInFlight(String platform, List<String> keys) {
+        keys.forEach(key -> assertThat(inFlight(platform, key)).as(key).isZero());
+    }
+
+    private int inFlight(String platform, String key) {
+        Number value = metrics.snapshot().get("aicover.apikey.in_flight{platform=" + platform + ",key="
+            + ApiKeyPool.fingerprint(key) + "}");
+        return value == null ? 0 : value.intValue();
+    }
+}
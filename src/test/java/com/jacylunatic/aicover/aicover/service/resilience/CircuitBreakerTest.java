@@ -0,0 +1,92 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final CircuitBreaker breaker = new CircuitBreaker("tongyi",
+        new CircuitBreakerConfig(10, 4, 0.5f, Duration.ofSeconds(30), 0.5f,
+            Duration.ofSeconds(60), 2),
+        clock::get);
+
+    @Test
+    void tripsOnFailureRateAndFailsFast() {
+        callAndRecord(CircuitBreaker.Outcome.SUCCESS, Duration.ofSeconds(1));
+        callAndRecord(CircuitBreaker.Outcome.SUCCESS, Duration.ofSeconds(1));
+        callAndRecord(CircuitBreaker.Outcome.FAILURE, Duration.ofSeconds(1));
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        callAndRecord(CircuitBreaker.Outcome.FAILURE, Duration.ofSeconds(1));
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void tripsOnSlowCallRate() {
+        for (int i = 0; i < 4; i++) {
+            callAndRecord(CircuitBreaker.Outcome.SUCCESS, Duration.ofSeconds(45));
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void halfOpenAllowsLimitedProbesAndClosesOnSuccess() {
+        tripBreaker();
+        clock.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        breaker.onResult(CircuitBreaker.Outcome.SUCCESS, Duration.ofSeconds(1));
+        breaker.onResult(CircuitBreaker.Outcome.SUCCESS, Duration.ofSeconds(1));
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenReopensOnProbeFailure() {
+        tripBreaker();
+        clock.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onResult(CircuitBreaker.Outcome.FAILURE, Duration.ofSeconds(1));
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void releasedProbePermitCanBeReused() {
+        tripBreaker();
+        clock.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.releasePermission();
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    private void tripBreaker() {
+        for (int i = 0; i < 4; i++) {
+            callAndRecord(CircuitBreaker.Outcome.FAILURE, Duration.ofSeconds(1));
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void callAndRecord(CircuitBreaker.Outcome outcome, Duration elapsed) {
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onResult(outcome, elapsed);
+    }
+}
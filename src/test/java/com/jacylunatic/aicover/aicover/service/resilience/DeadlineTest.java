@@ -0,0 +1,67 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeadlineTest {
+
+    @Test
+    void cancelsUpstreamWhenTheDeadlinePasses() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<Long> polling = Flux.interval(Duration.ofMillis(10)).doOnCancel(() -> cancelled.set(true));
+
+        assertThatThrownBy(() -> Deadline.apply(polling, Duration.ofMillis(200)).blockLast(Duration.ofSeconds(5)))
+            .isInstanceOf(DeadlineExceededException.class)
+            .hasMessageContaining("本次请求超时");
+        assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    void stagesDeriveTheirTimeoutFromTheRemainingTime() {
+        Flux<Duration> stage = Mono.deferContextual(context ->
+            Mono.just(Deadline.timeout(context, Duration.ofHours(1)))).flux();
+
+        Duration timeout = Deadline.apply(stage, Duration.ofSeconds(30)).blockFirst(Duration.ofSeconds(5));
+
+        assertThat(timeout).isLessThanOrEqualTo(Duration.ofSeconds(30)).isGreaterThan(Duration.ofSeconds(25));
+    }
+
+    @Test
+    void stageCapAppliesWithoutADeadline() {
+        assertThatThrownBy(() -> Deadline.limit(Mono.never(), "轮询", Duration.ofMillis(100))
+            .block(Duration.ofSeconds(5)))
+            .isInstanceOf(DeadlineExceededException.class)
+            .hasMessageStartingWith("轮询超时（");
+        assertThat(Deadline.limit(Mono.just("ok"), "轮询", null).block()).isEqualTo("ok");
+    }
+
+    @Test
+    void capturedDeadlineLimitsWorkInAnotherSubscription() {
+        Deadline captured = Deadline.after(Duration.ofMillis(200));
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        assertThatThrownBy(() -> Deadline.within(Mono.never().doOnCancel(() -> cancelled.set(true)), captured, "上传")
+            .block(Duration.ofSeconds(5)))
+            .isInstanceOf(DeadlineExceededException.class)
+            .hasMessageStartingWith("上传超时：");
+        assertThat(cancelled).isTrue();
+        assertThat(Deadline.within(Mono.just("ok"), null, "上传").block()).isEqualTo("ok");
+    }
+
+    @Test
+    void earlierDeadlineFromTheCallerWins() {
+        long start = System.nanoTime();
+        Flux<Object> generation = Deadline.apply(Flux.never(), Duration.ofMinutes(5));
+
+        assertThatThrownBy(() -> Deadline.tighten(generation, Duration.ofMillis(200)).blockLast(Duration.ofSeconds(10)))
+            .isInstanceOf(DeadlineExceededException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,100 @@
+package com.jacylunatic.aicover.aicover.service.resilience;
+
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    private final PluginMetrics metrics = new PluginMetrics();
+    private final RetryPolicy retryPolicy = new RetryPolicy(metrics);
+
+    @Test
+    void retriesTransientErrorsUntilSuccess() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = Mono.defer(() -> calls.incrementAndGet() < 3
+            ? Mono.error(new ProviderApiException("busy", 503, Duration.ZERO))
+            : Mono.just("ok"));
+
+        String result = call
+            .retryWhen(retryPolicy.transientErrors("tongyi", "submit", Duration.ofSeconds(10)))
+            .block(Duration.ofSeconds(10));
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls).hasValue(3);
+        assertThat(metrics.count("aicover.retry.attempts", "platform", "tongyi", "operation", "submit"))
+            .isEqualTo(2);
+    }
+
+    @Test
+    void doesNotRetryPermanentErrors() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new ProviderApiException("unauthorized", 401, null));
+        });
+
+        assertThatThrownBy(() -> call
+            .retryWhen(retryPolicy.transientErrors("tongyi", "submit", Duration.ofSeconds(10)))
+            .block(Duration.ofSeconds(10)))
+            .hasMessage("unauthorized");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void givesUpWhenRetryAfterExceedsDeadline() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new ProviderApiException("slow down", 429, Duration.ofMinutes(5)));
+        });
+
+        assertThatThrownBy(() -> call
+            .retryWhen(retryPolicy.transientErrors("siliconflow", "generate", Duration.ofSeconds(5)))
+            .block(Duration.ofSeconds(10)))
+            .hasMessage("slow down");
+        assertThat(calls).hasValue(1);
+        assertThat(metrics.count("aicover.retry.exhausted", "platform", "siliconflow", "operation", "generate"))
+            .isEqualTo(1);
+    }
+
+    @Test
+    void doesNotRetryPastTheRequestDeadline() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new ProviderApiException("slow down", 429, Duration.ofSeconds(3)));
+        });
+
+        assertThatThrownBy(() -> Deadline.apply(call
+                .retryWhen(retryPolicy.transientErrors("tongyi", "submit", Duration.ofSeconds(30)))
+                .flux(), Duration.ofSeconds(2))
+            .blockLast(Duration.ofSeconds(10)))
+            .hasMessage("slow down");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void retryAfterTakesPrecedenceOverBackoff() {
+        Duration delay = RetryPolicy.nextDelay(1,
+            new ProviderApiException("slow down", 429, Duration.ofSeconds(7)));
+
+        assertThat(delay).isEqualTo(Duration.ofSeconds(7));
+        assertThat(RetryPolicy.nextDelay(1, new ProviderApiException("busy", 503, null)))
+            .isBetween(Duration.ofMillis(250), Duration.ofMillis(500));
+    }
+
+    @Test
+    void parsesRetryAfterSecondsAndDates() {
+        assertThat(ProviderApiException.parseRetryAfter("12")).isEqualTo(Duration.ofSeconds(12));
+        assertThat(ProviderApiException.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"))
+            .isEqualTo(Duration.ZERO);
+        assertThat(ProviderApiException.parseRetryAfter("garbage")).isNull();
+    }
+}
@@ -0,0 +1,33 @@
+package com.jacylunatic.aicover.aicover.service.similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptNormalizerTest {
+
+    @Test
+    void ignoresPunctuationWidthCaseAndStopWords() {
+        assertThat(PromptNormalizer.features("A Futuristic City, at night！"))
+            .isEqualTo(PromptNormalizer.features("futuristic  CITY at NIGHT"));
+        assertThat(PromptNormalizer.features("请生成一张科技的博客封面"))
+            .isEqualTo(PromptNormalizer.features("科技 博客封面"));
+    }
+
+    @Test
+    void splitsCjkIntoCharactersAndBigrams() {
+        assertThat(PromptNormalizer.features("博客 cover"))
+            .containsExactlyInAnyOrder("c:博", "c:客", "b:博客", "w:cover");
+    }
+
+    @Test
+    void reorderedChinesePromptsStayAboveTheDefaultThreshold() {
+        Set<String> a = PromptNormalizer.features("科技 博客 封面");
+        Set<String> b = PromptNormalizer.features("博客封面，科技");
+
+        assertThat(PromptNormalizer.jaccard(a, b)).isEqualTo(0.9);
+        assertThat(PromptNormalizer.jaccard(a, PromptNormalizer.features("海边 日落 风景"))).isZero();
+    }
+}
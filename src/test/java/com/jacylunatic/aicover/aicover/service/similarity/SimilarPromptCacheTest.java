@@ -0,0 +1,109 @@
+package com.jacylunatic.aicover.aicover.service.similarity;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.image.LocalImageCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SimilarPromptCacheTest {
+
+    private static final String MODEL = "tongyi:wanx-v1";
+    private static final String SIZE = "1024*1024";
+    private static final String STORED = LocalImageCache.URL_PREFIX
+        + "3a7bd3e2360a3d29eea436fcfb7e44c735d117c42d1c1835420b6b9942dd4f1b.png";
+
+    private final PluginMasterSetting setting = new PluginMasterSetting();
+    private PluginMetrics metrics;
+    private SimilarPromptCache cache;
+
+    @BeforeEach
+    void setUp() {
+        setting.setSimilarPromptSuggestions(true);
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.just(setting));
+        metrics = new PluginMetrics();
+        cache = new SimilarPromptCache(settingFetcher, metrics,
+            Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @Test
+    void suggestsEarlierResultBeforeGeneratingAgain() {
+        cache.around(MODEL, SIZE, "科技 博客 封面", Flux.just(ProgressUpdate.finalSuccess(STORED, "完成"))).blockLast();
+
+        List<ProgressUpdate> updates = cache.around(MODEL, SIZE, "博客封面，科技",
+            Flux.just(ProgressUpdate.finalSuccess("/other.png", "完成"))).collectList().block();
+
+        assertThat(updates).hasSize(2);
+        assertThat(updates.get(0).getSuggestedImageUrl()).isEqualTo(STORED);
+        assertThat(updates.get(0).getSimilarity()).isEqualTo(0.9);
+        assertThat(updates.get(0).getIsFinal()).isFalse();
+        assertThat(updates.get(1).getFinalImageUrl()).isEqualTo("/other.png");
+        assertThat(metrics.count("aicover.similar_prompt.hits")).isEqualTo(1);
+    }
+
+    @Test
+    void keepsModelsSizesAndThresholdApart() {
+        cache.record(SimilarPromptCache.key(MODEL, SIZE), "a futuristic city at night", STORED);
+
+        assertThat(cache.find(SimilarPromptCache.key(MODEL, "720*1280"), "a futuristic city at night", 0.8))
+            .isNull();
+        assertThat(cache.find(SimilarPromptCache.key("siliconflow:flux", SIZE), "a futuristic city at night", 0.8))
+            .isNull();
+        // {futuristic, city, night} 与 {futuristic, city, day}：2/4
+        assertThat(cache.find(SimilarPromptCache.key(MODEL, SIZE), "futuristic city by day", 0.8)).isNull();
+        assertThat(cache.find(SimilarPromptCache.key(MODEL, SIZE), "futuristic city by day", 0.5))
+            .extracting(SimilarPromptCache.Match::similarity).isEqualTo(0.5);
+    }
+
+    @Test
+    void dropsTheLeastRecentlyUsedModelAndSizeFirst() {
+        String kept = SimilarPromptCache.key(MODEL, "0*0");
+        String dropped = SimilarPromptCache.key(MODEL, "1*1");
+        cache.record(kept, "海边日落", STORED);
+        cache.record(dropped, "海边日落", STORED);
+        for (int i = 2; i < 32; i++) {
+            cache.record(SimilarPromptCache.key(MODEL, i + "*" + i), "海边日落", STORED);
+        }
+        // 最早记录的一组刚被用过，超出上限时丢弃的是第二组
+        assertThat(cache.find(kept, "海边日落", 0.8)).isNotNull();
+        cache.record(SimilarPromptCache.key(MODEL, "32*32"), "海边日落", STORED);
+
+        assertThat(cache.find(kept, "海边日落", 0.8)).isNotNull();
+        assertThat(cache.find(dropped, "海边日落", 0.8)).isNull();
+    }
+
+    @Test
+    void doesNotRecordExpiringLinksOrWhenDisabled() {
+        cache.around(MODEL, SIZE, "海边日落", Flux.just(ProgressUpdate.finalSuccess(
+            "https://dashscope-result.oss.aliyuncs.com/a.png?Expires=1700000000&Signature=x", "完成"))).blockLast();
+        assertThat(cache.find(SimilarPromptCache.key(MODEL, SIZE), "海边日落", 0.8)).isNull();
+
+        setting.setSimilarPromptSuggestions(false);
+        cache.around(MODEL, SIZE, "海边日落", Flux.just(ProgressUpdate.finalSuccess(STORED, "完成"))).blockLast();
+        assertThat(cache.find(SimilarPromptCache.key(MODEL, SIZE), "海边日落", 0.8)).isNull();
+    }
+
+    @Test
+    void thresholdIsClamped() {
+        setting.setSimilarPromptThreshold(0.1);
+        assertThat(SimilarPromptCache.threshold(setting)).isEqualTo(0.5);
+        setting.setSimilarPromptThreshold(null);
+        assertThat(SimilarPromptCache.threshold(setting)).isEqualTo(0.8);
+    }
+}
@@ -0,0 +1,161 @@
+package com.jacylunatic.aicover.aicover.service.speculative;
+
+import com.jacylunatic.aicover.aicover.model.PluginMasterSetting;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.model.SpeculativeCover;
+import com.jacylunatic.aicover.aicover.service.AiImageService;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SpeculativeCoverServiceTest {
+
+    private static final Duration DEBOUNCE = Duration.ofMillis(200);
+    private static final String MODEL = "tongyi:wanx-v1";
+    private static final String IMAGE_URL = "https://dashscope.example.com/a.png?Expires=1";
+
+    private final PluginMasterSetting setting = new PluginMasterSetting();
+    private final Sinks.Many<Boolean> interactiveStarts = Sinks.many().multicast().directBestEffort();
+    private AiImageService aiImageService;
+    private PluginMetrics metrics;
+    private SpeculativeCoverService service;
+
+    @BeforeEach
+    void setUp() {
+        setting.setSpeculativeGeneration(true);
+        setting.setSpeculativeModel(MODEL);
+        setting.setSpeculativePrompt("极简插画，主题：{title}");
+        setting.setSpeculativeSize("1024*576");
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(eq(PluginMasterSetting.GROUP), any())).thenReturn(Mono.just(setting));
+        aiImageService = mock(AiImageService.class);
+        when(aiImageService.interactiveGenerationStarts()).thenReturn(interactiveStarts.asFlux());
+        when(aiImageService.generateInBackground(anyString(), eq(MODEL), anyString()))
+            .thenReturn(Flux.just(ProgressUpdate.finalSuccess(IMAGE_URL, "完成")));
+        metrics = new PluginMetrics();
+        service = new SpeculativeCoverService(settingFetcher, aiImageService, metrics,
+            mock(GenerationLifecycleManager.class), DEBOUNCE,
+            Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.dispose();
+    }
+
+    @Test
+    void smallTitleEditsAreNotSubstantial() {
+        assertThat(SpeculativeCoverService.changedSubstantially(
+            "Spring WebFlux 入门指南", "Spring WebFlux 入门指南（上）")).isFalse();
+        assertThat(SpeculativeCoverService.changedSubstantially("如何养一只猫", "如何养一只小猫")).isFalse();
+    }
+
+    @Test
+    void rewrittenTitlesAreSubstantial() {
+        assertThat(SpeculativeCoverService.changedSubstantially(
+            "Spring WebFlux 入门指南", "我的 2025 年度总结")).isTrue();
+        assertThat(SpeculativeCoverService.changedSubstantially("", "新文章")).isTrue();
+    }
+
+    @Test
+    void generatesOnceWithTheLatestTitleAfterEditsSettle() throws InterruptedException {
+        service.onDraftUpdated("post", "Spring WebFlux 入门指南", false);
+        service.onDraftUpdated("post", "我的 2025 年度总结", false);
+        verify(aiImageService, never()).generateInBackground(anyString(), anyString(), anyString());
+
+        SpeculativeCover cover = awaitCover("post");
+
+        assertThat(cover.getTitle()).isEqualTo("我的 2025 年度总结");
+        assertThat(cover.getImageUrl()).isEqualTo(IMAGE_URL);
+        verify(aiImageService, times(1)).generateInBackground(anyString(), anyString(), anyString());
+        verify(aiImageService).generateInBackground("极简插画，主题：我的 2025 年度总结", MODEL, "1024*576");
+    }
+
+    @Test
+    void interactiveGenerationPreemptsTheRunningSpeculation() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        when(aiImageService.generateInBackground(anyString(), eq(MODEL), anyString()))
+            .thenReturn(Flux.<ProgressUpdate>never()
+                .doOnSubscribe(subscription -> started.countDown())
+                .doOnCancel(cancelled::countDown));
+
+        service.onDraftUpdated("post", "如何养一只猫", false);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        interactiveStarts.tryEmitNext(true);
+
+        assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(metrics.count("aicover.speculative.preempted")).isEqualTo(1);
+        assertThat(service.lookup("post")).isEmpty();
+    }
+
+    @Test
+    void skipsWhileAnInteractiveGenerationIsRunning() throws InterruptedException {
+        when(aiImageService.hasInteractiveGenerations()).thenReturn(true);
+
+        service.onDraftUpdated("post", "如何养一只猫", false);
+        Thread.sleep(DEBOUNCE.multipliedBy(3).toMillis());
+
+        assertThat(metrics.count("aicover.speculative.skipped", "reason", "interactive")).isEqualTo(1);
+        verify(aiImageService, never()).generateInBackground(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void stopsAtTheDailyLimit() throws InterruptedException {
+        setting.setSpeculativeDailyLimit(1);
+
+        service.onDraftUpdated("first", "如何养一只猫", false);
+        awaitCover("first");
+        service.onDraftUpdated("second", "我的 2025 年度总结", false);
+        Thread.sleep(DEBOUNCE.multipliedBy(3).toMillis());
+
+        assertThat(service.lookup("second")).isEmpty();
+        assertThat(metrics.count("aicover.speculative.skipped", "reason", "daily_limit")).isEqualTo(1);
+        verify(aiImageService, times(1)).generateInBackground(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void promptAndSizeComeFromSettings() {
+        PluginMasterSetting defaults = new PluginMasterSetting();
+        assertThat(SpeculativeCoverService.prompt(defaults, "标题"))
+            .isEqualTo(SpeculativeCoverService.DEFAULT_PROMPT.replace("{title}", "标题"));
+        defaults.setSpeculativePrompt("flat illustration");
+        assertThat(SpeculativeCoverService.prompt(defaults, "标题")).isEqualTo("flat illustration：标题");
+    }
+
+    private SpeculativeCover awaitCover(String postName) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Optional<SpeculativeCover> cover = service.lookup(postName);
+            if (cover.isPresent()) {
+                return cover.get();
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("预生成封面未在 5 秒内完成");
+    }
+}
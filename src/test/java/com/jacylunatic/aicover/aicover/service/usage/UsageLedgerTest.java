@@ -0,0 +1,144 @@
+package com.jacylunatic.aicover.aicover.service.usage;
+
+import com.jacylunatic.aicover.aicover.model.AiCoverUsage;
+import com.jacylunatic.aicover.aicover.model.ProgressUpdate;
+import com.jacylunatic.aicover.aicover.model.UsageSetting;
+import com.jacylunatic.aicover.aicover.service.PluginMetrics;
+import com.jacylunatic.aicover.aicover.service.lifecycle.GenerationLifecycleManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UsageLedgerTest {
+
+    private final UsageSetting setting = new UsageSetting();
+    private final AtomicInteger started = new AtomicInteger();
+    private PluginMetrics metrics;
+    private UsageLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        ReactiveExtensionClient client = mock(ReactiveExtensionClient.class);
+        when(client.listAll(eq(AiCoverUsage.class), any(ListOptions.class), any())).thenReturn(Flux.empty());
+        when(client.fetch(eq(AiCoverUsage.class), anyString())).thenReturn(Mono.empty());
+        when(client.create(any(AiCoverUsage.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        ReactiveSettingFetcher settingFetcher = mock(ReactiveSettingFetcher.class);
+        when(settingFetcher.fetch(UsageSetting.GROUP, UsageSetting.class)).thenReturn(Mono.just(setting));
+        metrics = new PluginMetrics();
+        ledger = new UsageLedger(client, settingFetcher, metrics, mock(GenerationLifecycleManager.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledger.dispose();
+    }
+
+    @Test
+    void rejectsBeforeSubmittingOnceTheProviderQuotaIsReached() {
+        setting.setProviderDailyQuotas("tongyi=2");
+
+        assertThat(generate("tongyi").getIsError()).isFalse();
+        assertThat(generate("tongyi").getIsError()).isFalse();
+        ProgressUpdate rejected = generate("tongyi");
+
+        assertThat(rejected.getIsError()).isTrue();
+        assertThat(rejected.getMessage()).contains("已达上限");
+        assertThat(started).hasValue(2);
+        assertThat(metrics.count("aicover.usage.rejected", "platform", "tongyi")).isEqualTo(1);
+        // 其他平台不受影响
+        assertThat(generate("siliconflow").getIsError()).isFalse();
+    }
+
+    @Test
+    void authorQuotaAppliesToSignedInAuthorsOnly() {
+        setting.setAuthorDailyQuota(1);
+
+        assertThat(generateAs("alice", "tongyi").getIsError()).isFalse();
+        assertThat(generateAs("alice", "siliconflow").getIsError()).isTrue();
+        assertThat(generateAs("bob", "tongyi").getIsError()).isFalse();
+        // 后台任务没有登录上下文，不计入作者配额
+        assertThat(generate("tongyi").getIsError()).isFalse();
+        assertThat(generate("tongyi").getIsError()).isFalse();
+    }
+
+    @Test
+    void concurrentAdmissionsNeverExceedTheQuota() {
+        setting.setProviderDailyQuotas("tongyi=5");
+
+        List<ProgressUpdate> results = Flux.range(0, 64)
+            .flatMap(i -> meter("tongyi").subscribeOn(Schedulers.parallel()))
+            .collectList()
+            .block(Duration.ofSeconds(10));
+
+        assertThat(results).hasSize(64);
+        assertThat(results).filteredOn(update -> !update.getIsError()).hasSize(5);
+        assertThat(started).hasValue(5);
+    }
+
+    private ProgressUpdate generate(String platform) {
+        return meter(platform).block(Duration.ofSeconds(5));
+    }
+
+    private ProgressUpdate generateAs(String author, String platform) {
+        return meter(platform)
+            .contextWrite(ReactiveSecurityContextHolder.withAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(author, null, List.of())))
+            .block(Duration.ofSeconds(5));
+    }
+
+    private Mono<ProgressUpdate> meter(String platform) {
+        Flux<ProgressUpdate> generation = Flux.defer(() -> {
+            started.incrementAndGet();
+            return Flux.just(ProgressUpdate.finalSuccess("https://example.com/a.png", "完成"));
+        });
+        return ledger.meter(platform, "model", "1024*1024", generation).last();
+    }
+
+    @Test
+    void parsesProviderQuotasAndSkipsInvalidLines() {
+        var quotas = UsageLedger.parseQuotas("Tongyi=200\n\nsiliconflow = 50\nmodelscope=abc\nbroken");
+
+        assertThat(quotas).containsOnlyKeys("tongyi", "siliconflow");
+        assertThat(quotas.get("tongyi")).isEqualTo(200L);
+        assertThat(quotas.get("siliconflow")).isEqualTo(50L);
+    }
+
+    @Test
+    void modelCostTakesPrecedenceOverPlatformCost() {
+        String costs = "tongyi=0.2\ntongyi:wanx-v1=0.16";
+
+        assertThat(UsageLedger.estimateCostMilli(costs, "tongyi", "wanx-v1")).isEqualTo(160);
+        assertThat(UsageLedger.estimateCostMilli(costs, "Tongyi", "wanx2.1-t2i-plus")).isEqualTo(200);
+        assertThat(UsageLedger.estimateCostMilli(costs, "siliconflow", "kolors")).isZero();
+        assertThat(UsageLedger.estimateCostMilli(null, "tongyi", "wanx-v1")).isZero();
+    }
+
+    @Test
+    void bucketNameIsStableAndDistinguishesDimensions() {
+        String name = UsageLedger.bucketName("2025-01-01", "admin", "tongyi", "wanx-v1", "1024*1024");
+
+        assertThat(name)
+            .isEqualTo(UsageLedger.bucketName("2025-01-01", "admin", "tongyi", "wanx-v1", "1024*1024"))
+            .startsWith("usage-2025-01-01-")
+            .isNotEqualTo(UsageLedger.bucketName("2025-01-01", "admin", "tongyi", "wanx-v1", "1280*720"));
+    }
+}
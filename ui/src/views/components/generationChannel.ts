@@ -0,0 +1,86 @@
+/**
+ * 多路复用的生成通道：一个编辑器页面内所有生成任务共用一个 WebSocket 连接。
+ *
+ * 服务端帧格式（字段名刻意缩短）：
+ *   j 任务 ID，s 阶段（A 已接收 / S 已提交 / R 进行中 / W 警告 / G 相近的历史图片 / D 完成 / E 失败 / C 已取消），
+ *   p 进度百分比，u 图片地址，m 提示文字，r 历史图片的提示词相似度（仅 G 帧）。
+ * 每个任务总以 D、C 或 E 帧结束。
+ */
+
+export interface JobFrame {
+  j: string;
+  s: 'A' | 'S' | 'R' | 'W' | 'G' | 'D' | 'E' | 'C';
+  p?: number;
+  u?: string;
+  m?: string;
+  r?: number;
+}
+
+export interface StartJobParams {
+  prompt: string;
+  model: string;
+  size: string;
+  uploadToAlist: boolean;
+}
+
+const ENDPOINT = '/apis/aicover.jacylunatic.com/v1alpha1/generations';
+const TERMINAL_STAGES = new Set(['D', 'E', 'C']);
+
+let socket: WebSocket | null = null;
+let opening: Promise<WebSocket> | null = null;
+const listeners = new Map<string, (frame: JobFrame) => void>();
+
+const connect = (): Promise<WebSocket> => {
+  if (socket && socket.readyState === WebSocket.OPEN) {
+    return Promise.resolve(socket);
+  }
+  if (opening) {
+    return opening;
+  }
+  opening = new Promise((resolve, reject) => {
+    const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+    const ws = new WebSocket(`${protocol}//${window.location.host}${ENDPOINT}`);
+    ws.onopen = () => {
+      socket = ws;
+      opening = null;
+      resolve(ws);
+    };
+    ws.onerror = () => {
+      opening = null;
+      reject(new Error('无法建立 WebSocket 连接'));
+    };
+    ws.onmessage = (event) => {
+      const frame: JobFrame = JSON.parse(event.data);
+      const listener = listeners.get(frame.j);
+      if (!listener) return;
+      listener(frame);
+      if (TERMINAL_STAGES.has(frame.s)) {
+        listeners.delete(frame.j);
+      }
+    };
+    ws.onclose = () => {
+      socket = null;
+      // 连接断开时，所有未结束的任务都视为失败
+      for (const [jobId, listener] of listeners) {
+        listener({ j: jobId, s: 'E', m: '与服务器的连接中断。' });
+      }
+      listeners.clear();
+    };
+  });
+  return opening;
+};
+
+/**
+ * 启动一个生成任务，返回取消函数。连接建立失败时抛出异常，调用方可回退到 SSE。
+ */
+export const startJob = async (params: StartJobParams, onFrame: (frame: JobFrame) => void): Promise<() => void> => {
+  const ws = await connect();
+  const jobId = `${Date.now().toString(36)}-${Math.random().toString(36).slice(2, 8)}`;
+  listeners.set(jobId, onFrame);
+  ws.send(JSON.stringify({ type: 'start', job: jobId, ...params }));
+  return () => {
+    if (listeners.has(jobId) && socket) {
+      socket.send(JSON.stringify({ type: 'cancel', job: jobId }));
+    }
+  };
+};